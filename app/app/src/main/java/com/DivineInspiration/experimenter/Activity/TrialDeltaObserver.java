@@ -0,0 +1,16 @@
+package com.DivineInspiration.experimenter.Activity;
+
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
+
+/**
+ * An {@link Observer} that can also take only the trials that changed, instead of the whole list on every change
+ */
+public interface TrialDeltaObserver extends Observer {
+
+    /**
+     * Applies the trials added, changed and removed by one delivery of the trial feed
+     * @param delta
+     * what changed, with every trial and their columns after the change
+     */
+    void applyDelta(ExperimentTrialFeed.Delta delta);
+}
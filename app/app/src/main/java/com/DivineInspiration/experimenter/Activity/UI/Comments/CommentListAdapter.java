@@ -12,10 +12,13 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.fragment.app.FragmentManager;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.DivineInspiration.experimenter.Activity.UI.StableIds;
 import com.DivineInspiration.experimenter.Controller.CommentManager;
 import com.DivineInspiration.experimenter.Controller.UserManager;
 import com.DivineInspiration.experimenter.Model.Comment.Comment;
@@ -25,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * A custom RecyclerView Adapter class. Displays a list of comments. Used by
@@ -34,10 +38,27 @@ import java.util.Map;
  */
 public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.ViewHolder> implements CommentManager.OnRepliesReadyListener, CreateReplyDialogFragment.OnReplyCreatedListener {
 
+    // comments are compared by id, and shown the same if the commenter, the text and the replies flag are equal
+    private static final DiffUtil.ItemCallback<Comment> DIFF = new DiffUtil.ItemCallback<Comment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Comment oldItem, @NonNull Comment newItem) {
+            return oldItem.getCommentId().equals(newItem.getCommentId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Comment oldItem, @NonNull Comment newItem) {
+            return Objects.equals(oldItem.getCommenterName(), newItem.getCommenterName())
+                    && Objects.equals(oldItem.getComment(), newItem.getComment())
+                    && oldItem.getHasReplies() == newItem.getHasReplies();
+        }
+    };
+
     private CommentListAdapter thisAdapter;
     private Context context;
     private FragmentManager fragmentManager;
-    private List<Comment> comments = new ArrayList<>();
+    private final AsyncListDiffer<Comment> comments = new AsyncListDiffer<>(this, DIFF);
+    private List<Comment> submitted = new ArrayList<>();     // the latest list, shown once its diff is done
+    private final StableIds stableIds = new StableIds();
     private Map<String, List<Comment>> replies = new HashMap<>();
     private Map<String, ReplyListAdapter> replyAdapters = new HashMap<>();
     private String experimentID;
@@ -58,6 +79,7 @@ public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.
         this.fragmentManager = fragmentManager;
         this.experimentID = experimentID;
         thisAdapter = this;
+        setHasStableIds(true);
     }
 
     /**
@@ -83,7 +105,7 @@ public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
 
-        Comment comment = comments.get(position);
+        Comment comment = comments.getCurrentList().get(position);
         ReplyListAdapter adapter = new ReplyListAdapter();
         replyAdapters.put(comment.getCommentId(), adapter);
 
@@ -154,27 +176,38 @@ public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.
      * the number of items in comments
      */
     @Override
-    public int getItemCount() { return comments.size(); }
+    public int getItemCount() { return comments.getCurrentList().size(); }
+
+    /**
+     * Gets the stable id of an item, the same for a comment in every list
+     * @param position
+     * position in adapter
+     * @return
+     * item id
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(comments.getCurrentList().get(position).getCommentId());
+    }
 
     /**
-     * Sets data in adapter
+     * Sets data in adapter. The list is diffed against the shown one on a background thread,
+     * so only new, removed and changed comments are rebound and their replies kept
      * @param comments
      * the comment list
      */
     public void setComments(List<Comment> comments) {
 
-        this.comments.clear();
-        this.replies.clear();
-        this.replyAdapters.clear();
-
-        this.comments.addAll(comments);
-
-        this.replies.clear();
+        Map<String, List<Comment>> newReplies = new HashMap<>();
         for (Comment comment : comments) {
-            this.replies.put(comment.getCommentId(), new ArrayList<>());
+            List<Comment> known = this.replies.get(comment.getCommentId());
+            newReplies.put(comment.getCommentId(), known != null ? known : new ArrayList<>());
         }
+        this.replies = newReplies;
+        this.replyAdapters.keySet().retainAll(newReplies.keySet());
 
-        notifyDataSetChanged();
+        submitted = new ArrayList<>(comments);
+        this.comments.submitList(submitted);
     }
 
     /**
@@ -183,9 +216,11 @@ public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.
      * the added comment
      */
     public void addComment(Comment comment) {
-        this.comments.add(0, comment);
+        // built on the latest list, a diff of it may still be running
+        submitted = new ArrayList<>(submitted);
+        submitted.add(0, comment);
         this.replies.put(comment.getCommentId(), new ArrayList<>());
-        notifyItemInserted(0);
+        comments.submitList(submitted);
     }
 
     /**
@@ -224,9 +259,11 @@ public class CommentListAdapter extends RecyclerView.Adapter<CommentListAdapter.
         replies.get(commentID).add(reply);
         replyAdapters.get(commentID).addReply(reply);   // Dataset update handled in method
 
-        for (int i = 0; i < comments.size(); i++) {
-            if (comments.get(i).getCommentId().equals(commentID)) {
-                comments.get(i).setHasReplies(true);
+        // the flag is set on the shown comment itself, which a diff can not see, so the row is rebound here
+        List<Comment> shown = comments.getCurrentList();
+        for (int i = 0; i < shown.size(); i++) {
+            if (shown.get(i).getCommentId().equals(commentID)) {
+                shown.get(i).setHasReplies(true);
                 notifyItemChanged(i);
             }
         }
@@ -17,9 +17,8 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 
-import com.DivineInspiration.experimenter.Controller.CommentManager;
+import com.DivineInspiration.experimenter.Controller.CascadeDeleter;
 import com.DivineInspiration.experimenter.Controller.ExperimentManager;
-import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Controller.UserManager;
 import com.DivineInspiration.experimenter.Model.Experiment;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
@@ -297,11 +296,24 @@ public class ExperimentDialogFragment extends DialogFragment {
                 // If the owner chooses to delete the experiment
                 // TODO: add a warning dialog!!
 
-                TrialManager.getInstance().deleteAllTrialOfExperiment(exp.getExperimentID());
-                CommentManager.getInstance().deleteAllCommentOfExperiment(exp.getExperimentID());
-                expManager.deleteExperiment(exp.getExperimentID(), successful -> {
-                    dismiss();
-                    callback.onOperationDone(null);
+                // trials, comments and replies go first, the experiment itself last
+                v.setEnabled(false);
+                expManager.cascadeDeleteExperiment(exp.getExperimentID(), new CascadeDeleter.OnCascadeProgressListener() {
+                    @Override
+                    public void onProgress(String stage, int deleted) {
+                    }
+
+                    @Override
+                    public void onCascadeDone(boolean successful) {
+                        if (successful) {
+                            dismiss();
+                            callback.onOperationDone(null);
+                        } else {
+                            // part of the experiment is left, stay open so the owner can try again
+                            dialog.setTitle("Failed to delete experiment! Tap delete to retry");
+                            v.setEnabled(true);
+                        }
+                    }
                 });
                 // TODO: display a success message
             });
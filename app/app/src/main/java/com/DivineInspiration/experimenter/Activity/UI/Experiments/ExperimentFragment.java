@@ -18,6 +18,7 @@ import android.widget.TextView;
 
 import com.DivineInspiration.experimenter.Activity.Observer;
 import com.DivineInspiration.experimenter.Activity.Subject;
+import com.DivineInspiration.experimenter.Activity.TrialDeltaObserver;
 
 import com.DivineInspiration.experimenter.Activity.UI.Comments.CreateCommentDialogFragment;
 import com.DivineInspiration.experimenter.Activity.UI.Comments.DiscussionForumFragment;
@@ -27,10 +28,10 @@ import com.DivineInspiration.experimenter.Activity.UI.TrialsUI.TrialsTabFragment
 
 import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsTabFragment;
 import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
 import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Controller.UserManager;
 import com.DivineInspiration.experimenter.Model.Experiment;
-import com.DivineInspiration.experimenter.Model.Trial.Trial;
 import com.DivineInspiration.experimenter.Model.User;
 import com.DivineInspiration.experimenter.R;
 import com.google.android.material.appbar.AppBarLayout;
@@ -40,16 +41,15 @@ import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 
 /**
  * This class deals with the UI for displaying the experiment details. (It also contains 4 tabs: Trials, Comments, Stats, Data)
  * @see com.DivineInspiration.experimenter.R.layout#experiment_fragment
  */
-public class ExperimentFragment extends Fragment implements Subject, TrialManager.OnTrialListReadyListener{
-    List<Trial> currentTrials = new ArrayList<>();            // The trials performed for the experiment
-
+public class ExperimentFragment extends Fragment implements Subject, ExperimentManager.OnUserBannedListener{
     // Text views to display experiment information
     private TextView experimentName;
     private TextView ownerName;
@@ -75,6 +75,8 @@ public class ExperimentFragment extends Fragment implements Subject, TrialManage
 
     private String[] tabNames = {"Trials", "Comments", "Stats", "Map"};
     private Experiment currentExperiment;
+    private ExperimentTrialFeed trialFeed;                    // Follows the trials of the experiment while the view exists
+    private final Map<Observer, Integer> seenVersion = new HashMap<>();     // version of the feed each tab is up to date with
 
 
     /**
@@ -121,6 +123,9 @@ public class ExperimentFragment extends Fragment implements Subject, TrialManage
         currentExperiment = (Experiment) getArguments().getSerializable("experiment");
         updateText(currentExperiment);
 
+        // One listen for the life of the view, the tabs then only get the trials that changed
+        trialFeed = TrialManager.getInstance().listenExperimentTrials(currentExperiment.getExperimentID(), this::onTrialDelta);
+
         // View pager
         pager = view.findViewById(R.id.expPager);
         adapter = new ExperimentTabsAdapter(this);
@@ -295,17 +300,62 @@ public class ExperimentFragment extends Fragment implements Subject, TrialManage
     }
 
     /**
-     * When the fragment is resumed
+     * When the fragment is resumed, the tabs are redrawn from the trials already followed, nothing is read again
      */
     @Override
     public void onResume() {
         super.onResume();
+        updateAll();
+    }
 
-        TrialManager.getInstance().queryExperimentTrials(currentExperiment.getExperimentID(), trials -> {
-            currentTrials.clear();
-            currentTrials.addAll(trials);
-            updateAll();
-        });
+    /**
+     * When the fragment is paused, writes the trials still waiting in the write buffer
+     */
+    @Override
+    public void onPause() {
+        super.onPause();
+        TrialManager.getInstance().getWriteBuffer().flush();
+    }
+
+    /**
+     * When the view is destroyed, stops following the trials
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (trialFeed != null) {
+            trialFeed.stop();
+        }
+    }
+
+    /**
+     * Passes a change of the trials on to the tabs
+     * @param delta
+     * what changed, null if the feed failed
+     */
+    private void onTrialDelta(ExperimentTrialFeed.Delta delta) {
+        if (delta == null) {
+            return;
+        }
+        for (Observer observer : observers) {
+            deliver(observer, delta);
+        }
+    }
+
+    /**
+     * Hands a delta to a tab, a tab that only takes whole lists gets every trial
+     * @param observer
+     * the tab
+     * @param delta
+     * what changed
+     */
+    private void deliver(Observer observer, ExperimentTrialFeed.Delta delta) {
+        if (observer instanceof TrialDeltaObserver) {
+            ((TrialDeltaObserver) observer).applyDelta(delta);
+        } else {
+            observer.update(new ArrayList<>(delta.getTrials()));
+        }
+        seenVersion.put(observer, delta.getVersion());
     }
 
     /**
@@ -361,35 +411,54 @@ public class ExperimentFragment extends Fragment implements Subject, TrialManage
         trialBundle.putSerializable("experiment", currentExperiment);
 
         // Create a trial creation dialog fragment
-        CreateTrialDialogFragment dialogTrial = new CreateTrialDialogFragment(trial -> {
-            currentTrials.add(0, trial);
-            updateAll();
-        });
+        // shown right away, the feed does not deliver it again when the write reaches the store
+        CreateTrialDialogFragment dialogTrial = new CreateTrialDialogFragment(trial -> trialFeed.addLocal(trial));
 
         dialogTrial.setArguments(trialBundle);
         dialogTrial.show(getChildFragmentManager(), "create trial frag");
     }
 
     /**
-     * This method is called when info has changed and all the observers need to update their views
+     * Brings the tabs that missed deliveries of the feed up to date, such as a tab that was just created.
+     * A tab that saw the latest delivery is left alone, nothing changed for it.
      */
     @Override
     public void updateAll() {
 
+        if (trialFeed == null || !trialFeed.isLoaded()) {
+            return;
+        }
+        ExperimentTrialFeed.Delta replay = null;
         for(Observer observer : observers){
-            observer.update(currentTrials);
+            Integer seen = seenVersion.get(observer);
+            if (seen != null && seen == trialFeed.getVersion()) {
+                continue;
+            }
+            if (replay == null) {
+                replay = trialFeed.replay();
+            }
+            deliver(observer, replay);
         }
     }
 
     /**
-     * When the trials are ready from FireStore, updated list
-     * @param trials
-     * list of trials
+     * When a user is banned, only the trials of that user are flipped, the feed delivers them as a delta
+     * @param userId
+     * the banned user
      */
     @Override
-    public void onTrialsReady(List<Trial> trials) {
-        currentTrials = trials;
-        updateAll();
+    public void onUserBanned(String userId) {
+        trialFeed.banOwner(userId);
+    }
+
+    /**
+     * When the ban of a user is lifted, only the trials of that user are flipped, the feed delivers them as a delta
+     * @param userId
+     * the user let back in
+     */
+    @Override
+    public void onUserUnbanned(String userId) {
+        trialFeed.unbanOwner(userId);
     }
 
     /**
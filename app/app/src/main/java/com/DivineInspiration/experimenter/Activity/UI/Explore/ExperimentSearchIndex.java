@@ -0,0 +1,271 @@
+package com.DivineInspiration.experimenter.Activity.UI.Explore;
+
+import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Model.SearchTokens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * An inverted index over the name, owner name and description of a list of experiments, built once per list.
+ * Every normalized token points to the experiments holding it (a postings list), and the sorted token list
+ * plus a trigram index over the tokens find the tokens that start with or contain a typed word.
+ * A search intersects the postings of every typed word, ranks the hits, and when the text only grew since
+ * the last search it only looks at the previous hits.
+ */
+public class ExperimentSearchIndex {
+
+    // fields, in the order of their weight
+    static final int NAME = 0;
+    static final int OWNER = 1;
+    static final int DESCRIPTION = 2;
+    private static final int[] FIELD_WEIGHT = {3, 2, 1};
+
+    // how a token matches a typed word
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int INFIX = 1;
+
+    private final List<Experiment> experiments;
+    private final String[] terms;                   // sorted
+    private final int[][] postings;                 // per term, entries are experiment * 3 + field, ascending
+    private final Map<String, int[]> trigrams;      // trigram -> terms holding it, ascending
+
+    // the last search, to narrow the next one
+    private String lastText = null;
+    private BitSet lastHits = null;
+
+    /**
+     * Interface definition for a callback to be invoked when an index built in the background is ready
+     */
+    public interface OnIndexReadyListener {
+        /**
+         * Called when the index is built
+         * @param index
+         * the new index
+         */
+        void onIndexReady(ExperimentSearchIndex index);
+    }
+
+    /**
+     * Builds the index of a list of experiments
+     * @param experiments
+     * experiments to index, search results keep their order when ranked the same
+     */
+    public ExperimentSearchIndex(List<Experiment> experiments) {
+        this.experiments = new ArrayList<>(experiments);
+
+        TreeMap<String, List<Integer>> termPostings = new TreeMap<>();
+        for (int i = 0; i < this.experiments.size(); i++) {
+            Experiment experiment = this.experiments.get(i);
+            addField(termPostings, experiment.getExperimentName(), i, NAME);
+            addField(termPostings, experiment.getOwnerName(), i, OWNER);
+            addField(termPostings, experiment.getExperimentDescription(), i, DESCRIPTION);
+        }
+
+        terms = new String[termPostings.size()];
+        postings = new int[termPostings.size()][];
+        Map<String, List<Integer>> termsOfTrigram = new HashMap<>();
+        int t = 0;
+        for (Map.Entry<String, List<Integer>> entry : termPostings.entrySet()) {
+            terms[t] = entry.getKey();
+            List<Integer> entries = entry.getValue();
+            postings[t] = new int[entries.size()];
+            for (int j = 0; j < entries.size(); j++) {
+                postings[t][j] = entries.get(j);
+            }
+            String term = entry.getKey();
+            for (int k = 0; k + 3 <= term.length(); k++) {
+                List<Integer> list = termsOfTrigram.computeIfAbsent(term.substring(k, k + 3), key -> new ArrayList<>());
+                if (list.isEmpty() || list.get(list.size() - 1) != t) {
+                    list.add(t);
+                }
+            }
+            t++;
+        }
+        trigrams = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : termsOfTrigram.entrySet()) {
+            int[] ids = new int[entry.getValue().size()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = entry.getValue().get(j);
+            }
+            trigrams.put(entry.getKey(), ids);
+        }
+    }
+
+    /**
+     * Builds an index on an executor, so typing is never blocked by a rebuild
+     * @param experiments
+     * experiments to index
+     * @param executor
+     * where to build the index
+     * @param callback
+     * called on the executor's thread when the index is ready
+     */
+    public static void buildAsync(List<Experiment> experiments, Executor executor, OnIndexReadyListener callback) {
+        List<Experiment> copy = new ArrayList<>(experiments);
+        executor.execute(() -> callback.onIndexReady(new ExperimentSearchIndex(copy)));
+    }
+
+    /**
+     * Gets the indexed experiments
+     * @return experiments, in the order given
+     */
+    public List<Experiment> getExperiments() {
+        return Collections.unmodifiableList(experiments);
+    }
+
+    /**
+     * Gets the number of distinct tokens
+     * @return number of tokens
+     */
+    public int termCount() {
+        return terms.length;
+    }
+
+    /**
+     * Finds the experiments where every typed word is part of a word of the name, owner name or description.
+     * Hits are ranked by where and how well the words matched: name before owner before description,
+     * and whole words before word starts before word middles.
+     * @param text
+     * text typed by the user
+     * @return matching experiments, best first; every experiment if nothing was typed
+     */
+    public synchronized List<Experiment> search(CharSequence text) {
+        String normalized = SearchTokens.normalize(text);
+        List<String> words = SearchTokens.tokenize(normalized);
+        if (words.isEmpty()) {
+            lastText = null;
+            lastHits = null;
+            return getExperiments();
+        }
+
+        // more typed text can only remove hits, unless the last word was too short to match word middles
+        BitSet candidates = lastText != null && normalized.startsWith(lastText) ? lastHits : null;
+
+        int n = experiments.size();
+        int[] score = new int[n];
+        int[] wordsMatched = new int[n];
+        int[] best = new int[n];
+        int[] touched = new int[n];
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int touchedCount = 0;
+
+            int from = lowerBound(word);
+            for (int t = from; t < terms.length && terms[t].startsWith(word); t++) {
+                touchedCount = collect(t, terms[t].length() == word.length() ? EXACT : PREFIX, w, candidates, wordsMatched, best, touched, touchedCount);
+            }
+            for (int t : infixTerms(word)) {
+                touchedCount = collect(t, INFIX, w, candidates, wordsMatched, best, touched, touchedCount);
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int e = touched[i];
+                wordsMatched[e]++;
+                score[e] += best[e];
+                best[e] = 0;
+            }
+        }
+
+        List<Integer> hits = new ArrayList<>();
+        BitSet hitSet = new BitSet(n);
+        for (int e = 0; e < n; e++) {
+            if (wordsMatched[e] == words.size()) {
+                hits.add(e);
+                hitSet.set(e);
+            }
+        }
+        // stable, so equal scores keep the original order
+        hits.sort((a, b) -> score[b] - score[a]);
+
+        String lastWord = words.get(words.size() - 1);
+        lastText = lastWord.length() >= 3 ? normalized : null;
+        lastHits = hitSet;
+
+        List<Experiment> output = new ArrayList<>(hits.size());
+        for (int e : hits) {
+            output.add(experiments.get(e));
+        }
+        return output;
+    }
+
+    /**
+     * Records the best score of each experiment holding a term, for the word being matched
+     */
+    private int collect(int term, int kind, int word, BitSet candidates, int[] wordsMatched, int[] best, int[] touched, int touchedCount) {
+        for (int entry : postings[term]) {
+            int e = entry / 3;
+            // an experiment that missed an earlier word can not be a hit anymore
+            if (wordsMatched[e] != word || (candidates != null && !candidates.get(e))) {
+                continue;
+            }
+            int s = FIELD_WEIGHT[entry % 3] * kind;
+            if (best[e] == 0) {
+                touched[touchedCount++] = e;
+            }
+            best[e] = Math.max(best[e], s);
+        }
+        return touchedCount;
+    }
+
+    /**
+     * Finds the terms containing a word somewhere after their first letter, using the trigram postings
+     */
+    private int[] infixTerms(String word) {
+        if (word.length() < 3) {
+            // too short for trigrams, word starts are enough for one or two letters
+            return new int[0];
+        }
+        int[] smallest = null;
+        for (int k = 0; k + 3 <= word.length(); k++) {
+            int[] ids = trigrams.get(word.substring(k, k + 3));
+            if (ids == null) {
+                return new int[0];
+            }
+            if (smallest == null || ids.length < smallest.length) {
+                smallest = ids;
+            }
+        }
+        int[] out = new int[smallest.length];
+        int count = 0;
+        for (int t : smallest) {
+            int at = terms[t].indexOf(word);
+            if (at > 0) {
+                out[count++] = t;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Index of the first term that is not smaller than the word
+     */
+    private int lowerBound(String word) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(word) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static void addField(TreeMap<String, List<Integer>> termPostings, String text, int experiment, int field) {
+        for (String token : SearchTokens.tokenize(text)) {
+            List<Integer> entries = termPostings.computeIfAbsent(token, key -> new ArrayList<>());
+            entries.add(experiment * 3 + field);
+        }
+    }
+}
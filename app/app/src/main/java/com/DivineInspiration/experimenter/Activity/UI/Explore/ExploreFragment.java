@@ -1,6 +1,8 @@
 package com.DivineInspiration.experimenter.Activity.UI.Explore;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -16,11 +18,17 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentPager;
 import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Model.SearchTokens;
 import com.DivineInspiration.experimenter.R;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class deals with the UI for finding publicly available experiments
@@ -34,6 +42,17 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
 
     private CharSequence searchText;                        // Search text entered by the user
 
+    private ExperimentSearchIndex searchIndex;              // Index of dataList, null until the first one is built
+    private int indexGeneration = 0;                        // Bumped for every new dataList, so stale builds are dropped
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static final int KEYWORD_PAGE_SIZE = 50;        // Most experiments fetched by a keyword search
+    private static final long KEYWORD_DELAY_MILLIS = 300;   // Typing pause before searching the database
+    private final Runnable keywordSearch = this::searchKeywords;
+
+    private ExperimentPager pager;                          // Pages of the explore list, cached by ExperimentManager
+
     /**
      * Fragment initializer, similar to activity's onCreate
      * @param savedInstanceState
@@ -57,9 +76,6 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
      */
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        // Query the experiments from database, the Experiments will be returned via a callback to onExperimentsReady
-        ExperimentManager.getInstance().queryAll(this);
-
         View root = inflater.inflate(R.layout.fragment_explore, container, false);
 
         // Initializing explore list
@@ -68,6 +84,26 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
         experimentListView.setAdapter(exploreListAdapter);
         experimentListView.addItemDecoration(new DividerItemDecoration(getActivity(), DividerItemDecoration.VERTICAL));
 
+        // Load the experiments a page at a time, the pages will be returned via a callback to onExperimentsReady
+        pager = ExperimentManager.getInstance().getExplorePager();
+        pager.start((experiments, hasMore) -> {
+            if (experiments != null) {
+                onExperimentsReady(experiments);
+            }
+        });
+
+        // Scrolling close to the end of the list loads the next page
+        LinearLayoutManager layoutManager = (LinearLayoutManager) experimentListView.getLayoutManager();
+        experimentListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // search results are not the paged list
+                if (searchText == null || searchText.length() == 0) {
+                    pager.onItemVisible(layoutManager.findLastVisibleItemPosition());
+                }
+            }
+        });
+
         EditText search = root.findViewById(R.id.explore_search_bar);
 
         // Search -> filter results
@@ -78,6 +114,12 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
             public void onTextChanged(CharSequence charSequence, int i, int i1, int i2) {
                 searchText = charSequence;
                 filter();
+
+                // ask the database once the user stops typing, for matches that are not loaded yet
+                mainHandler.removeCallbacks(keywordSearch);
+                if (searchText.length() > 0) {
+                    mainHandler.postDelayed(keywordSearch, KEYWORD_DELAY_MILLIS);
+                }
             }
             @Override
             public void afterTextChanged(Editable editable) {}
@@ -92,26 +134,44 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
     private void filter() {
 
         // if string is empty, re-initialize with all data (i.e., all the experiments)
-        if (searchText.length() == 0) {
+        if (searchText == null || searchText.length() == 0) {
+            exploreListAdapter.setData(dataList);
+        } else if (searchIndex == null) {
+            // the index is still being built, it filters as soon as it is ready
             exploreListAdapter.setData(dataList);
         } else {
-            shownList = new ArrayList<>();
-            for (int i = 0; i < dataList.size(); i++) {
-                // checks if search text is in the experiment (case insensitive)
-                String name = dataList.get(i).getExperimentName().toLowerCase();
-                String ownerName = dataList.get(i).getOwnerName().toLowerCase();
-                String description = dataList.get(i).getExperimentDescription().toLowerCase();
-                // this is probably inefficient :(
-                if (name.contains(searchText.toString().toLowerCase()) || ownerName.contains(searchText.toString().toLowerCase()) || description.contains(searchText.toString().toLowerCase())) {
-                    shownList.add(dataList.get(i));
-                }
-            }
             // Store the new filtered result and refresh adapter
+            shownList = searchIndex.search(searchText);
             exploreListAdapter.setData(shownList);
-            exploreListAdapter.notifyDataSetChanged();
         }
     }
 
+    /**
+     * Queries the experiments holding the typed words, only the matching experiments are downloaded.
+     * The matches are added to the shown ones and ranked together.
+     */
+    private void searchKeywords() {
+        String text = searchText.toString();
+        ExperimentManager.getInstance().queryByKeywords(SearchTokens.queryKeywords(text), KEYWORD_PAGE_SIZE, null, (experiments, nextCursor) -> {
+            // drop results of a search the user already typed past
+            if (experiments == null || searchText == null || !text.equals(searchText.toString())) {
+                return;
+            }
+            Set<String> shownIds = new HashSet<>();
+            List<Experiment> merged = new ArrayList<>(shownList);
+            for (Experiment experiment : merged) {
+                shownIds.add(experiment.getExperimentID());
+            }
+            for (Experiment experiment : experiments) {
+                if (shownIds.add(experiment.getExperimentID())) {
+                    merged.add(experiment);
+                }
+            }
+            shownList = new ExperimentSearchIndex(merged).search(text);
+            exploreListAdapter.setData(shownList);
+        });
+    }
+
     /**
      * This as a interface implementation method; when the experiment data requested is ready,
      * ExperimentManager calls this method and passes the data as a parameter.
@@ -121,7 +181,37 @@ public class ExploreFragment extends Fragment implements ExperimentManager.OnExp
     @Override
     public void onExperimentsReady(List<Experiment> queryList) {
         dataList = queryList;
-        shownList = queryList;
-        exploreListAdapter.setData(shownList);
+        if (searchText == null || searchText.length() == 0) {
+            shownList = queryList;
+            exploreListAdapter.setData(shownList);
+        }
+
+        // index the experiments off the main thread, searches keep using the previous index until it is ready
+        int generation = ++indexGeneration;
+        ExperimentSearchIndex.buildAsync(queryList, indexExecutor, index -> mainHandler.post(() -> {
+            if (generation == indexGeneration) {
+                searchIndex = index;
+                filter();
+            }
+        }));
+    }
+
+    /**
+     * Stops taking pages when the view is destroyed, the loaded pages stay cached
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        pager.stop();
+    }
+
+    /**
+     * Stops the index builder when the fragment is destroyed
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacks(keywordSearch);
+        indexExecutor.shutdownNow();
     }
 }
\ No newline at end of file
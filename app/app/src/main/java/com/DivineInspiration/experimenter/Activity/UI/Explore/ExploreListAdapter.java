@@ -10,13 +10,17 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.navigation.Navigation;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.DivineInspiration.experimenter.Activity.UI.StableIds;
 import com.DivineInspiration.experimenter.Model.Experiment;
 import com.DivineInspiration.experimenter.R;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import static android.content.ContentValues.TAG;
 
@@ -28,11 +32,32 @@ import static android.content.ContentValues.TAG;
  */
 public class ExploreListAdapter extends RecyclerView.Adapter<ExploreListAdapter.ViewHolder> {
 
-    // experiment list
-    private List<Experiment> experiments = new ArrayList<>();
+    // experiments are compared by id, and shown the same if every shown field is equal
+    private static final DiffUtil.ItemCallback<Experiment> DIFF = new DiffUtil.ItemCallback<Experiment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Experiment oldItem, @NonNull Experiment newItem) {
+            return oldItem.getExperimentID().equals(newItem.getExperimentID());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Experiment oldItem, @NonNull Experiment newItem) {
+            return Objects.equals(oldItem.getExperimentName(), newItem.getExperimentName())
+                    && Objects.equals(oldItem.getOwnerName(), newItem.getOwnerName())
+                    && Objects.equals(oldItem.getTrialType(), newItem.getTrialType())
+                    && Objects.equals(oldItem.getExperimentDescription(), newItem.getExperimentDescription())
+                    && Objects.equals(oldItem.getRegion(), newItem.getRegion())
+                    && oldItem.isRequireGeo() == newItem.isRequireGeo();
+        }
+    };
+
+    // experiment list, diffed on a background thread
+    private final AsyncListDiffer<Experiment> experiments = new AsyncListDiffer<>(this, DIFF);
+    private final StableIds stableIds = new StableIds();
 
     // constructor
-    public ExploreListAdapter() {}
+    public ExploreListAdapter() {
+        setHasStableIds(true);
+    }
 
     /**
      * On create
@@ -59,15 +84,16 @@ public class ExploreListAdapter extends RecyclerView.Adapter<ExploreListAdapter.
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.getExpNameTextView().setText(experiments.get(position).getExperimentName());
-        holder.getExpOwnerNameTextView().setText(experiments.get(position).getOwnerName());
-        holder.getExpTrialTypeText().setText(experiments.get(position).getTrialType());
-        holder.getExpDescriptionText().setText(experiments.get(position).getExperimentDescription());
-
-        if (experiments.get(position).isRequireGeo()) {
-            holder.getExpLocationText().setText(experiments.get(position).getRegion() + " - Geolocation: On");
+        Experiment experiment = experiments.getCurrentList().get(position);
+        holder.getExpNameTextView().setText(experiment.getExperimentName());
+        holder.getExpOwnerNameTextView().setText(experiment.getOwnerName());
+        holder.getExpTrialTypeText().setText(experiment.getTrialType());
+        holder.getExpDescriptionText().setText(experiment.getExperimentDescription());
+
+        if (experiment.isRequireGeo()) {
+            holder.getExpLocationText().setText(experiment.getRegion() + " - Geolocation: On");
         } else {
-            holder.getExpLocationText().setText(experiments.get(position).getRegion() + " - Geolocation: Off ");
+            holder.getExpLocationText().setText(experiment.getRegion() + " - Geolocation: Off ");
         }
 
         holder.getCardView().setOnClickListener(new View.OnClickListener() {
@@ -75,7 +101,7 @@ public class ExploreListAdapter extends RecyclerView.Adapter<ExploreListAdapter.
             public void onClick(View v) {
 
                 Bundle args = new Bundle();
-                args.putSerializable("experiment", experiments.get(position));
+                args.putSerializable("experiment", experiment);
                 Navigation.findNavController(v).navigate(R.id.exploreToEx, args);
             }
         });
@@ -88,19 +114,29 @@ public class ExploreListAdapter extends RecyclerView.Adapter<ExploreListAdapter.
      */
     @Override
     public int getItemCount() {
-        return experiments.size();
+        return experiments.getCurrentList().size();
     }
 
     /**
-     * Sets data in adapter
+     * Gets the stable id of an item, the same for an experiment in every list
+     * @param position
+     * position in list
+     * @return
+     * item id
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(experiments.getCurrentList().get(position).getExperimentID());
+    }
+
+    /**
+     * Sets data in adapter, the list is diffed against the shown one on a background thread
+     * and only the inserted, removed and changed rows are updated
      * @param experimentData
      * the experiment list
      */
     public void setData(List<Experiment> experimentData) {
-
-        experiments.clear();
-        experiments.addAll(experimentData);
-        notifyDataSetChanged();
+        experiments.submitList(new ArrayList<>(experimentData));
     }
 
     /**
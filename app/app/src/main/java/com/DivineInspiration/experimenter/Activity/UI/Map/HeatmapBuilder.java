@@ -0,0 +1,343 @@
+package com.DivineInspiration.experimenter.Activity.UI.Map;
+
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds density heatmap tiles of trial locations for a map overlay.
+ * At each zoom the locations are binned once, in one pass, into a grid of {@link #TILE_BINS} bins per
+ * web mercator tile side; only the non empty bins are kept, grouped by tile. A tile's intensities come from a
+ * separable Gaussian kernel over its bins and the edge bins of its neighbours, scaled against the fullest bin
+ * of the zoom so that neighbouring tiles match. Tiles are cached by experiment, version, zoom and position.
+ * Binning is done on first use of a zoom, by the thread asking for the tile: call it off the main thread.
+ */
+public class HeatmapBuilder {
+
+    /**
+     * Bins per tile side, the resolution of a tile
+     */
+    public static final int TILE_BINS = 64;
+
+    /**
+     * Kernel radius, in bins
+     */
+    public static final int RADIUS = 4;
+
+    /**
+     * Highest zoom tiles are made for
+     */
+    public static final int MAX_ZOOM = 20;
+
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final float[] KERNEL = kernel();
+
+    private final String experimentId;
+    private final long version;
+    private final double[] xs;      // web mercator coordinates, in [0, 1)
+    private final double[] ys;
+    private final TileCache cache;
+    private final Bins[] binsByZoom = new Bins[MAX_ZOOM + 1];
+
+    /**
+     * The non empty bins of one zoom, grouped by tile
+     */
+    private static class Bins {
+        final Map<Long, TileBins> tiles = new HashMap<>();
+        int maxCount = 0;
+    }
+
+    /**
+     * The local bin index of each location in a tile, repeated for locations in the same bin
+     */
+    private static class TileBins {
+        int[] bins = new int[4];
+        int size = 0;
+
+        void add(int bin) {
+            if (size == bins.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(bins, 0, grown, 0, size);
+                bins = grown;
+            }
+            bins[size++] = bin;
+        }
+    }
+
+    /**
+     * An LRU cache of heatmap tiles, shared by the builders of successive versions
+     */
+    public static class TileCache {
+        private final int capacity;
+        private final LinkedHashMap<String, float[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+        private long hits = 0;
+        private long misses = 0;
+
+        /**
+         * Constructor
+         * @param capacity
+         * most tiles kept
+         */
+        public TileCache(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        synchronized float[] get(String key) {
+            float[] tile = tiles.get(key);
+            if (tile == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return tile;
+        }
+
+        synchronized void put(String key, float[] tile) {
+            tiles.put(key, tile);
+            Iterator<String> eldest = tiles.keySet().iterator();
+            while (tiles.size() > capacity) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        /**
+         * Gets the number of tiles served from memory
+         * @return number of hits
+         */
+        public synchronized long getHitCount() {
+            return hits;
+        }
+
+        /**
+         * Gets the number of tiles that had to be made
+         * @return number of misses
+         */
+        public synchronized long getMissCount() {
+            return misses;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param experimentId
+     * the experiment the locations belong to
+     * @param version
+     * version of the locations, tiles of another version are not reused
+     * @param latitudes
+     * latitude of each location
+     * @param longitudes
+     * longitude of each location
+     * @param size
+     * number of locations
+     * @param cache
+     * where tiles are kept
+     */
+    public HeatmapBuilder(String experimentId, long version, float[] latitudes, float[] longitudes, int size, TileCache cache) {
+        this.experimentId = experimentId;
+        this.version = version;
+        this.cache = cache;
+        this.xs = new double[size];
+        this.ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = Math.min(Math.nextDown(1.0), Math.max(0, (longitudes[i] + 180) / 360));
+            double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitudes[i]))));
+            ys[i] = Math.min(Math.nextDown(1.0), Math.max(0, 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)));
+        }
+    }
+
+    /**
+     * Makes a builder over the located trials of a list that are not ignored
+     * @param experimentId
+     * the experiment of the trials
+     * @param trials
+     * the trials
+     * @param cache
+     * where tiles are kept
+     * @return the builder, its version is a hash of the trial ids and locations
+     */
+    public static HeatmapBuilder of(String experimentId, List<Trial> trials, TileCache cache) {
+        float[] latitudes = new float[trials.size()];
+        float[] longitudes = new float[trials.size()];
+        int size = 0;
+        long version = 17;
+        for (Trial trial : trials) {
+            if (!trial.isIgnored() && trial.getLocation() != null) {
+                latitudes[size] = (float) trial.getLocation().latitude;
+                longitudes[size] = (float) trial.getLocation().longitude;
+                version = 31 * version + trial.getTrialID().hashCode();
+                version = 31 * version + Float.floatToIntBits(latitudes[size]);
+                version = 31 * version + Float.floatToIntBits(longitudes[size]);
+                size++;
+            }
+        }
+        return new HeatmapBuilder(experimentId, version, latitudes, longitudes, size, cache);
+    }
+
+    /**
+     * Gets the intensities of a tile
+     * @param zoom
+     * zoom of the tile, at most {@link #MAX_ZOOM}
+     * @param x
+     * column of the tile
+     * @param y
+     * row of the tile
+     * @return {@link #TILE_BINS} rows of {@link #TILE_BINS} intensities between 0 and 1, null for an empty tile
+     */
+    public float[] tile(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM || y < 0 || y >= 1 << zoom) {
+            return null;
+        }
+        String key = experimentId + "/" + version + "/" + zoom + "/" + x + "/" + y;
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            return cached.length == 0 ? null : cached;
+        }
+        float[] tile = density(bins(zoom), zoom, x, y);
+        // empty tiles are cached too, as an empty array
+        cache.put(key, tile == null ? new float[0] : tile);
+        return tile;
+    }
+
+    /**
+     * Bins the locations at a zoom, if not done yet
+     * @param zoom
+     * the zoom
+     */
+    public void prepare(int zoom) {
+        bins(zoom);
+    }
+
+    /**
+     * Colors an intensity, from transparent through green and yellow to red
+     * @param intensity
+     * intensity between 0 and 1
+     * @return the color as ARGB
+     */
+    public static int color(float intensity) {
+        if (intensity <= 0) {
+            return 0;
+        }
+        int alpha = (int) (Math.min(1, intensity * 3) * 200);
+        int red;
+        int green;
+        if (intensity < 0.5f) {
+            red = (int) (intensity * 2 * 255);
+            green = 255;
+        } else {
+            red = 255;
+            green = (int) ((1 - intensity) * 2 * 255);
+        }
+        return alpha << 24 | red << 16 | green << 8;
+    }
+
+    private synchronized Bins bins(int zoom) {
+        if (binsByZoom[zoom] != null) {
+            return binsByZoom[zoom];
+        }
+        Bins bins = new Bins();
+        long worldBins = (long) TILE_BINS << zoom;
+        for (int i = 0; i < xs.length; i++) {
+            long gx = (long) (xs[i] * worldBins);
+            long gy = (long) (ys[i] * worldBins);
+            long key = tileKey(gx / TILE_BINS, gy / TILE_BINS);
+            TileBins tile = bins.tiles.get(key);
+            if (tile == null) {
+                tile = new TileBins();
+                bins.tiles.put(key, tile);
+            }
+            tile.add((int) (gy % TILE_BINS) * TILE_BINS + (int) (gx % TILE_BINS));
+        }
+
+        // the fullest bin, counted one tile at a time in a reused grid
+        int[] counts = new int[TILE_BINS * TILE_BINS];
+        for (TileBins tile : bins.tiles.values()) {
+            for (int i = 0; i < tile.size; i++) {
+                bins.maxCount = Math.max(bins.maxCount, ++counts[tile.bins[i]]);
+            }
+            for (int i = 0; i < tile.size; i++) {
+                counts[tile.bins[i]] = 0;
+            }
+        }
+        binsByZoom[zoom] = bins;
+        return bins;
+    }
+
+    /**
+     * Kernel density of a tile: its bins and its neighbours' bins within the kernel radius are counted into a
+     * padded grid, then blurred by rows and by columns
+     */
+    private static float[] density(Bins bins, int zoom, int x, int y) {
+        int tiles = 1 << zoom;
+        int side = TILE_BINS + 2 * RADIUS;
+        float[] grid = new float[side * side];
+        boolean any = false;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int ny = y + dy;
+                if (ny < 0 || ny >= tiles) {
+                    continue;
+                }
+                // columns wrap around the world
+                TileBins tile = bins.tiles.get(tileKey(Math.floorMod(x + dx, tiles), ny));
+                if (tile == null) {
+                    continue;
+                }
+                for (int i = 0; i < tile.size; i++) {
+                    int gx = tile.bins[i] % TILE_BINS + dx * TILE_BINS + RADIUS;
+                    int gy = tile.bins[i] / TILE_BINS + dy * TILE_BINS + RADIUS;
+                    if (gx >= 0 && gx < side && gy >= 0 && gy < side) {
+                        grid[gy * side + gx]++;
+                        any = true;
+                    }
+                }
+            }
+        }
+        if (!any) {
+            return null;
+        }
+
+        float[] rows = new float[side * TILE_BINS];
+        for (int gy = 0; gy < side; gy++) {
+            for (int cx = 0; cx < TILE_BINS; cx++) {
+                float sum = 0;
+                for (int k = -RADIUS; k <= RADIUS; k++) {
+                    sum += KERNEL[k + RADIUS] * grid[gy * side + cx + RADIUS + k];
+                }
+                rows[gy * TILE_BINS + cx] = sum;
+            }
+        }
+        float[] intensities = new float[TILE_BINS * TILE_BINS];
+        double scale = Math.log1p(bins.maxCount);
+        for (int cy = 0; cy < TILE_BINS; cy++) {
+            for (int cx = 0; cx < TILE_BINS; cx++) {
+                float sum = 0;
+                for (int k = -RADIUS; k <= RADIUS; k++) {
+                    sum += KERNEL[k + RADIUS] * rows[(cy + RADIUS + k) * TILE_BINS + cx];
+                }
+                intensities[cy * TILE_BINS + cx] = (float) Math.min(1, Math.log1p(sum) / scale);
+            }
+        }
+        return intensities;
+    }
+
+    private static long tileKey(long x, long y) {
+        return x << 32 | y;
+    }
+
+    /**
+     * Gaussian weights over the radius, 1 in the middle so a lone location peaks at 1
+     */
+    private static float[] kernel() {
+        float[] kernel = new float[2 * RADIUS + 1];
+        double sigma = RADIUS / 2.0;
+        for (int k = -RADIUS; k <= RADIUS; k++) {
+            kernel[k + RADIUS] = (float) Math.exp(-k * k / (2 * sigma * sigma));
+        }
+        return kernel;
+    }
+}
@@ -0,0 +1,417 @@
+package com.DivineInspiration.experimenter.Activity.UI.Map;
+
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A spatial index over trial locations that groups them into map clusters.
+ * Locations are projected to web mercator and sorted by their Z-order (quadtree) key once, so every quadtree
+ * cell at every zoom is a contiguous range of the sorted keys. The clusters of a viewport are found with two
+ * binary searches per visible grid cell, and the prefix sums of the projected coordinates give each
+ * cell's centroid in constant time: a camera move costs the number of visible cells, not the number of trials.
+ */
+public class TrialClusterIndex {
+
+    /**
+     * Finest quadtree level, cells of about 10 meters
+     */
+    public static final int MAX_LEVEL = 22;
+
+    /**
+     * Size of a cluster cell on screen, as a power of two of the 256 pixel map tile, 64 pixels
+     */
+    public static final int CELL_SHIFT = 2;
+
+    /**
+     * Most grid cells looked at for one viewport, a larger viewport is clustered one level coarser
+     */
+    public static final int MAX_CELLS = 4096;
+
+    /**
+     * Most locations an index can hold
+     */
+    public static final int MAX_POINTS = 1 << 20;
+
+    private static final int ITEM_BITS = 20;
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final long[] keys;          // Z-order keys at MAX_LEVEL, sorted
+    private final int[] items;          // item of each key
+    private final float[] latitudes;    // location of each key
+    private final float[] longitudes;
+    private final double[] sumX;        // prefix sums of the projected coordinates, size + 1
+    private final double[] sumY;
+
+    /**
+     * A group of locations in one grid cell, or a single location
+     */
+    public static class Cluster {
+        private final long key;
+        private final int count;
+        private final double latitude;
+        private final double longitude;
+        private final int item;
+
+        Cluster(long key, int count, double latitude, double longitude, int item) {
+            this.key = key;
+            this.count = count;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.item = item;
+        }
+
+        /**
+         * Gets the key of the grid cell, unique across zoom levels
+         * @return cell key
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the number of locations in the cluster
+         * @return number of locations
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the latitude, the centroid for a group
+         * @return latitude
+         */
+        public double getLatitude() {
+            return latitude;
+        }
+
+        /**
+         * Gets the longitude, the centroid for a group
+         * @return longitude
+         */
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * If the cluster is a single location
+         * @return true if it holds one location
+         */
+        public boolean isLeaf() {
+            return count == 1;
+        }
+
+        /**
+         * Gets the item of a single location
+         * @return the item given when the index was built, -1 for a group
+         */
+        public int getItem() {
+            return item;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Cluster)) {
+                return false;
+            }
+            Cluster other = (Cluster) o;
+            return key == other.key && count == other.count && item == other.item
+                    && latitude == other.latitude && longitude == other.longitude;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, count, item, latitude, longitude);
+        }
+    }
+
+    /**
+     * The markers to change when going from one set of clusters to the next
+     */
+    public static class Diff {
+        private final List<Cluster> added;
+        private final List<Long> removed;
+
+        Diff(List<Cluster> added, List<Long> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        /**
+         * Gets the clusters that need a new marker
+         * @return clusters not shown yet
+         */
+        public List<Cluster> getAdded() {
+            return added;
+        }
+
+        /**
+         * Gets the keys of the markers to take down
+         * @return keys of the clusters no longer shown
+         */
+        public List<Long> getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param items
+     * item of each location, given back by {@link Cluster#getItem()}
+     * @param latitudes
+     * latitude of each location
+     * @param longitudes
+     * longitude of each location
+     * @param size
+     * number of locations
+     */
+    public TrialClusterIndex(int[] items, float[] latitudes, float[] longitudes, int size) {
+        if (size > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many locations: " + size);
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            long key = interleave(cell(projectX(longitudes[i]), MAX_LEVEL), cell(projectY(latitudes[i]), MAX_LEVEL));
+            // the sign bit flipped, so the signed sort orders the 64 bits as unsigned
+            packed[i] = (key << ITEM_BITS | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(packed);
+
+        this.keys = new long[size];
+        this.items = new int[size];
+        this.latitudes = new float[size];
+        this.longitudes = new float[size];
+        this.sumX = new double[size + 1];
+        this.sumY = new double[size + 1];
+        for (int i = 0; i < size; i++) {
+            long entry = packed[i] ^ Long.MIN_VALUE;
+            int from = (int) (entry & (MAX_POINTS - 1));
+            keys[i] = entry >>> ITEM_BITS;
+            this.items[i] = items[from];
+            this.latitudes[i] = latitudes[from];
+            this.longitudes[i] = longitudes[from];
+            sumX[i + 1] = sumX[i] + projectX(longitudes[from]);
+            sumY[i + 1] = sumY[i] + projectY(latitudes[from]);
+        }
+    }
+
+    /**
+     * Indexes the located trials of a list that are not ignored
+     * @param trials
+     * the trials
+     * @return the index, the item of a location is the position of its trial in the list
+     */
+    public static TrialClusterIndex of(List<Trial> trials) {
+        int[] items = new int[trials.size()];
+        float[] latitudes = new float[trials.size()];
+        float[] longitudes = new float[trials.size()];
+        int size = 0;
+        for (int i = 0; i < trials.size(); i++) {
+            Trial trial = trials.get(i);
+            if (!trial.isIgnored() && trial.getLocation() != null) {
+                items[size] = i;
+                latitudes[size] = (float) trial.getLocation().latitude;
+                longitudes[size] = (float) trial.getLocation().longitude;
+                size++;
+            }
+        }
+        return new TrialClusterIndex(items, latitudes, longitudes, size);
+    }
+
+    /**
+     * Indexes the located rows of a column store that are not ignored
+     * @param columns
+     * the trial columns
+     * @return the index, the item of a location is its row
+     */
+    public static TrialClusterIndex of(TrialColumns columns) {
+        int[] items = new int[columns.size()];
+        float[] latitudes = new float[columns.size()];
+        float[] longitudes = new float[columns.size()];
+        int size = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            if (!columns.isIgnored(row) && columns.hasLocation(row)) {
+                items[size] = row;
+                latitudes[size] = columns.getLatitude(row);
+                longitudes[size] = columns.getLongitude(row);
+                size++;
+            }
+        }
+        return new TrialClusterIndex(items, latitudes, longitudes, size);
+    }
+
+    /**
+     * Gets the number of locations
+     * @return number of locations
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the quadtree level the clusters of a zoom are made at
+     * @param zoom
+     * camera zoom
+     * @return level between 0 and {@link #MAX_LEVEL}
+     */
+    public static int levelOf(float zoom) {
+        return Math.max(0, Math.min(MAX_LEVEL, (int) Math.floor(zoom) + CELL_SHIFT));
+    }
+
+    /**
+     * Clusters the locations inside a viewport. A viewport crossing the antimeridian has west greater than east
+     * @param south
+     * southern latitude of the viewport
+     * @param west
+     * western longitude of the viewport
+     * @param north
+     * northern latitude of the viewport
+     * @param east
+     * eastern longitude of the viewport
+     * @param zoom
+     * camera zoom
+     * @return one cluster per non empty grid cell in view
+     */
+    public List<Cluster> clusters(double south, double west, double north, double east, float zoom) {
+        int level = levelOf(zoom);
+        int[] xRanges;
+        int y0;
+        int y1;
+        while (true) {
+            int x0 = cell(projectX(west), level);
+            int x1 = cell(projectX(east), level);
+            xRanges = west <= east ? new int[]{x0, x1} : new int[]{x0, (1 << level) - 1, 0, x1};
+            y0 = cell(projectY(north), level);
+            y1 = cell(projectY(south), level);
+            long cells = (long) (y1 - y0 + 1) * width(xRanges);
+            if (cells <= MAX_CELLS || level == 0) {
+                break;
+            }
+            level--;
+        }
+
+        List<Cluster> clusters = new ArrayList<>();
+        int shift = 2 * (MAX_LEVEL - level);
+        for (int y = y0; y <= y1; y++) {
+            for (int r = 0; r < xRanges.length; r += 2) {
+                for (int x = xRanges[r]; x <= xRanges[r + 1]; x++) {
+                    long prefix = interleave(x, y);
+                    int from = lowerBound(prefix << shift);
+                    int to = lowerBound((prefix + 1) << shift);
+                    if (from < to) {
+                        clusters.add(cluster((long) level << 48 | prefix, from, to));
+                    }
+                }
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Compares the clusters shown to the clusters of the new viewport
+     * @param shown
+     * the clusters on the map, by key
+     * @param next
+     * the clusters to show
+     * @return the clusters to add and the keys to take down, clusters that did not change are in neither
+     */
+    public static Diff diff(Map<Long, Cluster> shown, List<Cluster> next) {
+        Map<Long, Cluster> nextByKey = new HashMap<>();
+        List<Cluster> added = new ArrayList<>();
+        for (Cluster cluster : next) {
+            nextByKey.put(cluster.getKey(), cluster);
+            if (!cluster.equals(shown.get(cluster.getKey()))) {
+                added.add(cluster);
+            }
+        }
+        List<Long> removed = new ArrayList<>();
+        for (Map.Entry<Long, Cluster> entry : shown.entrySet()) {
+            if (!entry.getValue().equals(nextByKey.get(entry.getKey()))) {
+                removed.add(entry.getKey());
+            }
+        }
+        return new Diff(added, removed);
+    }
+
+    private Cluster cluster(long key, int from, int to) {
+        int count = to - from;
+        if (count == 1) {
+            return new Cluster(key, 1, latitudes[from], longitudes[from], items[from]);
+        }
+        double x = (sumX[to] - sumX[from]) / count;
+        double y = (sumY[to] - sumY[from]) / count;
+        return new Cluster(key, count, unprojectY(y), x * 360 - 180, -1);
+    }
+
+    /**
+     * First position whose key is at least the given key
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long width(int[] xRanges) {
+        long width = 0;
+        for (int r = 0; r < xRanges.length; r += 2) {
+            width += xRanges[r + 1] - xRanges[r] + 1;
+        }
+        return width;
+    }
+
+    private static double projectX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    private static double projectY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static double unprojectY(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    /**
+     * Grid cell of a projected coordinate at a level, clamped to the world
+     */
+    private static int cell(double projected, int level) {
+        int cells = 1 << level;
+        return (int) Math.max(0, Math.min(cells - 1, Math.floor(projected * cells)));
+    }
+
+    /**
+     * Z-order key of a cell, the bits of x and y interleaved
+     */
+    private static long interleave(int x, int y) {
+        return spread(x) | spread(y) << 1;
+    }
+
+    private static long spread(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+        v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+        v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        v = (v | v << 1) & 0x5555555555555555L;
+        return v;
+    }
+}
@@ -20,7 +20,9 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
-import com.DivineInspiration.experimenter.Activity.Observer;
+import com.DivineInspiration.experimenter.Activity.TrialDeltaObserver;
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
 import com.DivineInspiration.experimenter.R;
 import com.google.android.gms.maps.CameraUpdateFactory;
@@ -30,23 +32,59 @@ import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.android.gms.maps.model.TileProvider;
 import com.google.gson.Gson;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import pub.devrel.easypermissions.AfterPermissionGranted;
 import pub.devrel.easypermissions.EasyPermissions;
 
 import static android.content.Context.LOCATION_SERVICE;
 
-public class TrialMapTabFramgent extends Fragment implements Observer, OnMapReadyCallback, EasyPermissions.PermissionCallbacks {
+public class TrialMapTabFramgent extends Fragment implements TrialDeltaObserver, OnMapReadyCallback, EasyPermissions.PermissionCallbacks {
 
+    /**
+     * Number of trials in the loaded area from which a density heatmap is drawn under the markers
+     */
+    public static final int HEATMAP_MIN_TRIALS = 1000;
+
+    // east edge of an area spanning every longitude, LatLng wraps 180 to -180
+    private static final double FULL_WIDTH_EAST = 179.999999;
+
+    // heatmap tiles survive the tab being made again, they are keyed by experiment and version
+    private static final HeatmapBuilder.TileCache heatmapTiles = new HeatmapBuilder.TileCache(256);
+
+    private String experimentId;
     private List<Trial> trials = new ArrayList<>();
+    private TrialClusterIndex clusterIndex;
     private GoogleMap map;
 
+    // the area the trials were loaded for, a bit larger than the viewport
+    private LatLngBounds loadedBounds;
+    private int loadGeneration = 0;
+
+    // read by the map's tile threads
+    private volatile HeatmapBuilder heatmap;
+    private TileOverlay heatmapOverlay;
+
+    // clusters on the map and their markers, by cluster key
+    private final Map<Long, TrialClusterIndex.Cluster> shownClusters = new HashMap<>();
+    private final Map<Long, Marker> markers = new HashMap<>();
+
     /**
      * When creating the view
      * @param inflater
@@ -75,31 +113,202 @@ public class TrialMapTabFramgent extends Fragment implements Observer, OnMapRead
         assert mapFragment != null;
         mapFragment.getMapAsync(this);
         assert getArguments() != null;
+        experimentId = getArguments().getString("experimentID");
     }
 
     /**
-     * When the trial map updated
+     * When the trials are delivered as a whole, the trials in view are loaded if the camera left the loaded area
      * @param data
      * updated data
      */
     @Override
     public void update(Object data) {
-        trials.clear();
-        trials.addAll((List<Trial>) data);
         makeMarkers();
     }
 
     /**
-     * Makes map markers
+     * Applies the trials that changed to the loaded area, instead of loading it again.
+     * Trials outside of the loaded area are not kept, they are read when the camera gets there
+     * @param delta
+     * what changed
      */
-    private void makeMarkers() {
-        if (map != null) {
-            for (Trial trial : trials) {
-                if(!trial.isIgnored() && trial.getLocation() != null){
-                    map.addMarker(new MarkerOptions().position(trial.getLocation()).snippet(com.DivineInspiration.experimenter.Activity.UI.Map.MapHelper.getShortTrialDescription(trial)));
+    @Override
+    public void applyDelta(ExperimentTrialFeed.Delta delta) {
+        if (delta.isInitial() || loadedBounds == null) {
+            makeMarkers();
+            return;
+        }
+        // the old copies of the changed trials go, the new ones come back if they are in the loaded area
+        Set<String> changedIds = new HashSet<>();
+        List<Trial> incoming = new ArrayList<>();
+        for (Trial trial : delta.getRemoved()) {
+            changedIds.add(trial.getTrialID());
+        }
+        for (List<Trial> changed : Arrays.asList(delta.getModified(), delta.getAdded(), delta.getIgnoredChanged())) {
+            for (Trial trial : changed) {
+                changedIds.add(trial.getTrialID());
+                if (trial.getLocation() != null && loadedBounds.contains(trial.getLocation())) {
+                    incoming.add(trial);
                 }
             }
         }
+
+        List<Trial> updated = new ArrayList<>(trials.size() + incoming.size());
+        for (Trial trial : trials) {
+            if (!changedIds.contains(trial.getTrialID())) {
+                updated.add(trial);
+            }
+        }
+        if (updated.size() == trials.size() && incoming.isEmpty()) {
+            return;
+        }
+        updated.addAll(incoming);
+        showTrials(updated);
+    }
+
+    /**
+     * Makes map markers for the trials in view, loading them first if the camera left the loaded area
+     */
+    private void makeMarkers() {
+        if (map == null) {
+            return;
+        }
+        LatLngBounds visible = map.getProjection().getVisibleRegion().latLngBounds;
+        if (loadedBounds == null || !loadedBounds.contains(visible.southwest) || !loadedBounds.contains(visible.northeast)) {
+            loadTrials(visible);
+        }
+        showClusters(visible);
+    }
+
+    /**
+     * Loads the trials of the viewport and half a screen around it, so small camera moves need no reads
+     * @param visible
+     * the viewport
+     */
+    private void loadTrials(LatLngBounds visible) {
+        double latSpan = visible.northeast.latitude - visible.southwest.latitude;
+        double lonSpan = visible.northeast.longitude - visible.southwest.longitude;
+        if (lonSpan < 0) {
+            lonSpan += 360;
+        }
+        double south = Math.max(-90, visible.southwest.latitude - latSpan / 2);
+        double north = Math.min(90, visible.northeast.latitude + latSpan / 2);
+        double west = -180;
+        double east = FULL_WIDTH_EAST;
+        if (lonSpan * 2 < 360) {
+            west = wrapLongitude(visible.southwest.longitude - lonSpan / 2);
+            east = wrapLongitude(visible.northeast.longitude + lonSpan / 2);
+        }
+        LatLngBounds area = new LatLngBounds(new LatLng(south, west), new LatLng(north, east));
+
+        int generation = ++loadGeneration;
+        TrialManager.getInstance().queryTrialsInBounds(experimentId, area, found -> {
+            if (found == null || generation != loadGeneration || map == null) {
+                return;
+            }
+            loadedBounds = area;
+            showTrials(found);
+        });
+    }
+
+    /**
+     * Puts the trials of the loaded area on the map
+     * @param loaded
+     * the trials of the loaded area
+     */
+    private void showTrials(List<Trial> loaded) {
+        trials = loaded;
+        clusterIndex = TrialClusterIndex.of(trials);
+        // the items of the new index are positions in the new list
+        clearMarkers();
+        showClusters(map.getProjection().getVisibleRegion().latLngBounds);
+        showHeatmap();
+    }
+
+    /**
+     * Draws a density heatmap of the loaded trials when there are too many to read as markers.
+     * The map asks for tiles on its own threads, so the binning stays off the main thread
+     */
+    private void showHeatmap() {
+        if (trials.size() < HEATMAP_MIN_TRIALS) {
+            heatmap = null;
+            if (heatmapOverlay != null) {
+                heatmapOverlay.remove();
+                heatmapOverlay = null;
+            }
+            return;
+        }
+        heatmap = HeatmapBuilder.of(experimentId, trials, heatmapTiles);
+        if (heatmapOverlay == null) {
+            heatmapOverlay = map.addTileOverlay(new TileOverlayOptions().tileProvider(new HeatmapTileProvider()).fadeIn(false));
+        } else {
+            heatmapOverlay.clearTileCache();
+        }
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return (longitude + 540) % 360 - 180;
+    }
+
+    /**
+     * Takes down every trial marker
+     */
+    private void clearMarkers() {
+        for (Marker marker : markers.values()) {
+            marker.remove();
+        }
+        markers.clear();
+        shownClusters.clear();
+    }
+
+    /**
+     * Shows the clusters in view.
+     * Only the markers of clusters that changed since the last camera move are taken down or added
+     * @param bounds
+     * the viewport
+     */
+    private void showClusters(LatLngBounds bounds) {
+        if (clusterIndex == null) {
+            return;
+        }
+        List<TrialClusterIndex.Cluster> clusters = clusterIndex.clusters(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, map.getCameraPosition().zoom);
+        TrialClusterIndex.Diff diff = TrialClusterIndex.diff(shownClusters, clusters);
+
+        for (Long key : diff.getRemoved()) {
+            shownClusters.remove(key);
+            Marker marker = markers.remove(key);
+            if (marker != null) {
+                marker.remove();
+            }
+        }
+        for (TrialClusterIndex.Cluster cluster : diff.getAdded()) {
+            LatLng position = new LatLng(cluster.getLatitude(), cluster.getLongitude());
+            // the trial description is only made for the trials shown on their own
+            String snippet = cluster.isLeaf()
+                    ? MapHelper.getShortTrialDescription(trials.get(cluster.getItem()))
+                    : cluster.getCount() + " trials";
+            Marker marker = map.addMarker(new MarkerOptions().position(position).snippet(snippet));
+            if (marker != null) {
+                marker.setTag(cluster);
+                markers.put(cluster.getKey(), marker);
+            }
+            shownClusters.put(cluster.getKey(), cluster);
+        }
+    }
+
+    /**
+     * Zooms into a group of trials when its marker is clicked
+     * @param marker
+     * the marker clicked
+     * @return true if the click was a group, false to show the info window
+     */
+    private boolean onMarkerClick(Marker marker) {
+        if (marker.getTag() instanceof TrialClusterIndex.Cluster && !((TrialClusterIndex.Cluster) marker.getTag()).isLeaf()) {
+            map.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(), map.getCameraPosition().zoom + 2));
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -111,6 +320,8 @@ public class TrialMapTabFramgent extends Fragment implements Observer, OnMapRead
     public void onMapReady(GoogleMap googleMap) {
         map = googleMap;
         map.setInfoWindowAdapter(new TrialInfoAdapter());
+        map.setOnCameraIdleListener(this::makeMarkers);
+        map.setOnMarkerClickListener(this::onMarkerClick);
         checkMapLocationPermission();
         makeMarkers();
     }
@@ -204,6 +415,40 @@ public class TrialMapTabFramgent extends Fragment implements Observer, OnMapRead
         });
     }
 
+    /**
+     * Serves heatmap tiles as images
+     */
+    class HeatmapTileProvider implements TileProvider {
+
+        /**
+         * Gets a tile, called by the map off the main thread
+         * @param x
+         * column of the tile
+         * @param y
+         * row of the tile
+         * @param zoom
+         * zoom of the tile
+         * @return the tile image, NO_TILE where there are no trials
+         */
+        @Override
+        public Tile getTile(int x, int y, int zoom) {
+            HeatmapBuilder current = heatmap;
+            float[] intensities = current == null ? null : current.tile(zoom, x, y);
+            if (intensities == null) {
+                return TileProvider.NO_TILE;
+            }
+            int[] colors = new int[intensities.length];
+            for (int i = 0; i < intensities.length; i++) {
+                colors[i] = HeatmapBuilder.color(intensities[i]);
+            }
+            Bitmap bitmap = Bitmap.createBitmap(colors, HeatmapBuilder.TILE_BINS, HeatmapBuilder.TILE_BINS, Bitmap.Config.ARGB_8888);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+            bitmap.recycle();
+            return new Tile(HeatmapBuilder.TILE_BINS, HeatmapBuilder.TILE_BINS, png.toByteArray());
+        }
+    }
+
     /**
      * Trial info adapter
      */
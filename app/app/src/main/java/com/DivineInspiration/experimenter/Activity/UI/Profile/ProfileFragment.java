@@ -219,7 +219,8 @@ public class ProfileFragment extends Fragment {
      * @param user the user to display the toolbar for
      */
     private void displayUserToolbar(User user) {
-        if (user == null) {  // Safety check
+        // Safety check, incomplete profiles come back as null and a lookup can return after the view is gone
+        if (user == null || getView() == null) {
             return;
         }
 
@@ -25,6 +25,7 @@ import androidx.fragment.app.Fragment;
 
 import com.DivineInspiration.experimenter.Activity.UI.TrialsUI.CreateTrialDialogFragment;
 import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Controller.UserManager;
 import com.DivineInspiration.experimenter.Model.Experiment;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
@@ -191,6 +192,10 @@ public class ScanFragment extends Fragment {
                                 //expId, type, arg1, arg2
                                 Log.d("Woah barcode", scanned[0]);
                                 manager.queryExperimentFromId(scanned[0], experiment -> {
+                                    if (experiment == null) {
+                                        Toast.makeText(getContext(), "Experiment not found", Toast.LENGTH_LONG).show();
+                                        return;
+                                    }
 
                                     args.putSerializable("experiment", experiment);
                                     args.putString("experimenterID", userId);
@@ -213,6 +218,10 @@ public class ScanFragment extends Fragment {
                                 });
                             } else {
                                 manager.queryExperimentFromId(scanned[0], experiment -> {
+                                    if (experiment == null) {
+                                        Toast.makeText(getContext(), "Experiment not found", Toast.LENGTH_LONG).show();
+                                        return;
+                                    }
                                     AlertDialog dialog = new AlertDialog.Builder(getContext(), R.style.dialogColor)
                                             .setTitle("Sub to: " + experiment.getExperimentName() + "?")
                                             .setPositiveButton("Subscribe", ((dialog1, which) -> {
@@ -274,12 +283,13 @@ public class ScanFragment extends Fragment {
     }
 
     /**
-     * When the fragment is paused
+     * When the fragment is paused, also writes the scanned trials still waiting in the write buffer
      */
     @Override
     public void onPause() {
         // remove QR scanner resources (I think it closes the camera?)
         if (openCamera) mCodeScanner.releaseResources();
+        TrialManager.getInstance().getWriteBuffer().flush();
         super.onPause();
     }
 }
\ No newline at end of file
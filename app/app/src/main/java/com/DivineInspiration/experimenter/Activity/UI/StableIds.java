@@ -0,0 +1,29 @@
+package com.DivineInspiration.experimenter.Activity.UI;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out RecyclerView item ids for database ids. An experiment, trial or comment keeps
+ * its item id for as long as the adapter lives, so rows are reused across list updates.
+ * Ids are counted up instead of hashed, so two database ids never share an item id.
+ */
+public class StableIds {
+
+    private final Map<String, Long> ids = new HashMap<>();
+
+    /**
+     * Gets the item id of a database id, giving it the next free one the first time
+     * @param key
+     * the database id
+     * @return the item id
+     */
+    public long idOf(String key) {
+        Long id = ids.get(key);
+        if (id == null) {
+            id = (long) ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,148 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+import com.github.mikephil.charting.data.CandleEntry;
+import com.github.mikephil.charting.data.Entry;
+
+import java.util.List;
+
+/**
+ * The data behind one chart of {@link GraphMaker}, computed apart from the chart itself.
+ * Binning, sorting and the running statistics of the days are the slow part of a chart and need no view,
+ * so they can be done off the main thread; {@link GraphMaker#makeChart} then only turns the series into a view.
+ * One of the histogram, the summary or the line entries is set, depending on the chart.
+ */
+public final class ChartSeries {
+
+    private final String trialType;
+    private final Histogram histogram;
+    private final StatsSummary summary;
+    private final List<Entry> lineEntries;
+    private final List<CandleEntry> candleEntries;
+    private final List<String> dates;
+    private final String label;
+
+    private ChartSeries(String trialType, Histogram histogram, StatsSummary summary, List<Entry> lineEntries,
+                        List<CandleEntry> candleEntries, List<String> dates, String label) {
+        this.trialType = trialType;
+        this.histogram = histogram;
+        this.summary = summary;
+        this.lineEntries = lineEntries;
+        this.candleEntries = candleEntries;
+        this.dates = dates;
+        this.label = label;
+    }
+
+    /**
+     * A series with too few trials to chart, shown as a warning
+     * @return empty series
+     */
+    static ChartSeries empty() {
+        return new ChartSeries(null, null, null, null, null, null, null);
+    }
+
+    /**
+     * A histogram of measurement or non-negative trials
+     * @param trialType
+     * type of the trials
+     * @param histogram
+     * the bins
+     * @return series
+     */
+    static ChartSeries ofHistogram(String trialType, Histogram histogram) {
+        return new ChartSeries(trialType, histogram, null, null, null, null, null);
+    }
+
+    /**
+     * The bars of count or binomial trials, drawn from their summary
+     * @param trialType
+     * type of the trials
+     * @param summary
+     * summary of the trials
+     * @return series
+     */
+    static ChartSeries ofBars(String trialType, StatsSummary summary) {
+        return new ChartSeries(trialType, null, summary, null, null, null, null);
+    }
+
+    /**
+     * A line over the days of an experiment, with a candle of the quartiles each day if candleEntries is not null
+     * @param trialType
+     * type of the trials
+     * @param lineEntries
+     * one entry per day
+     * @param candleEntries
+     * one candle per day, or null for a line only
+     * @param dates
+     * label of each day
+     * @param label
+     * label of the line
+     * @return series
+     */
+    static ChartSeries ofLine(String trialType, List<Entry> lineEntries, List<CandleEntry> candleEntries, List<String> dates, String label) {
+        return new ChartSeries(trialType, null, null, lineEntries, candleEntries, dates, label);
+    }
+
+    /**
+     * If there is nothing to chart
+     * @return true if the series is empty
+     */
+    public boolean isEmpty() {
+        return trialType == null;
+    }
+
+    /**
+     * Gets the type of the trials charted
+     * @return trial type, null if empty
+     */
+    public String getTrialType() {
+        return trialType;
+    }
+
+    /**
+     * Gets the bins of a histogram
+     * @return histogram, null if the series is not one
+     */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Gets the summary the bars are drawn from
+     * @return summary, null if the series is not bars
+     */
+    public StatsSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Gets the entries of the line, one per day
+     * @return line entries, null if the series is not a line
+     */
+    public List<Entry> getLineEntries() {
+        return lineEntries;
+    }
+
+    /**
+     * Gets the candles of the quartiles, one per day
+     * @return candle entries, null if the line has none
+     */
+    public List<CandleEntry> getCandleEntries() {
+        return candleEntries;
+    }
+
+    /**
+     * Gets the label of each day of the line
+     * @return dates, null if the series is not a line
+     */
+    public List<String> getDates() {
+        return dates;
+    }
+
+    /**
+     * Gets the label of the line
+     * @return label, null if the series is not a line
+     */
+    public String getLabel() {
+        return label;
+    }
+}
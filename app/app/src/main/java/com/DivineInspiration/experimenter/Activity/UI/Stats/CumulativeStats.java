@@ -0,0 +1,225 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import java.util.List;
+
+/**
+ * Keeps the statistics of a growing set of values, used to draw the "so far" series of the line charts.
+ * The running sum and moments are updated per value, while the values themselves go into an order statistics
+ * tree (a treap where each node knows the size of its subtree), so the quartiles after each day's batch
+ * cost O(log N) instead of a re-sort of everything seen so far.
+ */
+public class CumulativeStats {
+
+    private final boolean keepOrder;
+    private Node root;
+    private int seed = 0x2545F491;
+
+    // running moments
+    private int count = 0;
+    private double sum = 0;
+    private double mean = 0;
+    private double m2 = 0;
+
+    /**
+     * Constructor, keeps the values ordered so quartiles are available
+     */
+    public CumulativeStats() {
+        this(true);
+    }
+
+    /**
+     * Constructor
+     * @param keepOrder
+     * false if only the count, sum and mean are needed, which skips the tree entirely
+     */
+    public CumulativeStats(boolean keepOrder) {
+        this.keepOrder = keepOrder;
+    }
+
+    /**
+     * Adds a value
+     * @param value
+     * value to add
+     */
+    public void add(double value) {
+        if (keepOrder) {
+            root = insert(root, value);
+        }
+        count++;
+        sum += value;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Adds the values of a list of trials
+     * @param trials
+     * list of trials
+     */
+    public void addTrials(List<Trial> trials) {
+        for (Trial t : trials) {
+            add(StatsEngine.valueOf(t));
+        }
+    }
+
+    /**
+     * Gets the number of values added so far
+     * @return
+     * number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the sum of the values added so far
+     * @return
+     * sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the mean of the values added so far
+     * @return
+     * mean, NaN if nothing was added
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Gets the k-th smallest value added so far
+     * @param k
+     * rank, starting at 0
+     * @return the value with the given rank
+     * @throws IndexOutOfBoundsException if k is not in [0, count)
+     * @throws IllegalStateException if the values are not kept in order
+     */
+    public double get(int k) {
+        if (!keepOrder) {
+            throw new IllegalStateException("CumulativeStats was made without keeping order");
+        }
+        if (k < 0 || k >= count) {
+            throw new IndexOutOfBoundsException("rank " + k + " of " + count);
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k < leftSize + node.count) {
+                return node.value;
+            } else {
+                k -= leftSize + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Summarizes the values added so far, with the same quartile definition as {@link StatsEngine}.
+     * Costs a handful of O(log N) rank lookups.
+     * @return
+     * an immutable summary
+     */
+    public StatsSummary summarize() {
+        if (count == 0) {
+            return new StatsSummary(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        int half = count / 2;
+        int upperStart = half + count % 2;
+        double q1 = half == 0 ? get(0) : medianOfRange(0, half);
+        double q3 = half == 0 ? get(0) : medianOfRange(upperStart, count);
+        return new StatsSummary(count, sum, mean, m2 / count, get(0), q1, medianOfRange(0, count), q3, get(count - 1));
+    }
+
+    /**
+     * Median of the values ranked in [from, to)
+     * @param from
+     * first rank, inclusive
+     * @param to
+     * last rank, exclusive
+     * @return median of the range
+     */
+    private double medianOfRange(int from, int to) {
+        int n = to - from;
+        int mid = from + n / 2;
+        return n % 2 == 1 ? get(mid) : (get(mid - 1) + get(mid)) / 2;
+    }
+
+    private Node insert(Node node, double value) {
+        if (node == null) {
+            return new Node(value, nextPriority());
+        }
+        int cmp = Double.compare(value, node.value);
+        if (cmp == 0) {
+            node.count++;
+        } else if (cmp < 0) {
+            node.left = insert(node.left, value);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, value);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        return left;
+    }
+
+    private Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        return right;
+    }
+
+    private int nextPriority() {
+        // xorshift, deterministic so charts are built the same way every time
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * A tree node holding every copy of one distinct value
+     */
+    private static class Node {
+        final double value;
+        final int priority;
+        int count = 1;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(double value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        void update() {
+            size = count + size(left) + size(right);
+        }
+    }
+}
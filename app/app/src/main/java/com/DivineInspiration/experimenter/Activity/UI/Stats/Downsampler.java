@@ -0,0 +1,154 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+/**
+ * Thins the points of a time series down to what a chart can show.
+ * Lines keep the points picked by Largest-Triangle-Three-Buckets (LTTB), which keeps the peaks and dips that shape
+ * the line; candles are merged over ranges of points, each merged candle spanning the highs and lows it replaces.
+ * The series are parallel primitive arrays, sorted by x.
+ */
+public class Downsampler {
+
+    /**
+     * Pixels per point: a point every two pixels is as much as a line can show
+     */
+    public static final int PIXELS_PER_POINT = 2;
+
+    /**
+     * Gets the number of points a chart of a given width can show
+     * @param widthPixels
+     * width of the chart
+     * @return number of points, at least 3
+     */
+    public static int pointsFor(int widthPixels) {
+        return Math.max(3, widthPixels / PIXELS_PER_POINT);
+    }
+
+    /**
+     * Picks the points of a line to keep, Largest-Triangle-Three-Buckets: the first and last points are kept, the
+     * points between are split into threshold - 2 buckets, and from each the point making the largest triangle with
+     * the point kept before it and the mean of the next bucket is kept.
+     * @param xs
+     * x of each point, ascending
+     * @param ys
+     * y of each point
+     * @param from
+     * first point, inclusive
+     * @param to
+     * last point, exclusive
+     * @param threshold
+     * most points to keep
+     * @return indices of the kept points, ascending; every index in the range if it has no more than threshold points
+     */
+    public static int[] lttb(float[] xs, float[] ys, int from, int to, int threshold) {
+        int n = to - from;
+        if (n <= threshold || threshold < 3) {
+            int[] all = new int[Math.max(0, n)];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        int out = 0;
+        kept[out++] = from;
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = from;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // mean of the next bucket, the last point for the last bucket
+            int nextStart = from + (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min(from + (int) ((bucket + 2) * every) + 1, to);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanX += xs[i];
+                meanY += ys[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            meanX /= nextCount;
+            meanY /= nextCount;
+
+            int start = from + (int) (bucket * every) + 1;
+            int end = from + (int) ((bucket + 1) * every) + 1;
+            double largest = -1;
+            int pick = start;
+            for (int i = start; i < end; i++) {
+                // twice the triangle's area, the half does not change which is largest
+                double area = Math.abs((xs[a] - meanX) * (ys[i] - ys[a]) - (xs[a] - xs[i]) * (meanY - ys[a]));
+                if (area > largest) {
+                    largest = area;
+                    pick = i;
+                }
+            }
+            kept[out++] = pick;
+            a = pick;
+        }
+        kept[out] = to - 1;
+        return kept;
+    }
+
+    /**
+     * Merges candles over ranges of consecutive points: each merged candle is at the x of its first candle, opens
+     * as its first candle, closes as its last, and spans the highest high and the lowest low of the range.
+     * @param xs
+     * x of each candle, ascending
+     * @param opens
+     * open of each candle
+     * @param highs
+     * high of each candle
+     * @param lows
+     * low of each candle
+     * @param closes
+     * close of each candle
+     * @param from
+     * first candle, inclusive
+     * @param to
+     * last candle, exclusive
+     * @param buckets
+     * most candles to make
+     * @return the merged x, open, high, low and close arrays, in that order
+     */
+    public static float[][] aggregateRanges(float[] xs, float[] opens, float[] highs, float[] lows, float[] closes, int from, int to, int buckets) {
+        int n = Math.max(0, to - from);
+        int m = Math.min(n, Math.max(1, buckets));
+        float[][] merged = new float[5][m];
+        for (int bucket = 0; bucket < m; bucket++) {
+            int start = from + (int) ((long) bucket * n / m);
+            int end = from + (int) ((long) (bucket + 1) * n / m);
+            float high = highs[start];
+            float low = lows[start];
+            for (int i = start + 1; i < end; i++) {
+                high = Math.max(high, highs[i]);
+                low = Math.min(low, lows[i]);
+            }
+            merged[0][bucket] = xs[start];
+            merged[1][bucket] = opens[start];
+            merged[2][bucket] = high;
+            merged[3][bucket] = low;
+            merged[4][bucket] = closes[end - 1];
+        }
+        return merged;
+    }
+
+    /**
+     * Finds the first point at or past an x
+     * @param xs
+     * x of each point, ascending
+     * @param x
+     * the x to look for
+     * @return index of the first point with an x not below the one given, xs.length if there is none
+     */
+    public static int lowerBound(float[] xs, float x) {
+        int lo = 0;
+        int hi = xs.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (xs[mid] < x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
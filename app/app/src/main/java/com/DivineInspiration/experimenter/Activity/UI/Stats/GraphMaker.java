@@ -6,6 +6,7 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
@@ -13,10 +14,12 @@ import android.widget.TextView;
 import androidx.core.content.ContextCompat;
 
 import com.DivineInspiration.experimenter.BuildConfig;
-import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.DayBucket;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
 import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
 import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
 import com.DivineInspiration.experimenter.R;
 import com.github.mikephil.charting.charts.BarChart;
 import com.github.mikephil.charting.charts.BarLineChartBase;
@@ -39,6 +42,8 @@ import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.github.mikephil.charting.highlight.Highlight;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
 import com.github.mikephil.charting.utils.MPPointF;
 
 import java.text.DecimalFormat;
@@ -79,22 +84,44 @@ public class GraphMaker {
         if(trials == null){
             return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
         }
+        return makeHistogram(TrialColumns.of(trials), context);
+    }
 
-        trials = TrialManager.getInstance().filterIgnoredTrials(trials);
-        if(trials.size() < 3){
-            return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
+    /**
+     * Makes a Histogram like chart from the columns of the trials, ignored trials are skipped.
+     *
+     * @param trials  columns of the trials to be used.
+     * @param context a context to inflate view from
+     * @return an appropriate chart for the given trial type
+     */
+    public static View makeHistogram(TrialColumns trials, Context context) {
+        return makeChart(histogramSeries(trials), context);
+    }
+
+    /**
+     * Computes the data of the Histogram like chart of the columns of the trials, ignored trials are skipped.
+     * No view is made, so this can run off the main thread, on columns that do not change meanwhile.
+     *
+     * @param trials columns of the trials to be used.
+     * @return the series of the chart, empty if there are less than 3 trials
+     */
+    public static ChartSeries histogramSeries(TrialColumns trials) {
+        if(trials == null || trials.activeCount() < 3){
+            return ChartSeries.empty();
         }
-        switch (trials.get(0).getTrialType()) {
+        String type = trials.getTrialType();
+        switch (type) {
             case Trial.COUNT:
-                return makeCountBarGraph(trials, context);
             case Trial.BINOMIAL:
-                return makeBinomialBarGraph(trials, context);
+                return ChartSeries.ofBars(type, StatsEngine.summarize(trials));
             case Trial.NONNEGATIVE:
-                return makeNonNegativeHistogram(trials, context);
+                // each count has its own bar, unless there are more than MAX_BINS of them
+                return ChartSeries.ofHistogram(type, HistogramEngine.binIntegers(trials.activeValues(), HistogramEngine.MAX_BINS));
             case Trial.MEASURE:
-                return makeMeasurementHistogram(trials, context);
+                // about 10 bins for a thousand trials
+                return ChartSeries.ofHistogram(type, HistogramEngine.bin(trials.activeValues(), HistogramEngine.BinRule.STURGES, 0));
             default:
-                return null;
+                return ChartSeries.empty();
         }
     }
 
@@ -111,71 +138,198 @@ public class GraphMaker {
         if(trials == null){
             return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
         }
+        return makeLineChart(TrialColumns.of(trials), context);
+    }
 
-        trials = TrialManager.getInstance().filterIgnoredTrials(trials);
-        if(trials.size() < 3){
-            return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
+    /**
+     * Makes a Line graph like chart from the columns of the trials, ignored trials are skipped.
+     * @param trials  columns of the trials to be used.
+     * @param context a context to inflate view from
+     * @return an appropriate chart for the given trial type
+     */
+    public static View makeLineChart(TrialColumns trials, Context context) {
+        return makeChart(lineSeries(trials), context);
+    }
+
+    /**
+     * Computes the data of the Line graph like chart of the columns of the trials, ignored trials are skipped.
+     * No view is made, so this can run off the main thread, on columns that do not change meanwhile.
+     * @param trials  columns of the trials to be used.
+     * @return the series of the chart, empty if there are less than 3 trials
+     */
+    public static ChartSeries lineSeries(TrialColumns trials) {
+        if(trials == null || trials.activeCount() < 3){
+            return ChartSeries.empty();
         }
 
-        //first put trials in date buckets since all 3 functions needs it
-        List<List<Trial>> trialsDateBucket = groupTrialByDate(trials);
-        switch (trials.get(0).getTrialType()) {
+        //first put the rows in date order since all 3 functions needs it
+        int[] rowsByDate = trials.rowsByDate();
+        switch (trials.getTrialType()) {
             case Trial.COUNT:
-                return makeCountLineGraph(trialsDateBucket, context);
+                return countLineSeries(trials, rowsByDate);
 
             case Trial.BINOMIAL:
-                return makeBinomialLineGraph(trialsDateBucket, context);
+                return binomialLineSeries(trials, rowsByDate);
             case Trial.MEASURE://switch abuse
             case Trial.NONNEGATIVE:
-                return makeCandlestick(trialsDateBucket, context);
+                return candlestickSeries(trials, rowsByDate);
+
+            default:
+                return ChartSeries.empty();
+        }
+    }
+
+    /**
+     * Makes a Line graph like chart from the days of an experiment, one small record per day with trials instead of
+     * every trial. The running quartiles come from merging the day sketches, so they are approximate.
+     * @param type    trial type of the experiment
+     * @param days    the days with trials, in date order
+     * @param context a context to inflate view from
+     * @return an appropriate chart for the given trial type
+     */
+    public static View makeLineChart(String type, List<DayBucket> days, Context context) {
+        return makeChart(lineSeries(type, days), context);
+    }
+
+    /**
+     * Computes the data of the Line graph like chart of the days of an experiment. No view is made, so this can run
+     * off the main thread.
+     * @param type    trial type of the experiment
+     * @param days    the days with trials, in date order
+     * @return the series of the chart, empty if there are less than 3 trials
+     */
+    public static ChartSeries lineSeries(String type, List<DayBucket> days) {
+        long count = 0;
+        if (days != null) {
+            for (DayBucket day : days) {
+                count += day.getCount();
+            }
+        }
+        if (type == null || count < 3) {
+            return ChartSeries.empty();
+        }
+
+        int firstDay = days.get(0).getEpochDay();
+        int lastDay = days.get(days.size() - 1).getEpochDay();
+        List<Entry> lineEntries = new ArrayList<>();
+        List<CandleEntry> candleEntries = new ArrayList<>();
+        List<String> dates = new ArrayList<>();
+        QuantileSketch sketch = new QuantileSketch(DayBucket.SKETCH_COMPRESSION);
+        long runningCount = 0;
+        double runningSum = 0;
+        int dayIndex = 0;
+
+        //iterate over each day from start to end, even if there is no data for that day
+        for (int currentDay = firstDay; currentDay <= lastDay; currentDay++) {
+            if (dayIndex < days.size() && days.get(dayIndex).getEpochDay() == currentDay) {
+                DayBucket day = days.get(dayIndex++);
+                runningCount += day.getCount();
+                runningSum += day.getSum();
+                if (type.equals(Trial.MEASURE) || type.equals(Trial.NONNEGATIVE)) {
+                    sketch.merge(day.getSketch());
+                }
+            }
+            int entryIndex = currentDay - firstDay;
+            double mean = runningCount == 0 ? 0 : runningSum / runningCount;
+            switch (type) {
+                case Trial.COUNT:
+                    lineEntries.add(new Entry(entryIndex, (float) runningSum));
+                    break;
+                case Trial.BINOMIAL:
+                    // a pass counts as 1, so the mean is the success ratio
+                    lineEntries.add(new Entry(entryIndex, (float) mean));
+                    break;
+                default:
+                    float q1 = (float) sketch.quantile(0.25);
+                    float q3 = (float) sketch.quantile(0.75);
+                    lineEntries.add(new Entry(entryIndex, (float) mean));
+                    candleEntries.add(new CandleEntry(entryIndex, q3, q1, q3, q1));
+            }
+            dates.add(shortFormatter.format(LocalDate.ofEpochDay(currentDay)));
+        }
 
+        switch (type) {
+            case Trial.COUNT:
+                return ChartSeries.ofLine(type, lineEntries, null, dates, "Count over time");
+            case Trial.BINOMIAL:
+                return ChartSeries.ofLine(type, lineEntries, null, dates, "Ratio of Success/Total");
+            case Trial.MEASURE://switch abuse
+            case Trial.NONNEGATIVE:
+                return ChartSeries.ofLine(type, lineEntries, candleEntries, dates, "Count Mean Over Time");
             default:
-                return null;
+                return ChartSeries.empty();
         }
     }
 
     /**
-     * Makes a candle stick graph + line graph for Non-negative and measurement trials.
+     * Makes the chart of a series computed beforehand, this part needs the main thread.
+     * @param series  data of the chart, from {@link #histogramSeries} or {@link #lineSeries}
+     * @param context a context to inflate view from
+     * @return an appropriate chart for the series
+     */
+    public static View makeChart(ChartSeries series, Context context) {
+        if (series == null || series.isEmpty()) {
+            return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
+        }
+        if (series.getHistogram() != null) {
+            return series.getTrialType().equals(Trial.NONNEGATIVE)
+                    ? makeNonNegativeHistogram(series.getHistogram(), context)
+                    : makeMeasurementHistogram(series.getHistogram(), context);
+        }
+        if (series.getSummary() != null) {
+            return series.getTrialType().equals(Trial.BINOMIAL)
+                    ? makeBinomialBarGraph(series.getSummary(), context)
+                    : makeCountBarGraph(series.getSummary(), context);
+        }
+        if (series.getCandleEntries() != null) {
+            return makeCombinedChart(context, series.getLineEntries(), series.getCandleEntries(), series.getDates(), series.getLabel());
+        }
+        return makeLineGraph(context, series.getLineEntries(), series.getDates(), series.getLabel());
+    }
+
+    /**
+     * Computes a candle stick graph + line graph for Non-negative and measurement trials.
      * The candle sticks represents the current Q1, median and Q3, while the line graph represents the current mean.
-     * @param trialsBucket
-     * trial matrix
-     * @param context
-     * current context
+     * Each day's trials are folded into a {@link CumulativeStats}, so the days do not re-sort everything before them.
+     * @param trials
+     * trial columns
+     * @param rowsByDate
+     * active rows, in date order
      * @return
-     * chart
+     * series of the chart
      */
-    private static Chart<?> makeCandlestick(List<List<Trial>> trialsBucket, Context context) {
+    private static ChartSeries candlestickSeries(TrialColumns trials, int[] rowsByDate) {
         /*
         https://medium.com/@neerajmoudgil/candlestick-chart-using-philjay-mpandroidchart-library-how-to-bf657ddf3a28
         how make candle stick chart with MPandroid
          */
 
-        LocalDate currentDate = trialsBucket.get(0).get(0).getTrialDate();
-        LocalDate lastDate = trialsBucket.get(trialsBucket.size() - 1).get(0).getTrialDate();
+        int currentDay = trials.getEpochDay(rowsByDate[0]);
+        int lastDay = trials.getEpochDay(rowsByDate[rowsByDate.length - 1]);
 
         List<Entry> lineEntry = new ArrayList<>();
         List<CandleEntry> candleEntries = new ArrayList<>();
         List<String> dates = new ArrayList<>();
-        List<Trial> currentTrials = new ArrayList<>();
+        CumulativeStats cumulative = new CumulativeStats();
 
-        int dateIndex = 0;
+        int rowIndex = 0;
         int entryIndex = 0;
 
-        //iterate over each from start to end, even if there is new data for that day
-        while (!currentDate.isAfter(lastDate)) {
-            if (trialsBucket.get(dateIndex).get(0).getTrialDate().equals(currentDate)) {
-                currentTrials.addAll(trialsBucket.get(dateIndex));
-                dateIndex++;
+        //iterate over each day from start to end, even if there is no data for that day
+        while (currentDay <= lastDay) {
+            while (rowIndex < rowsByDate.length && trials.getEpochDay(rowsByDate[rowIndex]) == currentDay) {
+                cumulative.add(trials.getValue(rowsByDate[rowIndex]));
+                rowIndex++;
             }
-            lineEntry.add(new Entry(entryIndex, (float) StatsMaker.calcMean(currentTrials)));
-            double[] quartiles = StatsMaker.calcQuartiles(currentTrials);
-            candleEntries.add(new CandleEntry(entryIndex, (float) quartiles[1], (float) quartiles[0], (float) quartiles[1], (float) quartiles[0]));
-            dates.add(shortFormatter.format(currentDate));
+            StatsSummary summary = cumulative.summarize();
+            lineEntry.add(new Entry(entryIndex, (float) summary.getMean()));
+            candleEntries.add(new CandleEntry(entryIndex, (float) summary.getQ3(), (float) summary.getQ1(), (float) summary.getQ3(), (float) summary.getQ1()));
+            dates.add(shortFormatter.format(LocalDate.ofEpochDay(currentDay)));
             entryIndex++;
-            currentDate = currentDate.plusDays(1);
+            currentDay++;
         }
 
-        return makeCombinedChart(context, lineEntry, candleEntries, dates);
+        return ChartSeries.ofLine(trials.getTrialType(), lineEntry, candleEntries, dates, "Count Mean Over Time");
     }
 
     /**
@@ -184,12 +338,14 @@ public class GraphMaker {
      * @param lineEntries
      * @param candleEntries
      * @param labels
+     * @param label
      * @return
      */
-    private static CombinedChart makeCombinedChart(Context context, List<Entry> lineEntries, List<CandleEntry> candleEntries, List<String> labels) {
+    private static CombinedChart makeCombinedChart(Context context, List<Entry> lineEntries, List<CandleEntry> candleEntries, List<String> labels, String label) {
+        SeriesResampler resampler = new SeriesResampler(lineEntries, candleEntries, Downsampler.pointsFor(widthOf(context)));
 
-        LineDataSet lineDataSet = new LineDataSet(lineEntries, "Count Mean Over Time");
-        CandleDataSet candleDataSet = new CandleDataSet(candleEntries, "Quartiles over time");
+        LineDataSet lineDataSet = new LineDataSet(resampler.lineWindow(-Float.MAX_VALUE, Float.MAX_VALUE), label);
+        CandleDataSet candleDataSet = new CandleDataSet(resampler.candleWindow(-Float.MAX_VALUE, Float.MAX_VALUE), "Quartiles over time");
         LineData lineData = new LineData();
         CandleData candleData = new CandleData();
         lineData.addDataSet(lineDataSet);
@@ -217,31 +373,29 @@ public class GraphMaker {
         chart.getXAxis().setGranularity(1f);
 
         styleLineBarChart(context, chart, formatter);
+        resampler.attach(chart, lineDataSet, candleDataSet);
 
         return chart;
     }
 
 
     /**
-     * Makes a histogram for measurement trial. This method will by default divide given data into 10 buckets, or the number of trials if there are too few trials.
-     * @param trials
-     * list of trials
+     * Makes a histogram for measurement trial. The number of equal width bins is picked by Sturges' rule,
+     * about 10 for a thousand trials, see {@link HistogramEngine}.
+     * @param histogram
+     * bins of the trials
      * @param context
      * @return
      * chart
      */
-    private static Chart<?> makeMeasurementHistogram(List<Trial> trials, Context context) {
-        List<List<Trial>> trialBuckets = groupTrialByRange(trials, Math.min(10, trials.size()));
-
+    private static Chart<?> makeMeasurementHistogram(Histogram histogram, Context context) {
         List<BarEntry> entries = new ArrayList<>();
         List<String> labels = new ArrayList<>();
 
         DecimalFormat deciFormat = new DecimalFormat("0.#");
-        int i = 0;
-        for (List<Trial> list : trialBuckets) {
-            entries.add(new BarEntry(i, (float) list.size()));
-            labels.add(String.format("%s-%s", deciFormat.format(findMinMeasurement(list)), deciFormat.format(findMaxMeasurement(list))));
-            i++;
+        for (int i = 0; i < histogram.getBinCount(); i++) {
+            entries.add(new BarEntry(i, histogram.getCount(i)));
+            labels.add(String.format("%s-%s", deciFormat.format(histogram.getLower(i)), deciFormat.format(histogram.getUpper(i))));
         }
         BarChart chart = new BarChart(context);
 
@@ -263,22 +417,22 @@ public class GraphMaker {
 
 
     /**
-     * Makes a histogram showing the distribution of NonNegative trials submitted.
-     * @param trials
+     * Makes a histogram showing the distribution of NonNegative trials submitted. Each count has its own bar,
+     * unless there are more than {@link HistogramEngine#MAX_BINS} of them, then a bar covers a range of counts.
+     * @param histogram
+     * bins of the trials
      * @param context
      * @return
      */
-    private static Chart<?> makeNonNegativeHistogram(List<Trial> trials, Context context) {
-        List<List<Trial>> trialBuckets = groupTrialsByValue(trials);
-
+    private static Chart<?> makeNonNegativeHistogram(Histogram histogram, Context context) {
         List<BarEntry> entries = new ArrayList<>();
         List<String> labels = new ArrayList<>();
 
-        int i = 0;
-        for (List<Trial> list : trialBuckets) {
-            entries.add(new BarEntry(i, (float) list.size()));
-            labels.add(String.valueOf(((NonNegativeTrial) list.get(0)).getCount()));
-            i++;
+        for (int i = 0; i < histogram.getBinCount(); i++) {
+            entries.add(new BarEntry(i, histogram.getCount(i)));
+            long lower = (long) histogram.getLower(i);
+            long upper = (long) histogram.getUpper(i) - 1;
+            labels.add(lower == upper ? String.valueOf(lower) : lower + "-" + upper);
         }
         BarChart chart = new BarChart(context);
 
@@ -300,65 +454,52 @@ public class GraphMaker {
     }
 
     /**
-     * Makes a line graph representing the mean success rate over time.
-     * @param trialsBucket
-     * @param context
+     * Computes a line graph representing the mean success rate over time.
+     * @param trials
+     * trial columns
+     * @param rowsByDate
+     * active rows, in date order
      * @return
-     * chart
+     * series of the chart
      */
-    private static Chart<?> makeBinomialLineGraph(List<List<Trial>> trialsBucket, Context context) {
-        double success = 0;
-        double fail = 0;
-        LocalDate currentDate = trialsBucket.get(0).get(0).getTrialDate();
-        LocalDate lastDate = trialsBucket.get(trialsBucket.size() - 1).get(0).getTrialDate();
+    private static ChartSeries binomialLineSeries(TrialColumns trials, int[] rowsByDate) {
+        CumulativeStats cumulative = new CumulativeStats(false);
+        int currentDay = trials.getEpochDay(rowsByDate[0]);
+        int lastDay = trials.getEpochDay(rowsByDate[rowsByDate.length - 1]);
 
         List<Entry> data = new ArrayList<>();
         List<String> dates = new ArrayList<>();
-        int dateIndex = 0;
+        int rowIndex = 0;
         int entryIndex = 0;
-        while (!currentDate.isAfter(lastDate)) {
-            if (trialsBucket.get(dateIndex).get(0).getTrialDate().equals(currentDate)) {
-                double[] stats = StatsMaker.calcBinomialStats(trialsBucket.get(dateIndex));
-                success += stats[0];
-                fail += stats[1];
-                dateIndex++;
+        while (currentDay <= lastDay) {
+            while (rowIndex < rowsByDate.length && trials.getEpochDay(rowsByDate[rowIndex]) == currentDay) {
+                cumulative.add(trials.getValue(rowsByDate[rowIndex]));
+                rowIndex++;
             }
-            data.add(new Entry(entryIndex, (float) (success / (success + fail))));
+            // a pass counts as 1, so the mean is the success ratio
+            data.add(new Entry(entryIndex, (float) cumulative.getMean()));
             entryIndex++;
-            dates.add(shortFormatter.format(currentDate));
-            currentDate = currentDate.plusDays(1);
+            dates.add(shortFormatter.format(LocalDate.ofEpochDay(currentDay)));
+            currentDay++;
         }
 
-        LineChart chart = new LineChart(context);
-
-        //dataset for marker
-        LineDataSet dataSet = new LineDataSet(data, "Ratio of Success/Total");
-        dataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
-
-        chart.setData(new LineData(dataSet));
-        chart.getXAxis().setGranularity(1f);
-        XAxisLabelFormatter formatter = new XAxisLabelFormatter(dates);
-        chart.getXAxis().setValueFormatter(formatter);
-
-        styleLineBarChart(context, chart, formatter);
-        return chart;
+        return ChartSeries.ofLine(Trial.BINOMIAL, data, null, dates, "Ratio of Success/Total");
     }
 
     /**
      * Makes a bar graph consisting of 2 bars. Indicating number of successes and fails.
-     * @param trials
-     * list of trials
+     * @param summary
+     * summary of the trials
      * @param context
      * @return
      * chart
      */
-    private static Chart<?> makeBinomialBarGraph(List<Trial> trials, Context context) {
-        double[] stats = StatsMaker.calcBinomialStats(trials);
+    private static Chart<?> makeBinomialBarGraph(StatsSummary summary, Context context) {
         List<BarEntry> entries = new ArrayList<>();
-        entries.add(new BarEntry(0, (float) stats[0]));
-        entries.add(new BarEntry(2, (float) stats[1]));
+        entries.add(new BarEntry(0, (float) summary.getPassCount()));
+        entries.add(new BarEntry(2, (float) summary.getFailCount()));
 
-        BarData data = new BarData(new BarDataSet(entries, String.format("Binomial Trial - %.2f%% Success", stats[2])));
+        BarData data = new BarData(new BarDataSet(entries, String.format("Binomial Trial - %.2f%% Success", summary.getPassRatio())));
 
 
         BarChart chart = new BarChart(context);
@@ -374,7 +515,7 @@ public class GraphMaker {
         XAxisLabelFormatter formatter = new XAxisLabelFormatter(labels);
         chart.getXAxis().setValueFormatter(formatter);
         chart.getAxisLeft().setAxisMinimum(0);
-        chart.getAxisLeft().setAxisMaximum((float) Math.max(stats[0], stats[1]) * 1.3f);
+        chart.getAxisLeft().setAxisMaximum((float) Math.max(summary.getPassCount(), summary.getFailCount()) * 1.3f);
         chart.setScaleEnabled(false);
 
         styleLineBarChart(context, chart, formatter);
@@ -384,14 +525,14 @@ public class GraphMaker {
 
     /**
      * Makes a single, mostly meaning bar to represent the total count of the Count trials submitted so far.
-     * @param trials
-     * list of trials
+     * @param summary
+     * summary of the trials
      * @param context
      * @return
      * chart
      */
-    private static Chart<?> makeCountBarGraph(List<Trial> trials, Context context) {
-        double sum = StatsMaker.calcSum(trials);
+    private static Chart<?> makeCountBarGraph(StatsSummary summary, Context context) {
+        double sum = summary.getSum();
         List<BarEntry> entries = new ArrayList<>();
         entries.add(new BarEntry(0, (float) sum));
         BarData data = new BarData(new BarDataSet(entries, "A single bar of total count, as requested"));
@@ -418,37 +559,57 @@ public class GraphMaker {
 
 
     /**
-     * Makes a line graph to represent the growth of total count over time.
-     * @param trialsBucket
-     * @param context
+     * Computes a line graph to represent the growth of total count over time.
+     * @param trials
+     * trial columns
+     * @param rowsByDate
+     * active rows, in date order
      * @return
-     * chart
+     * series of the chart
      */
-    private static Chart<?> makeCountLineGraph(List<List<Trial>> trialsBucket, Context context) {
+    private static ChartSeries countLineSeries(TrialColumns trials, int[] rowsByDate) {
         /*https://stackoverflow.com/a/29812532/12471420*/
-        float sum = 0;
-        LocalDate currentDate = trialsBucket.get(0).get(0).getTrialDate();
-        LocalDate lastDate = trialsBucket.get(trialsBucket.size() - 1).get(0).getTrialDate();
+        CumulativeStats cumulative = new CumulativeStats(false);
+        int currentDay = trials.getEpochDay(rowsByDate[0]);
+        int lastDay = trials.getEpochDay(rowsByDate[rowsByDate.length - 1]);
 
         List<Entry> data = new ArrayList<>();
         List<String> dates = new ArrayList<>();
-        int dateIndex = 0;
+        int rowIndex = 0;
         int entryIndex = 0;
-        while (!currentDate.isAfter(lastDate)) {
-            if (trialsBucket.get(dateIndex).get(0).getTrialDate().equals(currentDate)) {
-                sum += StatsMaker.calcSum(trialsBucket.get(dateIndex));
-                dateIndex++;
+        while (currentDay <= lastDay) {
+            while (rowIndex < rowsByDate.length && trials.getEpochDay(rowsByDate[rowIndex]) == currentDay) {
+                cumulative.add(trials.getValue(rowsByDate[rowIndex]));
+                rowIndex++;
             }
-            data.add(new Entry(entryIndex, sum));
+            data.add(new Entry(entryIndex, (float) cumulative.getSum()));
             entryIndex++;
-            dates.add(shortFormatter.format(currentDate));
-            currentDate = currentDate.plusDays(1);
+            dates.add(shortFormatter.format(LocalDate.ofEpochDay(currentDay)));
+            currentDay++;
         }
 
+        return ChartSeries.ofLine(Trial.COUNT, data, null, dates, "Count over time");
+    }
+
+    /**
+     * Makes a line graph over the days of an experiment
+     * @param context
+     * current context
+     * @param data
+     * one entry per day
+     * @param dates
+     * label of each day
+     * @param label
+     * label of the line
+     * @return
+     * chart
+     */
+    private static LineChart makeLineGraph(Context context, List<Entry> data, List<String> dates, String label) {
         LineChart chart = new LineChart(context);
+        SeriesResampler resampler = new SeriesResampler(data, null, Downsampler.pointsFor(widthOf(context)));
 
         //dataset for marker
-        LineDataSet dataSet = new LineDataSet(data, "Count over time");
+        LineDataSet dataSet = new LineDataSet(resampler.lineWindow(-Float.MAX_VALUE, Float.MAX_VALUE), label);
         dataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
 
         chart.setData(new LineData(dataSet));
@@ -457,9 +618,17 @@ public class GraphMaker {
         chart.getXAxis().setValueFormatter(formatter);
 
         styleLineBarChart(context, chart, formatter);
+        resampler.attach(chart, dataSet, null);
         return chart;
     }
 
+    /**
+     * Width a chart will have before it is laid out, the width of the screen
+     */
+    private static int widthOf(Context context) {
+        return context.getResources().getDisplayMetrics().widthPixels;
+    }
+
 
     /**
      * Common chart styling settings for other chart making functions.
@@ -579,6 +748,217 @@ public class GraphMaker {
     }
 
 
+    /**
+     * Keeps the entries of a time series chart to what its width can show, with {@link Downsampler}: LTTB for the
+     * line, merged ranges for the candles. The whole series is thinned once; when a zoom or pan ends, the visible
+     * days are thinned again from the full series, so zooming in gets back to one entry per day.
+     * The x axis range is set by {@link #styleLineBarChart} from the whole series, so it does not move as the
+     * entries change.
+     */
+    private static class SeriesResampler implements OnChartGestureListener {
+
+        private final List<Entry> line;
+        private final float[] lineX;
+        private final float[] lineY;
+        private final int[] coarseLine;
+
+        private final List<CandleEntry> candles;
+        private final List<CandleEntry> coarseCandles;
+        private final float[] candleX;
+        private final float[] opens;
+        private final float[] highs;
+        private final float[] lows;
+        private final float[] closes;
+
+        private final int points;
+        private BarLineChartBase<?> chart;
+        private LineDataSet lineSet;
+        private CandleDataSet candleSet;
+
+        /**
+         * Constructor
+         * @param line
+         * every line entry, by x
+         * @param candles
+         * every candle entry, by x, or null for a chart without candles
+         * @param points
+         * most entries to show per data set
+         */
+        SeriesResampler(List<Entry> line, List<CandleEntry> candles, int points) {
+            this.line = line;
+            this.points = points;
+            lineX = new float[line.size()];
+            lineY = new float[line.size()];
+            for (int i = 0; i < line.size(); i++) {
+                lineX[i] = line.get(i).getX();
+                lineY[i] = line.get(i).getY();
+            }
+            coarseLine = Downsampler.lttb(lineX, lineY, 0, lineX.length, points);
+
+            this.candles = candles;
+            int n = candles == null ? 0 : candles.size();
+            candleX = new float[n];
+            opens = new float[n];
+            highs = new float[n];
+            lows = new float[n];
+            closes = new float[n];
+            for (int i = 0; i < n; i++) {
+                CandleEntry candle = candles.get(i);
+                candleX[i] = candle.getX();
+                opens[i] = candle.getOpen();
+                highs[i] = candle.getHigh();
+                lows[i] = candle.getLow();
+                closes[i] = candle.getClose();
+            }
+            coarseCandles = candlesOf(Downsampler.aggregateRanges(candleX, opens, highs, lows, closes, 0, n, points));
+        }
+
+        /**
+         * Starts resampling the data sets of a chart as it is zoomed
+         */
+        void attach(BarLineChartBase<?> chart, LineDataSet lineSet, CandleDataSet candleSet) {
+            this.chart = chart;
+            this.lineSet = lineSet;
+            this.candleSet = candleSet;
+            chart.setOnChartGestureListener(this);
+        }
+
+        /**
+         * Gets the line entries to show for a range of x: the visible ones thinned from the full series, the ones
+         * around them from the thinned whole series, so a pan shows a coarse line until it ends
+         * @param from
+         * lowest visible x
+         * @param to
+         * highest visible x
+         * @return entries, by x
+         */
+        List<Entry> lineWindow(float from, float to) {
+            // one more entry on each side, so the line runs to the edges of the chart
+            int start = Math.max(0, Downsampler.lowerBound(lineX, from) - 1);
+            int end = Math.min(lineX.length, Downsampler.lowerBound(lineX, to) + 1);
+            if (start == 0 && end == lineX.length) {
+                return pick(coarseLine);
+            }
+            List<Entry> window = new ArrayList<>();
+            for (int i : coarseLine) {
+                if (i < start) {
+                    window.add(line.get(i));
+                }
+            }
+            for (int i : Downsampler.lttb(lineX, lineY, start, end, points)) {
+                window.add(line.get(i));
+            }
+            for (int i : coarseLine) {
+                if (i >= end) {
+                    window.add(line.get(i));
+                }
+            }
+            return window;
+        }
+
+        /**
+         * Gets the candle entries to show for a range of x, as {@link #lineWindow}
+         * @param from
+         * lowest visible x
+         * @param to
+         * highest visible x
+         * @return entries, by x
+         */
+        List<CandleEntry> candleWindow(float from, float to) {
+            int start = Math.max(0, Downsampler.lowerBound(candleX, from) - 1);
+            int end = Math.min(candleX.length, Downsampler.lowerBound(candleX, to) + 1);
+            if (start == 0 && end == candleX.length) {
+                return new ArrayList<>(coarseCandles);
+            }
+            List<CandleEntry> window = new ArrayList<>();
+            for (CandleEntry candle : coarseCandles) {
+                if (candle.getX() < candleX[start]) {
+                    window.add(candle);
+                }
+            }
+            window.addAll(candlesOf(Downsampler.aggregateRanges(candleX, opens, highs, lows, closes, start, end, points)));
+            for (CandleEntry candle : coarseCandles) {
+                if (candle.getX() > candleX[end - 1]) {
+                    window.add(candle);
+                }
+            }
+            return window;
+        }
+
+        private List<Entry> pick(int[] indices) {
+            List<Entry> picked = new ArrayList<>(indices.length);
+            for (int i : indices) {
+                picked.add(line.get(i));
+            }
+            return picked;
+        }
+
+        private static List<CandleEntry> candlesOf(float[][] merged) {
+            List<CandleEntry> out = new ArrayList<>(merged[0].length);
+            for (int i = 0; i < merged[0].length; i++) {
+                out.add(new CandleEntry(merged[0][i], merged[2][i], merged[3][i], merged[1][i], merged[4][i]));
+            }
+            return out;
+        }
+
+        /**
+         * Thins the visible part of the series again
+         */
+        private void resample() {
+            if (chart == null || line.size() <= points && (candles == null || candles.size() <= points)) {
+                return;
+            }
+            float from = chart.getLowestVisibleX();
+            float to = chart.getHighestVisibleX();
+            lineSet.setValues(lineWindow(from, to));
+            if (candleSet != null) {
+                candleSet.setValues(candleWindow(from, to));
+            }
+            chart.getData().notifyDataChanged();
+            chart.notifyDataSetChanged();
+            chart.invalidate();
+        }
+
+        @Override
+        public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            if (lastPerformedGesture == ChartTouchListener.ChartGesture.X_ZOOM
+                    || lastPerformedGesture == ChartTouchListener.ChartGesture.PINCH_ZOOM
+                    || lastPerformedGesture == ChartTouchListener.ChartGesture.DRAG
+                    || lastPerformedGesture == ChartTouchListener.ChartGesture.DOUBLE_TAP
+                    || lastPerformedGesture == ChartTouchListener.ChartGesture.FLING) {
+                resample();
+            }
+        }
+
+        @Override
+        public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+        }
+
+        @Override
+        public void onChartLongPressed(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {
+        }
+
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {
+        }
+
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+        }
+
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {
+        }
+    }
+
     /**
      * This class is used to format axisLabels.
      * Using a given set of labels, it will map floats to their corresponding labels
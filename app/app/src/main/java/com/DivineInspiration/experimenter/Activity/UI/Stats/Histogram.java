@@ -0,0 +1,78 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+/**
+ * An immutable histogram: equal width bins between edges, and the number of values in each.
+ * Made by {@link HistogramEngine}, drawn by {@link GraphMaker}.
+ */
+public final class Histogram {
+
+    private final double[] edges;
+    private final int[] counts;
+    private final int total;
+
+    /**
+     * Constructor
+     * @param edges bin edges, one more than the bins; bin i holds the values from edges[i] up to edges[i + 1]
+     * @param counts number of values in each bin
+     */
+    Histogram(double[] edges, int[] counts) {
+        this.edges = edges;
+        this.counts = counts;
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Gets the number of bins
+     * @return
+     * number of bins
+     */
+    public int getBinCount() {
+        return counts.length;
+    }
+
+    /**
+     * Gets the number of values in a bin
+     * @param bin
+     * index of the bin
+     * @return
+     * number of values
+     */
+    public int getCount(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * Gets the lower edge of a bin, included in the bin
+     * @param bin
+     * index of the bin
+     * @return
+     * lower edge
+     */
+    public double getLower(int bin) {
+        return edges[bin];
+    }
+
+    /**
+     * Gets the upper edge of a bin, excluded from the bin except for the last one
+     * @param bin
+     * index of the bin
+     * @return
+     * upper edge
+     */
+    public double getUpper(int bin) {
+        return edges[bin + 1];
+    }
+
+    /**
+     * Gets the number of values binned
+     * @return
+     * number of values
+     */
+    public int getTotal() {
+        return total;
+    }
+}
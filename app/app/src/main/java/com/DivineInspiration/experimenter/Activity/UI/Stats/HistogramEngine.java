@@ -0,0 +1,190 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+/**
+ * Bins trial values into a {@link Histogram} of equal width bins.
+ * One pass over the values finds their range, the rule picks the number of bins from it, and a second pass fills
+ * an int array of counts, each value's bin computed from its distance to the minimum. The values are neither
+ * sorted nor grouped into lists; {@link BinRule#FREEDMAN_DIACONIS} selects the quartiles from a copy in linear time.
+ */
+public class HistogramEngine {
+
+    /**
+     * Most bins a rule picks, past that the bars are too thin to read on a phone
+     */
+    public static final int MAX_BINS = 50;
+
+    /**
+     * How the number of bins is picked
+     */
+    public enum BinRule {
+        /**
+         * The number of bins given
+         */
+        FIXED_COUNT,
+        /**
+         * log2(n) + 1 bins, suits small and roughly normal samples
+         */
+        STURGES,
+        /**
+         * Bins of width 2 IQR / n^(1/3), robust to outliers; Sturges when the values have no spread
+         */
+        FREEDMAN_DIACONIS
+    }
+
+    /**
+     * Bins values into equal width bins between their min and max
+     * @param values
+     * values to bin, NaN is skipped
+     * @param rule
+     * how the number of bins is picked
+     * @param binCount
+     * number of bins for {@link BinRule#FIXED_COUNT}, ignored otherwise
+     * @return the histogram, with no bins if there are no values
+     */
+    public static Histogram bin(double[] values, BinRule rule, int binCount) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int n = 0;
+        double[] copy = rule == BinRule.FREEDMAN_DIACONIS ? new double[values.length] : null;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (copy != null) {
+                copy[n] = value;
+            }
+            n++;
+        }
+        if (n == 0) {
+            return new Histogram(new double[]{0}, new int[0]);
+        }
+        if (min == max) {
+            return new Histogram(new double[]{min, max}, new int[]{n});
+        }
+
+        int bins;
+        switch (rule) {
+            case FIXED_COUNT:
+                bins = Math.max(1, binCount);
+                break;
+            case FREEDMAN_DIACONIS:
+                double iqr = select(copy, n, 3 * (n - 1) / 4) - select(copy, n, (n - 1) / 4);
+                bins = iqr > 0
+                        ? clamp((int) Math.ceil((max - min) / (2 * iqr / Math.cbrt(n))))
+                        : sturges(n);
+                break;
+            default:
+                bins = sturges(n);
+        }
+        double width = (max - min) / bins;
+        return new Histogram(edges(min, width, bins), fill(values, min, width, bins));
+    }
+
+    /**
+     * Bins whole number values, such as counts, into bins of a whole number width. Each value gets its own bin
+     * if the range fits in maxBins, otherwise the width grows to fit.
+     * @param values
+     * whole number values to bin, NaN is skipped
+     * @param maxBins
+     * most bins to make
+     * @return the histogram, bin i holds the values from getLower(i) to getUpper(i) - 1
+     */
+    public static Histogram binIntegers(double[] values, int maxBins) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        if (min > max) {
+            return new Histogram(new double[]{0}, new int[0]);
+        }
+        double range = max - min + 1;
+        double width = Math.max(1, Math.ceil(range / Math.max(1, maxBins)));
+        int bins = (int) Math.ceil(range / width);
+        return new Histogram(edges(min, width, bins), fill(values, min, width, bins));
+    }
+
+    /**
+     * Counts the values of each bin, in one pass
+     * @param values
+     * values to count, NaN is skipped
+     * @param min
+     * lower edge of the first bin
+     * @param width
+     * width of every bin
+     * @param bins
+     * number of bins; values past the last bin, the max, are counted in it
+     * @return count of each bin
+     */
+    public static int[] fill(double[] values, double min, double width, int bins) {
+        int[] counts = new int[bins];
+        int last = bins - 1;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int bin = (int) ((value - min) / width);
+            counts[bin < 0 ? 0 : bin > last ? last : bin]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Finds the k-th smallest of the first n values by partitioning around a median of three, reordering them
+     */
+    static double select(double[] values, int n, int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double a = values[lo];
+            double b = values[mid];
+            double c = values[hi];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static double[] edges(double min, double width, int bins) {
+        double[] edges = new double[bins + 1];
+        for (int i = 0; i <= bins; i++) {
+            edges[i] = min + i * width;
+        }
+        return edges;
+    }
+
+    private static int sturges(int n) {
+        return clamp((int) Math.ceil(Math.log(n) / Math.log(2)) + 1);
+    }
+
+    private static int clamp(int bins) {
+        return Math.max(1, Math.min(MAX_BINS, bins));
+    }
+}
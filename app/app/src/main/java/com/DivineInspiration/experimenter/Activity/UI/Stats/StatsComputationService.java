@@ -0,0 +1,371 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the stats and graph computations of {@link StatsTabFragment} off the main thread.
+ * Jobs run on a small pool of background threads with a bounded queue. Each job has a key naming what it computes:
+ * a new job under a key cancels the one before it, which is stale, and results are posted to the main thread only
+ * if their job is still the latest of its key, so a tab switch or a new trial never shows an old chart.
+ * A job must not read anything the main thread changes while it runs, the fragment hands it a snapshot of the trials.
+ * The class uses singleton pattern.
+ */
+public class StatsComputationService {
+
+    /**
+     * Number of background threads, the stats and one graph can be computed at once
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * Most jobs waiting for a thread, more are rejected
+     */
+    public static final int MAX_QUEUED = 8;
+
+    private static final String TAG = "StatsComputation";
+
+    private static StatsComputationService singleton;
+
+    private final ThreadPoolExecutor executor;
+    private final Executor mainThread;
+    private final Map<String, Job<?>> latest = new HashMap<>();
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Interface definition for a callback to be invoked on the main thread when a job is done
+     * @param <T> type of the result
+     */
+    public interface OnResultListener<T> {
+        /**
+         * Called with the result of a job that was not cancelled or replaced
+         * @param result
+         * what the job computed
+         */
+        void onResult(T result);
+    }
+
+    /**
+     * Constructor
+     * @param mainThread
+     * runs the result callbacks, posts to the main thread in the app
+     * @param threads
+     * number of background threads
+     * @param maxQueued
+     * most jobs waiting for a thread
+     */
+    public StatsComputationService(Executor mainThread, int threads, int maxQueued) {
+        this.mainThread = mainThread;
+        threads = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, maxQueued)), r -> {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // idle threads are let go, the stats tab is not always open
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get singleton instance of the class
+     * @return singleton instance
+     */
+    public static StatsComputationService getInstance() {
+        if (singleton == null) {
+            singleton = new StatsComputationService(new Handler(Looper.getMainLooper())::post, DEFAULT_THREADS, MAX_QUEUED);
+        }
+        return singleton;
+    }
+
+    /**
+     * Runs a computation in the background, cancelling the job still running under the same key
+     * @param key
+     * what the job computes, one job per key is kept
+     * @param computation
+     * the computation, must not touch views or anything the main thread changes
+     * @param callback
+     * called on the main thread with the result, unless the job is cancelled or replaced first
+     * @return the job, cancelled already if the queue was full
+     */
+    public <T> Job<T> submit(String key, Callable<T> computation, OnResultListener<T> callback) {
+        Job<T> job = new Job<>(key, computation, callback);
+        Job<?> stale;
+        synchronized (this) {
+            stale = latest.put(key, job);
+        }
+        if (stale != null) {
+            stale.cancel(true);
+        }
+        metrics.recordSubmitted();
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "queue is full, " + key + " is dropped");
+            job.rejected = true;
+            job.cancel(false);
+            metrics.recordRejected();
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the job of a key, its result will not be posted
+     * @param key
+     * what the job computes
+     */
+    public void cancel(String key) {
+        Job<?> job;
+        synchronized (this) {
+            job = latest.get(key);
+        }
+        if (job != null) {
+            job.cancel(true);
+        }
+    }
+
+    /**
+     * If the job of a key is yet to post its result
+     * @param key
+     * what the job computes
+     * @return true if a job of the key is queued, running, or its result is on its way to the main thread
+     */
+    public synchronized boolean isPending(String key) {
+        return latest.containsKey(key);
+    }
+
+    /**
+     * Gets the counters of the jobs run so far
+     * @return metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops tracking a job if it is still the latest of its key
+     * @return true if the job was the latest
+     */
+    private synchronized boolean forget(Job<?> job) {
+        if (latest.get(job.key) != job) {
+            return false;
+        }
+        latest.remove(job.key);
+        return true;
+    }
+
+    /**
+     * Hands the result of a finished job to the main thread, where it is dropped if the job went stale meanwhile
+     */
+    private <T> void deliver(Job<T> job) {
+        if (job.isCancelled()) {
+            if (!job.rejected) {
+                metrics.recordCancelled();
+            }
+            return;
+        }
+        T result;
+        try {
+            result = job.get();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.w(TAG, job.key + " failed", e.getCause() == null ? e : e.getCause());
+            metrics.recordFailed();
+            forget(job);
+            return;
+        }
+        mainThread.execute(() -> {
+            if (!forget(job)) {
+                // replaced after it was done, a newer result is on its way
+                metrics.recordCancelled();
+                return;
+            }
+            metrics.recordCompleted(job.getWaitNanos(), job.getComputeNanos());
+            job.callback.onResult(result);
+        });
+    }
+
+    /**
+     * A computation submitted to a {@link StatsComputationService}, with its timing
+     * @param <T> type of the result
+     */
+    public class Job<T> extends FutureTask<T> {
+
+        private final String key;
+        private final OnResultListener<T> callback;
+        private final long submitNanos = System.nanoTime();
+        private volatile long startNanos = 0;
+        private volatile long endNanos = 0;
+        private volatile boolean rejected = false;
+
+        private Job(String key, Callable<T> computation, OnResultListener<T> callback) {
+            super(computation);
+            this.key = key;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancels the job, its result will not be posted. A running computation is interrupted, it keeps running
+         * unless it checks for it, and its result is dropped.
+         * @param mayInterruptIfRunning
+         * if the thread running the computation is interrupted
+         * @return false if the job was done already
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            forget(this);
+            // frees its place in the queue
+            executor.remove(this);
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            endNanos = System.nanoTime();
+            deliver(this);
+        }
+
+        /**
+         * Gets what the job computes
+         * @return key of the job
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the time the job waited for a thread
+         * @return nanoseconds from submit to start, 0 if it never started
+         */
+        public long getWaitNanos() {
+            return startNanos == 0 ? 0 : startNanos - submitNanos;
+        }
+
+        /**
+         * Gets the time the computation took
+         * @return nanoseconds from start to end, 0 if it did not start or is not done
+         */
+        public long getComputeNanos() {
+            return startNanos == 0 || endNanos == 0 ? 0 : endNanos - startNanos;
+        }
+    }
+
+    /**
+     * Counters of the jobs run by a {@link StatsComputationService}
+     */
+    public static class Metrics {
+
+        private long submittedCount = 0;
+        private long completedCount = 0;
+        private long cancelledCount = 0;
+        private long failedCount = 0;
+        private long rejectedCount = 0;
+        private long totalWaitNanos = 0;
+        private long totalComputeNanos = 0;
+        private long maxComputeNanos = 0;
+
+        synchronized void recordSubmitted() {
+            submittedCount++;
+        }
+
+        synchronized void recordCompleted(long waitNanos, long computeNanos) {
+            completedCount++;
+            totalWaitNanos += waitNanos;
+            totalComputeNanos += computeNanos;
+            maxComputeNanos = Math.max(maxComputeNanos, computeNanos);
+        }
+
+        synchronized void recordCancelled() {
+            cancelledCount++;
+        }
+
+        synchronized void recordFailed() {
+            failedCount++;
+        }
+
+        synchronized void recordRejected() {
+            rejectedCount++;
+        }
+
+        /**
+         * Gets the number of jobs submitted
+         * @return number of jobs
+         */
+        public synchronized long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        /**
+         * Gets the number of jobs whose result was posted
+         * @return number of completed jobs
+         */
+        public synchronized long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * Gets the number of jobs cancelled or replaced before their result was posted
+         * @return number of cancelled jobs
+         */
+        public synchronized long getCancelledCount() {
+            return cancelledCount;
+        }
+
+        /**
+         * Gets the number of jobs whose computation threw
+         * @return number of failed jobs
+         */
+        public synchronized long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * Gets the number of jobs dropped because the queue was full
+         * @return number of rejected jobs
+         */
+        public synchronized long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * Gets the mean time a completed job waited for a thread
+         * @return mean wait in milliseconds, 0 if no job completed
+         */
+        public synchronized double getMeanWaitMillis() {
+            return completedCount == 0 ? 0 : totalWaitNanos / 1e6 / completedCount;
+        }
+
+        /**
+         * Gets the mean time the computation of a completed job took
+         * @return mean compute time in milliseconds, 0 if no job completed
+         */
+        public synchronized double getMeanComputeMillis() {
+            return completedCount == 0 ? 0 : totalComputeNanos / 1e6 / completedCount;
+        }
+
+        /**
+         * Gets the longest time the computation of a completed job took
+         * @return max compute time in milliseconds
+         */
+        public synchronized double getMaxComputeMillis() {
+            return maxComputeNanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the summary statistics of trial values.
+ * Values are copied once into a primitive buffer; count, sum, mean and variance are kept up to date
+ * as values are added or removed (Welford's method), and the order statistics come from a single in-place sort
+ * when {@link #summarize()} is called. Once summarized, the buffer stays sorted: later values are inserted
+ * at their binary searched place, so a live feed of a few trials at a time never sorts again.
+ */
+public class StatsEngine {
+
+    /**
+     * Number of values above which {@link StatsMaker} estimates the order statistics from a sketch
+     * instead of copying and sorting every value
+     */
+    public static final int APPROXIMATE_THRESHOLD = 100_000;
+
+    private double[] values;
+    private int size = 0;
+    private boolean sorted = true;
+    private boolean keepSorted = false;     // set by the first summarize
+
+    // running moments
+    private double sum = 0;
+    private double mean = 0;
+    private double m2 = 0;
+
+    /**
+     * Constructor
+     */
+    public StatsEngine() {
+        this(16);
+    }
+
+    /**
+     * Constructor
+     * @param capacity
+     * expected number of values, the buffer grows if more are added
+     */
+    public StatsEngine(int capacity) {
+        values = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Summarizes a list of trials. Trials are summarized as is, ignored trials should be filtered beforehand.
+     * @param trials
+     * list of trials
+     * @return summary of the values of the trials given
+     */
+    public static StatsSummary summarize(List<Trial> trials) {
+        StatsEngine engine = new StatsEngine(trials.size());
+        engine.addTrials(trials);
+        return engine.summarize();
+    }
+
+    /**
+     * Summarizes the trials of a column store. Unlike the list version, ignored rows are skipped here.
+     * @param columns
+     * trial columns
+     * @return summary of the values of the trials that are not ignored
+     */
+    public static StatsSummary summarize(TrialColumns columns) {
+        StatsEngine engine = new StatsEngine(columns.activeCount());
+        for (int i = 0; i < columns.size(); i++) {
+            if (!columns.isIgnored(i)) {
+                engine.add(columns.getValue(i));
+            }
+        }
+        return engine.summarize();
+    }
+
+    /**
+     * Summarizes the trials of a column store without copying or sorting their values. Count, sum, mean, variance,
+     * min and max are exact; the quartiles and median are estimated from a {@link QuantileSketch}. Ignored rows are skipped.
+     * @param columns
+     * trial columns
+     * @param compression
+     * accuracy of the sketch, see {@link QuantileSketch#DEFAULT_COMPRESSION}
+     * @return approximate summary of the values of the trials that are not ignored
+     */
+    public static StatsSummary summarizeApproximate(TrialColumns columns, int compression) {
+        QuantileSketch sketch = new QuantileSketch(compression);
+        int count = 0;
+        double sum = 0;
+        double mean = 0;
+        double m2 = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.isIgnored(i)) {
+                continue;
+            }
+            double value = columns.getValue(i);
+            sketch.add(value);
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+        return summarize(sketch, sum, count == 0 ? Double.NaN : m2 / count);
+    }
+
+    /**
+     * Summarizes a sketch of values and their exact moments, for example those kept in a rollup
+     * @param sketch
+     * sketch of the values
+     * @param sum
+     * sum of the values
+     * @param variance
+     * population variance of the values
+     * @return approximate summary of the values
+     */
+    public static StatsSummary summarize(QuantileSketch sketch, double sum, double variance) {
+        int count = (int) sketch.getCount();
+        if (count == 0) {
+            return new StatsSummary(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, true);
+        }
+        return new StatsSummary(count, sum, sum / count, variance, sketch.getMin(), sketch.quantile(0.25),
+                sketch.quantile(0.5), sketch.quantile(0.75), sketch.getMax(), true);
+    }
+
+    /**
+     * Gets the numeric value of a trial, the value used by all statistics.
+     * @param trial
+     * trial to read
+     * @return count for count and non-negative trials, 1 or 0 for binomial trials, the measurement for measurement trials
+     */
+    public static double valueOf(Trial trial) {
+        switch (trial.getTrialType()) {
+            case Trial.BINOMIAL:
+                return ((BinomialTrial) trial).getPass() ? 1 : 0;
+            case Trial.COUNT:
+                return ((CountTrial) trial).getCount();
+            case Trial.NONNEGATIVE:
+                return ((NonNegativeTrial) trial).getCount();
+            case Trial.MEASURE:
+                return ((MeasurementTrial) trial).getValue();
+            default:
+                throw new IllegalArgumentException("Unknown trial type: " + trial.getTrialType());
+        }
+    }
+
+    /**
+     * Adds a value
+     * @param value
+     * value to add
+     */
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (size > 0 && value < values[size - 1]) {
+            if (sorted && keepSorted) {
+                int at = insertionPoint(value);
+                System.arraycopy(values, at, values, at + 1, size - at);
+                values[at] = value;
+                size++;
+                addMoments(value);
+                return;
+            }
+            sorted = false;
+        }
+        values[size++] = value;
+        addMoments(value);
+    }
+
+    private void addMoments(double value) {
+        sum += value;
+        double delta = value - mean;
+        mean += delta / size;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Removes one copy of a value
+     * @param value
+     * value to remove
+     * @return true if the value was there
+     */
+    public boolean remove(double value) {
+        int at = -1;
+        if (sorted) {
+            int i = insertionPoint(value) - 1;
+            if (i >= 0 && Double.compare(values[i], value) == 0) {
+                at = i;
+                System.arraycopy(values, at + 1, values, at, size - at - 1);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (Double.compare(values[i], value) == 0) {
+                    at = i;
+                    // order does not matter until the next sort
+                    values[i] = values[size - 1];
+                    break;
+                }
+            }
+        }
+        if (at < 0) {
+            return false;
+        }
+        size--;
+
+        if (size == 0) {
+            sum = 0;
+            mean = 0;
+            m2 = 0;
+            return true;
+        }
+        sum -= value;
+        double oldMean = mean;
+        mean = (oldMean * (size + 1) - value) / size;
+        m2 = Math.max(0, m2 - (value - oldMean) * (value - mean));
+        return true;
+    }
+
+    /**
+     * Removes the value of a trial
+     * @param trial
+     * trial to remove
+     * @return true if the value was there
+     */
+    public boolean removeTrial(Trial trial) {
+        return remove(valueOf(trial));
+    }
+
+    /**
+     * Adds the value of a trial
+     * @param trial
+     * trial to add
+     */
+    public void addTrial(Trial trial) {
+        add(valueOf(trial));
+    }
+
+    /**
+     * Adds the values of a list of trials
+     * @param trials
+     * list of trials
+     */
+    public void addTrials(List<Trial> trials) {
+        int needed = size + trials.size();
+        if (needed > values.length) {
+            values = Arrays.copyOf(values, Math.max(needed, values.length * 2));
+        }
+        for (Trial t : trials) {
+            add(valueOf(t));
+        }
+    }
+
+    /**
+     * Gets the number of values added so far
+     * @return
+     * number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Summarizes all the values added so far. The engine can keep taking values afterwards.
+     * @return
+     * an immutable summary
+     */
+    public StatsSummary summarize() {
+        if (size == 0) {
+            return new StatsSummary(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+        keepSorted = true;
+
+        // lower half excludes the middle value when size is odd, same as StatsMaker.calcQuartiles
+        int half = size / 2;
+        int upperStart = half + size % 2;
+        double q1 = half == 0 ? values[0] : medianOfSorted(values, 0, half);
+        double q3 = half == 0 ? values[0] : medianOfSorted(values, upperStart, size);
+
+        return new StatsSummary(size, sum, mean, m2 / size,
+                values[0], q1, medianOfSorted(values, 0, size), q3, values[size - 1]);
+    }
+
+    /**
+     * Index after the last value not greater than the given one, in the sorted buffer
+     */
+    private int insertionPoint(double value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Double.compare(values[mid], value) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Median of a sorted range
+     * @param sorted
+     * sorted values
+     * @param from
+     * start of range, inclusive
+     * @param to
+     * end of range, exclusive
+     * @return median of the range
+     */
+    static double medianOfSorted(double[] sorted, int from, int to) {
+        int n = to - from;
+        int mid = from + n / 2;
+        return n % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+}
@@ -7,12 +7,14 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.TextView;
 
-import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentRollup;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
 import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
 import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
 import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
 import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
 import com.DivineInspiration.experimenter.R;
 
 import java.text.DecimalFormat;
@@ -20,6 +22,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * Makes the statistics view of an experiment. The summary itself is computed by {@link StatsEngine},
+ * the static calc methods below are kept for callers that only need a single value.
+ */
 public class StatsMaker {
 
 
@@ -36,12 +42,73 @@ public class StatsMaker {
         if(trials == null){
             return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
         }
+        return makeStatsView(context, TrialColumns.of(trials));
+    }
 
-        trials = TrialManager.getInstance().filterIgnoredTrials(trials);
-        if(trials.size() < 3){
+    /**
+     * Makes a view containing statistic depending on the type of trial given, reading the trials from their columns.
+     * Ignored trials are skipped. Past {@link StatsEngine#APPROXIMATE_THRESHOLD} trials the median and quartiles
+     * are estimated instead of sorting every value.
+     * @param context
+     * @param trials
+     * columns of the trials
+     * @return a view containing statics appropriate to the trials given.
+     */
+    @SuppressLint("DefaultLocale")
+    public static View makeStatsView(Context context, TrialColumns trials) {
+        if(trials == null){
+            return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
+        }
+        StatsSummary summary = trials.activeCount() > StatsEngine.APPROXIMATE_THRESHOLD
+                ? StatsEngine.summarizeApproximate(trials, QuantileSketch.DEFAULT_COMPRESSION)
+                : StatsEngine.summarize(trials);
+        return makeStatsView(context, trials.getTrialType(), summary);
+    }
+
+    /**
+     * Makes a view containing statistic from the rollup of an experiment, one document read instead of every trial.
+     * The median and quartiles come from the rollup's sketch, and are left out once a delete or ban made it inexact;
+     * the min and max are left out once a delete made them inexact.
+     * @param context
+     * @param rollup
+     * the rollup of the experiment
+     * @return a view containing statics appropriate to the trials given.
+     */
+    @SuppressLint("DefaultLocale")
+    public static View makeStatsView(Context context, ExperimentRollup rollup) {
+        if(rollup == null){
+            return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
+        }
+        ExperimentRollup.Aggregate total = rollup.getTotal();
+        double min = total.isMinMaxExact() ? total.getMin() : Double.NaN;
+        double max = total.isMinMaxExact() ? total.getMax() : Double.NaN;
+        StatsSummary summary;
+        if (rollup.isSketchExact() && rollup.getSketch().getCount() == total.getCount()) {
+            StatsSummary sketched = StatsEngine.summarize(rollup.getSketch(), total.getSum(), total.getVariance());
+            summary = new StatsSummary((int) total.getCount(), total.getSum(), total.getMean(), total.getVariance(),
+                    min, sketched.getQ1(), sketched.getMedian(), sketched.getQ3(), max, true);
+        } else {
+            summary = new StatsSummary((int) total.getCount(), total.getSum(), total.getMean(), total.getVariance(),
+                    min, Double.NaN, Double.NaN, Double.NaN, max);
+        }
+        return makeStatsView(context, rollup.getTrialType(), summary);
+    }
+
+    /**
+     * Makes a view containing statistic from a summary that was already computed, for example one
+     * folded page by page as the trials arrive.
+     * @param context
+     * @param type
+     * trial type of the summarized trials
+     * @param summary
+     * summary of the trials that are not ignored
+     * @return a view containing statics appropriate to the trials given.
+     */
+    @SuppressLint("DefaultLocale")
+    public static View makeStatsView(Context context, String type, StatsSummary summary) {
+        if(type == null || summary == null || summary.getCount() < 3){
             return LayoutInflater.from(context).inflate(R.layout.stat_warning, null);
         }
-        final String type = trials.get(0).getTrialType();
         DecimalFormat fmt = new DecimalFormat("0.##");
 
         View view = LayoutInflater.from(context).inflate(R.layout.stat_view, null);
@@ -56,7 +123,7 @@ public class StatsMaker {
         TextView passes = view.findViewById(R.id.statPass);
         switch (type) {
             case Trial.COUNT:
-                total.setText(String.format("Total count:  %d", (int) calcSum(trials)));
+                total.setText(String.format("Total count:  %d", (int) summary.getSum()));
                 break;
             case Trial.NONNEGATIVE:
                 total.setVisibility(View.GONE);
@@ -67,24 +134,32 @@ public class StatsMaker {
                 median.setVisibility(View.GONE);
                 minMax.setVisibility(View.GONE);
                 quartiles.setVisibility(View.GONE);
-                double[] binomialStats = calcBinomialStats(trials); //get binomial related stats
-                passes.setText(String.format("Passes:  %s,  Fails:  %s, Ratio:  %.2f", fmt.format(binomialStats[0]), fmt.format(binomialStats[1]), binomialStats[2]));
+                passes.setText(String.format("Passes:  %s,  Fails:  %s, Ratio:  %.2f", fmt.format(summary.getPassCount()), fmt.format(summary.getFailCount()), summary.getPassRatio()));
             case Trial.MEASURE:
                 total.setVisibility(View.GONE);
         }
 
         if (!type.equals(Trial.BINOMIAL)) {
             //the following are applicable to all types except
-            double[] quarts = calcQuartiles(trials);
             passes.setVisibility(View.GONE);
-            median.setText(String.format("Median:  %.4f", calcMedian(trials)));
-            minMax.setText(String.format("Min:  %s,  Max:  %s", fmt.format(quarts[2]), fmt.format(quarts[3])));
-            quartiles.setText(String.format("Q1: %s, Q3: %s", fmt.format(quarts[0]), fmt.format(quarts[1])));
+            // estimates from a sketch are marked as such
+            String approx = summary.isApproximate() ? "~" : "";
+            median.setText(String.format("Median:  %s%.4f", approx, summary.getMedian()));
+            minMax.setText(String.format("Min:  %s,  Max:  %s", fmt.format(summary.getMin()), fmt.format(summary.getMax())));
+            quartiles.setText(String.format("Q1: %s%s, Q3: %s%s", approx, fmt.format(summary.getQ1()), approx, fmt.format(summary.getQ3())));
+            // a summary from a rollup without an exact sketch has no order statistics
+            if (Double.isNaN(summary.getMedian())) {
+                median.setVisibility(View.GONE);
+                quartiles.setVisibility(View.GONE);
+            }
+            if (Double.isNaN(summary.getMin())) {
+                minMax.setVisibility(View.GONE);
+            }
         }
 
-        trialCount.setText(String.format("Total Trial Count:  %d", trials.size()));
-        mean.setText(String.format("Mean:  %.4f", calcMean(trials)));
-        stdDev.setText(String.format("Standard Deviation:  %.4f", calcStd(trials)));
+        trialCount.setText(String.format("Total Trial Count:  %d", summary.getCount()));
+        mean.setText(String.format("Mean:  %.4f", summary.getMean()));
+        stdDev.setText(String.format("Standard Deviation:  %.4f", summary.getStd()));
 
 
         return view;
@@ -0,0 +1,188 @@
+package com.DivineInspiration.experimenter.Activity.UI.Stats;
+
+/**
+ * An immutable snapshot of the summary statistics of a list of trials.
+ * Made by {@link StatsEngine}, and shared by {@link StatsMaker} and {@link GraphMaker}.
+ */
+public final class StatsSummary {
+
+    private final int count;
+    private final double sum;
+    private final double mean;
+    private final double variance;
+    private final double min;
+    private final double q1;
+    private final double median;
+    private final double q3;
+    private final double max;
+    private final boolean approximate;
+
+    /**
+     * Constructor
+     * @param count number of values summarized
+     * @param sum sum of all values
+     * @param mean mean of all values
+     * @param variance population variance of all values
+     * @param min smallest value
+     * @param q1 first quartile
+     * @param median median
+     * @param q3 third quartile
+     * @param max largest value
+     */
+    public StatsSummary(int count, double sum, double mean, double variance, double min, double q1, double median, double q3, double max) {
+        this(count, sum, mean, variance, min, q1, median, q3, max, false);
+    }
+
+    /**
+     * Constructor
+     * @param count number of values summarized
+     * @param sum sum of all values
+     * @param mean mean of all values
+     * @param variance population variance of all values
+     * @param min smallest value
+     * @param q1 first quartile
+     * @param median median
+     * @param q3 third quartile
+     * @param max largest value
+     * @param approximate if the quartiles and median are estimated from a sketch
+     */
+    public StatsSummary(int count, double sum, double mean, double variance, double min, double q1, double median, double q3, double max, boolean approximate) {
+        this.count = count;
+        this.sum = sum;
+        this.mean = mean;
+        this.variance = variance;
+        this.min = min;
+        this.q1 = q1;
+        this.median = median;
+        this.q3 = q3;
+        this.max = max;
+        this.approximate = approximate;
+    }
+
+    /**
+     * Gets the number of values
+     * @return
+     * number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the sum of the values
+     * @return
+     * sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the mean of the values
+     * @return
+     * mean, NaN if there are no values
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Gets the population variance of the values
+     * @return
+     * variance, NaN if there are no values
+     */
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Gets the population standard deviation of the values
+     * @return
+     * standard deviation, NaN if there are no values
+     */
+    public double getStd() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Gets the smallest value
+     * @return
+     * min
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the first quartile, the median of the lower half of the values
+     * @return
+     * Q1
+     */
+    public double getQ1() {
+        return q1;
+    }
+
+    /**
+     * Gets the median of the values
+     * @return
+     * median
+     */
+    public double getMedian() {
+        return median;
+    }
+
+    /**
+     * Gets the third quartile, the median of the upper half of the values
+     * @return
+     * Q3
+     */
+    public double getQ3() {
+        return q3;
+    }
+
+    /**
+     * Gets the largest value
+     * @return
+     * max
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the number of passes, only meaningful for binomial trials where a pass has the value 1
+     * @return
+     * number of passes
+     */
+    public int getPassCount() {
+        return (int) Math.round(sum);
+    }
+
+    /**
+     * Gets the number of fails, only meaningful for binomial trials
+     * @return
+     * number of fails
+     */
+    public int getFailCount() {
+        return count - getPassCount();
+    }
+
+    /**
+     * Gets the percentage of passes over all trials, only meaningful for binomial trials
+     * @return
+     * success ratio, in percent
+     */
+    public double getPassRatio() {
+        return count == 0 ? 0 : 100.0 * getPassCount() / count;
+    }
+
+    /**
+     * If the quartiles and median are estimates from a {@link com.DivineInspiration.experimenter.Model.QuantileSketch}
+     * rather than read from the sorted values
+     * @return
+     * true if approximate
+     */
+    public boolean isApproximate() {
+        return approximate;
+    }
+}
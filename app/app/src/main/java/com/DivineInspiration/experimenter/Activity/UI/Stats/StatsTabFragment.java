@@ -11,24 +11,46 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageButton;
 import androidx.fragment.app.Fragment;
 
-import com.DivineInspiration.experimenter.Activity.Observer;
+import com.DivineInspiration.experimenter.Activity.TrialDeltaObserver;
+import com.DivineInspiration.experimenter.Controller.DayBucket;
+import com.DivineInspiration.experimenter.Controller.ExperimentRollup;
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
 import com.DivineInspiration.experimenter.R;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 
 /**
- * Fragment to handle displaying stats and graphs of a experiment
+ * Fragment to handle displaying stats and graphs of a experiment.
+ * Sorting the values and computing the charts of a large experiment takes too long for the main thread, so they are
+ * computed by the {@link StatsComputationService} from a snapshot of the trials, and shown when done. A new trial or
+ * leaving the tab cancels the computations still running, they would show trials that are out of date.
  */
-public class StatsTabFragment extends Fragment implements Observer {
+public class StatsTabFragment extends Fragment implements TrialDeltaObserver {
+
+    private static final int NO_GRAPH = 0;
+    private static final int HISTOGRAM = 1;
+    private static final int LINE_GRAPH = 2;
 
     private View buttonGroup;
     private AppCompatImageButton backButton;
     private ViewGroup graphHolder;
     private ViewGroup statHolder;
-    private List<Trial> trialList = new ArrayList<>();
+    private TrialColumns trialColumns = new TrialColumns(16);
+    private StatsEngine runningStats = new StatsEngine();     // values of the trials that are not ignored, kept up to date delta by delta, null while computed
+    private ExperimentRollup rollup;                          // summary shown until the trials arrive
+    private boolean trialsDelivered = false;
+    private List<DayBucket> days;                             // per day aggregates for the line graph, dropped once a trial changes
+    private int daysGeneration = 0;                           // bumped when the days are dropped, a read started before is ignored
+    private boolean repairRequested = false;
+    private String experimentId;
+    private int shownGraph = NO_GRAPH;
+    private final String statsJob = "StatsTab@" + Integer.toHexString(System.identityHashCode(this)) + "/stats";
+    private final String graphJob = "StatsTab@" + Integer.toHexString(System.identityHashCode(this)) + "/graph";
 
     /**
      * When creating view
@@ -86,6 +108,99 @@ public class StatsTabFragment extends Fragment implements Observer {
         });
 
       showStats();
+
+        // the rollup is one document, it can be shown while the trials load
+        experimentId = getArguments() == null ? null : getArguments().getString("experimentID");
+        if (experimentId != null && !trialsDelivered) {
+            TrialManager.getInstance().queryRollup(experimentId, rollup -> {
+                this.rollup = rollup;
+                repairMissingRollup();
+                if (getView() != null && (!trialsDelivered || runningStats == null) && buttonGroup.getVisibility() == View.VISIBLE) {
+                    showStats();
+                }
+            });
+            // one small document per day instead of every trial, null if a ban left them stale
+            int generation = daysGeneration;
+            TrialManager.getInstance().queryDaySeries(experimentId, days -> {
+                if (generation == daysGeneration) {
+                    this.days = days;
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the days after a change to the trials, a read of them still on its way is ignored
+     */
+    private void dropDays() {
+        days = null;
+        daysGeneration++;
+    }
+
+    /**
+     * If the rollup holds the trials shown: an experiment whose trials were written before rollups has none,
+     * and the rollup falls behind the trials that changed since it was read
+     * @return true if the rollup can stand in for the trials
+     */
+    private boolean rollupMatchesTrials() {
+        if (rollup == null || rollup.getTrialType() == null) {
+            return false;
+        }
+        return !trialsDelivered || rollup.getTotal().getCount() == trialColumns.activeCount();
+    }
+
+    /**
+     * If the days hold the trials shown, the same check as {@link #rollupMatchesTrials()}
+     * @return true if the line graph can be drawn from the days
+     */
+    private boolean daysMatchTrials() {
+        if (days == null) {
+            return false;
+        }
+        long count = 0;
+        for (DayBucket day : days) {
+            count += day.getCount();
+        }
+        if (trialsDelivered) {
+            return count == trialColumns.activeCount();
+        }
+        return rollupMatchesTrials() && count == rollup.getTotal().getCount();
+    }
+
+    /**
+     * Rebuilds the rollup and days of an experiment whose trials were written before rollups were, once per view
+     */
+    private void repairMissingRollup() {
+        if (repairRequested || experimentId == null || rollup == null || rollup.getTrialType() != null || trialColumns.size() == 0) {
+            return;
+        }
+        repairRequested = true;
+        TrialManager.getInstance().checkRollup(experimentId, true, (drift, repaired) -> {});
+    }
+
+    /**
+     * When the fragment is resumed, computes again what was cancelled when it was paused
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        StatsComputationService service = StatsComputationService.getInstance();
+        if (trialsDelivered && runningStats == null && !service.isPending(statsJob)) {
+            submitStats();
+        }
+        if (shownGraph != NO_GRAPH && graphHolder.getChildCount() == 0 && !service.isPending(graphJob)) {
+            submitGraph();
+        }
+    }
+
+    /**
+     * When the fragment is paused, as when another tab is selected, cancels the computations nobody will see
+     */
+    @Override
+    public void onPause() {
+        super.onPause();
+        StatsComputationService.getInstance().cancel(statsJob);
+        StatsComputationService.getInstance().cancel(graphJob);
     }
 
     /**
@@ -95,8 +210,9 @@ public class StatsTabFragment extends Fragment implements Observer {
         backButton.setVisibility(View.VISIBLE);
         buttonGroup.setVisibility(View.GONE);
         graphHolder.removeAllViews();
-        graphHolder.addView(GraphMaker.makeHistogram(trialList, getContext()));
         statHolder.removeAllViews();
+        shownGraph = HISTOGRAM;
+        submitGraph();
     }
 
     /**
@@ -107,7 +223,19 @@ public class StatsTabFragment extends Fragment implements Observer {
         buttonGroup.setVisibility(View.VISIBLE);
         graphHolder.removeAllViews();
         statHolder.removeAllViews();
-        statHolder.addView(StatsMaker.makeStatsView(getContext(), trialList));
+        if (shownGraph != NO_GRAPH) {
+            shownGraph = NO_GRAPH;
+            StatsComputationService.getInstance().cancel(graphJob);
+        }
+        // the rollup is shown until the stats of the trials are computed
+        if ((!trialsDelivered || runningStats == null) && rollupMatchesTrials()) {
+            statHolder.addView(StatsMaker.makeStatsView(getContext(), rollup));
+            return;
+        }
+        if (runningStats == null) {
+            return;
+        }
+        statHolder.addView(StatsMaker.makeStatsView(getContext(), trialColumns.getTrialType(), runningStats.summarize()));
     }
 
     /**
@@ -117,21 +245,157 @@ public class StatsTabFragment extends Fragment implements Observer {
         backButton.setVisibility(View.VISIBLE);
         buttonGroup.setVisibility(View.GONE);
         graphHolder.removeAllViews();
-        graphHolder.addView(GraphMaker.makeLineChart(trialList, getContext()));
         statHolder.removeAllViews();
+        shownGraph = LINE_GRAPH;
+        submitGraph();
+    }
+
+    /**
+     * Computes the series of the shown graph in the background, then makes the chart of it on the main thread.
+     * A graph still being computed is replaced.
+     */
+    private void submitGraph() {
+        int graph = shownGraph;
+        Callable<ChartSeries> computation;
+        if (graph == LINE_GRAPH && daysMatchTrials()) {
+            List<DayBucket> days = this.days;
+            String type = trialColumns.size() > 0 ? trialColumns.getTrialType() : rollup == null ? null : rollup.getTrialType();
+            computation = () -> GraphMaker.lineSeries(type, days);
+        } else {
+            // the feed keeps adding to the columns, the job reads a copy
+            TrialColumns snapshot = trialColumns.snapshot();
+            computation = graph == HISTOGRAM
+                    ? () -> GraphMaker.histogramSeries(snapshot)
+                    : () -> GraphMaker.lineSeries(snapshot);
+        }
+        StatsComputationService.getInstance().submit(graphJob, computation, series -> {
+            if (getView() != null && shownGraph == graph) {
+                graphHolder.removeAllViews();
+                graphHolder.addView(GraphMaker.makeChart(series, getContext()));
+            }
+        });
     }
 
     /**
-     * To be called when the content trialList should be updated
+     * Folds and sorts the values of all the trials in the background, a stats computation still running is replaced.
+     * Until it is done the running stats are null, the deltas that arrive meanwhile submit it again.
+     */
+    private void submitStats() {
+        runningStats = null;
+        TrialColumns snapshot = trialColumns.snapshot();
+        StatsComputationService.getInstance().submit(statsJob, () -> {
+            StatsEngine engine = new StatsEngine(snapshot.activeCount());
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (!snapshot.isIgnored(i)) {
+                    engine.add(snapshot.getValue(i));
+                }
+            }
+            // the first summary sorts, later ones on the main thread only insert
+            engine.summarize();
+            return engine;
+        }, engine -> {
+            runningStats = engine;
+            if (getView() != null && buttonGroup.getVisibility() == View.VISIBLE) {
+                showStats();
+            }
+        });
+    }
+
+    /**
+     * Computes the shown graph again if it is still being computed, from trials that have changed since,
+     * or if it was drawn before the first trials arrived
+     * @param first
+     * if these are the first trials delivered
+     */
+    private void resubmitGraph(boolean first) {
+        if (shownGraph != NO_GRAPH && (first || StatsComputationService.getInstance().isPending(graphJob))) {
+            submitGraph();
+        }
+    }
+
+    /**
+     * To be called when the content trialColumns should be updated
+     * @param data
+     * the trial columns, or a list of trials to build them from
      */
     @Override
     public void update(Object data) {
+        // a whole delivery can be the same trials again, the days are checked against them before they are used
+        boolean first = !trialsDelivered;
+        trialsDelivered = true;
 
-        trialList.clear();
-        trialList.addAll((List<Trial>) data);
+        if (data instanceof TrialColumns) {
+            trialColumns = (TrialColumns) data;
+        } else {
+            trialColumns = TrialColumns.of((List<Trial>) data);
+        }
+        submitStats();
+        resubmitGraph(first);
+        repairMissingRollup();
 
         if (getView() != null) {
             showStats();
         }
     }
+
+    /**
+     * Folds the changed trials into the running stats, the trials that did not change are not read
+     * @param delta
+     * what changed since the last delivery
+     */
+    @Override
+    public void applyDelta(ExperimentTrialFeed.Delta delta) {
+        boolean first = !trialsDelivered;
+        trialsDelivered = true;
+        trialColumns = delta.getColumns();
+        if (delta.isInitial()) {
+            // every trial, as when the tab is made again: not a change, the days are checked against them
+            submitStats();
+        } else if (runningStats == null) {
+            // the stats being computed are out of date
+            dropDays();
+            submitStats();
+        } else {
+            // the days were read before this change
+            dropDays();
+            for (Trial trial : delta.getRemoved()) {
+                removeValue(trial);
+            }
+            for (Trial trial : delta.getReplaced()) {
+                removeValue(trial);
+            }
+            for (Trial trial : delta.getModified()) {
+                addValue(trial);
+            }
+            for (Trial trial : delta.getAdded()) {
+                addValue(trial);
+            }
+            // a ban or unban flips only the trials of that owner
+            for (Trial trial : delta.getIgnoredChanged()) {
+                if (trial.isIgnored()) {
+                    runningStats.removeTrial(trial);
+                } else {
+                    runningStats.addTrial(trial);
+                }
+            }
+        }
+        resubmitGraph(first);
+        repairMissingRollup();
+
+        if (getView() != null && buttonGroup.getVisibility() == View.VISIBLE) {
+            showStats();
+        }
+    }
+
+    private void addValue(Trial trial) {
+        if (!trial.isIgnored()) {
+            runningStats.addTrial(trial);
+        }
+    }
+
+    private void removeValue(Trial trial) {
+        if (!trial.isIgnored()) {
+            runningStats.removeTrial(trial);
+        }
+    }
 }
@@ -269,7 +269,7 @@ public class CreateTrialDialogFragment extends DialogFragment implements EasyPer
                     true,
                     trialLocation
             );
-            TrialManager.getInstance().addTrial(binomialTrial, trials -> {});
+            TrialManager.getInstance().getWriteBuffer().add(binomialTrial, null);
             callback.onTrialAdded(binomialTrial);
         }
 
@@ -282,7 +282,7 @@ public class CreateTrialDialogFragment extends DialogFragment implements EasyPer
                     false,
                     trialLocation
             );
-            TrialManager.getInstance().addTrial(binomialTrial, trials -> {});
+            TrialManager.getInstance().getWriteBuffer().add(binomialTrial, null);
             callback.onTrialAdded(binomialTrial);
         }
     }
@@ -305,7 +305,7 @@ public class CreateTrialDialogFragment extends DialogFragment implements EasyPer
                 trialLocation
         );
 
-        TrialManager.getInstance().addTrial(countTrial, trials -> {});
+        TrialManager.getInstance().getWriteBuffer().add(countTrial, null);
         callback.onTrialAdded(countTrial);
     }
 
@@ -328,7 +328,7 @@ public class CreateTrialDialogFragment extends DialogFragment implements EasyPer
                 trialLocation
         );
 
-        TrialManager.getInstance().addTrial(nonNegativeTrial, trials -> {});
+        TrialManager.getInstance().getWriteBuffer().add(nonNegativeTrial, null);
         callback.onTrialAdded(nonNegativeTrial);
     }
 
@@ -350,7 +350,7 @@ public class CreateTrialDialogFragment extends DialogFragment implements EasyPer
                 measureValue,
                 trialLocation
         );
-        TrialManager.getInstance().addTrial(measurementTrial, trials -> { });
+        TrialManager.getInstance().getWriteBuffer().add(measurementTrial, null);
         callback.onTrialAdded(measurementTrial);
     }
 
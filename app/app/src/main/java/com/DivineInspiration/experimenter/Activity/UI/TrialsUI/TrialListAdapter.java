@@ -8,8 +8,11 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.DivineInspiration.experimenter.Activity.UI.StableIds;
 import com.DivineInspiration.experimenter.Controller.ExperimentManager;
 import com.DivineInspiration.experimenter.Controller.TrialManager;
 import com.DivineInspiration.experimenter.Controller.UserManager;
@@ -35,29 +38,60 @@ import java.util.List;
  */
 public class TrialListAdapter extends RecyclerView.Adapter<TrialListAdapter.ViewHolder> {
 
-    private List<Trial> trials = new ArrayList<>();
-    private TrialManager.OnTrialListReadyListener callback;
+    /**
+     * A trial as it is shown. Bans flip the ignored state of the trial objects in place,
+     * so the state is copied when the list is submitted, for the diff to see the change.
+     */
+    private static class TrialRow {
+        final Trial trial;
+        final boolean ignored;
+
+        TrialRow(Trial trial) {
+            this.trial = trial;
+            this.ignored = trial.isIgnored();
+        }
+    }
+
+    // rows are compared by trial id, and shown the same unless the trial or its ignored state changed
+    private static final DiffUtil.ItemCallback<TrialRow> DIFF = new DiffUtil.ItemCallback<TrialRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TrialRow oldItem, @NonNull TrialRow newItem) {
+            return oldItem.trial.getTrialID().equals(newItem.trial.getTrialID());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TrialRow oldItem, @NonNull TrialRow newItem) {
+            return oldItem.trial == newItem.trial && oldItem.ignored == newItem.ignored;
+        }
+    };
+
+    // rows, newest first, diffed on a background thread
+    private final AsyncListDiffer<TrialRow> rows = new AsyncListDiffer<>(this, DIFF);
+    private final StableIds stableIds = new StableIds();
+    private ExperimentManager.OnUserBannedListener callback;
     private Experiment experiment;
     private User localUser;
 
     // Constructor
     public TrialListAdapter() {
         super();
+        setHasStableIds(true);
     }
 
     /**
      * Constructor
      * @param trials
-     * list of trials
+     * list of trials, oldest first. They are shown newest first
      * @param callback
-     * callback function for when it is done
+     * callback function for when a user is banned
      * @param experiment
      * the experiment it belongs to
      */
-    public TrialListAdapter(List<Trial> trials, TrialManager.OnTrialListReadyListener callback, Experiment experiment) {
+    public TrialListAdapter(List<Trial> trials, ExperimentManager.OnUserBannedListener callback, Experiment experiment) {
         super();
+        setHasStableIds(true);
 
-        this.trials = trials;
+        setTrials(trials);
         this.callback = callback;
         localUser = UserManager.getInstance().getLocalUser();
         this.experiment = experiment;
@@ -86,7 +120,8 @@ public class TrialListAdapter extends RecyclerView.Adapter<TrialListAdapter.View
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Trial myTrial = trials.get(position);
+        TrialRow row = rows.getCurrentList().get(position);
+        Trial myTrial = row.trial;
         String value = null;
         String type = myTrial.getTrialType();
 
@@ -115,7 +150,7 @@ public class TrialListAdapter extends RecyclerView.Adapter<TrialListAdapter.View
                 break;
         }
 
-        holder.getTrialResult().setText("Result: " + value + (myTrial.isIgnored() ? " - Ignored" : ""));
+        holder.getTrialResult().setText("Result: " + value + (row.ignored ? " - Ignored" : ""));
         holder.getExperimenterName().setText("Experimenter: " + myTrial.getTrialOwnerName());
         holder.getTrialDate().setText(myTrial.getTrialDate().toString());
 
@@ -147,20 +182,12 @@ public class TrialListAdapter extends RecyclerView.Adapter<TrialListAdapter.View
     }
 
     /**
-     * Bans the user of ID
+     * Bans the user of ID, the owner of the list flips the trials of that user
      * @param bannedId
      * user to ban
      */
     private void instantBanUpdate(String bannedId) {
-        List<Trial> updatedTrials = new ArrayList<>();
-        for (Trial t : trials) {
-            if (t.getTrialUserID().equals(bannedId)) {
-                t.setIgnored(true);
-            }
-            updatedTrials.add(t);
-        }
-
-        callback.onTrialsReady(updatedTrials);
+        callback.onUserBanned(bannedId);
     }
 
     /**
@@ -170,18 +197,33 @@ public class TrialListAdapter extends RecyclerView.Adapter<TrialListAdapter.View
      */
     @Override
     public int getItemCount() {
-        return trials.size();
+        return rows.getCurrentList().size();
+    }
+
+    /**
+     * Gets the stable id of an item, the same for a trial in every list
+     * @param position
+     * position in list
+     * @return
+     * item id
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idOf(rows.getCurrentList().get(position).trial.getTrialID());
     }
 
     /**
-     * Resets the adapter with a new list
+     * Updates the adapter with a new list. The list is diffed against the shown one on a background thread,
+     * so new trials are inserted and banned trials are rebound without touching the other rows
      * @param trials
-     * Trials to update list with
+     * Trials to update list with, oldest first. They are shown newest first
      */
     public void setTrials(List<Trial> trials) {
-        this.trials.clear();
-        this.trials.addAll(trials);
-        notifyDataSetChanged();
+        List<TrialRow> newRows = new ArrayList<>(trials.size());
+        for (int i = trials.size() - 1; i >= 0; i--) {
+            newRows.add(new TrialRow(trials.get(i)));
+        }
+        rows.submitList(newRows);
     }
 
     /**
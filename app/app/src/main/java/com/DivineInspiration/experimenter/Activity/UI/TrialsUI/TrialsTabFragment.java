@@ -13,8 +13,9 @@ import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.DivineInspiration.experimenter.Activity.Observer;
-import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Activity.TrialDeltaObserver;
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
 import com.DivineInspiration.experimenter.Model.Experiment;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
 import com.DivineInspiration.experimenter.R;
@@ -26,18 +27,18 @@ import java.util.List;
  * An Activity Fragment that displays an experiments trials. A tab in the Experiment fragment labelled "Trials."
  * @see com.DivineInspiration.experimenter.R.layout#trial_list - Associated xml file
  */
-public class TrialsTabFragment extends Fragment implements Observer {
+public class TrialsTabFragment extends Fragment implements TrialDeltaObserver {
 
     private TrialListAdapter adapter;
     private List<Trial> trialList = new ArrayList<>();
-    private TrialManager.OnTrialListReadyListener callback;
+    private ExperimentManager.OnUserBannedListener callback;
 
     /**
      * Constructor
      * @param callback
-     * callback function for when it is done
+     * callback function for when a user is banned
      */
-    public TrialsTabFragment(TrialManager.OnTrialListReadyListener callback){
+    public TrialsTabFragment(ExperimentManager.OnUserBannedListener callback){
         this.callback = callback;
     }
 
@@ -85,7 +86,21 @@ public class TrialsTabFragment extends Fragment implements Observer {
       Log.d("woah trial tab", "" +   ((List<Trial>) data).size());  //DEBUG
 
         if (adapter != null) {
-            adapter.notifyDataSetChanged();
+            adapter.setTrials(trialList);
+        }
+    }
+
+    /**
+     * Takes the trials after a change, the adapter diffs them so only the changed rows are bound
+     * @param delta
+     * what changed since the last delivery
+     */
+    @Override
+    public void applyDelta(ExperimentTrialFeed.Delta delta) {
+        trialList.clear();
+        trialList.addAll(delta.getTrials());
+        if (adapter != null) {
+            adapter.setTrials(trialList);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes an experiment together with its trials, comments and replies, in batches instead of one write per document.
+ * Documents are read a page at a time and deleted in batches of at most the page size, with a bounded number of
+ * batches in flight. Children are always deleted before their parents (replies, then comments, then the experiment),
+ * so an interrupted or failed run can be resumed by running it again.
+ */
+public class CascadeDeleter {
+
+    /**
+     * Default number of batches committed at the same time
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    public static final String STAGE_TRIALS = "Trials";
+    public static final String STAGE_REPLIES = "Replies";
+    public static final String STAGE_COMMENTS = "Comments";
+    public static final String STAGE_ROLLUP = "Rollup";
+    public static final String STAGE_EXPERIMENT = "Experiment";
+
+    private static final String TAG = "CascadeDeleter";
+
+    private final DocumentStore store;
+    private final int pageSize;
+    private final int maxInFlight;
+
+    private final AtomicInteger deletedCount = new AtomicInteger();
+    private volatile boolean cancelled = false;
+
+    /**
+     * Interface definition for callbacks to be invoked while a {@link CascadeDeleter} runs
+     */
+    public interface OnCascadeProgressListener {
+        /**
+         * Called after each batch is deleted
+         * @param stage
+         * the kind of document being deleted, one of the STAGE constants
+         * @param deleted
+         * number of documents deleted so far, all stages together
+         */
+        void onProgress(String stage, int deleted);
+
+        /**
+         * Called once when the deletion stops
+         * @param successful
+         * true if everything was deleted, false if a read or batch failed or the deleter was cancelled
+         */
+        void onCascadeDone(boolean successful);
+    }
+
+    /**
+     * Constructor, with the largest batches the store allows
+     * @param store
+     * the document store to delete from
+     */
+    public CascadeDeleter(DocumentStore store) {
+        this(store, DocumentStore.MAX_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Constructor
+     * @param store
+     * the document store to delete from
+     * @param pageSize
+     * documents per batch, capped at {@link DocumentStore#MAX_BATCH_SIZE}
+     * @param maxInFlight
+     * number of batches committed at the same time
+     */
+    public CascadeDeleter(DocumentStore store, int pageSize, int maxInFlight) {
+        this.store = store;
+        this.pageSize = Math.max(1, Math.min(pageSize, DocumentStore.MAX_BATCH_SIZE));
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Deletes an experiment, its trials, its comments with their replies, its black list, its trial index marker and its rollup
+     * @param experimentId
+     * the experiment to delete
+     * @param callback
+     * progress callback, can be null
+     */
+    public void deleteExperiment(String experimentId, OnCascadeProgressListener callback) {
+        deleteTrials(experimentId, new Step(callback, () -> deleteComments(experimentId, new Step(callback, () ->
+                deleteRollup(experimentId, new Step(callback, () ->
+                        deletePaths(Arrays.asList("Comments/" + experimentId, "BlackList/" + experimentId,
+                                GeohashBackfill.markerPath(experimentId), "Experiments/" + experimentId),
+                                STAGE_EXPERIMENT, callback, () -> finish(callback, true))))))));
+    }
+
+    /**
+     * Deletes all the trials of an experiment
+     * @param experimentId
+     * the experiment the trials belong to
+     * @param callback
+     * progress callback, can be null
+     */
+    public void deleteTrials(String experimentId, OnCascadeProgressListener callback) {
+        StoreQuery query = new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId).limit(pageSize * maxInFlight);
+        deleteQuery(query, STAGE_TRIALS, callback, () -> finish(callback, true));
+    }
+
+    /**
+     * Deletes the rollup of an experiment and its days
+     * @param experimentId
+     * the experiment the rollup belongs to
+     * @param callback
+     * progress callback, can be null
+     */
+    public void deleteRollup(String experimentId, OnCascadeProgressListener callback) {
+        deleteQuery(new StoreQuery(DayBucket.collectionOf(experimentId)).limit(pageSize * maxInFlight), STAGE_ROLLUP, callback, () ->
+                deletePaths(Arrays.asList(ExperimentRollup.pathOf(experimentId)), STAGE_ROLLUP, callback, () -> finish(callback, true)));
+    }
+
+    /**
+     * Deletes all the comments of an experiment and their replies
+     * @param experimentId
+     * the experiment the comments belong to
+     * @param callback
+     * progress callback, can be null
+     */
+    public void deleteComments(String experimentId, OnCascadeProgressListener callback) {
+        String comments = "Comments/" + experimentId + "/Comments";
+        if (cancelled) {
+            finish(callback, false);
+            return;
+        }
+        store.query(new StoreQuery(comments).limit(pageSize), documents -> {
+            if (documents == null) {
+                Log.d(TAG, "reading comments failed");
+                finish(callback, false);
+            } else if (documents.isEmpty()) {
+                finish(callback, true);
+            } else {
+                // replies first, a comment deleted before its replies would leave them unreachable
+                deleteRepliesOf(documents, 0, callback, () ->
+                        deletePaths(pathsOf(documents), STAGE_COMMENTS, callback, () -> deleteComments(experimentId, callback)));
+            }
+        });
+    }
+
+    /**
+     * Deletes a comment and its replies
+     * @param experimentId
+     * the experiment the comment belongs to
+     * @param commentId
+     * the comment to delete
+     * @param callback
+     * progress callback, can be null
+     */
+    public void deleteComment(String experimentId, String commentId, OnCascadeProgressListener callback) {
+        String comment = "Comments/" + experimentId + "/Comments/" + commentId;
+        deleteQuery(new StoreQuery(comment + "/Replies").limit(pageSize * maxInFlight), STAGE_REPLIES, callback, () ->
+                deletePaths(Arrays.asList(comment), STAGE_COMMENTS, callback, () -> finish(callback, true)));
+    }
+
+    /**
+     * Stops after the batches in flight, the callback is told the deletion did not finish
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Gets the number of documents deleted so far
+     * @return number of deleted documents
+     */
+    public int getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * Deletes the replies of comments[index..], one comment at a time
+     */
+    private void deleteRepliesOf(List<DocumentData> comments, int index, OnCascadeProgressListener callback, Runnable next) {
+        if (index == comments.size()) {
+            next.run();
+            return;
+        }
+        StoreQuery replies = new StoreQuery(comments.get(index).getPath() + "/Replies").limit(pageSize * maxInFlight);
+        deleteQuery(replies, STAGE_REPLIES, callback, () -> deleteRepliesOf(comments, index + 1, callback, next));
+    }
+
+    /**
+     * Deletes everything a query matches, re-running it until it comes back empty.
+     * Deleted documents drop out of the query, so no cursor is needed.
+     */
+    private void deleteQuery(StoreQuery query, String stage, OnCascadeProgressListener callback, Runnable next) {
+        if (cancelled) {
+            finish(callback, false);
+            return;
+        }
+        store.query(query, documents -> {
+            if (documents == null) {
+                Log.d(TAG, "reading " + stage + " failed");
+                finish(callback, false);
+            } else if (documents.isEmpty()) {
+                next.run();
+            } else {
+                deletePaths(pathsOf(documents), stage, callback, () -> deleteQuery(query, stage, callback, next));
+            }
+        });
+    }
+
+    /**
+     * Deletes documents in batches of the page size, with at most maxInFlight batches committing at a time
+     */
+    private void deletePaths(List<String> paths, String stage, OnCascadeProgressListener callback, Runnable next) {
+        if (cancelled) {
+            finish(callback, false);
+            return;
+        }
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < paths.size(); from += pageSize) {
+            batches.add(paths.subList(from, Math.min(from + pageSize, paths.size())));
+        }
+        AtomicInteger nextBatch = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicBoolean ended = new AtomicBoolean(false);
+        Runnable[] commitNext = new Runnable[1];
+        commitNext[0] = () -> {
+            if (failed.get() || cancelled) {
+                return;
+            }
+            int index = nextBatch.getAndIncrement();
+            if (index >= batches.size()) {
+                return;
+            }
+            inFlight.incrementAndGet();
+            List<String> batchPaths = batches.get(index);
+            DocumentStore.Batch batch = store.batch();
+            for (String path : batchPaths) {
+                batch.delete(path);
+            }
+            batch.commit(successful -> {
+                if (successful) {
+                    int deleted = deletedCount.addAndGet(batchPaths.size());
+                    if (callback != null) {
+                        callback.onProgress(stage, deleted);
+                    }
+                } else {
+                    failed.set(true);
+                }
+                // start the next batch before letting go of this slot, so the count only hits 0 at the end
+                commitNext[0].run();
+                if (inFlight.decrementAndGet() == 0 && !ended.getAndSet(true)) {
+                    if (failed.get()) {
+                        Log.d(TAG, "deleting " + stage + " failed");
+                        finish(callback, false);
+                    } else if (cancelled) {
+                        finish(callback, false);
+                    } else {
+                        next.run();
+                    }
+                }
+            });
+        };
+        for (int i = 0; i < Math.min(maxInFlight, batches.size()); i++) {
+            commitNext[0].run();
+        }
+    }
+
+    private static List<String> pathsOf(List<DocumentData> documents) {
+        List<String> paths = new ArrayList<>(documents.size());
+        for (DocumentData document : documents) {
+            paths.add(document.getPath());
+        }
+        return paths;
+    }
+
+    private static void finish(OnCascadeProgressListener callback, boolean successful) {
+        if (callback != null) {
+            callback.onCascadeDone(successful);
+        }
+    }
+
+    /**
+     * Passes progress through and moves on to the next step when a sub-deletion succeeds
+     */
+    private static class Step implements OnCascadeProgressListener {
+        private final OnCascadeProgressListener callback;
+        private final Runnable next;
+
+        Step(OnCascadeProgressListener callback, Runnable next) {
+            this.callback = callback;
+            this.next = next;
+        }
+
+        @Override
+        public void onProgress(String stage, int deleted) {
+            if (callback != null) {
+                callback.onProgress(stage, deleted);
+            }
+        }
+
+        @Override
+        public void onCascadeDone(boolean successful) {
+            if (successful) {
+                next.run();
+            } else {
+                finish(callback, false);
+            }
+        }
+    }
+}
@@ -2,17 +2,14 @@ package com.DivineInspiration.experimenter.Controller;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.FirestoreDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
 import com.DivineInspiration.experimenter.Model.Comment.Comment;
-import com.DivineInspiration.experimenter.Model.Experiment;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,7 +22,7 @@ import java.util.Map;
 public class CommentManager {
 
     private static CommentManager singleton;         // Singleton object
-    private FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final DocumentStore store;
 
     private static final String TAG = "CommentManager";
 
@@ -65,7 +62,15 @@ public class CommentManager {
     }
 
     private CommentManager(){
-        db = FirebaseFirestore.getInstance();
+        this(new FirestoreDocumentStore());
+    }
+
+    /**
+     * Constructor
+     * @param store the document store to keep comments in
+     */
+    public CommentManager(DocumentStore store){
+        this.store = store;
     }
 
 
@@ -74,18 +79,16 @@ public class CommentManager {
      * @param experimentId the experiment the comments belongs to
      */
     public void deleteAllCommentOfExperiment(String experimentId){
-        db.collection("Comments").document(experimentId).collection("Comments").get().addOnCompleteListener(task -> {
-            if(task.isSuccessful()) {
-                int i = 0;
-                int size = task.getResult().size();
-                for(QueryDocumentSnapshot snapshot: task.getResult()){
-                    Task<Void> del = snapshot.getReference().delete();
-                    i++;
-                    if (i == size) {
-                        del.addOnCompleteListener(delTask->{
-                            db.collection("Comments").document(experimentId).delete();
-                        });
-                    }
+        new CascadeDeleter(store).deleteComments(experimentId, new CascadeDeleter.OnCascadeProgressListener() {
+            @Override
+            public void onProgress(String stage, int deleted) {}
+
+            @Override
+            public void onCascadeDone(boolean successful) {
+                if (successful) {
+                    store.delete("Comments/" + experimentId, null);
+                } else {
+                    Log.d(TAG, "delete comments failed");
                 }
             }
         });
@@ -109,19 +112,11 @@ public class CommentManager {
         doc.put("hasReply", comment.getHasReplies());
 
         // Put the Map object in the database
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .document(comment.getCommentId())
-                .set(doc)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (task.isSuccessful()) {
-                    Log.d(TAG, "Comment added to database");
-                } else {
-                    Log.d(TAG, "Comment failed to be added to database");
-                }
+        store.set("Comments/" + experimentID + "/Comments/" + comment.getCommentId(), doc, false, successful -> {
+            if (successful) {
+                Log.d(TAG, "Comment added to database");
+            } else {
+                Log.d(TAG, "Comment failed to be added to database");
             }
         });
     }
@@ -145,60 +140,40 @@ public class CommentManager {
         doc.put("hasReply", reply.getHasReplies());
 
         // Put the Map object in the database
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .document(commentID)
-                .collection("Replies")
-                .document(reply.getCommentId())
-                .set(doc).addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (task.isSuccessful()) {
-                    Log.d(TAG, "Reply added to database");
-                }
-                else {
-                    Log.d(TAG, "Reply failed to be added to database");
-                }
+        String commentPath = "Comments/" + experimentID + "/Comments/" + commentID;
+        store.set(commentPath + "/Replies/" + reply.getCommentId(), doc, false, successful -> {
+            if (successful) {
+                Log.d(TAG, "Reply added to database");
+            }
+            else {
+                Log.d(TAG, "Reply failed to be added to database");
             }
         });
 
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .document(commentID)
-                .update("hasReply", true)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-                    @Override
-                    public void onComplete(@NonNull Task<Void> task) {
-                        if (task.isSuccessful()) {
-                            Log.d(TAG, commentID + " hasReply field updated successfully");
-                        }
-                        else {
-                            Log.d(TAG, commentID + " hasReply field update failed");
-                            throw new IllegalAccessError(commentID + " failed to update hasReply after adding reply " + reply.getCommentId());
-                        }
-                    }
-                });
+        store.update(commentPath, Collections.singletonMap("hasReply", true), successful -> {
+            if (successful) {
+                Log.d(TAG, commentID + " hasReply field updated successfully");
+            }
+            else {
+                Log.d(TAG, commentID + " hasReply field update failed");
+                throw new IllegalAccessError(commentID + " failed to update hasReply after adding reply " + reply.getCommentId());
+            }
+        });
     }
 
     /**
-     * Deletes an existing comment from the database.
+     * Deletes an existing comment from the database, along with its replies.
      * @param commentID comment we want to delete
      * @param experimentID the experiment the comment belongs to
      */
     public void removeComment (String commentID, String experimentID) {
-        // TODO: Recursive delete
+        new CascadeDeleter(store).deleteComment(experimentID, commentID, new CascadeDeleter.OnCascadeProgressListener() {
+            @Override
+            public void onProgress(String stage, int deleted) {}
 
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .document(commentID)
-                .delete()
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
             @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (task.isSuccessful()) {
+            public void onCascadeDone(boolean successful) {
+                if (successful) {
                     Log.d(TAG, "delete comment succeeded");
                 }
                 else {
@@ -226,25 +201,18 @@ public class CommentManager {
      */
     public void getExperimentComments (String experimentID, OnCommentsReadyListener callback) {
 
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
+        store.query(new StoreQuery("Comments/" + experimentID + "/Comments"), documents -> {
 
-                if (task.isSuccessful()) {
-                    Log.d(TAG, "Comment retrieval succeeded");
-                    List<Comment> output = new ArrayList<>();
-                    for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                        output.add(commentFromSnapshot(snapshot));
-                    }
-                    callback.onCommentsReady(output);
-                } else {
-                    Log.d(TAG, "Comment retrieval failed");
-                    callback.onCommentsReady(null);
+            if (documents != null) {
+                Log.d(TAG, "Comment retrieval succeeded");
+                List<Comment> output = new ArrayList<>();
+                for (DocumentData snapshot : documents) {
+                    output.add(commentFromSnapshot(snapshot));
                 }
+                callback.onCommentsReady(output);
+            } else {
+                Log.d(TAG, "Comment retrieval failed");
+                callback.onCommentsReady(null);
             }
         });
     }
@@ -258,38 +226,29 @@ public class CommentManager {
      */
     public void getCommentReplies (String commentID, String experimentID, OnRepliesReadyListener callback) {
 
-        db.collection("Comments")
-                .document(experimentID)
-                .collection("Comments")
-                .document(commentID)
-                .collection("Replies")
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
+        store.query(new StoreQuery("Comments/" + experimentID + "/Comments/" + commentID + "/Replies"), documents -> {
 
-                if (task.isSuccessful()) {
-                    List<Comment> output = new ArrayList<>();
-                    for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                        output.add(commentFromSnapshot(snapshot));
-                    }
-                    Log.d(TAG, commentID + " reply retrieval succeeded");
-                    callback.onRepliesReady(output, commentID);
-                }
-                else {
-                    Log.d(TAG, commentID + " reply retrieval failed");
-                    callback.onRepliesReady(null, commentID);
+            if (documents != null) {
+                List<Comment> output = new ArrayList<>();
+                for (DocumentData snapshot : documents) {
+                    output.add(commentFromSnapshot(snapshot));
                 }
+                Log.d(TAG, commentID + " reply retrieval succeeded");
+                callback.onRepliesReady(output, commentID);
+            }
+            else {
+                Log.d(TAG, commentID + " reply retrieval failed");
+                callback.onRepliesReady(null, commentID);
             }
         });
     }
 
     /**
      * This method returns a Comment object by constructing it using the data from the document snapshot
-     * @param snapshot The Firestore document to retrieve the comment details from
+     * @param snapshot The document to retrieve the comment details from
      * @return Constructed using info from document
      */
-    private Comment commentFromSnapshot(QueryDocumentSnapshot snapshot) {
+    private Comment commentFromSnapshot(DocumentData snapshot) {
         return new Comment (
                 snapshot.getString("CommentID"),
                 snapshot.getString("CommenterID"),
@@ -0,0 +1,252 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The aggregates of one day of trials of an experiment, the trials of the owners that are not banned.
+ * Each day is a small document under the experiment's rollup, at {@link #pathOf}, updated in the same transaction
+ * as the rollup; a time series chart reads one of them per day instead of every trial.
+ * A {@link QuantileSketch} of the day's values lets the days be merged into running quartiles.
+ * <p>
+ * A sketch can not take a value out, so a delete leaves the day not exact until {@link RollupChecker} rebuilds it.
+ */
+public class DayBucket {
+
+    /**
+     * Compression of the day sketches, small since a chart merges many of them
+     */
+    public static final int SKETCH_COMPRESSION = 50;
+
+    private final int epochDay;
+    private long count = 0;
+    private double sum = 0;
+    private double sumSquares = 0;
+    private long passCount = 0;
+    private long failCount = 0;
+    private boolean exact = true;
+    private QuantileSketch sketch = new QuantileSketch(SKETCH_COMPRESSION);
+
+    /**
+     * Constructor, an empty day
+     * @param epochDay
+     * the day, as a number of days since 1970-01-01
+     */
+    public DayBucket(int epochDay) {
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Gets the collection of the day documents of an experiment
+     * @param experimentId
+     * id of the experiment
+     * @return collection path
+     */
+    public static String collectionOf(String experimentId) {
+        return ExperimentRollup.pathOf(experimentId) + "/Days";
+    }
+
+    /**
+     * Gets the path of the document of a day, its id is the date so the days sort in order
+     * @param experimentId
+     * id of the experiment
+     * @param epochDay
+     * the day
+     * @return document path
+     */
+    public static String pathOf(String experimentId, int epochDay) {
+        return collectionOf(experimentId) + "/" + LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Gets the day of a trial document
+     * @param trialDoc
+     * fields of the trial document
+     * @return the day, as a number of days since 1970-01-01
+     */
+    public static int dayOf(Map<String, Object> trialDoc) {
+        return (int) LocalDate.parse((String) trialDoc.get("Date")).toEpochDay();
+    }
+
+    /**
+     * Reads a day from its document
+     * @param document
+     * the day document, null or missing for a day without trials yet
+     * @param epochDay
+     * the day
+     * @return the day
+     */
+    @SuppressWarnings("unchecked")
+    public static DayBucket fromDocument(DocumentData document, int epochDay) {
+        DayBucket day = new DayBucket(epochDay);
+        if (document == null || !document.exists()) {
+            return day;
+        }
+        day.count = longOf(document.get("Count"));
+        day.sum = doubleOf(document.get("Sum"));
+        day.sumSquares = doubleOf(document.get("SumSquares"));
+        day.passCount = longOf(document.get("Pass"));
+        day.failCount = longOf(document.get("Fail"));
+        day.exact = !Boolean.FALSE.equals(document.get("Exact"));
+        if (document.get("Sketch") instanceof Map) {
+            day.sketch = QuantileSketch.fromMap((Map<String, Object>) document.get("Sketch"));
+        }
+        return day;
+    }
+
+    /**
+     * Reads a day from its document, the day is taken from the document id
+     * @param document
+     * the day document
+     * @return the day
+     */
+    public static DayBucket fromDocument(DocumentData document) {
+        return fromDocument(document, (int) LocalDate.parse(document.getId()).toEpochDay());
+    }
+
+    /**
+     * Makes the day document
+     * @return fields of the day document
+     */
+    public Map<String, Object> toDocument() {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("Count", count);
+        doc.put("Sum", sum);
+        doc.put("SumSquares", sumSquares);
+        doc.put("Pass", passCount);
+        doc.put("Fail", failCount);
+        doc.put("Exact", exact);
+        doc.put("Sketch", sketch.toMap());
+        return doc;
+    }
+
+    /**
+     * Adds a trial
+     * @param trialDoc
+     * fields of the trial document
+     */
+    public void addTrial(Map<String, Object> trialDoc) {
+        Double value = ExperimentRollup.valueOf(trialDoc);
+        if (value == null) {
+            return;
+        }
+        count++;
+        sum += value;
+        sumSquares += value * value;
+        if (Trial.BINOMIAL.equals(trialDoc.get("TrialType"))) {
+            if (value == 1) {
+                passCount++;
+            } else {
+                failCount++;
+            }
+        }
+        sketch.add(value);
+    }
+
+    /**
+     * Takes out a trial that was added, the sketch keeps its value
+     * @param trialDoc
+     * fields of the trial document, as it was added
+     */
+    public void removeTrial(Map<String, Object> trialDoc) {
+        Double value = ExperimentRollup.valueOf(trialDoc);
+        if (value == null || count == 0) {
+            return;
+        }
+        count--;
+        sum -= value;
+        sumSquares = Math.max(0, sumSquares - value * value);
+        if (Trial.BINOMIAL.equals(trialDoc.get("TrialType"))) {
+            if (value == 1) {
+                passCount--;
+            } else {
+                failCount--;
+            }
+        }
+        if (count == 0) {
+            sum = 0;
+            sumSquares = 0;
+            sketch = new QuantileSketch(SKETCH_COMPRESSION);
+            exact = true;
+        } else {
+            exact = false;
+        }
+    }
+
+    /**
+     * Gets the day
+     * @return days since 1970-01-01
+     */
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    /**
+     * Gets the number of trials of the day
+     * @return number of trials
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the sum of the values of the day
+     * @return sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the sum of the squared values of the day
+     * @return sum of squares
+     */
+    public double getSumSquares() {
+        return sumSquares;
+    }
+
+    /**
+     * Gets the number of passes of the day
+     * @return number of passes
+     */
+    public long getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * Gets the number of fails of the day
+     * @return number of fails
+     */
+    public long getFailCount() {
+        return failCount;
+    }
+
+    /**
+     * If the sketch holds exactly the trials of the day, false after a delete
+     * @return true if exact
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Gets the sketch of the values of the day
+     * @return the sketch, merge it rather than change it
+     */
+    public QuantileSketch getSketch() {
+        return sketch;
+    }
+
+    private static long longOf(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double doubleOf(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
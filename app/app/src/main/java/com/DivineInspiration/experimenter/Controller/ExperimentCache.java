@@ -0,0 +1,202 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import com.DivineInspiration.experimenter.Model.Experiment;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of experiments by id, in front of the experiment documents.
+ * The least recently used experiment is evicted when the cache is full, and an experiment older than
+ * the time to live counts as a miss. Every invalidation bumps a version, so a read that started before
+ * a write can not put the old experiment back with {@link #putIfCurrent}.
+ * Experiments are copied in and out, changing a returned experiment does not change the cache.
+ */
+public class ExperimentCache {
+
+    /**
+     * Default number of experiments kept
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Default time an experiment is served from memory, 5 minutes
+     */
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    // id -> entry, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long version = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Entry {
+        final Experiment experiment;
+        final long storedAt;
+
+        Entry(Experiment experiment, long storedAt) {
+            this.experiment = experiment;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param capacity
+     * most experiments kept
+     * @param ttlMillis
+     * time an experiment is served from memory after it was stored
+     */
+    public ExperimentCache(int capacity, long ttlMillis) {
+        this(capacity, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor
+     * @param capacity
+     * most experiments kept
+     * @param ttlMillis
+     * time an experiment is served from memory after it was stored
+     * @param clock
+     * current time in milliseconds
+     */
+    public ExperimentCache(int capacity, long ttlMillis, LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets an experiment, and marks it as the most recently used
+     * @param experimentId
+     * id of the experiment
+     * @return a copy of the experiment, null if it is not cached or expired
+     */
+    public synchronized Experiment get(String experimentId) {
+        Entry entry = entries.get(experimentId);
+        if (entry != null && clock.getAsLong() - entry.storedAt >= ttlMillis) {
+            entries.remove(experimentId);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(entry.experiment);
+    }
+
+    /**
+     * Stores an experiment that was just written, any read still in flight is dropped
+     * @param experiment
+     * the experiment as written
+     */
+    public synchronized void put(Experiment experiment) {
+        version++;
+        store(experiment);
+    }
+
+    /**
+     * Gets the current version, to give to {@link #putIfCurrent} once a read is done
+     * @return the version
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Stores an experiment that was read, unless an invalidation happened since the read started
+     * @param experiment
+     * the experiment as read
+     * @param readVersion
+     * the {@link #version()} when the read started
+     * @return true if the experiment was stored
+     */
+    public synchronized boolean putIfCurrent(Experiment experiment, long readVersion) {
+        if (readVersion != version) {
+            return false;
+        }
+        store(experiment);
+        return true;
+    }
+
+    /**
+     * Drops an experiment, the next get reads it again
+     * @param experimentId
+     * id of the experiment
+     */
+    public synchronized void invalidate(String experimentId) {
+        version++;
+        entries.remove(experimentId);
+    }
+
+    /**
+     * Drops every experiment
+     */
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of experiments kept, expired ones included until they are read
+     * @return number of experiments
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of gets served from memory
+     * @return number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of gets that found nothing or an expired experiment
+     * @return number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of experiments dropped to make room
+     * @return number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private void store(Experiment experiment) {
+        entries.put(experiment.getExperimentID(), new Entry(copy(experiment), clock.getAsLong()));
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Copies an experiment, experiments have setters
+     * @param experiment
+     * experiment to copy
+     * @return a new experiment with the same fields
+     */
+    static Experiment copy(Experiment experiment) {
+        return new Experiment(experiment.getExperimentID(), experiment.getExperimentName(), experiment.getOwnerID(),
+                experiment.getOwnerName(), experiment.getExperimentDescription(), experiment.getTrialType(),
+                experiment.getRegion(), experiment.getMinimumTrials(), experiment.isRequireGeo(), experiment.getStatus());
+    }
+}
@@ -2,41 +2,46 @@ package com.DivineInspiration.experimenter.Controller;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.FirestoreDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreFieldValue;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
 import com.DivineInspiration.experimenter.Model.Experiment;
-
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-
-
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FieldValue;
-import com.google.firebase.firestore.FirebaseFirestore;
-
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
-import com.google.firebase.firestore.SetOptions;
+import com.DivineInspiration.experimenter.Model.SearchTokens;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * This class talks to the FireStore database
+ * This class talks to the FireStore database (through a {@link DocumentStore})
  * in order to store and retrieve experiment data.
  * The class uses singleton pattern.
  */
-public class ExperimentManager extends ArrayList<Experiment> {
+public class ExperimentManager extends ArrayList<Experiment> implements ExperimentPageSource {
     // Singleton object
     private static ExperimentManager singleton;
 
-    private FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final DocumentStore store;
     private String localUserId;
+    private ExperimentPager explorePager;
+    private final ExperimentCache experimentCache;
+    // experiment id -> callbacks waiting on the read already in flight for it
+    private final Map<String, List<OnExperimentReadyListener>> pendingReads = new HashMap<>();
 
     private String TAG = "DATABASE";
 
+    // Firestore takes at most 10 values in an array-contains-any filter
+    private static final int MAX_QUERY_KEYWORDS = StoreQuery.MAX_IN_VALUES;
+
+    /**
+     * Number of experiments loaded per page of the explore list
+     */
+    public static final int EXPLORE_PAGE_SIZE = 25;
+
     /**
      * Interface definition for a callback to be invoked when {@link ExperimentManager} successfully
      * queries a list of {@link Experiment} from Firestore
@@ -68,6 +73,26 @@ public class ExperimentManager extends ArrayList<Experiment> {
         void done(boolean successful);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when a user is banned from, or let back into, an experiment
+     */
+    public interface OnUserBannedListener {
+
+        /**
+         * Called when a user is banned from an experiment
+         * @param userId
+         * The banned user
+         */
+        void onUserBanned(String userId);
+
+        /**
+         * Called when the ban of a user is lifted
+         * @param userId
+         * The user let back in
+         */
+        void onUserUnbanned(String userId);
+    }
+
     /**
      * Interface definition for a callback to be invoked when {@link ExperimentManager} successfully
      * queries an {@link Experiment} from Firestore
@@ -83,6 +108,58 @@ public class ExperimentManager extends ArrayList<Experiment> {
         void onExperimentReady(Experiment experiment);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when {@link ExperimentManager} queries
+     * a page of {@link Experiment} from Firestore
+     */
+    public interface OnExperimentPageReadyListener {
+
+        /**
+         * Called when a page of experiments is queried
+         * @param experiments
+         * The queried experiments, null if the query failed
+         * @param nextCursor
+         * Cursor to pass for the next page, null if this was the last page
+         */
+        void onExperimentPageReady(List<Experiment> experiments, String nextCursor);
+    }
+
+    /**
+     * Constructor, uses Firestore
+     */
+    public ExperimentManager() {
+        this(new FirestoreDocumentStore());
+    }
+
+    /**
+     * Constructor
+     * @param store the document store to keep experiments in
+     */
+    public ExperimentManager(DocumentStore store) {
+        this(store, null);
+    }
+
+    /**
+     * Constructor, for use without a {@link UserManager}
+     * @param store the document store to keep experiments in
+     * @param localUserId the user of the device
+     */
+    public ExperimentManager(DocumentStore store, String localUserId) {
+        this(store, localUserId, new ExperimentCache(ExperimentCache.DEFAULT_CAPACITY, ExperimentCache.DEFAULT_TTL_MILLIS));
+    }
+
+    /**
+     * Constructor, for use without a {@link UserManager} and with a given cache
+     * @param store the document store to keep experiments in
+     * @param localUserId the user of the device
+     * @param experimentCache the cache in front of the experiment documents
+     */
+    public ExperimentManager(DocumentStore store, String localUserId, ExperimentCache experimentCache) {
+        this.store = store;
+        this.localUserId = localUserId;
+        this.experimentCache = experimentCache;
+    }
+
     /**
      * Get singleton instance of the class
      * @return singletonManager
@@ -104,94 +181,114 @@ public class ExperimentManager extends ArrayList<Experiment> {
 
 
     /**
-     * query experiment using experiment id, callback returns the experiment if found, null otherwise
+     * query experiment using experiment id, callback returns the experiment if found, null otherwise.
+     * Experiments are served from the {@link ExperimentCache} when they can, and queries for an experiment
+     * whose read is already in flight wait for that read instead of starting another one
      * @param experimentId
      * experiment id to query
      * @param callback
      * callback to return to on complete
      */
     public void queryExperimentFromId(String experimentId, OnExperimentReadyListener callback) {
-        db.collection("Experiments")
-                .document(experimentId)
-                .get()
-                .addOnCompleteListener(task -> {
-            if(task.isSuccessful()){
-                callback.onExperimentReady(expFromSnapshot(task.getResult()));
+        Experiment cached = experimentCache.get(experimentId);
+        if (cached != null) {
+            callback.onExperimentReady(cached);
+            return;
+        }
+        synchronized (pendingReads) {
+            List<OnExperimentReadyListener> waiting = pendingReads.get(experimentId);
+            if (waiting != null) {
+                waiting.add(callback);
+                return;
             }
-            else{
-                callback.onExperimentReady(null);
+            waiting = new ArrayList<>();
+            waiting.add(callback);
+            pendingReads.put(experimentId, waiting);
+        }
+        long version = experimentCache.version();
+        store.get("Experiments/" + experimentId, document -> {
+            List<OnExperimentReadyListener> waiting;
+            synchronized (pendingReads) {
+                waiting = pendingReads.remove(experimentId);
+            }
+            Experiment experiment = null;
+            if (document != null && document.exists()) {
+                experiment = expFromSnapshot(document);
+                experimentCache.putIfCurrent(experiment, version);
+            }
+            for (OnExperimentReadyListener waiter : waiting) {
+                // each caller gets its own copy, experiments have setters
+                waiter.onExperimentReady(experiment == null ? null : ExperimentCache.copy(experiment));
             }
-
         });
     }
 
     /**
-     * Banning the user from the experiment (ie masking the results)
+     * Gets the cache in front of the experiment documents
+     * @return the experiment cache
+     */
+    public ExperimentCache getExperimentCache() {
+        return experimentCache;
+    }
+
+    /**
+     * Banning the user from the experiment (ie masking the results).
+     * The black list and the experiment's rollup are updated in one transaction
      * @param userId ID of user
      * @param experimentId ID of experiment
      * @param callback callback for when the operation is done
      */
     public void banUserFromExperiment(String userId, String experimentId, OnOperationDone callback) {
         initLocalUserId();
+        setBanned(userId, experimentId, true, callback);
+    }
 
-        Map<String, Object> update = new HashMap<>();
-        List<String> ids = new ArrayList<>();
-        ids.add(userId);
-        update.put("BannedIds", ids);
-        db.collection("BlackList")
-                .document(experimentId)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-
-                        if(task.isSuccessful()) {
-                            if (task.getResult().exists()) {
-
-                                db.collection("BlackList").document(experimentId).update("BannedIds", FieldValue.arrayUnion(userId)).addOnCompleteListener(task1 -> {
-                                    callback.done(task1.isSuccessful());
-                                });
-                            } else {
-                                db.collection("BlackList")
-                                        .document(experimentId)
-                                        .set(update, SetOptions.merge())
-                                        .addOnCompleteListener(task1 -> {
-                                            callback.done(task1.isSuccessful());
-                                        });
-                            }
-                        }
-                    }
-                });
+    /**
+     * Lifts the ban of a user from the experiment (ie their results count again)
+     * @param userId ID of user
+     * @param experimentId ID of experiment
+     * @param callback callback for when the operation is done
+     */
+    public void unbanUserFromExperiment(String userId, String experimentId, OnOperationDone callback) {
+        setBanned(userId, experimentId, false, callback);
     }
 
     /**
-     * Updates owner name in the Firestore database
-     * @param ownerId
-     * @param newName
-     * @param callback
-     * @return void
+     * Adds a user to, or removes them from, the black list, and moves their share of the rollup in or out of its totals
+     */
+    private void setBanned(String userId, String experimentId, boolean banned, OnOperationDone callback) {
+        String rollupPath = ExperimentRollup.pathOf(experimentId);
+        store.runTransaction(transaction -> {
+            ExperimentRollup rollup = ExperimentRollup.fromDocument(transaction.get(rollupPath));
+            if (banned) {
+                rollup.ban(userId);
+            } else {
+                rollup.unban(userId);
+            }
+            // a merge makes the black list if there is none yet
+            transaction.set("BlackList/" + experimentId, Collections.singletonMap("BannedIds",
+                    banned ? StoreFieldValue.arrayUnion(userId) : StoreFieldValue.arrayRemove(userId)), true);
+            transaction.set(rollupPath, rollup.toDocument(), false);
+        }, successful -> {
+            if (callback != null) {
+                callback.done(successful);
+            }
+        });
+    }
+
+    /**
+     * Updates owner name in the Firestore database, in the experiments, trials, comments and replies of the owner
+     * @param ownerId the renamed user
+     * @param newName the new name
+     * @param callback called once every copy of the name is updated, can be null
      */
     public void updateOwnerName(String ownerId, String newName, OnOperationDone callback) {
         initLocalUserId();
-        // https://stackoverflow.com/a/53379134/12471420
-        db.collection("Experiments")
-                .whereEqualTo("OwnerID", ownerId)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-
-                if (task.isSuccessful()) {
-
-                    for (QueryDocumentSnapshot doc : task.getResult()) {
-                        Map<Object, String> map = new HashMap<>();
-                        map.put("OwnerName", newName);
-                        db.collection("Experiments").document(doc.getId()).set(map, SetOptions.merge());
-                    }
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful() && task.getResult().size() == 0);
-                }
+        new RenamePropagator(store).rename(ownerId, newName, successful -> {
+            // the owner name is in every cached experiment of the owner
+            experimentCache.clear();
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -204,18 +301,14 @@ public class ExperimentManager extends ArrayList<Experiment> {
      */
     public void unSubFromExperiment(String userId, String experimentId, OnOperationDone callback) {
         initLocalUserId();
-        db.collection("Experiments")
-                .document(experimentId)
-                .update("SubscriberIDs", FieldValue.arrayRemove(userId))
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "subbing to experiment failed!(most likely no such experiment exsit)");
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful());
-                }
+        store.update("Experiments/" + experimentId, Collections.singletonMap("SubscriberIDs", StoreFieldValue.arrayRemove(userId)), successful -> {
+            if (!successful) {
+                Log.d(TAG, "subbing to experiment failed!(most likely no such experiment exsit)");
+                // the experiment may be gone, do not serve it from memory anymore
+                experimentCache.invalidate(experimentId);
+            }
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -229,19 +322,14 @@ public class ExperimentManager extends ArrayList<Experiment> {
     public void subToExperiment(String userId, String experimentId, OnOperationDone callback) {
         initLocalUserId();
         // TODO  handle on sub failed?
-        db.collection("Experiments")
-                .document(experimentId)
-                .update("SubscriberIDs", FieldValue.arrayUnion(userId))
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "subbing to experiment failed!(most likely no such experiment exsit)");
-
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful());
-                }
+        store.update("Experiments/" + experimentId, Collections.singletonMap("SubscriberIDs", StoreFieldValue.arrayUnion(userId)), successful -> {
+            if (!successful) {
+                Log.d(TAG, "subbing to experiment failed!(most likely no such experiment exsit)");
+                // the experiment may be gone, do not serve it from memory anymore
+                experimentCache.invalidate(experimentId);
+            }
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -254,20 +342,49 @@ public class ExperimentManager extends ArrayList<Experiment> {
     public void deleteExperiment(String experimentId, OnOperationDone callback) {
         initLocalUserId();
         // TODO handle on delete failed?
-        db.collection("Experiments")
-                .document(experimentId).delete()
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
+        experimentCache.invalidate(experimentId);
+        store.delete("Experiments/" + experimentId, successful -> {
+            if (!successful) {
+                Log.d(TAG, "delete experiment failed!(most likely there is no experiment with this id in the database)");
+                callback.done(false);
+            }
+            else{
+                dropExplorePages();
+                callback.done(true);
+            }
+        });
+    }
+
+    /**
+     * Deletes the given experiment along with its trials, comments, replies and black list, in batches.
+     * Running it again after a failure picks up what is left.
+     * @param experimentId experiment we want to delete
+     * @param callback progress of the deletion, can be null
+     * @return the deleter, to cancel it
+     */
+    public CascadeDeleter cascadeDeleteExperiment(String experimentId, CascadeDeleter.OnCascadeProgressListener callback) {
+        CascadeDeleter deleter = new CascadeDeleter(store);
+        deleter.deleteExperiment(experimentId, new CascadeDeleter.OnCascadeProgressListener() {
+            @Override
+            public void onProgress(String stage, int deleted) {
+                if (callback != null) {
+                    callback.onProgress(stage, deleted);
+                }
+            }
+
             @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "delete experiment failed!(most likely there is no experiment with this id in the database)");
-                    callback.done(false);
+            public void onCascadeDone(boolean successful) {
+                if (successful) {
+                    // the experiment document goes last, so it can be cached until then
+                    experimentCache.invalidate(experimentId);
+                    dropExplorePages();
                 }
-                else{
-                    callback.done(true);
+                if (callback != null) {
+                    callback.onCascadeDone(successful);
                 }
             }
         });
+        return deleter;
     }
 
     /**
@@ -291,20 +408,18 @@ public class ExperimentManager extends ArrayList<Experiment> {
         doc.put("RequireGeo", experiment.isRequireGeo());
         doc.put("Status", experiment.getStatus());
         doc.put("SubscriberIDs", new ArrayList<>());
+        doc.put("Keywords", keywordsOf(experiment.getExperimentName(), experiment.getOwnerName(), experiment.getExperimentDescription()));
 
         // Get document and add to database
-        db.collection("Experiments")
-                .document(experiment.getExperimentID())
-                .set(doc)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "New experiment failed to be committed to database!");
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful());
-                }
+        store.set("Experiments/" + experiment.getExperimentID(), doc, false, successful -> {
+            if (!successful) {
+                Log.d(TAG, "New experiment failed to be committed to database!");
+            } else {
+                experimentCache.put(experiment);
+                dropExplorePages();
+            }
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -328,20 +443,19 @@ public class ExperimentManager extends ArrayList<Experiment> {
         doc.put("MinimumTrials", experiment.getMinimumTrials());
         doc.put("RequireGeo", experiment.isRequireGeo());
         doc.put("Status", experiment.getStatus());
+        doc.put("Keywords", keywordsOf(experiment.getExperimentName(), experiment.getOwnerName(), experiment.getExperimentDescription()));
 
         // Get document and add to database
-        db.collection("Experiments")
-                .document(experiment.getExperimentID())
-                .set(doc, SetOptions.merge())
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "New experiment failed to be committed to database!");
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful());
-                }
+        store.set("Experiments/" + experiment.getExperimentID(), doc, true, successful -> {
+            if (!successful) {
+                Log.d(TAG, "New experiment failed to be committed to database!");
+                experimentCache.invalidate(experiment.getExperimentID());
+            } else {
+                experimentCache.put(experiment);
+                dropExplorePages();
+            }
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -354,18 +468,24 @@ public class ExperimentManager extends ArrayList<Experiment> {
     public void updateExperiment(Experiment experiment, Map<String, Object> fieldsToUpdate, OnOperationDone callback) {
         initLocalUserId();
         //how to rename functions 101
-        db.collection("Experiments")
-                .document(experiment.getExperimentID())
-                .set(fieldsToUpdate, SetOptions.merge())
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if (!task.isSuccessful()) {
-                    Log.d(TAG, "New experiment failed to be committed to database!");
-                }
-                if (callback != null) {
-                    callback.done(task.isSuccessful());
-                }
+        if (fieldsToUpdate.containsKey("ExperimentName") || fieldsToUpdate.containsKey("OwnerName") || fieldsToUpdate.containsKey("ExperimentDescription")) {
+            // the keywords follow the searchable fields, whichever of them changed
+            fieldsToUpdate = new HashMap<>(fieldsToUpdate);
+            fieldsToUpdate.put("Keywords", keywordsOf(
+                    valueOf(fieldsToUpdate, "ExperimentName", experiment.getExperimentName()),
+                    valueOf(fieldsToUpdate, "OwnerName", experiment.getOwnerName()),
+                    valueOf(fieldsToUpdate, "ExperimentDescription", experiment.getExperimentDescription())));
+        }
+        // only some fields are written, the next read gets the whole experiment again
+        experimentCache.invalidate(experiment.getExperimentID());
+        store.set("Experiments/" + experiment.getExperimentID(), fieldsToUpdate, true, successful -> {
+            if (!successful) {
+                Log.d(TAG, "New experiment failed to be committed to database!");
+            } else {
+                dropExplorePages();
+            }
+            if (callback != null) {
+                callback.done(successful);
             }
         });
     }
@@ -377,23 +497,18 @@ public class ExperimentManager extends ArrayList<Experiment> {
      */
     public void queryUserSubs(String userId, OnExperimentListReadyListener callback) {
         initLocalUserId();
-        db.collection("Experiments")
-                .whereArrayContains("SubscriberIDs", userId).get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                if (task.isSuccessful()) {
-                    if (callback != null) {
-                        List<Experiment> output = new ArrayList<>();
-                        for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                            output.add(expFromSnapshot(snapshot));
-                        }
-                        callback.onExperimentsReady(output);
+        store.query(new StoreQuery("Experiments").whereArrayContains("SubscriberIDs", userId), documents -> {
+            if (documents != null) {
+                if (callback != null) {
+                    List<Experiment> output = new ArrayList<>();
+                    for (DocumentData snapshot : documents) {
+                        output.add(expFromSnapshot(snapshot));
                     }
-                } else {
-                    Log.d("stuff", "query user subscriptions failed!");
-                    callback.onExperimentsReady(null);
+                    callback.onExperimentsReady(output);
                 }
+            } else {
+                Log.d("stuff", "query user subscriptions failed!");
+                callback.onExperimentsReady(null);
             }
         });
     }
@@ -405,27 +520,21 @@ public class ExperimentManager extends ArrayList<Experiment> {
      */
     public void queryUserExperiment(String userId, OnExperimentListReadyListener callback) {
         initLocalUserId();
-        db.collection("Experiments")
-                .whereEqualTo("OwnerID", userId)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                if (task.isSuccessful()) {
-                    if (callback != null) {
-                        List<Experiment> output = new ArrayList<>();
-                        for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                            Experiment exp = expFromSnapshot(snapshot);
-                            if(!exp.getStatus().equals(Experiment.ENDED) || exp.getOwnerID().equals(localUserId)){
-                                output.add(exp);
-                            }
+        store.query(new StoreQuery("Experiments").whereEqualTo("OwnerID", userId), documents -> {
+            if (documents != null) {
+                if (callback != null) {
+                    List<Experiment> output = new ArrayList<>();
+                    for (DocumentData snapshot : documents) {
+                        Experiment exp = expFromSnapshot(snapshot);
+                        if(!exp.getStatus().equals(Experiment.ENDED) || exp.getOwnerID().equals(localUserId)){
+                            output.add(exp);
                         }
-                        callback.onExperimentsReady(output);
                     }
-                } else {
-                    Log.d(TAG, "query user subscriptions failed!");
-                    callback.onExperimentsReady(null);
+                    callback.onExperimentsReady(output);
                 }
+            } else {
+                Log.d(TAG, "query user subscriptions failed!");
+                callback.onExperimentsReady(null);
             }
         });
     }
@@ -436,36 +545,141 @@ public class ExperimentManager extends ArrayList<Experiment> {
      */
     public void queryAll(OnExperimentListReadyListener callback) {
         initLocalUserId();
-        db.collection("Experiments")
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                if (task.isSuccessful()) {
-                    if (callback != null) {
-                        List<Experiment> output = new ArrayList<>();
-                        for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                            Experiment exp = expFromSnapshot(snapshot);
-                            if(!exp.getStatus().equals(Experiment.ENDED) || exp.getOwnerID().equals(localUserId)){
-                                output.add(exp);
-                            }
+        store.query(new StoreQuery("Experiments"), documents -> {
+            if (documents != null) {
+                if (callback != null) {
+                    List<Experiment> output = new ArrayList<>();
+                    for (DocumentData snapshot : documents) {
+                        Experiment exp = expFromSnapshot(snapshot);
+                        if(!exp.getStatus().equals(Experiment.ENDED) || exp.getOwnerID().equals(localUserId)){
+                            output.add(exp);
                         }
-                        callback.onExperimentsReady(output);
                     }
-                } else {
-                    Log.d(TAG, "query user subscriptions failed!");
-                    callback.onExperimentsReady(null);
+                    callback.onExperimentsReady(output);
                 }
+            } else {
+                Log.d(TAG, "query user subscriptions failed!");
+                callback.onExperimentsReady(null);
             }
         });
     }
 
+    /**
+     * Queries a page of the experiments holding any of the given keywords, so only matching experiments are downloaded.
+     * Keywords are kept on every experiment by addExperiment and updateExperiment, see {@link #keywordsOf}.
+     * @param tokens search words, normalized and cut like {@link SearchTokens#queryKeywords}; only the first 10 are used
+     * @param pageSize most experiments to read
+     * @param cursor cursor returned with the previous page, null for the first page
+     * @param callback we return the page and the cursor of the next one by passing them as parameters of the callback method
+     */
+    public void queryByKeywords(List<String> tokens, int pageSize, String cursor, OnExperimentPageReadyListener callback) {
+        initLocalUserId();
+        List<String> keywords = new ArrayList<>();
+        for (String token : tokens) {
+            for (String keyword : SearchTokens.queryKeywords(token)) {
+                if (!keywords.contains(keyword) && keywords.size() < MAX_QUERY_KEYWORDS) {
+                    keywords.add(keyword);
+                }
+            }
+        }
+        if (keywords.isEmpty()) {
+            callback.onExperimentPageReady(new ArrayList<>(), null);
+            return;
+        }
+
+        StoreQuery query = new StoreQuery("Experiments").whereArrayContainsAny("Keywords", keywords).limit(pageSize);
+        if (cursor != null) {
+            query.startAfter(cursor);
+        }
+        queryPage(query, pageSize, callback);
+    }
+
+    /**
+     * Queries a page of all the experiments, ordered by experiment id
+     * @param afterExperimentId cursor returned with the previous page, null for the first page
+     * @param pageSize most experiments to read
+     * @param callback we return the page and the cursor of the next one by passing them as parameters of the callback method
+     */
+    @Override
+    public void loadPage(String afterExperimentId, int pageSize, OnExperimentPageReadyListener callback) {
+        initLocalUserId();
+        StoreQuery query = new StoreQuery("Experiments").limit(pageSize);
+        if (afterExperimentId != null) {
+            query.startAfter(afterExperimentId);
+        }
+        queryPage(query, pageSize, callback);
+    }
+
+    /**
+     * Gets the pager of the explore list, its pages stay cached while the app runs
+     * @return the explore pager
+     */
+    public ExperimentPager getExplorePager() {
+        if (explorePager == null) {
+            explorePager = new ExperimentPager(this, EXPLORE_PAGE_SIZE, ExperimentPager.DEFAULT_PREFETCH_DISTANCE);
+        }
+        return explorePager;
+    }
+
+    /**
+     * Reloads the explore pages after an experiment changed, so the list does not show stale experiments
+     */
+    private void dropExplorePages() {
+        if (explorePager != null) {
+            explorePager.refresh();
+        }
+    }
+
+    /**
+     * Runs a paged query, ended experiments of other users are left out of the page
+     * but still move the cursor, so a page can be short without being the last one
+     */
+    private void queryPage(StoreQuery query, int pageSize, OnExperimentPageReadyListener callback) {
+        long version = experimentCache.version();
+        store.query(query, documents -> {
+            if (documents != null) {
+                List<Experiment> output = new ArrayList<>();
+                for (DocumentData snapshot : documents) {
+                    Experiment exp = expFromSnapshot(snapshot);
+                    // opening an experiment from the list does not read it again
+                    experimentCache.putIfCurrent(exp, version);
+                    if(!exp.getStatus().equals(Experiment.ENDED) || exp.getOwnerID().equals(localUserId)){
+                        output.add(exp);
+                    }
+                }
+                // a short page is the last one
+                String next = documents.size() == pageSize ? documents.get(documents.size() - 1).getId() : null;
+                callback.onExperimentPageReady(output, next);
+            } else {
+                Log.d(TAG, "query experiment page failed!");
+                callback.onExperimentPageReady(null, null);
+            }
+        });
+    }
+
+    /**
+     * Gets the keywords stored on an experiment document: the words of its name, owner name and
+     * description with every prefix of them, normalized by {@link SearchTokens}
+     * @param experimentName name of the experiment
+     * @param ownerName name of the owner
+     * @param description description of the experiment
+     * @return keywords to store in the Keywords field
+     */
+    public static List<String> keywordsOf(String experimentName, String ownerName, String description) {
+        return SearchTokens.keywords(experimentName, ownerName, description);
+    }
+
+    private static String valueOf(Map<String, Object> fields, String field, String fallback) {
+        Object value = fields.get(field);
+        return value instanceof String ? (String) value : fallback;
+    }
+
     /**
      * This method returns a Experiment object by constructing it using the data from the document snapshot.
-     * @param snapshot the Firestore document to retrieve the experiment details from
+     * @param snapshot the document to retrieve the experiment details from
      * @return Experiment object constructed using info from document
      */
-    private Experiment expFromSnapshot(DocumentSnapshot snapshot) {
+    private Experiment expFromSnapshot(DocumentData snapshot) {
         return new Experiment(
                 snapshot.getId(),
                 snapshot.getString("ExperimentName"),
@@ -0,0 +1,19 @@
+package com.DivineInspiration.experimenter.Controller;
+
+/**
+ * A source of experiments, one page at a time.
+ * Pages are ordered by experiment id, and every page comes with the cursor for the next one.
+ */
+public interface ExperimentPageSource {
+
+    /**
+     * Loads a page of experiments
+     * @param afterExperimentId
+     * The cursor returned with the previous page, null for the first page
+     * @param pageSize
+     * The most experiments to read
+     * @param callback
+     * Called with the page, or null if loading failed, and the cursor of the next page, null after the last page
+     */
+    void loadPage(String afterExperimentId, int pageSize, ExperimentManager.OnExperimentPageReadyListener callback);
+}
@@ -0,0 +1,169 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import com.DivineInspiration.experimenter.Model.Experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads experiments page by page from an {@link ExperimentPageSource} as a list is scrolled.
+ * The first page is requested on its own, and the next page only once the list shows an item within
+ * the prefetch distance of the end, so the first rows never wait for the rest of the experiments.
+ * Loaded pages are kept, a list that comes back gets them again without reading anything.
+ */
+public class ExperimentPager {
+
+    /**
+     * Default number of items from the end of the list at which the next page is requested
+     */
+    public static final int DEFAULT_PREFETCH_DISTANCE = 10;
+
+    private final ExperimentPageSource source;
+    private final int pageSize;
+    private final int prefetchDistance;
+
+    // the page cache
+    private final List<Experiment> loaded = new ArrayList<>();
+    private String cursor = null;
+    private boolean hasMore = true;
+    private int pageCount = 0;
+
+    private boolean loading = false;
+    private int lastVisible = -1;
+    private int generation = 0;
+    private OnExperimentPagesListener listener;
+
+    /**
+     * Interface definition for a callback to be invoked when an {@link ExperimentPager} loads a page
+     */
+    public interface OnExperimentPagesListener {
+        /**
+         * Called with every experiment loaded so far, after each page
+         * @param experiments
+         * the loaded experiments in page order, null if the last page failed to load
+         * @param hasMore
+         * true if there are more pages to load
+         */
+        void onExperimentsLoaded(List<Experiment> experiments, boolean hasMore);
+    }
+
+    /**
+     * Constructor
+     * @param source
+     * where the pages come from
+     * @param pageSize
+     * number of experiments per page
+     * @param prefetchDistance
+     * number of items from the end of the list at which the next page is requested
+     */
+    public ExperimentPager(ExperimentPageSource source, int pageSize, int prefetchDistance) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.prefetchDistance = Math.max(0, prefetchDistance);
+    }
+
+    /**
+     * Starts delivering pages to a listener. Cached pages are delivered right away,
+     * the first page is loaded if there are none.
+     * @param listener
+     * called after each page, replaces the previous listener
+     */
+    public void start(OnExperimentPagesListener listener) {
+        this.listener = listener;
+        if (!loaded.isEmpty() || !hasMore) {
+            listener.onExperimentsLoaded(new ArrayList<>(loaded), hasMore);
+        }
+        if (loaded.isEmpty()) {
+            prefetch();
+        }
+    }
+
+    /**
+     * Stops delivering pages, the cache is kept for the next {@link #start}
+     */
+    public void stop() {
+        listener = null;
+    }
+
+    /**
+     * Tells the pager how far the list is scrolled, the next page is requested when the item is close to the end
+     * @param position
+     * position of the last visible item
+     */
+    public void onItemVisible(int position) {
+        lastVisible = Math.max(lastVisible, position);
+        prefetch();
+    }
+
+    /**
+     * Drops the cache and loads the first page again
+     */
+    public void refresh() {
+        generation++;
+        loaded.clear();
+        cursor = null;
+        hasMore = true;
+        pageCount = 0;
+        loading = false;
+        lastVisible = -1;
+        prefetch();
+    }
+
+    /**
+     * If there are more pages to load
+     * @return false once the last page is loaded
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Gets the number of pages loaded since the cache was last dropped
+     * @return number of pages
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Gets the loaded experiments
+     * @return the experiments, in page order
+     */
+    public List<Experiment> getExperiments() {
+        return new ArrayList<>(loaded);
+    }
+
+    /**
+     * Loads the next page if the list is close enough to the end of the loaded experiments
+     */
+    private void prefetch() {
+        if (!hasMore || loading || lastVisible < loaded.size() - 1 - prefetchDistance) {
+            return;
+        }
+        loading = true;
+        int requested = generation;
+        source.loadPage(cursor, pageSize, (page, next) -> {
+            // a page requested before a refresh is dropped
+            if (requested != generation) {
+                return;
+            }
+            loading = false;
+            if (page == null) {
+                // the next scroll tries again
+                if (listener != null) {
+                    listener.onExperimentsLoaded(null, hasMore);
+                }
+                return;
+            }
+            loaded.addAll(page);
+            cursor = next;
+            hasMore = next != null;
+            pageCount++;
+            if (listener != null) {
+                listener.onExperimentsLoaded(new ArrayList<>(loaded), hasMore);
+            }
+            // pages of only ended experiments add no rows, so no scroll would ask for the next one
+            prefetch();
+        });
+    }
+}
@@ -0,0 +1,559 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The running aggregates of the trials of one experiment, kept in one document at {@link #pathOf} and updated in the
+ * same transaction as every trial write, delete and ban, so the summary of an experiment is one document read.
+ * The aggregates are kept per owner, so banning an owner takes their share out of the totals without reading
+ * their trials; the totals are over the owners that are not banned.
+ * <p>
+ * Count, sum and pass/fail counts are exact under deletes. The variance is kept as a running mean and sum of squared
+ * deviations (M2) per owner, updated with Welford's method and merged across owners with Chan's parallel formula,
+ * so it does not cancel out the way sum of squares minus squared mean does for large values.
+ * Min and max are not exact under deletes: deleting the smallest or largest value leaves the old bound, marked not
+ * exact, until {@link RollupChecker} rebuilds the rollup.
+ * <p>
+ * A {@link QuantileSketch} of the values of the owners that are not banned gives the median and quartiles. It can
+ * not take a value out, so a delete, ban or unban leaves it not exact until the rollup is rebuilt.
+ * <p>
+ * The {@link DayBucket} days under the rollup only hold the trials of owners that are not banned, and are not kept
+ * per owner; a ban or unban of an owner with trials marks them stale until they are rebuilt.
+ */
+public class ExperimentRollup {
+
+    /**
+     * Collection of the rollup documents, one per experiment, with the experiment id as the document id
+     */
+    public static final String COLLECTION = "Rollups";
+
+    private String trialType;
+    private final Map<String, Aggregate> owners = new TreeMap<>();
+    private final TreeSet<String> bannedIds = new TreeSet<>();
+    private boolean daysStale = false;
+    private QuantileSketch sketch = new QuantileSketch();
+    private boolean sketchExact = true;
+
+    /**
+     * The aggregates of a set of trial values
+     */
+    public static class Aggregate {
+        private long count = 0;
+        private double sum = 0;
+        private double mean = 0;
+        private double m2 = 0;          // sum of squared deviations from the mean
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+        private long passCount = 0;
+        private long failCount = 0;
+        private boolean minMaxExact = true;
+
+        void add(double value, Boolean pass) {
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Double.isNaN(min) ? value : Math.min(min, value);
+            max = Double.isNaN(max) ? value : Math.max(max, value);
+            if (pass != null) {
+                if (pass) {
+                    passCount++;
+                } else {
+                    failCount++;
+                }
+            }
+        }
+
+        void remove(double value, Boolean pass) {
+            count--;
+            if (pass != null) {
+                if (pass) {
+                    passCount--;
+                } else {
+                    failCount--;
+                }
+            }
+            if (count <= 0) {
+                // nothing left, the rounding of the sums goes with it
+                count = 0;
+                sum = 0;
+                mean = 0;
+                m2 = 0;
+                min = Double.NaN;
+                max = Double.NaN;
+                passCount = 0;
+                failCount = 0;
+                minMaxExact = true;
+                return;
+            }
+            sum -= value;
+            // Chan's formula run backwards, taking out a part of one value
+            double rest = (mean * (count + 1) - value) / count;
+            double delta = value - rest;
+            m2 = Math.max(0, m2 - delta * delta * count / (count + 1));
+            mean = rest;
+            if (value <= min || value >= max) {
+                // the next bound is not known without reading the other trials
+                minMaxExact = false;
+            }
+        }
+
+        void merge(Aggregate other) {
+            if (other.count == 0) {
+                return;
+            }
+            // Chan's parallel formula
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+            sum += other.sum;
+            min = Double.isNaN(min) ? other.min : Math.min(min, other.min);
+            max = Double.isNaN(max) ? other.max : Math.max(max, other.max);
+            passCount += other.passCount;
+            failCount += other.failCount;
+            minMaxExact &= other.minMaxExact;
+        }
+
+        /**
+         * Gets the number of trials
+         * @return number of trials
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the sum of the trial values
+         * @return sum
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets the sum of the squared deviations of the trial values from their mean
+         * @return M2
+         */
+        public double getM2() {
+            return m2;
+        }
+
+        /**
+         * Gets the mean of the trial values
+         * @return mean, NaN if there are no trials
+         */
+        public double getMean() {
+            return count == 0 ? Double.NaN : mean;
+        }
+
+        /**
+         * Gets the population variance of the trial values
+         * @return variance, NaN if there are no trials
+         */
+        public double getVariance() {
+            return count == 0 ? Double.NaN : m2 / count;
+        }
+
+        /**
+         * Gets the smallest trial value
+         * @return min, NaN if there are no trials, may be below the true min if not {@link #isMinMaxExact()}
+         */
+        public double getMin() {
+            return min;
+        }
+
+        /**
+         * Gets the largest trial value
+         * @return max, NaN if there are no trials, may be above the true max if not {@link #isMinMaxExact()}
+         */
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the number of passes of binomial trials
+         * @return number of passes
+         */
+        public long getPassCount() {
+            return passCount;
+        }
+
+        /**
+         * Gets the number of fails of binomial trials
+         * @return number of fails
+         */
+        public long getFailCount() {
+            return failCount;
+        }
+
+        /**
+         * If min and max are the bounds of the current trials, false after a delete of a bound
+         * @return true if min and max are exact
+         */
+        public boolean isMinMaxExact() {
+            return minMaxExact;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("Count", count);
+            map.put("Sum", sum);
+            map.put("Mean", mean);
+            map.put("M2", m2);
+            if (count > 0) {
+                map.put("Min", min);
+                map.put("Max", max);
+            }
+            map.put("Pass", passCount);
+            map.put("Fail", failCount);
+            map.put("MinMaxExact", minMaxExact);
+            return map;
+        }
+
+        static Aggregate fromMap(Map<String, Object> map) {
+            Aggregate aggregate = new Aggregate();
+            aggregate.count = longOf(map.get("Count"));
+            aggregate.sum = doubleOf(map.get("Sum"), 0);
+            if (map.containsKey("Mean")) {
+                aggregate.mean = doubleOf(map.get("Mean"), 0);
+                aggregate.m2 = doubleOf(map.get("M2"), 0);
+            } else if (aggregate.count > 0) {
+                // written before M2 was kept
+                aggregate.mean = aggregate.sum / aggregate.count;
+                aggregate.m2 = Math.max(0, doubleOf(map.get("SumSquares"), 0) - aggregate.sum * aggregate.mean);
+            }
+            aggregate.min = doubleOf(map.get("Min"), Double.NaN);
+            aggregate.max = doubleOf(map.get("Max"), Double.NaN);
+            aggregate.passCount = longOf(map.get("Pass"));
+            aggregate.failCount = longOf(map.get("Fail"));
+            aggregate.minMaxExact = !Boolean.FALSE.equals(map.get("MinMaxExact"));
+            return aggregate;
+        }
+    }
+
+    /**
+     * Gets the path of the rollup document of an experiment
+     * @param experimentId
+     * id of the experiment
+     * @return document path
+     */
+    public static String pathOf(String experimentId) {
+        return COLLECTION + "/" + experimentId;
+    }
+
+    /**
+     * Reads a rollup from its document
+     * @param document
+     * the rollup document, null or missing for an experiment without one yet
+     * @return the rollup, empty if there was no document
+     */
+    @SuppressWarnings("unchecked")
+    public static ExperimentRollup fromDocument(DocumentData document) {
+        ExperimentRollup rollup = new ExperimentRollup();
+        if (document == null || !document.exists()) {
+            return rollup;
+        }
+        rollup.trialType = document.getString("TrialType");
+        Object owners = document.get("Owners");
+        if (owners instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) owners).entrySet()) {
+                if (entry.getValue() instanceof Map) {
+                    rollup.owners.put(entry.getKey(), Aggregate.fromMap((Map<String, Object>) entry.getValue()));
+                }
+            }
+        }
+        Object banned = document.get("BannedIds");
+        if (banned instanceof List) {
+            rollup.bannedIds.addAll((List<String>) banned);
+        }
+        rollup.daysStale = Boolean.TRUE.equals(document.get("DaysStale"));
+        if (document.get("Sketch") instanceof Map) {
+            rollup.sketch = QuantileSketch.fromMap((Map<String, Object>) document.get("Sketch"));
+        }
+        rollup.sketchExact = !Boolean.FALSE.equals(document.get("SketchExact"));
+        return rollup;
+    }
+
+    /**
+     * Makes the rollup document: the per owner aggregates, the banned owners, the sketch, and the totals as top level fields
+     * @return fields of the rollup document
+     */
+    public Map<String, Object> toDocument() {
+        Map<String, Object> doc = new HashMap<>(getTotal().toMap());
+        if (trialType != null) {
+            doc.put("TrialType", trialType);
+        }
+        Map<String, Object> ownerMaps = new HashMap<>();
+        for (Map.Entry<String, Aggregate> entry : owners.entrySet()) {
+            ownerMaps.put(entry.getKey(), entry.getValue().toMap());
+        }
+        doc.put("Owners", ownerMaps);
+        doc.put("BannedIds", new ArrayList<>(bannedIds));
+        doc.put("DaysStale", daysStale);
+        doc.put("Sketch", sketch.toMap());
+        doc.put("SketchExact", sketchExact);
+        return doc;
+    }
+
+    /**
+     * Adds a trial
+     * @param trialDoc
+     * fields of the trial document
+     */
+    public void addTrial(Map<String, Object> trialDoc) {
+        String owner = (String) trialDoc.get("OwnerID");
+        Double value = valueOf(trialDoc);
+        if (owner == null || value == null) {
+            return;
+        }
+        if (trialType == null) {
+            trialType = (String) trialDoc.get("TrialType");
+        }
+        Aggregate aggregate = owners.get(owner);
+        if (aggregate == null) {
+            aggregate = new Aggregate();
+            owners.put(owner, aggregate);
+        }
+        aggregate.add(value, passOf(trialDoc));
+        if (!bannedIds.contains(owner)) {
+            sketch.add(value);
+        }
+    }
+
+    /**
+     * Takes out a trial that was added
+     * @param trialDoc
+     * fields of the trial document, as it was added
+     */
+    public void removeTrial(Map<String, Object> trialDoc) {
+        String owner = (String) trialDoc.get("OwnerID");
+        Double value = valueOf(trialDoc);
+        Aggregate aggregate = owner == null ? null : owners.get(owner);
+        if (aggregate == null || value == null) {
+            return;
+        }
+        aggregate.remove(value, passOf(trialDoc));
+        if (aggregate.getCount() == 0) {
+            owners.remove(owner);
+        }
+        if (!bannedIds.contains(owner)) {
+            sketchChanged();
+        }
+    }
+
+    /**
+     * The sketch can not take values out: it is emptied with the totals, or left not exact
+     */
+    private void sketchChanged() {
+        if (getTotal().getCount() == 0) {
+            sketch = new QuantileSketch();
+            sketchExact = true;
+        } else {
+            sketchExact = false;
+        }
+    }
+
+    /**
+     * Takes the trials of an owner out of the totals
+     * @param ownerId
+     * the banned owner
+     */
+    public void ban(String ownerId) {
+        if (bannedIds.add(ownerId) && owners.containsKey(ownerId)) {
+            daysStale = true;
+            sketchChanged();
+        }
+    }
+
+    /**
+     * Puts the trials of an owner back into the totals
+     * @param ownerId
+     * the owner let back in
+     */
+    public void unban(String ownerId) {
+        if (bannedIds.remove(ownerId) && owners.containsKey(ownerId)) {
+            daysStale = true;
+            sketchExact = false;
+        }
+    }
+
+    /**
+     * If an owner is banned
+     * @param ownerId
+     * the owner
+     * @return true if the owner's trials are out of the totals and the days
+     */
+    public boolean isBanned(String ownerId) {
+        return bannedIds.contains(ownerId);
+    }
+
+    /**
+     * If the days were made with another set of banned owners, and have to be rebuilt before they are used
+     * @return true if the days are stale
+     */
+    public boolean isDaysStale() {
+        return daysStale;
+    }
+
+    /**
+     * Gets the sketch of the values of the owners that are not banned
+     * @return the sketch, merge it rather than change it
+     */
+    public QuantileSketch getSketch() {
+        return sketch;
+    }
+
+    /**
+     * If the sketch holds exactly the values of the owners that are not banned, false after a delete, ban or unban
+     * @return true if the sketch is exact
+     */
+    public boolean isSketchExact() {
+        return sketchExact;
+    }
+
+    /**
+     * Gets the aggregates of the trials of the owners that are not banned
+     * @return the totals
+     */
+    public Aggregate getTotal() {
+        Aggregate total = new Aggregate();
+        for (Map.Entry<String, Aggregate> entry : owners.entrySet()) {
+            if (!bannedIds.contains(entry.getKey())) {
+                total.merge(entry.getValue());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the aggregates of the trials of one owner, banned or not
+     * @param ownerId
+     * the owner
+     * @return the aggregates of the owner, null if they have no trials
+     */
+    public Aggregate getOwner(String ownerId) {
+        return owners.get(ownerId);
+    }
+
+    /**
+     * Gets the owners with trials
+     * @return owner ids, in order
+     */
+    public Collection<String> getOwnerIds() {
+        return owners.keySet();
+    }
+
+    /**
+     * Gets the banned owners
+     * @return banned owner ids, in order
+     */
+    public Collection<String> getBannedIds() {
+        return bannedIds;
+    }
+
+    /**
+     * Gets the trial type of the experiment
+     * @return the type of the first trial added, null before that
+     */
+    public String getTrialType() {
+        return trialType;
+    }
+
+    /**
+     * Compares this rollup to one rebuilt from the trials. Sums are compared with a relative tolerance for
+     * rounding, min and max only where this rollup claims they are exact, and the sketch by its count
+     * @param rebuilt
+     * the rollup rebuilt from the trials
+     * @return one line per difference, empty if the rollups agree
+     */
+    public List<String> compare(ExperimentRollup rebuilt) {
+        List<String> drift = new ArrayList<>();
+        if (!bannedIds.equals(rebuilt.bannedIds)) {
+            drift.add("BannedIds: stored " + bannedIds + ", rebuilt " + rebuilt.bannedIds);
+        }
+        compare("Total", getTotal(), rebuilt.getTotal(), drift);
+        if (sketchExact && sketch.getCount() != rebuilt.sketch.getCount()) {
+            drift.add("Sketch.Count: stored " + sketch.getCount() + ", rebuilt " + rebuilt.sketch.getCount());
+        }
+        TreeSet<String> ids = new TreeSet<>(owners.keySet());
+        ids.addAll(rebuilt.owners.keySet());
+        for (String id : ids) {
+            Aggregate stored = owners.get(id);
+            Aggregate expected = rebuilt.owners.get(id);
+            compare("Owners." + id, stored == null ? new Aggregate() : stored, expected == null ? new Aggregate() : expected, drift);
+        }
+        return drift;
+    }
+
+    private static void compare(String name, Aggregate stored, Aggregate rebuilt, List<String> drift) {
+        if (stored.count != rebuilt.count) {
+            drift.add(name + ".Count: stored " + stored.count + ", rebuilt " + rebuilt.count);
+        }
+        if (!close(stored.sum, rebuilt.sum)) {
+            drift.add(name + ".Sum: stored " + stored.sum + ", rebuilt " + rebuilt.sum);
+        }
+        if (!close(stored.m2, rebuilt.m2)) {
+            drift.add(name + ".M2: stored " + stored.m2 + ", rebuilt " + rebuilt.m2);
+        }
+        if (stored.passCount != rebuilt.passCount || stored.failCount != rebuilt.failCount) {
+            drift.add(name + ".Pass/Fail: stored " + stored.passCount + "/" + stored.failCount
+                    + ", rebuilt " + rebuilt.passCount + "/" + rebuilt.failCount);
+        }
+        if (stored.minMaxExact && stored.count > 0 && rebuilt.count > 0
+                && (stored.min != rebuilt.min || stored.max != rebuilt.max)) {
+            drift.add(name + ".Min/Max: stored " + stored.min + "/" + stored.max
+                    + ", rebuilt " + rebuilt.min + "/" + rebuilt.max);
+        }
+    }
+
+    private static boolean close(double a, double b) {
+        return Math.abs(a - b) <= 1e-9 * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+    }
+
+    /**
+     * The value a trial adds to the aggregates: 1 or 0 for a pass or fail, the count or the measurement otherwise
+     */
+    static Double valueOf(Map<String, Object> trialDoc) {
+        String type = (String) trialDoc.get("TrialType");
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case Trial.BINOMIAL:
+                Boolean pass = passOf(trialDoc);
+                return pass == null ? null : pass ? 1.0 : 0.0;
+            case Trial.COUNT:
+            case Trial.NONNEGATIVE:
+                return trialDoc.get("Count") instanceof Number ? ((Number) trialDoc.get("Count")).doubleValue() : null;
+            case Trial.MEASURE:
+                return trialDoc.get("Value") instanceof Number ? ((Number) trialDoc.get("Value")).doubleValue() : null;
+            default:
+                return null;
+        }
+    }
+
+    private static Boolean passOf(Map<String, Object> trialDoc) {
+        return Trial.BINOMIAL.equals(trialDoc.get("TrialType")) ? (Boolean) trialDoc.get("Pass") : null;
+    }
+
+    private static long longOf(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double doubleOf(Object value, double missing) {
+        return value instanceof Number ? ((Number) value).doubleValue() : missing;
+    }
+}
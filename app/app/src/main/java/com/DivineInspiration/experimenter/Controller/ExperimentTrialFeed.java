@@ -0,0 +1,423 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreChange;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+import com.DivineInspiration.experimenter.Model.Trial.OwnerDictionary;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the trials of an experiment up to date with one listen on the store.
+ * The first delivery has every trial, later ones only the trials that were added, changed or removed,
+ * so a new trial costs one document read and one appended row instead of a reload of the experiment.
+ * Changed and removed trials renumber the rows, the columns are rebuilt for those, which is rare.
+ * A ban or unban is delivered too, as the trials whose ignored state flipped.
+ */
+public class ExperimentTrialFeed {
+
+    private static final String TAG = "ExperimentTrialFeed";
+
+    private final TrialManager manager;
+    private final DocumentStore store;
+    private final String experimentId;
+
+    // the local model, row i of columns is trials.get(i)
+    private final List<Trial> trials = new ArrayList<>();
+    private final Map<String, Integer> rowOf = new HashMap<>();
+    private TrialColumns columns = new TrialColumns(16);
+    private final Set<String> localIds = new HashSet<>();     // added here before the store reported them
+
+    private DocumentStore.Registration registration;
+    private OnTrialDeltaListener listener;
+    private boolean loaded = false;
+    private int generation = 0;
+    private int version = 0;                                  // number of deliveries, a delta carries the version it leads to
+
+    /**
+     * Interface definition for a callback to be invoked when the trials of the feed change
+     */
+    public interface OnTrialDeltaListener {
+        /**
+         * Called with each change to the trials
+         * @param delta
+         * what changed, null if the feed failed and stopped
+         */
+        void onTrialDelta(Delta delta);
+    }
+
+    /**
+     * The trials added, changed and removed by one delivery
+     */
+    public static class Delta {
+        private final boolean initial;
+        private final List<Trial> added;
+        private final List<Trial> modified;
+        private final List<Trial> replaced;
+        private final List<Trial> removed;
+        private final List<Trial> ignoredChanged;
+        private final boolean rowsRenumbered;
+        private final List<Trial> trials;
+        private final TrialColumns columns;
+        private final int version;
+
+        Delta(boolean initial, List<Trial> added, List<Trial> modified, List<Trial> replaced, List<Trial> removed,
+              List<Trial> ignoredChanged, boolean rowsRenumbered, List<Trial> trials, TrialColumns columns, int version) {
+            this.initial = initial;
+            this.added = added;
+            this.modified = modified;
+            this.replaced = replaced;
+            this.removed = removed;
+            this.ignoredChanged = ignoredChanged;
+            this.rowsRenumbered = rowsRenumbered;
+            this.trials = trials;
+            this.columns = columns;
+            this.version = version;
+        }
+
+        /**
+         * If this is the first delivery, which adds every trial of the experiment
+         * @return true for the first delivery
+         */
+        public boolean isInitial() {
+            return initial;
+        }
+
+        /**
+         * Gets the new trials, they are the last rows
+         * @return added trials
+         */
+        public List<Trial> getAdded() {
+            return added;
+        }
+
+        /**
+         * Gets the new versions of the changed trials
+         * @return changed trials, in the same order as {@link #getReplaced()}
+         */
+        public List<Trial> getModified() {
+            return modified;
+        }
+
+        /**
+         * Gets the old versions of the changed trials
+         * @return replaced trials, in the same order as {@link #getModified()}
+         */
+        public List<Trial> getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * Gets the trials that were removed
+         * @return removed trials, as they were last delivered
+         */
+        public List<Trial> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Gets the trials whose ignored state flipped because their owner was banned or let back in
+         * @return trials, with their new ignored state
+         */
+        public List<Trial> getIgnoredChanged() {
+            return ignoredChanged;
+        }
+
+        /**
+         * If the columns were rebuilt, row numbers from earlier deliveries no longer hold
+         * @return true if the rows were renumbered
+         */
+        public boolean isRowsRenumbered() {
+            return rowsRenumbered;
+        }
+
+        /**
+         * Gets every trial of the feed after this delivery
+         * @return read only trials, row i of the columns is trial i
+         */
+        public List<Trial> getTrials() {
+            return trials;
+        }
+
+        /**
+         * Gets the columns of every trial after this delivery
+         * @return the columns
+         */
+        public TrialColumns getColumns() {
+            return columns;
+        }
+
+        /**
+         * Gets the version of the feed after this delivery
+         * @return version, see {@link ExperimentTrialFeed#getVersion()}
+         */
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param manager
+     * reads trials from their documents
+     * @param store
+     * where the trials are
+     * @param experimentId
+     * experiment whose trials are followed
+     */
+    ExperimentTrialFeed(TrialManager manager, DocumentStore store, String experimentId) {
+        this.manager = manager;
+        this.store = store;
+        this.experimentId = experimentId;
+    }
+
+    /**
+     * Reads the banned users, then starts listening. Any earlier listen is stopped and the trials are loaded again
+     * @param listener
+     * called with every change until {@link #stop()}
+     */
+    public void start(OnTrialDeltaListener listener) {
+        stop();
+        this.listener = listener;
+        int requested = generation;
+        store.get("BlackList/" + experimentId, blackList -> {
+            if (requested != generation) {
+                return;
+            }
+            if (blackList == null) {
+                Log.d(TAG, "start failed");
+                deliver(null);
+                return;
+            }
+            trials.clear();
+            rowOf.clear();
+            localIds.clear();
+            loaded = false;
+            // bans are kept as owner codes, so each trial is checked with a bit lookup
+            OwnerDictionary owners = new OwnerDictionary();
+            List<String> bannedIds = (List<String>) blackList.get("BannedIds");
+            if (bannedIds != null) {
+                for (String id : bannedIds) {
+                    owners.ban(id);
+                }
+            }
+            columns = new TrialColumns(16, owners);
+            registration = store.listen(new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId), changes -> {
+                if (requested == generation) {
+                    apply(changes);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stops listening, the trials are kept
+     */
+    public void stop() {
+        generation++;
+        listener = null;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /**
+     * Shows a trial right away, before its write reaches the store. When the store reports it, it is not delivered again
+     * @param trial
+     * trial that was just created
+     */
+    public void addLocal(Trial trial) {
+        if (rowOf.containsKey(trial.getTrialID())) {
+            return;
+        }
+        localIds.add(trial.getTrialID());
+        appendRow(trial);
+        deliver(new Delta(false, Collections.singletonList(trial), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), false, getTrials(), columns, ++version));
+    }
+
+    /**
+     * Bans a user and ignores all of their trials, the trials are delivered as a delta
+     * @param userId
+     * the banned user
+     * @return the trials whose ignored state changed
+     */
+    public List<Trial> banOwner(String userId) {
+        return deliverIgnored(setIgnored(columns.banOwner(userId), true));
+    }
+
+    /**
+     * Lifts the ban of a user and stops ignoring their trials, the trials are delivered as a delta
+     * @param userId
+     * the user let back in
+     * @return the trials whose ignored state changed
+     */
+    public List<Trial> unbanOwner(String userId) {
+        return deliverIgnored(setIgnored(columns.unbanOwner(userId), false));
+    }
+
+    /**
+     * Makes a delta holding every trial as added, as if it was the first delivery, for a listener that missed
+     * the deliveries so far. Nothing is read.
+     * @return the delta, of the current version
+     */
+    public Delta replay() {
+        return new Delta(true, new ArrayList<>(trials), Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), false, getTrials(), columns, version);
+    }
+
+    /**
+     * Gets the number of deliveries so far, a listener that saw the delta of this version is up to date
+     * @return version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the trials, in the order they were first delivered
+     * @return read only trials, row i of {@link #getColumns()} is trial i
+     */
+    public List<Trial> getTrials() {
+        return Collections.unmodifiableList(trials);
+    }
+
+    /**
+     * Gets the columns of the trials
+     * @return the columns
+     */
+    public TrialColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * If the first delivery happened
+     * @return true once every trial was loaded
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Applies the changes of a listen to the local model and delivers them
+     */
+    private void apply(List<StoreChange> changes) {
+        if (changes == null) {
+            Log.d(TAG, "listen failed");
+            deliver(null);
+            return;
+        }
+        boolean initial = !loaded;
+        loaded = true;
+        List<Trial> added = new ArrayList<>();
+        List<Trial> modified = new ArrayList<>();
+        List<Trial> replaced = new ArrayList<>();
+        List<Trial> removed = new ArrayList<>();
+        boolean rebuild = false;
+
+        for (StoreChange change : changes) {
+            String id = change.getDocument().getId();
+            Integer row = rowOf.get(id);
+            if (change.getType() == StoreChange.Type.REMOVED) {
+                localIds.remove(id);
+                if (row != null) {
+                    removed.add(trials.get(row));
+                    trials.set(row, null);
+                    rowOf.remove(id);
+                    rebuild = true;
+                }
+                continue;
+            }
+            if (localIds.remove(id) && change.getType() == StoreChange.Type.ADDED) {
+                // a trial added here coming back from the store, it is already shown
+                continue;
+            }
+            Trial trial = manager.trialFromSnapshot(change.getDocument());
+            if (row == null) {
+                appendRow(trial);
+                added.add(trial);
+            } else {
+                trial.setIgnored(trials.get(row).isIgnored());
+                replaced.add(trials.get(row));
+                modified.add(trial);
+                trials.set(row, trial);
+                rebuild = true;
+            }
+        }
+        if (rebuild) {
+            rebuildColumns();
+        }
+        if (initial || rebuild || !added.isEmpty()) {
+            deliver(new Delta(initial, added, modified, replaced, removed, Collections.emptyList(), rebuild, getTrials(), columns, ++version));
+        }
+    }
+
+    /**
+     * Adds a trial as the last row, its ignored state comes from the bans
+     */
+    private void appendRow(Trial trial) {
+        int row = columns.add(trial);
+        trial.setIgnored(columns.isIgnored(row));
+        trials.add(trial);
+        rowOf.put(trial.getTrialID(), row);
+    }
+
+    /**
+     * Drops the removed trials and builds the columns again, keeping the bans
+     */
+    private void rebuildColumns() {
+        OwnerDictionary old = columns.getOwnerDictionary();
+        OwnerDictionary owners = new OwnerDictionary();
+        for (int code = 0; code < old.size(); code++) {
+            if (old.isBanned(code)) {
+                owners.ban(old.getOwnerId(code));
+            }
+        }
+        List<Trial> kept = new ArrayList<>(trials.size());
+        for (Trial trial : trials) {
+            if (trial != null) {
+                kept.add(trial);
+            }
+        }
+        trials.clear();
+        rowOf.clear();
+        columns = new TrialColumns(Math.max(kept.size(), 16), owners);
+        for (Trial trial : kept) {
+            appendRow(trial);
+        }
+    }
+
+    private List<Trial> setIgnored(int[] rows, boolean ignored) {
+        List<Trial> changed = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            trials.get(row).setIgnored(ignored);
+            changed.add(trials.get(row));
+        }
+        return changed;
+    }
+
+    private List<Trial> deliverIgnored(List<Trial> changed) {
+        if (!changed.isEmpty()) {
+            deliver(new Delta(false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList(), changed, false, getTrials(), columns, ++version));
+        }
+        return changed;
+    }
+
+    private void deliver(Delta delta) {
+        if (listener != null) {
+            listener.onTrialDelta(delta);
+        }
+    }
+}
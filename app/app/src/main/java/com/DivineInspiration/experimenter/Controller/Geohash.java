@@ -0,0 +1,235 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Geohashes of trial locations, and the geohash ranges that cover a viewport.
+ * A geohash interleaves longitude and latitude bits, so the locations in a geohash cell share its prefix
+ * and neighbouring cells are often next to each other in string order. A viewport is covered by the cells
+ * of one precision, and runs of consecutive cells are merged into a few range queries.
+ */
+public class Geohash {
+
+    /**
+     * Precision of the stored geohashes, cells of about 5 meters
+     */
+    public static final int MAX_PRECISION = 9;
+
+    /**
+     * Most ranges a viewport is covered with, each one is a query
+     */
+    public static final int MAX_RANGES = 8;
+
+    /**
+     * Most cells looked at for one precision
+     */
+    public static final int MAX_CELLS = 1024;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    /**
+     * A range of geohashes, every geohash starting with a cell from the first to the last one
+     */
+    public static class Range {
+        private final String start;
+        private final String end;
+
+        Range(String start, String end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Gets the lower bound
+         * @return lowest geohash of the range, inclusive
+         */
+        public String getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the upper bound
+         * @return the last cell followed by '~', above every geohash in the range, exclusive
+         */
+        public String getEnd() {
+            return end;
+        }
+
+        /**
+         * If a geohash is in the range
+         * @param geohash geohash of a location
+         * @return true if start &lt;= geohash &lt; end
+         */
+        public boolean contains(String geohash) {
+            return geohash.compareTo(start) >= 0 && geohash.compareTo(end) < 0;
+        }
+    }
+
+    /**
+     * Gets the geohash of a location
+     * @param latitude latitude of the location
+     * @param longitude longitude of the location
+     * @param precision number of characters
+     * @return the geohash
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        return toString(interleave(lonCell(longitude, precision), latCell(latitude, precision), precision), precision);
+    }
+
+    /**
+     * Covers a viewport with at most {@link #MAX_RANGES} geohash ranges, picking the precision whose ranges
+     * span the least area. Cells on the edge, and the cells between merged runs, stick out of the viewport,
+     * so what the ranges find still has to be checked against it
+     * @param south southern latitude of the viewport
+     * @param west western longitude of the viewport, greater than east across the antimeridian
+     * @param north northern latitude of the viewport
+     * @param east eastern longitude of the viewport
+     * @return the ranges, in order
+     */
+    public static List<Range> cover(double south, double west, double north, double east) {
+        List<Range> best = null;
+        double bestArea = Double.MAX_VALUE;
+        for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+            long[] cells = cells(south, west, north, east, precision);
+            if (cells == null) {
+                break;
+            }
+            long[] runs = merge(cells);
+            // a cell of one more character is 32 times smaller
+            double area = spanned(runs) / Math.pow(32, precision);
+            if (area < bestArea) {
+                bestArea = area;
+                best = new ArrayList<>();
+                for (int i = 0; i < runs.length; i += 2) {
+                    best.add(new Range(toString(runs[i], precision), toString(runs[i + 1], precision) + "~"));
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Every cell of a precision overlapping the viewport, sorted
+     * @return the cells, null if there are more than MAX_CELLS
+     */
+    private static long[] cells(double south, double west, double north, double east, int precision) {
+        int x0 = lonCell(west, precision);
+        int x1 = lonCell(east, precision);
+        int[] xRanges = west <= east ? new int[]{x0, x1} : new int[]{x0, (1 << lonBits(precision)) - 1, 0, x1};
+        int y0 = latCell(south, precision);
+        int y1 = latCell(north, precision);
+
+        long width = 0;
+        for (int r = 0; r < xRanges.length; r += 2) {
+            width += xRanges[r + 1] - xRanges[r] + 1;
+        }
+        if (width * (y1 - y0 + 1) > MAX_CELLS) {
+            return null;
+        }
+        long[] cells = new long[(int) (width * (y1 - y0 + 1))];
+        int size = 0;
+        for (int r = 0; r < xRanges.length; r += 2) {
+            for (int x = xRanges[r]; x <= xRanges[r + 1]; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    cells[size++] = interleave(x, y, precision);
+                }
+            }
+        }
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    /**
+     * Merges sorted cells into at most MAX_RANGES runs: runs of consecutive cells first, then the runs
+     * with the smallest gaps between them, which costs the fewest extra cells
+     * @return first and last cell of each run
+     */
+    private static long[] merge(long[] cells) {
+        List<long[]> runs = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= cells.length; i++) {
+            if (i == cells.length || cells[i] != cells[i - 1] + 1) {
+                runs.add(new long[]{cells[start], cells[i - 1]});
+                start = i;
+            }
+        }
+        // keep the largest gaps as the splits between ranges
+        Integer[] gaps = new Integer[runs.size() - 1];
+        for (int i = 0; i < gaps.length; i++) {
+            gaps[i] = i;
+        }
+        Arrays.sort(gaps, (a, b) -> Long.compare(runs.get(b + 1)[0] - runs.get(b)[1], runs.get(a + 1)[0] - runs.get(a)[1]));
+        boolean[] isSplit = new boolean[gaps.length];
+        for (int i = 0; i < Math.min(gaps.length, MAX_RANGES - 1); i++) {
+            isSplit[gaps[i]] = true;
+        }
+        long[] merged = new long[2 * Math.min(runs.size(), MAX_RANGES)];
+        int size = 0;
+        merged[0] = runs.get(0)[0];
+        for (int i = 0; i < gaps.length; i++) {
+            if (isSplit[i]) {
+                merged[size + 1] = runs.get(i)[1];
+                size += 2;
+                merged[size] = runs.get(i + 1)[0];
+            }
+        }
+        merged[size + 1] = runs.get(runs.size() - 1)[1];
+        return merged;
+    }
+
+    /**
+     * Number of cells spanned by runs
+     */
+    private static long spanned(long[] runs) {
+        long cells = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            cells += runs[i + 1] - runs[i] + 1;
+        }
+        return cells;
+    }
+
+    private static int lonBits(int precision) {
+        return (5 * precision + 1) / 2;
+    }
+
+    private static int latBits(int precision) {
+        return 5 * precision / 2;
+    }
+
+    private static int lonCell(double longitude, int precision) {
+        return cell((longitude + 180) / 360, lonBits(precision));
+    }
+
+    private static int latCell(double latitude, int precision) {
+        return cell((latitude + 90) / 180, latBits(precision));
+    }
+
+    private static int cell(double fraction, int bits) {
+        int cells = 1 << bits;
+        return (int) Math.max(0, Math.min(cells - 1, Math.floor(fraction * cells)));
+    }
+
+    /**
+     * The bits of a cell, longitude first then alternating with latitude
+     */
+    private static long interleave(int x, int y, int precision) {
+        int lonBit = lonBits(precision) - 1;
+        int latBit = latBits(precision) - 1;
+        long value = 0;
+        for (int i = 0; i < 5 * precision; i++) {
+            value = i % 2 == 0 ? value << 1 | (x >> lonBit--) & 1 : value << 1 | (y >> latBit--) & 1;
+        }
+        return value;
+    }
+
+    private static String toString(long value, int precision) {
+        char[] chars = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            chars[i] = BASE32.charAt((int) (value & 31));
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,149 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+import com.google.firebase.firestore.GeoPoint;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the geohash of the located trials of an experiment that were stored before geohashes were.
+ * The trials are paged through and updated in batches, and once every batch has committed the experiment is
+ * marked in "TrialIndex/&lt;experimentId&gt;", so {@link TrialManager#queryTrialsInBounds} knows its geohash
+ * ranges hold every located trial.
+ */
+public class GeohashBackfill {
+
+    private static final String TAG = "GeohashBackfill";
+
+    private final DocumentStore store;
+    private final int pageSize;
+    private final AtomicInteger updatedCount = new AtomicInteger();
+
+    /**
+     * Constructor, with the largest batches the store allows
+     * @param store the document store holding the trials
+     */
+    public GeohashBackfill(DocumentStore store) {
+        this(store, DocumentStore.MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param store the document store holding the trials
+     * @param pageSize documents read and updated per batch, capped at {@link DocumentStore#MAX_BATCH_SIZE}
+     */
+    public GeohashBackfill(DocumentStore store, int pageSize) {
+        this.store = store;
+        this.pageSize = Math.max(1, Math.min(pageSize, DocumentStore.MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Gets the path of the document marking the trials of an experiment as indexed
+     * @param experimentId the experiment
+     * @return path of the marker
+     */
+    public static String markerPath(String experimentId) {
+        return "TrialIndex/" + experimentId;
+    }
+
+    /**
+     * If a marker document says the trials of its experiment are indexed
+     * @param marker the marker document, see {@link #markerPath}
+     * @return true if every located trial has a geohash
+     */
+    public static boolean isIndexed(DocumentData marker) {
+        return marker != null && marker.exists() && Boolean.TRUE.equals(marker.getBoolean("Geohash"));
+    }
+
+    /**
+     * Writes the missing geohashes of an experiment. The next page is read while the previous batch commits,
+     * and a backfill that failed can be run again, the trials done already are skipped.
+     * @param experimentId the experiment to index
+     * @param callback told true once every batch committed and the experiment is marked, false if a read
+     *                 or a write failed; can be null
+     */
+    public void backfill(String experimentId, ExperimentManager.OnOperationDone callback) {
+        // one pending unit while paging, plus one per batch still committing
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        backfillPage(experimentId, null, pending, failed, callback);
+    }
+
+    /**
+     * Gets the number of trials updated so far
+     * @return number of updated trials
+     */
+    public int getUpdatedCount() {
+        return updatedCount.get();
+    }
+
+    private void backfillPage(String experimentId, String cursor, AtomicInteger pending, AtomicBoolean failed,
+                              ExperimentManager.OnOperationDone callback) {
+        StoreQuery query = new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId).limit(pageSize);
+        if (cursor != null) {
+            query.startAfter(cursor);
+        }
+        store.query(query, documents -> {
+            if (documents == null) {
+                Log.d(TAG, "reading trials failed");
+                failed.set(true);
+                release(experimentId, pending, failed, callback);
+                return;
+            }
+
+            DocumentStore.Batch batch = store.batch();
+            for (DocumentData document : documents) {
+                GeoPoint location = document.get("Location", GeoPoint.class);
+                if (location != null && !document.contains("Geohash")) {
+                    batch.update(document.getPath(), Collections.singletonMap("Geohash",
+                            Geohash.encode(location.getLatitude(), location.getLongitude(), Geohash.MAX_PRECISION)));
+                }
+            }
+            if (batch.size() > 0) {
+                int size = batch.size();
+                pending.incrementAndGet();
+                batch.commit(successful -> {
+                    if (successful) {
+                        updatedCount.addAndGet(size);
+                    } else {
+                        Log.d(TAG, "writing geohashes failed");
+                        failed.set(true);
+                    }
+                    release(experimentId, pending, failed, callback);
+                });
+            }
+
+            if (documents.size() == pageSize && !failed.get()) {
+                backfillPage(experimentId, documents.get(documents.size() - 1).getId(), pending, failed, callback);
+            } else {
+                release(experimentId, pending, failed, callback);
+            }
+        });
+    }
+
+    /**
+     * Marks the experiment once the last unit is done, unless something failed
+     */
+    private void release(String experimentId, AtomicInteger pending, AtomicBoolean failed, ExperimentManager.OnOperationDone callback) {
+        if (pending.decrementAndGet() > 0) {
+            return;
+        }
+        if (failed.get()) {
+            if (callback != null) {
+                callback.done(false);
+            }
+            return;
+        }
+        store.set(markerPath(experimentId), Collections.singletonMap("Geohash", true), true, successful -> {
+            if (callback != null) {
+                callback.done(successful);
+            }
+        });
+    }
+}
@@ -0,0 +1,192 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates every copy of a user's display name when the user is renamed.
+ * The name is denormalized into experiments, trials, comments and replies; {@link #NAME_COPIES} lists where.
+ * Each kind of copy is paged through by the user's id and updated in batches, and the rename
+ * is reported done only once every batch has committed.
+ */
+public class RenamePropagator {
+
+    private static final String TAG = "RenamePropagator";
+
+    /**
+     * Where a user's display name is copied: a collection (or collection group),
+     * the field holding the user's id and the field holding the copied name
+     */
+    public static class NameCopy {
+        private final String collection;
+        private final boolean collectionGroup;
+        private final String idField;
+        private final String nameField;
+
+        /**
+         * Constructor
+         * @param collection collection path, or collection id for a collection group
+         * @param collectionGroup true if the copies are in every collection with that id
+         * @param idField field holding the user id
+         * @param nameField field holding the copy of the name
+         */
+        public NameCopy(String collection, boolean collectionGroup, String idField, String nameField) {
+            this.collection = collection;
+            this.collectionGroup = collectionGroup;
+            this.idField = idField;
+            this.nameField = nameField;
+        }
+
+        /**
+         * Gets the collection
+         * @return collection path, or collection id for a collection group
+         */
+        public String getCollection() {
+            return collection;
+        }
+
+        /**
+         * Gets the name field
+         * @return field holding the copy of the name
+         */
+        public String getNameField() {
+            return nameField;
+        }
+
+        StoreQuery query(String userId) {
+            StoreQuery query = collectionGroup ? StoreQuery.collectionGroup(collection) : new StoreQuery(collection);
+            return query.whereEqualTo(idField, userId);
+        }
+    }
+
+    /**
+     * Every place a user's display name is copied to
+     */
+    public static final List<NameCopy> NAME_COPIES = Collections.unmodifiableList(Arrays.asList(
+            new NameCopy("Experiments", false, "OwnerID", "OwnerName"),
+            new NameCopy("Trials", false, "OwnerID", "OwnerName"),
+            new NameCopy("Comments", true, "CommenterID", "CommenterName"),
+            new NameCopy("Replies", true, "CommenterID", "CommenterName")
+    ));
+
+    private final DocumentStore store;
+    private final int pageSize;
+    private final AtomicInteger updatedCount = new AtomicInteger();
+
+    /**
+     * Constructor, with the largest batches the store allows
+     * @param store the document store holding the copies
+     */
+    public RenamePropagator(DocumentStore store) {
+        this(store, DocumentStore.MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param store the document store holding the copies
+     * @param pageSize documents read and updated per batch, capped at {@link DocumentStore#MAX_BATCH_SIZE}
+     */
+    public RenamePropagator(DocumentStore store, int pageSize) {
+        this.store = store;
+        this.pageSize = Math.max(1, Math.min(pageSize, DocumentStore.MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Writes a user's new name into every copy. All kinds of copies are updated at the same time,
+     * and within a kind the next page is read while the previous batch commits.
+     * @param userId the renamed user
+     * @param newName the new display name
+     * @param callback told true once every batch committed, false if a read or a batch failed; can be null
+     */
+    public void rename(String userId, String newName, ExperimentManager.OnOperationDone callback) {
+        // one pending unit per kind of copy still paging, plus one per batch still committing
+        AtomicInteger pending = new AtomicInteger(NAME_COPIES.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (NameCopy copy : NAME_COPIES) {
+            renamePage(copy, userId, newName, null, pending, failed, callback);
+        }
+    }
+
+    /**
+     * Gets the number of documents updated so far
+     * @return number of updated documents
+     */
+    public int getUpdatedCount() {
+        return updatedCount.get();
+    }
+
+    private void renamePage(NameCopy copy, String userId, String newName, String cursor,
+                            AtomicInteger pending, AtomicBoolean failed, ExperimentManager.OnOperationDone callback) {
+        StoreQuery query = copy.query(userId).limit(pageSize);
+        if (cursor != null) {
+            query.startAfter(cursor);
+        }
+        store.query(query, documents -> {
+            if (documents == null) {
+                Log.d(TAG, "reading " + copy.getCollection() + " failed");
+                failed.set(true);
+                release(pending, failed, callback);
+                return;
+            }
+
+            DocumentStore.Batch batch = store.batch();
+            for (DocumentData document : documents) {
+                // copies already renamed by an earlier, interrupted rename are skipped
+                if (!newName.equals(document.getString(copy.getNameField()))) {
+                    batch.update(document.getPath(), renamed(document, copy, newName));
+                }
+            }
+            if (batch.size() > 0) {
+                int size = batch.size();
+                pending.incrementAndGet();
+                batch.commit(successful -> {
+                    if (successful) {
+                        updatedCount.addAndGet(size);
+                    } else {
+                        Log.d(TAG, "renaming " + copy.getCollection() + " failed");
+                        failed.set(true);
+                    }
+                    release(pending, failed, callback);
+                });
+            }
+
+            if (documents.size() == pageSize && !failed.get()) {
+                // in a collection group the id that orders the documents is the full path
+                DocumentData last = documents.get(documents.size() - 1);
+                renamePage(copy, userId, newName, copy.collectionGroup ? last.getPath() : last.getId(), pending, failed, callback);
+            } else {
+                release(pending, failed, callback);
+            }
+        });
+    }
+
+    /**
+     * The fields to update on a copy: the name, and the search keywords of an experiment, which hold its owner's name
+     */
+    private static Map<String, Object> renamed(DocumentData document, NameCopy copy, String newName) {
+        if (!document.contains("Keywords")) {
+            return Collections.singletonMap(copy.getNameField(), newName);
+        }
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(copy.getNameField(), newName);
+        fields.put("Keywords", ExperimentManager.keywordsOf(document.getString("ExperimentName"), newName, document.getString("ExperimentDescription")));
+        return fields;
+    }
+
+    private static void release(AtomicInteger pending, AtomicBoolean failed, ExperimentManager.OnOperationDone callback) {
+        if (pending.decrementAndGet() == 0 && callback != null) {
+            callback.done(!failed.get());
+        }
+    }
+}
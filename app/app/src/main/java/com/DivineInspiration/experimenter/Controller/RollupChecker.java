@@ -0,0 +1,245 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Checks the {@link ExperimentRollup} of an experiment and its {@link DayBucket} days against its trials. They are
+ * rebuilt from the raw trial documents and the black list, and compared to the stored ones; the differences are
+ * the drift, from writes that bypassed the rollup or failed halfway, deletes the day sketches could not take back,
+ * and bans. The stored rollup and days can then be replaced by the rebuilt ones.
+ */
+public class RollupChecker {
+
+    private static final String TAG = "RollupChecker";
+
+    private final DocumentStore store;
+
+    /**
+     * Interface definition for a callback to be invoked when a rollup is checked
+     */
+    public interface OnRollupCheckedListener {
+        /**
+         * Called when the rollup is checked
+         * @param drift
+         * one line per difference between the stored and the rebuilt rollup, empty if they agree, null if a read failed
+         * @param repaired
+         * if the stored rollup was replaced by the rebuilt one
+         */
+        void onRollupChecked(List<String> drift, boolean repaired);
+    }
+
+    /**
+     * Constructor
+     * @param store
+     * where the trials and rollups are
+     */
+    public RollupChecker(DocumentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Rebuilds the rollup of an experiment and its days from its trials and compares them to the stored ones
+     * @param experimentId
+     * the experiment to check
+     * @param repair
+     * true to replace a drifted rollup and its days by the rebuilt ones, unless the rollup changed during the check
+     * @param callback
+     * called with the drift
+     */
+    public void check(String experimentId, boolean repair, OnRollupCheckedListener callback) {
+        store.get(ExperimentRollup.pathOf(experimentId), rollupDocument -> {
+            if (rollupDocument == null) {
+                fail(callback);
+                return;
+            }
+            store.get("BlackList/" + experimentId, blackList -> {
+                if (blackList == null) {
+                    fail(callback);
+                    return;
+                }
+                store.query(new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId), trials -> {
+                    if (trials == null) {
+                        fail(callback);
+                        return;
+                    }
+                    store.query(new StoreQuery(DayBucket.collectionOf(experimentId)), dayDocuments -> {
+                        if (dayDocuments == null) {
+                            fail(callback);
+                            return;
+                        }
+                        ExperimentRollup stored = ExperimentRollup.fromDocument(rollupDocument);
+                        ExperimentRollup rebuilt = rebuild(trials, blackList);
+                        Map<Integer, DayBucket> storedDays = new TreeMap<>();
+                        for (DocumentData document : dayDocuments) {
+                            DayBucket day = DayBucket.fromDocument(document);
+                            storedDays.put(day.getEpochDay(), day);
+                        }
+                        Map<Integer, DayBucket> rebuiltDays = rebuildDays(trials, rebuilt);
+
+                        List<String> drift = stored.compare(rebuilt);
+                        if (!stored.isSketchExact()) {
+                            drift.add("Sketch: not exact after a delete or ban");
+                        }
+                        if (stored.isDaysStale()) {
+                            drift.add("Days: stale after a ban");
+                        }
+                        compareDays(storedDays, rebuiltDays, drift);
+                        if (drift.isEmpty() || !repair) {
+                            callback.onRollupChecked(drift, false);
+                            return;
+                        }
+                        writeDays(experimentId, storedDays, rebuiltDays, daysWritten -> {
+                            if (!daysWritten) {
+                                Log.d(TAG, "repairing the days of " + experimentId + " failed");
+                                callback.onRollupChecked(drift, false);
+                                return;
+                            }
+                            writeRollup(experimentId, stored, rebuilt, successful -> callback.onRollupChecked(drift, successful));
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    /**
+     * Builds a rollup from the trial documents of an experiment and its black list
+     * @param trials
+     * every trial document of the experiment
+     * @param blackList
+     * the black list document of the experiment, may be missing
+     * @return the rollup
+     */
+    @SuppressWarnings("unchecked")
+    public static ExperimentRollup rebuild(List<DocumentData> trials, DocumentData blackList) {
+        ExperimentRollup rollup = new ExperimentRollup();
+        // banned before any trial is added, so the days the rollup comes with are not stale
+        if (blackList != null && blackList.get("BannedIds") instanceof List) {
+            for (String id : (List<String>) blackList.get("BannedIds")) {
+                rollup.ban(id);
+            }
+        }
+        for (DocumentData trial : trials) {
+            rollup.addTrial(trial.getData());
+        }
+        return rollup;
+    }
+
+    /**
+     * Builds the days from the trial documents of an experiment
+     * @param trials
+     * every trial document of the experiment
+     * @param rollup
+     * the rollup of the experiment, for its banned owners
+     * @return the days with trials of owners that are not banned, by day
+     */
+    public static Map<Integer, DayBucket> rebuildDays(List<DocumentData> trials, ExperimentRollup rollup) {
+        Map<Integer, DayBucket> days = new TreeMap<>();
+        for (DocumentData trial : trials) {
+            if (rollup.isBanned(trial.getString("OwnerID")) || trial.getString("Date") == null) {
+                continue;
+            }
+            int epochDay = DayBucket.dayOf(trial.getData());
+            DayBucket day = days.get(epochDay);
+            if (day == null) {
+                day = new DayBucket(epochDay);
+                days.put(epochDay, day);
+            }
+            day.addTrial(trial.getData());
+        }
+        return days;
+    }
+
+    /**
+     * Compares the stored days to the rebuilt ones
+     */
+    private static void compareDays(Map<Integer, DayBucket> stored, Map<Integer, DayBucket> rebuilt, List<String> drift) {
+        Set<Integer> epochDays = new TreeSet<>(stored.keySet());
+        epochDays.addAll(rebuilt.keySet());
+        for (int epochDay : epochDays) {
+            DayBucket storedDay = stored.containsKey(epochDay) ? stored.get(epochDay) : new DayBucket(epochDay);
+            DayBucket rebuiltDay = rebuilt.containsKey(epochDay) ? rebuilt.get(epochDay) : new DayBucket(epochDay);
+            String name = "Days." + LocalDate.ofEpochDay(epochDay);
+            if (storedDay.getCount() != rebuiltDay.getCount()) {
+                drift.add(name + ".Count: stored " + storedDay.getCount() + ", rebuilt " + rebuiltDay.getCount());
+            } else if (Math.abs(storedDay.getSum() - rebuiltDay.getSum()) > 1e-9 * Math.max(1, Math.abs(rebuiltDay.getSum()))) {
+                drift.add(name + ".Sum: stored " + storedDay.getSum() + ", rebuilt " + rebuiltDay.getSum());
+            } else if (!storedDay.isExact()) {
+                drift.add(name + ": sketch not exact after a delete");
+            }
+        }
+    }
+
+    /**
+     * Writes the rebuilt days and deletes the stored days left without trials, in batches
+     */
+    private void writeDays(String experimentId, Map<Integer, DayBucket> stored, Map<Integer, DayBucket> rebuilt, DocumentStore.OnWriteDoneListener callback) {
+        List<DayBucket> writes = new ArrayList<>(rebuilt.values());
+        for (int epochDay : stored.keySet()) {
+            if (!rebuilt.containsKey(epochDay)) {
+                writes.add(new DayBucket(epochDay));
+            }
+        }
+        commitDays(experimentId, writes, 0, callback);
+    }
+
+    private void commitDays(String experimentId, List<DayBucket> days, int from, DocumentStore.OnWriteDoneListener callback) {
+        if (from >= days.size()) {
+            callback.done(true);
+            return;
+        }
+        DocumentStore.Batch batch = store.batch();
+        int to = Math.min(days.size(), from + DocumentStore.MAX_BATCH_SIZE);
+        for (DayBucket day : days.subList(from, to)) {
+            String path = DayBucket.pathOf(experimentId, day.getEpochDay());
+            if (day.getCount() == 0) {
+                batch.delete(path);
+            } else {
+                batch.set(path, day.toDocument(), false);
+            }
+        }
+        batch.commit(successful -> {
+            if (successful) {
+                commitDays(experimentId, days, to, callback);
+            } else {
+                callback.done(false);
+            }
+        });
+    }
+
+    /**
+     * Replaces the stored rollup by the rebuilt one, unless a trial was written since it was read
+     */
+    private void writeRollup(String experimentId, ExperimentRollup stored, ExperimentRollup rebuilt, DocumentStore.OnWriteDoneListener callback) {
+        store.runTransaction(transaction -> {
+            // a trial written since the rollup was read makes the rebuilt one stale too
+            ExperimentRollup current = ExperimentRollup.fromDocument(transaction.get(ExperimentRollup.pathOf(experimentId)));
+            if (!current.compare(stored).isEmpty() || !current.getOwnerIds().equals(stored.getOwnerIds())) {
+                throw new IllegalStateException("rollup of " + experimentId + " changed during the check");
+            }
+            transaction.set(ExperimentRollup.pathOf(experimentId), rebuilt.toDocument(), false);
+        }, successful -> {
+            if (!successful) {
+                Log.d(TAG, "repairing the rollup of " + experimentId + " failed");
+            }
+            callback.done(successful);
+        });
+    }
+
+    private static void fail(OnRollupCheckedListener callback) {
+        Log.d(TAG, "check failed");
+        callback.onRollupChecked(null, false);
+    }
+}
@@ -0,0 +1,135 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * A read only copy of a document, as returned by a {@link DocumentStore}.
+ * Whole numbers are Longs and floating point numbers are Doubles, like in Firestore.
+ */
+public class DocumentData {
+
+    private final String path;
+    private final Map<String, Object> fields;
+
+    /**
+     * Constructor
+     * @param path
+     * path of the document
+     * @param fields
+     * fields of the document, null if the document does not exist
+     */
+    public DocumentData(String path, Map<String, Object> fields) {
+        this.path = path;
+        this.fields = fields == null ? null : Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Gets the id of the document, the last part of its path
+     * @return document id
+     */
+    public String getId() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Gets the path of the document
+     * @return document path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * If the document exists
+     * @return true if there is a document at the path
+     */
+    public boolean exists() {
+        return fields != null;
+    }
+
+    /**
+     * Gets all the fields
+     * @return fields, empty if the document does not exist
+     */
+    public Map<String, Object> getData() {
+        return fields == null ? Collections.emptyMap() : fields;
+    }
+
+    /**
+     * If the document has a field
+     * @param field field name
+     * @return true if the field is set
+     */
+    public boolean contains(String field) {
+        return fields != null && fields.containsKey(field);
+    }
+
+    /**
+     * Gets a field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public Object get(String field) {
+        return fields == null ? null : fields.get(field);
+    }
+
+    /**
+     * Gets a string field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public String getString(String field) {
+        return (String) get(field);
+    }
+
+    /**
+     * Gets a whole number field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public Long getLong(String field) {
+        Number value = (Number) get(field);
+        return value == null ? null : value.longValue();
+    }
+
+    /**
+     * Gets a number field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public Double getDouble(String field) {
+        Number value = (Number) get(field);
+        return value == null ? null : value.doubleValue();
+    }
+
+    /**
+     * Gets a boolean field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public Boolean getBoolean(String field) {
+        return (Boolean) get(field);
+    }
+
+    /**
+     * Gets a date field
+     * @param field field name
+     * @return value, null if missing
+     */
+    public Date getDate(String field) {
+        return (Date) get(field);
+    }
+
+    /**
+     * Gets a field of any other type, ie a GeoPoint or a nested map
+     * @param field field name
+     * @param type expected type
+     * @param <T> expected type
+     * @return value, null if missing
+     */
+    public <T> T get(String field, Class<T> type) {
+        return type.cast(get(field));
+    }
+}
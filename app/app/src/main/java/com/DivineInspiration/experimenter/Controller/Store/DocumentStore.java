@@ -0,0 +1,234 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The document database the managers talk to. Documents are addressed by slash separated paths,
+ * ie "Experiments/EXP123" or "Comments/EXP123/Comments/C456", and collections by the path without the last id.
+ * Field values may be {@link StoreFieldValue} operations on writes.
+ * Results are given to callbacks, like the Firestore tasks this interface stands in front of.
+ * @see FirestoreDocumentStore
+ * @see InMemoryDocumentStore
+ */
+public interface DocumentStore {
+
+    /**
+     * Interface definition for a callback to be invoked when a document is read
+     */
+    interface OnDocumentReadyListener {
+
+        /**
+         * Called when a document is read
+         * @param document
+         * The document, with exists() false if there is none at the path. Null if the read failed
+         */
+        void onDocumentReady(DocumentData document);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a query is done
+     */
+    interface OnDocumentsReadyListener {
+
+        /**
+         * Called when a query is done
+         * @param documents
+         * The matching documents in query order, null if the query failed
+         */
+        void onDocumentsReady(List<DocumentData> documents);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a write is done
+     */
+    interface OnWriteDoneListener {
+
+        /**
+         * Called when a write is done
+         * @param successful
+         * Success of the write
+         */
+        void done(boolean successful);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the results of a listened query change
+     */
+    interface OnDocumentChangesListener {
+
+        /**
+         * Called with the changes since the last call, the first call has every matching document as added
+         * @param changes
+         * The changes, in the order they happened. Null if listening failed, there are no calls after that
+         */
+        void onDocumentChanges(List<StoreChange> changes);
+    }
+
+    /**
+     * A running listen, removing it stops the calls
+     */
+    interface Registration {
+
+        /**
+         * Stops listening
+         */
+        void remove();
+    }
+
+    /**
+     * A group of writes that are applied together, all or none
+     */
+    interface Batch {
+
+        /**
+         * Adds a set to the batch
+         * @param path document path
+         * @param data fields of the document
+         * @param merge true to keep the fields not in data
+         * @return this batch
+         */
+        Batch set(String path, Map<String, Object> data, boolean merge);
+
+        /**
+         * Adds an update to the batch, the batch fails if the document does not exist
+         * @param path document path
+         * @param fields fields to change
+         * @return this batch
+         */
+        Batch update(String path, Map<String, Object> fields);
+
+        /**
+         * Adds a delete to the batch
+         * @param path document path
+         * @return this batch
+         */
+        Batch delete(String path);
+
+        /**
+         * Gets the number of writes in the batch
+         * @return number of writes
+         */
+        int size();
+
+        /**
+         * Applies the writes
+         * @param callback called when the batch is applied, may be null
+         */
+        void commit(OnWriteDoneListener callback);
+    }
+
+    /**
+     * Reads and writes applied together, against the documents as they were read. All reads come before the writes
+     */
+    interface Transaction {
+
+        /**
+         * Reads a document
+         * @param path document path
+         * @return the document, with exists() false if there is none at the path
+         */
+        DocumentData get(String path);
+
+        /**
+         * Adds a set to the transaction
+         * @param path document path
+         * @param data fields of the document
+         * @param merge true to keep the fields not in data
+         * @return this transaction
+         */
+        Transaction set(String path, Map<String, Object> data, boolean merge);
+
+        /**
+         * Adds an update to the transaction, the transaction fails if the document does not exist
+         * @param path document path
+         * @param fields fields to change
+         * @return this transaction
+         */
+        Transaction update(String path, Map<String, Object> fields);
+
+        /**
+         * Adds a delete to the transaction
+         * @param path document path
+         * @return this transaction
+         */
+        Transaction delete(String path);
+    }
+
+    /**
+     * The reads and writes of a transaction
+     */
+    interface TransactionFunction {
+
+        /**
+         * Reads documents and decides what to write, may be run again if the documents read change meanwhile
+         * @param transaction the transaction to read and write through
+         */
+        void apply(Transaction transaction);
+    }
+
+    /**
+     * Most writes one batch can hold, the Firestore limit
+     */
+    int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Reads a document
+     * @param path document path
+     * @param callback called with the document
+     */
+    void get(String path, OnDocumentReadyListener callback);
+
+    /**
+     * Runs a query over a collection
+     * @param query the query
+     * @param callback called with the matching documents
+     */
+    void query(StoreQuery query, OnDocumentsReadyListener callback);
+
+    /**
+     * Listens to the documents matching the filters of a query. The callback first gets every match,
+     * then only the documents that were added, changed or removed. Order, cursor and limit are ignored
+     * @param query the query
+     * @param callback called with the changes until the registration is removed
+     * @return the registration, to stop listening
+     */
+    Registration listen(StoreQuery query, OnDocumentChangesListener callback);
+
+    /**
+     * Writes a document
+     * @param path document path
+     * @param data fields of the document
+     * @param merge true to keep the fields not in data, false to replace the document
+     * @param callback called when the write is done, may be null
+     */
+    void set(String path, Map<String, Object> data, boolean merge, OnWriteDoneListener callback);
+
+    /**
+     * Changes some fields of an existing document, fails if the document does not exist
+     * @param path document path
+     * @param fields fields to change
+     * @param callback called when the write is done, may be null
+     */
+    void update(String path, Map<String, Object> fields, OnWriteDoneListener callback);
+
+    /**
+     * Deletes a document, deleting a document that does not exist succeeds
+     * @param path document path
+     * @param callback called when the write is done, may be null
+     */
+    void delete(String path, OnWriteDoneListener callback);
+
+    /**
+     * Starts a batch of writes
+     * @return an empty batch
+     */
+    Batch batch();
+
+    /**
+     * Runs a transaction, its writes are applied only if none of the documents it read changed meanwhile
+     * @param function the reads and writes
+     * @param callback called when the transaction is applied or failed, may be null
+     */
+    void runTransaction(TransactionFunction function, OnWriteDoneListener callback);
+}
@@ -0,0 +1,335 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DocumentStore} backed by Firestore, the one the app uses.
+ */
+public class FirestoreDocumentStore implements DocumentStore {
+
+    private static final String TAG = "FirestoreDocumentStore";
+
+    private final FirebaseFirestore db;
+
+    /**
+     * Constructor, uses the default Firestore instance
+     */
+    public FirestoreDocumentStore() {
+        this(FirebaseFirestore.getInstance());
+    }
+
+    /**
+     * Constructor
+     * @param db the Firestore instance to use
+     */
+    public FirestoreDocumentStore(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    @Override
+    public void get(String path, OnDocumentReadyListener callback) {
+        db.document(path).get().addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onDocumentReady(fromSnapshot(path, task.getResult()));
+            } else {
+                Log.d(TAG, "get " + path + " failed");
+                callback.onDocumentReady(null);
+            }
+        });
+    }
+
+    @Override
+    public void query(StoreQuery storeQuery, OnDocumentsReadyListener callback) {
+        Query query = filtered(storeQuery);
+        Query.Direction direction = storeQuery.isDescending() ? Query.Direction.DESCENDING : Query.Direction.ASCENDING;
+        if (StoreQuery.DOCUMENT_ID.equals(storeQuery.getOrderBy())) {
+            query = query.orderBy(FieldPath.documentId(), direction);
+        } else {
+            query = query.orderBy(storeQuery.getOrderBy(), direction);
+        }
+        if (storeQuery.getStartAfter() != null) {
+            query = query.startAfter(storeQuery.getStartAfter());
+        }
+        if (storeQuery.getLimit() >= 0) {
+            query = query.limit(storeQuery.getLimit());
+        }
+
+        query.get().addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                List<DocumentData> output = new ArrayList<>();
+                for (QueryDocumentSnapshot snapshot : task.getResult()) {
+                    output.add(fromSnapshot(snapshot.getReference().getPath(), snapshot));
+                }
+                callback.onDocumentsReady(output);
+            } else {
+                Log.d(TAG, "query " + storeQuery.getCollection() + " failed");
+                callback.onDocumentsReady(null);
+            }
+        });
+    }
+
+    @Override
+    public Registration listen(StoreQuery storeQuery, OnDocumentChangesListener callback) {
+        ListenerRegistration registration = filtered(storeQuery).addSnapshotListener((snapshots, error) -> {
+            if (error != null || snapshots == null) {
+                Log.d(TAG, "listen " + storeQuery.getCollection() + " failed");
+                callback.onDocumentChanges(null);
+                return;
+            }
+            List<StoreChange> changes = new ArrayList<>();
+            for (DocumentChange change : snapshots.getDocumentChanges()) {
+                QueryDocumentSnapshot snapshot = change.getDocument();
+                changes.add(new StoreChange(toChangeType(change.getType()), fromSnapshot(snapshot.getReference().getPath(), snapshot)));
+            }
+            callback.onDocumentChanges(changes);
+        });
+        return registration::remove;
+    }
+
+    @Override
+    public void set(String path, Map<String, Object> data, boolean merge, OnWriteDoneListener callback) {
+        Map<String, Object> doc = toFirestore(data);
+        (merge ? db.document(path).set(doc, SetOptions.merge()) : db.document(path).set(doc))
+                .addOnCompleteListener(task -> done(callback, task.isSuccessful()));
+    }
+
+    @Override
+    public void update(String path, Map<String, Object> fields, OnWriteDoneListener callback) {
+        db.document(path).update(toFirestore(fields))
+                .addOnCompleteListener(task -> done(callback, task.isSuccessful()));
+    }
+
+    @Override
+    public void delete(String path, OnWriteDoneListener callback) {
+        db.document(path).delete()
+                .addOnCompleteListener(task -> done(callback, task.isSuccessful()));
+    }
+
+    @Override
+    public Batch batch() {
+        return new FirestoreBatch(db.batch());
+    }
+
+    @Override
+    public void runTransaction(TransactionFunction function, OnWriteDoneListener callback) {
+        db.runTransaction(transaction -> {
+            function.apply(new FirestoreTransaction(transaction));
+            return null;
+        }).addOnCompleteListener(task -> {
+            if (!task.isSuccessful()) {
+                Log.d(TAG, "transaction failed");
+            }
+            done(callback, task.isSuccessful());
+        });
+    }
+
+    /**
+     * A transaction backed by a Firestore Transaction
+     */
+    private class FirestoreTransaction implements Transaction {
+        private final com.google.firebase.firestore.Transaction transaction;
+
+        FirestoreTransaction(com.google.firebase.firestore.Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public DocumentData get(String path) {
+            try {
+                return fromSnapshot(path, transaction.get(db.document(path)));
+            } catch (FirebaseFirestoreException e) {
+                // fails the transaction
+                throw new IllegalStateException("get " + path + " failed", e);
+            }
+        }
+
+        @Override
+        public Transaction set(String path, Map<String, Object> data, boolean merge) {
+            if (merge) {
+                transaction.set(db.document(path), toFirestore(data), SetOptions.merge());
+            } else {
+                transaction.set(db.document(path), toFirestore(data));
+            }
+            return this;
+        }
+
+        @Override
+        public Transaction update(String path, Map<String, Object> fields) {
+            transaction.update(db.document(path), toFirestore(fields));
+            return this;
+        }
+
+        @Override
+        public Transaction delete(String path) {
+            transaction.delete(db.document(path));
+            return this;
+        }
+    }
+
+    /**
+     * A batch backed by a Firestore WriteBatch
+     */
+    private class FirestoreBatch implements Batch {
+        private final WriteBatch batch;
+        private int size = 0;
+
+        FirestoreBatch(WriteBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public Batch set(String path, Map<String, Object> data, boolean merge) {
+            if (merge) {
+                batch.set(db.document(path), toFirestore(data), SetOptions.merge());
+            } else {
+                batch.set(db.document(path), toFirestore(data));
+            }
+            size++;
+            return this;
+        }
+
+        @Override
+        public Batch update(String path, Map<String, Object> fields) {
+            batch.update(db.document(path), toFirestore(fields));
+            size++;
+            return this;
+        }
+
+        @Override
+        public Batch delete(String path) {
+            batch.delete(db.document(path));
+            size++;
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void commit(OnWriteDoneListener callback) {
+            batch.commit().addOnCompleteListener(task -> done(callback, task.isSuccessful()));
+        }
+    }
+
+    /**
+     * The collection or collection group of a query, with its filters
+     */
+    private Query filtered(StoreQuery storeQuery) {
+        Query query = storeQuery.isCollectionGroup()
+                ? db.collectionGroup(storeQuery.getCollection())
+                : db.collection(storeQuery.getCollection());
+        for (StoreQuery.Filter filter : storeQuery.getFilters()) {
+            query = applyFilter(query, filter);
+        }
+        return query;
+    }
+
+    private static StoreChange.Type toChangeType(DocumentChange.Type type) {
+        switch (type) {
+            case ADDED:
+                return StoreChange.Type.ADDED;
+            case MODIFIED:
+                return StoreChange.Type.MODIFIED;
+            case REMOVED:
+                return StoreChange.Type.REMOVED;
+            default:
+                throw new IllegalArgumentException("Unknown change " + type);
+        }
+    }
+
+    private static Query applyFilter(Query query, StoreQuery.Filter filter) {
+        boolean isId = StoreQuery.DOCUMENT_ID.equals(filter.getField());
+        switch (filter.getOp()) {
+            case EQUAL:
+                return isId ? query.whereEqualTo(FieldPath.documentId(), filter.getValue())
+                        : query.whereEqualTo(filter.getField(), filter.getValue());
+            case ARRAY_CONTAINS:
+                return query.whereArrayContains(filter.getField(), filter.getValue());
+            case ARRAY_CONTAINS_ANY:
+                return query.whereArrayContainsAny(filter.getField(), (List<?>) filter.getValue());
+            case IN:
+                return isId ? query.whereIn(FieldPath.documentId(), (List<?>) filter.getValue())
+                        : query.whereIn(filter.getField(), (List<?>) filter.getValue());
+            case GREATER_OR_EQUAL:
+                return query.whereGreaterThanOrEqualTo(filter.getField(), filter.getValue());
+            case LESS_THAN:
+                return query.whereLessThan(filter.getField(), filter.getValue());
+            default:
+                throw new IllegalArgumentException("Unknown filter " + filter.getOp());
+        }
+    }
+
+    private static void done(OnWriteDoneListener callback, boolean successful) {
+        if (callback != null) {
+            callback.done(successful);
+        }
+    }
+
+    /**
+     * Converts a snapshot, Firestore timestamps become Dates
+     */
+    private static DocumentData fromSnapshot(String path, DocumentSnapshot snapshot) {
+        if (snapshot == null || !snapshot.exists()) {
+            return new DocumentData(path, null);
+        }
+        Map<String, Object> fields = new HashMap<>(snapshot.getData());
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            if (entry.getValue() instanceof Timestamp) {
+                entry.setValue(((Timestamp) entry.getValue()).toDate());
+            }
+        }
+        return new DocumentData(path, fields);
+    }
+
+    /**
+     * Converts the field operations of a write into Firestore FieldValues
+     */
+    private static Map<String, Object> toFirestore(Map<String, Object> data) {
+        Map<String, Object> doc = new HashMap<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof StoreFieldValue) {
+                value = toFieldValue((StoreFieldValue) value);
+            }
+            doc.put(entry.getKey(), value);
+        }
+        return doc;
+    }
+
+    private static FieldValue toFieldValue(StoreFieldValue value) {
+        switch (value.getKind()) {
+            case ARRAY_UNION:
+                return FieldValue.arrayUnion(value.getElements().toArray());
+            case ARRAY_REMOVE:
+                return FieldValue.arrayRemove(value.getElements().toArray());
+            case INCREMENT:
+                Number amount = value.getAmount();
+                return amount instanceof Double || amount instanceof Float
+                        ? FieldValue.increment(amount.doubleValue()) : FieldValue.increment(amount.longValue());
+            case DELETE:
+                return FieldValue.delete();
+            default:
+                throw new IllegalArgumentException("Unknown field value " + value.getKind());
+        }
+    }
+}
@@ -0,0 +1,674 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DocumentStore} kept in memory, for tests and benchmarks of the managers without the Firestore backend.
+ * Follows Firestore semantics where the managers rely on them: default order by document id, documents without the
+ * order field are left out of ordered queries, update fails on a missing document, a batch is all or none and holds
+ * at most {@link #MAX_BATCH_SIZE} writes, a transaction reads and writes under one lock so it never has to be rerun, a query with more than {@link StoreQuery#MAX_IN_VALUES} values in a filter
+ * fails, and ints are stored as Longs.
+ * <p>
+ * By default every call completes before it returns. A latency makes calls complete later on a background thread,
+ * and a failure rate makes calls fail at random, both to load test the managers.
+ * Reads and writes are counted, one per document.
+ * <p>
+ * Listens get their changes right after each batch is applied, on the thread that applied it.
+ */
+public class InMemoryDocumentStore implements DocumentStore {
+
+    // collection path -> document id -> fields
+    private final Map<String, TreeMap<String, Map<String, Object>>> collections = new HashMap<>();
+
+    private long latencyMillis = 0;
+    private double failureRate = 0;
+    private final Random random = new Random(42);
+    private ExecutorService executor;
+
+    // running listens, told about every applied batch
+    private final List<Listen> listens = new ArrayList<>();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    /**
+     * Makes every call complete after a delay, on a background thread
+     * @param latencyMillis delay per call, 0 to complete calls before they return
+     */
+    public synchronized void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        if (latencyMillis > 0 && executor == null) {
+            executor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "InMemoryDocumentStore");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Makes calls fail at random, a failed call changes nothing
+     * @param failureRate chance of each call failing, in [0, 1]
+     */
+    public synchronized void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Gets the number of documents read so far, by gets and queries
+     * @return number of document reads
+     */
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * Gets the number of documents written so far, by sets, updates, deletes and batches
+     * @return number of document writes
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Gets the number of write round trips so far, a batch is one round trip however many documents it writes
+     * @return number of successful commits
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * Resets the read, write and commit counts to 0
+     */
+    public void resetCounts() {
+        reads.set(0);
+        writes.set(0);
+        commits.set(0);
+    }
+
+    /**
+     * Gets the number of documents in a collection
+     * @param collection collection path
+     * @return number of documents
+     */
+    public synchronized int count(String collection) {
+        TreeMap<String, Map<String, Object>> docs = collections.get(collection);
+        return docs == null ? 0 : docs.size();
+    }
+
+    @Override
+    public void get(String path, OnDocumentReadyListener callback) {
+        dispatch(failed -> {
+            if (failed) {
+                callback.onDocumentReady(null);
+                return;
+            }
+            DocumentData document;
+            synchronized (this) {
+                Map<String, Object> fields = find(path);
+                document = new DocumentData(path, fields == null ? null : copy(fields));
+            }
+            reads.incrementAndGet();
+            callback.onDocumentReady(document);
+        });
+    }
+
+    @Override
+    public void query(StoreQuery query, OnDocumentsReadyListener callback) {
+        dispatch(failed -> {
+            if (failed || tooManyValues(query)) {
+                callback.onDocumentsReady(null);
+                return;
+            }
+            List<DocumentData> output = new ArrayList<>();
+            synchronized (this) {
+                List<Map.Entry<String, Map<String, Object>>> matches = new ArrayList<>();
+                for (Map.Entry<String, Map<String, Object>> entry : documentsOf(query).entrySet()) {
+                    if (matches(query, entry.getKey(), entry.getValue())) {
+                        matches.add(entry);
+                    }
+                }
+                String orderBy = query.getOrderBy();
+                int sign = query.isDescending() ? -1 : 1;
+                // the tree map already has them by id, a stable sort keeps that as the tie breaker
+                matches.sort((e1, e2) -> sign * compareValues(fieldOf(orderBy, e1.getKey(), e1.getValue()), fieldOf(orderBy, e2.getKey(), e2.getValue())));
+                for (Map.Entry<String, Map<String, Object>> entry : matches) {
+                    if (query.getLimit() >= 0 && output.size() == query.getLimit()) {
+                        break;
+                    }
+                    Object value = fieldOf(orderBy, entry.getKey(), entry.getValue());
+                    if (query.getStartAfter() != null && sign * compareValues(value, normalize(query.getStartAfter())) <= 0) {
+                        continue;
+                    }
+                    String path = query.isCollectionGroup() ? entry.getKey() : query.getCollection() + "/" + entry.getKey();
+                    output.add(new DocumentData(path, copy(entry.getValue())));
+                }
+            }
+            reads.addAndGet(output.size());
+            callback.onDocumentsReady(output);
+        });
+    }
+
+    @Override
+    public Registration listen(StoreQuery query, OnDocumentChangesListener callback) {
+        Listen listen = new Listen(query, callback);
+        dispatch(failed -> {
+            if (failed) {
+                callback.onDocumentChanges(null);
+                return;
+            }
+            synchronized (this) {
+                if (listen.removed) {
+                    return;
+                }
+                List<StoreChange> changes = new ArrayList<>();
+                for (Map.Entry<String, Map<String, Object>> entry : documentsOf(query).entrySet()) {
+                    if (matchesFilters(query, entry.getKey(), entry.getValue())) {
+                        String path = query.isCollectionGroup() ? entry.getKey() : query.getCollection() + "/" + entry.getKey();
+                        listen.matching.add(path);
+                        changes.add(new StoreChange(StoreChange.Type.ADDED, new DocumentData(path, copy(entry.getValue()))));
+                    }
+                }
+                listens.add(listen);
+                reads.addAndGet(changes.size());
+                // still under the lock, so no batch can slip in before the first call
+                callback.onDocumentChanges(changes);
+            }
+        });
+        return listen;
+    }
+
+    @Override
+    public void set(String path, Map<String, Object> data, boolean merge, OnWriteDoneListener callback) {
+        batch().set(path, data, merge).commit(callback);
+    }
+
+    @Override
+    public void update(String path, Map<String, Object> fields, OnWriteDoneListener callback) {
+        batch().update(path, fields).commit(callback);
+    }
+
+    @Override
+    public void delete(String path, OnWriteDoneListener callback) {
+        batch().delete(path).commit(callback);
+    }
+
+    @Override
+    public Batch batch() {
+        return new InMemoryBatch();
+    }
+
+    @Override
+    public void runTransaction(TransactionFunction function, OnWriteDoneListener callback) {
+        dispatch(failed -> {
+            boolean successful = false;
+            if (!failed) {
+                synchronized (this) {
+                    InMemoryTransaction transaction = new InMemoryTransaction();
+                    try {
+                        function.apply(transaction);
+                        successful = transaction.batch.size() <= MAX_BATCH_SIZE && transaction.batch.apply();
+                    } catch (RuntimeException e) {
+                        // a throwing function fails the transaction, nothing is written
+                        successful = false;
+                    }
+                }
+            }
+            if (callback != null) {
+                callback.done(successful);
+            }
+        });
+    }
+
+    /**
+     * A transaction, its writes are buffered in a batch applied once the function returns
+     */
+    private class InMemoryTransaction implements Transaction {
+
+        private final InMemoryBatch batch = new InMemoryBatch();
+
+        @Override
+        public DocumentData get(String path) {
+            if (batch.size() > 0) {
+                throw new IllegalStateException("Transaction reads must come before its writes");
+            }
+            Map<String, Object> fields = find(path);
+            reads.incrementAndGet();
+            return new DocumentData(path, fields == null ? null : copy(fields));
+        }
+
+        @Override
+        public Transaction set(String path, Map<String, Object> data, boolean merge) {
+            batch.set(path, data, merge);
+            return this;
+        }
+
+        @Override
+        public Transaction update(String path, Map<String, Object> fields) {
+            batch.update(path, fields);
+            return this;
+        }
+
+        @Override
+        public Transaction delete(String path) {
+            batch.delete(path);
+            return this;
+        }
+    }
+
+    /**
+     * A batch of writes, applied under one lock
+     */
+    private class InMemoryBatch implements Batch {
+
+        private final List<Object[]> writes = new ArrayList<>();    // {kind, path, data, merge}
+
+        @Override
+        public Batch set(String path, Map<String, Object> data, boolean merge) {
+            writes.add(new Object[]{"set", path, new HashMap<>(data), merge});
+            return this;
+        }
+
+        @Override
+        public Batch update(String path, Map<String, Object> fields) {
+            writes.add(new Object[]{"update", path, new HashMap<>(fields), true});
+            return this;
+        }
+
+        @Override
+        public Batch delete(String path) {
+            writes.add(new Object[]{"delete", path, null, false});
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return writes.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void commit(OnWriteDoneListener callback) {
+            dispatch(failed -> {
+                boolean successful = !failed && writes.size() <= MAX_BATCH_SIZE && apply();
+                if (callback != null) {
+                    callback.done(successful);
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean apply() {
+            synchronized (InMemoryDocumentStore.this) {
+                // an update of a missing document fails the whole batch before anything is written
+                for (Object[] write : writes) {
+                    if (write[0].equals("update") && find((String) write[1]) == null) {
+                        return false;
+                    }
+                }
+                // the documents before the batch, for the listens
+                Map<String, Map<String, Object>> before = new LinkedHashMap<>();
+                if (!listens.isEmpty()) {
+                    for (Object[] write : writes) {
+                        String path = (String) write[1];
+                        if (!before.containsKey(path)) {
+                            Map<String, Object> existing = find(path);
+                            before.put(path, existing == null ? null : copy(existing));
+                        }
+                    }
+                }
+                for (Object[] write : writes) {
+                    String path = (String) write[1];
+                    if (write[0].equals("delete")) {
+                        TreeMap<String, Map<String, Object>> docs = collections.get(parentOf(path));
+                        if (docs != null) {
+                            docs.remove(idOf(path));
+                        }
+                    } else {
+                        Map<String, Object> existing = find(path);
+                        Map<String, Object> doc = (boolean) write[3] && existing != null ? existing : new HashMap<>();
+                        for (Map.Entry<String, Object> field : ((Map<String, Object>) write[2]).entrySet()) {
+                            applyField(doc, field.getKey(), field.getValue());
+                        }
+                        collections.computeIfAbsent(parentOf(path), k -> new TreeMap<>()).put(idOf(path), doc);
+                    }
+                }
+                InMemoryDocumentStore.this.writes.addAndGet(writes.size());
+                commits.incrementAndGet();
+                notifyListens(before);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A running listen, with the paths of the documents it has seen match
+     */
+    private class Listen implements Registration {
+
+        private final StoreQuery query;
+        private final OnDocumentChangesListener callback;
+        private final Set<String> matching = new HashSet<>();
+        private boolean removed = false;
+
+        Listen(StoreQuery query, OnDocumentChangesListener callback) {
+            this.query = query;
+            this.callback = callback;
+        }
+
+        @Override
+        public void remove() {
+            synchronized (InMemoryDocumentStore.this) {
+                removed = true;
+                listens.remove(this);
+            }
+        }
+
+        /**
+         * If a document is in the collection, or collection group, of the query
+         */
+        boolean covers(String path) {
+            String parent = parentOf(path);
+            if (query.isCollectionGroup()) {
+                return parent.equals(query.getCollection()) || parent.endsWith("/" + query.getCollection());
+            }
+            return parent.equals(query.getCollection());
+        }
+    }
+
+    /**
+     * Tells every listen how the documents written by a batch changed its results
+     * @param before the written documents as they were before the batch, null for missing ones
+     */
+    private void notifyListens(Map<String, Map<String, Object>> before) {
+        for (Listen listen : new ArrayList<>(listens)) {
+            List<StoreChange> changes = new ArrayList<>();
+            int read = 0;
+            for (Map.Entry<String, Map<String, Object>> entry : before.entrySet()) {
+                String path = entry.getKey();
+                if (!listen.covers(path)) {
+                    continue;
+                }
+                Map<String, Object> doc = find(path);
+                String id = listen.query.isCollectionGroup() ? path : idOf(path);
+                boolean wasMatching = listen.matching.contains(path);
+                boolean isMatching = doc != null && matchesFilters(listen.query, id, doc);
+                if (isMatching) {
+                    listen.matching.add(path);
+                    changes.add(new StoreChange(wasMatching ? StoreChange.Type.MODIFIED : StoreChange.Type.ADDED, new DocumentData(path, copy(doc))));
+                    read++;
+                } else if (wasMatching) {
+                    listen.matching.remove(path);
+                    changes.add(new StoreChange(StoreChange.Type.REMOVED, new DocumentData(path, entry.getValue())));
+                }
+            }
+            if (!changes.isEmpty()) {
+                reads.addAndGet(read);
+                listen.callback.onDocumentChanges(changes);
+            }
+        }
+    }
+
+    /**
+     * Work to run for a call
+     */
+    private interface Operation {
+        void run(boolean failed);
+    }
+
+    /**
+     * Runs a call now, or later on a background thread if there is a latency
+     */
+    private void dispatch(Operation operation) {
+        long latency;
+        boolean failed;
+        synchronized (this) {
+            latency = latencyMillis;
+            failed = failureRate > 0 && random.nextDouble() < failureRate;
+        }
+        if (latency <= 0) {
+            operation.run(failed);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            operation.run(failed);
+        });
+    }
+
+    private Map<String, Object> find(String path) {
+        TreeMap<String, Map<String, Object>> docs = collections.get(parentOf(path));
+        return docs == null ? null : docs.get(idOf(path));
+    }
+
+    /**
+     * Gets the documents a query runs over, keyed by id, or by full path for a collection group
+     */
+    private TreeMap<String, Map<String, Object>> documentsOf(StoreQuery query) {
+        TreeMap<String, Map<String, Object>> docs = query.isCollectionGroup() ? collectionGroup(query.getCollection()) : collections.get(query.getCollection());
+        return docs == null ? new TreeMap<>() : docs;
+    }
+
+    /**
+     * Gathers the documents of every collection with the given id, keyed by full path
+     */
+    private TreeMap<String, Map<String, Object>> collectionGroup(String collectionId) {
+        TreeMap<String, Map<String, Object>> docs = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<String, Map<String, Object>>> collection : collections.entrySet()) {
+            String path = collection.getKey();
+            if (path.equals(collectionId) || path.endsWith("/" + collectionId)) {
+                for (Map.Entry<String, Map<String, Object>> entry : collection.getValue().entrySet()) {
+                    docs.put(path + "/" + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return docs;
+    }
+
+    private static String parentOf(String path) {
+        return path.substring(0, path.lastIndexOf('/'));
+    }
+
+    private static String idOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static Object fieldOf(String field, String id, Map<String, Object> doc) {
+        return StoreQuery.DOCUMENT_ID.equals(field) ? id : doc.get(field);
+    }
+
+    private static boolean matches(StoreQuery query, String id, Map<String, Object> doc) {
+        if (!StoreQuery.DOCUMENT_ID.equals(query.getOrderBy()) && !doc.containsKey(query.getOrderBy())) {
+            return false;
+        }
+        return matchesFilters(query, id, doc);
+    }
+
+    private static boolean matchesFilters(StoreQuery query, String id, Map<String, Object> doc) {
+        for (StoreQuery.Filter filter : query.getFilters()) {
+            Object value = fieldOf(filter.getField(), id, doc);
+            Object target = normalize(filter.getValue());
+            switch (filter.getOp()) {
+                case EQUAL:
+                    if (value == null || compareValues(value, target) != 0) {
+                        return false;
+                    }
+                    break;
+                case ARRAY_CONTAINS:
+                    if (!(value instanceof List) || !containsValue((List<?>) value, target)) {
+                        return false;
+                    }
+                    break;
+                case ARRAY_CONTAINS_ANY:
+                    if (!(value instanceof List)) {
+                        return false;
+                    }
+                    boolean any = false;
+                    for (Object t : (List<?>) target) {
+                        any |= containsValue((List<?>) value, t);
+                    }
+                    if (!any) {
+                        return false;
+                    }
+                    break;
+                case IN:
+                    if (value == null || !containsValue((List<?>) target, value)) {
+                        return false;
+                    }
+                    break;
+                case GREATER_OR_EQUAL:
+                    if (value == null || compareValues(value, target) < 0) {
+                        return false;
+                    }
+                    break;
+                case LESS_THAN:
+                    if (value == null || compareValues(value, target) >= 0) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static boolean tooManyValues(StoreQuery query) {
+        for (StoreQuery.Filter filter : query.getFilters()) {
+            if ((filter.getOp() == StoreQuery.Op.IN || filter.getOp() == StoreQuery.Op.ARRAY_CONTAINS_ANY)
+                    && ((List<?>) filter.getValue()).size() > StoreQuery.MAX_IN_VALUES) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsValue(List<?> list, Object value) {
+        for (Object element : list) {
+            if (compareValues(element, value) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders values like Firestore orders types: null, booleans, numbers, then everything else by class
+     */
+    @SuppressWarnings("unchecked")
+    static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a.getClass() != b.getClass()) {
+            return Integer.compare(typeRank(a), typeRank(b)) != 0 ? Integer.compare(typeRank(a), typeRank(b))
+                    : a.getClass().getName().compareTo(b.getClass().getName());
+        }
+        if (a instanceof Comparable) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        return a.equals(b) ? 0 : Integer.compare(a.hashCode(), b.hashCode());
+    }
+
+    private static int typeRank(Object value) {
+        if (value instanceof Boolean) {
+            return 0;
+        }
+        return value instanceof Number ? 1 : 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyField(Map<String, Object> doc, String field, Object value) {
+        if (!(value instanceof StoreFieldValue)) {
+            doc.put(field, normalize(value));
+            return;
+        }
+        StoreFieldValue op = (StoreFieldValue) value;
+        Object existing = doc.get(field);
+        switch (op.getKind()) {
+            case ARRAY_UNION: {
+                List<Object> list = existing instanceof List ? new ArrayList<>((List<Object>) existing) : new ArrayList<>();
+                for (Object element : op.getElements()) {
+                    Object normalized = normalize(element);
+                    if (!containsValue(list, normalized)) {
+                        list.add(normalized);
+                    }
+                }
+                doc.put(field, list);
+                break;
+            }
+            case ARRAY_REMOVE: {
+                List<Object> list = existing instanceof List ? new ArrayList<>((List<Object>) existing) : new ArrayList<>();
+                for (Object element : op.getElements()) {
+                    Object normalized = normalize(element);
+                    list.removeIf(e -> compareValues(e, normalized) == 0);
+                }
+                doc.put(field, list);
+                break;
+            }
+            case INCREMENT: {
+                Object amount = normalize(op.getAmount());
+                Number current = existing instanceof Number ? (Number) existing : 0L;
+                if (amount instanceof Long && current instanceof Long) {
+                    doc.put(field, (Long) current + (Long) amount);
+                } else {
+                    doc.put(field, current.doubleValue() + ((Number) amount).doubleValue());
+                }
+                break;
+            }
+            case DELETE:
+                doc.remove(field);
+                break;
+        }
+    }
+
+    /**
+     * Stores numbers the way Firestore returns them, and copies lists and maps so callers cannot change stored data
+     */
+    @SuppressWarnings("unchecked")
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (List<Object>) value) {
+                list.add(normalize(element));
+            }
+            return list;
+        }
+        if (value instanceof Map) {
+            return copy((Map<String, Object>) value);
+        }
+        return value;
+    }
+
+    private static Map<String, Object> copy(Map<String, Object> fields) {
+        Map<String, Object> out = new HashMap<>();
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            out.put(entry.getKey(), normalize(entry.getValue()));
+        }
+        return out;
+    }
+}
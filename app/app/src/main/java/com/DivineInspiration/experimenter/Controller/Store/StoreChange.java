@@ -0,0 +1,47 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+/**
+ * One change to the results of a listened query, as given by {@link DocumentStore#listen}
+ */
+public class StoreChange {
+
+    /**
+     * What happened to the document
+     */
+    public enum Type {
+        ADDED,      // the document started matching the query, or was created
+        MODIFIED,   // the document still matches, but some fields changed
+        REMOVED     // the document stopped matching the query, or was deleted
+    }
+
+    private final Type type;
+    private final DocumentData document;
+
+    /**
+     * Constructor
+     * @param type
+     * what happened to the document
+     * @param document
+     * the document after the change, or the last version that matched if it was removed
+     */
+    public StoreChange(Type type, DocumentData document) {
+        this.type = type;
+        this.document = document;
+    }
+
+    /**
+     * Gets what happened to the document
+     * @return type of change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the document
+     * @return the document after the change, or the last version that matched if it was removed
+     */
+    public DocumentData getDocument() {
+        return document;
+    }
+}
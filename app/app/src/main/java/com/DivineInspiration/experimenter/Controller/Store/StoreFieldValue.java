@@ -0,0 +1,85 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A write that depends on the value already stored in a field, applied by the {@link DocumentStore}
+ * (ie adding to an array without reading it first). Stands in for Firestore's FieldValue.
+ */
+public final class StoreFieldValue {
+
+    /**
+     * Kinds of field operations
+     */
+    public enum Kind { ARRAY_UNION, ARRAY_REMOVE, INCREMENT, DELETE }
+
+    private final Kind kind;
+    private final List<Object> elements;
+    private final Number amount;
+
+    private StoreFieldValue(Kind kind, List<Object> elements, Number amount) {
+        this.kind = kind;
+        this.elements = elements;
+        this.amount = amount;
+    }
+
+    /**
+     * Adds the elements that are not already in the array
+     * @param elements elements to add
+     * @return the operation
+     */
+    public static StoreFieldValue arrayUnion(Object... elements) {
+        return new StoreFieldValue(Kind.ARRAY_UNION, Arrays.asList(elements), null);
+    }
+
+    /**
+     * Removes every copy of the elements from the array
+     * @param elements elements to remove
+     * @return the operation
+     */
+    public static StoreFieldValue arrayRemove(Object... elements) {
+        return new StoreFieldValue(Kind.ARRAY_REMOVE, Arrays.asList(elements), null);
+    }
+
+    /**
+     * Adds to a number field, a missing field counts as 0
+     * @param amount amount to add, a Long or a Double
+     * @return the operation
+     */
+    public static StoreFieldValue increment(Number amount) {
+        return new StoreFieldValue(Kind.INCREMENT, null, amount);
+    }
+
+    /**
+     * Removes the field
+     * @return the operation
+     */
+    public static StoreFieldValue delete() {
+        return new StoreFieldValue(Kind.DELETE, null, null);
+    }
+
+    /**
+     * Gets the kind of operation
+     * @return kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the elements of an array operation
+     * @return elements
+     */
+    public List<Object> getElements() {
+        return elements;
+    }
+
+    /**
+     * Gets the amount of an increment
+     * @return amount
+     */
+    public Number getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,265 @@
+package com.DivineInspiration.experimenter.Controller.Store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A query over one collection of a {@link DocumentStore}, or over every collection with the same id (a collection group),
+ * built like a Firestore query: filters, an optional order, a cursor and a limit.
+ * Results are ordered by document id unless ordered otherwise; in a collection group the document id is the full path.
+ */
+public class StoreQuery {
+
+    /**
+     * Field name that stands for the document id, like FieldPath.documentId()
+     */
+    public static final String DOCUMENT_ID = "__name__";
+
+    /**
+     * Most values an in or array-contains-any filter can hold, the Firestore limit
+     */
+    public static final int MAX_IN_VALUES = 10;
+
+    /**
+     * Kinds of filters
+     */
+    public enum Op { EQUAL, ARRAY_CONTAINS, ARRAY_CONTAINS_ANY, IN, GREATER_OR_EQUAL, LESS_THAN }
+
+    /**
+     * A single filter of a query
+     */
+    public static class Filter {
+        private final String field;
+        private final Op op;
+        private final Object value;
+
+        /**
+         * Constructor
+         * @param field field name, or DOCUMENT_ID
+         * @param op kind of filter
+         * @param value value to compare against, a List for ARRAY_CONTAINS_ANY and IN
+         */
+        public Filter(String field, Op op, Object value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+
+        /**
+         * Gets the field name
+         * @return field name
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Gets the kind of filter
+         * @return kind of filter
+         */
+        public Op getOp() {
+            return op;
+        }
+
+        /**
+         * Gets the value to compare against
+         * @return value
+         */
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    private final String collection;
+    private boolean collectionGroup = false;
+    private final List<Filter> filters = new ArrayList<>();
+    private String orderBy = DOCUMENT_ID;
+    private boolean descending = false;
+    private Object startAfter = null;
+    private int limit = -1;
+
+    /**
+     * Constructor
+     * @param collection path of the collection to query
+     */
+    public StoreQuery(String collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * Makes a query over every collection with the given id, wherever it is nested
+     * @param collectionId last segment of the collection paths, e.g. "Replies"
+     * @return the query
+     */
+    public static StoreQuery collectionGroup(String collectionId) {
+        StoreQuery query = new StoreQuery(collectionId);
+        query.collectionGroup = true;
+        return query;
+    }
+
+    /**
+     * Keeps documents where the field equals the value
+     * @param field field name
+     * @param value value
+     * @return this query
+     */
+    public StoreQuery whereEqualTo(String field, Object value) {
+        filters.add(new Filter(field, Op.EQUAL, value));
+        return this;
+    }
+
+    /**
+     * Keeps documents where the array field contains the value
+     * @param field field name
+     * @param value value
+     * @return this query
+     */
+    public StoreQuery whereArrayContains(String field, Object value) {
+        filters.add(new Filter(field, Op.ARRAY_CONTAINS, value));
+        return this;
+    }
+
+    /**
+     * Keeps documents where the array field contains any of the values
+     * @param field field name
+     * @param values values, at most {@link #MAX_IN_VALUES}
+     * @return this query
+     */
+    public StoreQuery whereArrayContainsAny(String field, List<?> values) {
+        filters.add(new Filter(field, Op.ARRAY_CONTAINS_ANY, values));
+        return this;
+    }
+
+    /**
+     * Keeps documents where the field equals one of the values
+     * @param field field name, or DOCUMENT_ID
+     * @param values values, at most {@link #MAX_IN_VALUES}
+     * @return this query
+     */
+    public StoreQuery whereIn(String field, List<?> values) {
+        filters.add(new Filter(field, Op.IN, values));
+        return this;
+    }
+
+    /**
+     * Keeps documents where the field is at least the value.
+     * Like Firestore, the query must be ordered by the same field
+     * @param field field name
+     * @param value lower bound, inclusive
+     * @return this query
+     */
+    public StoreQuery whereGreaterThanOrEqualTo(String field, Object value) {
+        filters.add(new Filter(field, Op.GREATER_OR_EQUAL, value));
+        return this;
+    }
+
+    /**
+     * Keeps documents where the field is less than the value.
+     * Like Firestore, the query must be ordered by the same field
+     * @param field field name
+     * @param value upper bound, exclusive
+     * @return this query
+     */
+    public StoreQuery whereLessThan(String field, Object value) {
+        filters.add(new Filter(field, Op.LESS_THAN, value));
+        return this;
+    }
+
+    /**
+     * Orders the results by a field, ascending
+     * @param field field name, or DOCUMENT_ID
+     * @return this query
+     */
+    public StoreQuery orderBy(String field) {
+        return orderBy(field, false);
+    }
+
+    /**
+     * Orders the results by a field
+     * @param field field name, or DOCUMENT_ID
+     * @param descending true for largest first
+     * @return this query
+     */
+    public StoreQuery orderBy(String field, boolean descending) {
+        this.orderBy = field;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Starts the results after the document with the given value of the order field
+     * @param value cursor, the order field of the last document of the previous page
+     * @return this query
+     */
+    public StoreQuery startAfter(Object value) {
+        this.startAfter = value;
+        return this;
+    }
+
+    /**
+     * Limits the number of results
+     * @param limit most documents to return
+     * @return this query
+     */
+    public StoreQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Gets the path of the queried collection
+     * @return collection path
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * If this is a collection group query, then getCollection() is the collection id
+     * @return true for a collection group query
+     */
+    public boolean isCollectionGroup() {
+        return collectionGroup;
+    }
+
+    /**
+     * Gets the filters
+     * @return filters, all of which must match
+     */
+    public List<Filter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * Gets the order field
+     * @return field name, DOCUMENT_ID by default
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * If the order is descending
+     * @return true for largest first
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Gets the cursor
+     * @return the value to start after, null for none
+     */
+    public Object getStartAfter() {
+        return startAfter;
+    }
+
+    /**
+     * Gets the limit
+     * @return most documents to return, -1 for no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
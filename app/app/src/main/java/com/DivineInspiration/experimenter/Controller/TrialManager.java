@@ -2,44 +2,59 @@ package com.DivineInspiration.experimenter.Controller;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
 
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.FirestoreDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
 import com.DivineInspiration.experimenter.Model.Experiment;
 import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
 import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
 import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
 import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
+import com.DivineInspiration.experimenter.Model.Trial.OwnerDictionary;
 import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.android.gms.maps.model.LatLngBounds;
 
 import com.google.firebase.firestore.GeoPoint;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 
 
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * This class talks to the FireStore database
+ * This class talks to the FireStore database (through a {@link DocumentStore})
  * in order to store and retrieve trial data.
  * The class uses singleton pattern.
  */
-public class TrialManager extends ArrayList<Trial> {
+public class TrialManager extends ArrayList<Trial> implements TrialPageSource {
+
+    /**
+     * Number of trials loaded per page by {@link #queryExperimentTrialPages}
+     */
+    public static final int TRIAL_PAGE_SIZE = 500;
 
     private static TrialManager singleton;
 
-    private FirebaseFirestore db;
+    private final DocumentStore store;
+    private TrialWriteBuffer writeBuffer;
+    // experiments whose located trials all have a geohash, and those being backfilled
+    private final Set<String> geohashIndexed = Collections.synchronizedSet(new HashSet<>());
+    private final Set<String> backfilling = Collections.synchronizedSet(new HashSet<>());
     private String TAG = "TrialManager";
     private DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
@@ -58,6 +73,39 @@ public class TrialManager extends ArrayList<Trial> {
         void onTrialsReady(List<Trial> trials);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when {@link TrialManager} successfully
+     * queries the trials of an experiment, along with their {@link TrialColumns}
+     */
+    public interface OnTrialColumnsReadyListener {
+
+        /**
+         * Called when {@link TrialManager} successfully queries the trials of an experiment
+         * @param trials
+         * The queried trials, null if the query failed
+         * @param columns
+         * The same trials in column form, null if the query failed
+         */
+        void onTrialColumnsReady(List<Trial> trials, TrialColumns columns);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked each time a page of the trials of an experiment arrives
+     */
+    public interface OnTrialPageListener {
+
+        /**
+         * Called when a page of trials arrives
+         * @param page
+         * The trials of the page, null if loading failed
+         * @param columns
+         * The columns of every trial delivered so far, the page is the last rows
+         * @param hasMore
+         * If more pages are coming
+         */
+        void onTrialPage(List<Trial> page, TrialColumns columns, boolean hasMore);
+    }
+
     /**
      * Interface definition for a callback to be invoked when {@link TrialManager} successfully
      * queries an {@link Trial} from Firestore
@@ -72,11 +120,45 @@ public class TrialManager extends ArrayList<Trial> {
         void onTrialReady(Trial trials);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when {@link TrialManager} reads the
+     * {@link ExperimentRollup} of an experiment
+     */
+    public interface OnRollupReadyListener {
+        /**
+         * Called when the rollup is read
+         * @param rollup
+         * The rollup, null if the read failed
+         */
+        void onRollupReady(ExperimentRollup rollup);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when {@link TrialManager} reads the
+     * {@link DayBucket} days of an experiment
+     */
+    public interface OnDaySeriesReadyListener {
+        /**
+         * Called when the days are read
+         * @param days
+         * The days with trials, in date order, null if they could not be used
+         */
+        void onDaySeriesReady(List<DayBucket> days);
+    }
+
     /**
      * Trial manager constructor
      */
     public TrialManager() {
-        db = FirebaseFirestore.getInstance();
+        this(new FirestoreDocumentStore());
+    }
+
+    /**
+     * Trial manager constructor
+     * @param store the document store to keep trials in
+     */
+    public TrialManager(DocumentStore store) {
+        this.store = store;
     }
 
     /**
@@ -124,40 +206,193 @@ public class TrialManager extends ArrayList<Trial> {
     }
 
     /**
-     * Deleting a trial
+     * Deleting a trial, its value is taken out of the experiment's rollup and day in the same transaction
      * @param trialId the trial ID to be deleted
      */
     public void deleteTrial(String trialId){
-        db.collection("Trials").document(trialId).delete();
+        store.runTransaction(transaction -> {
+            DocumentData trial = transaction.get("Trials/" + trialId);
+            if (!trial.exists()) {
+                return;
+            }
+            String experimentId = trial.getString("ExperimentID");
+            String rollupPath = ExperimentRollup.pathOf(experimentId);
+            ExperimentRollup rollup = ExperimentRollup.fromDocument(transaction.get(rollupPath));
+            DayBucket day = readDay(transaction, experimentId, trial.getData());
+            rollup.removeTrial(trial.getData());
+            if (!rollup.isBanned(trial.getString("OwnerID"))) {
+                day.removeTrial(trial.getData());
+            }
+            transaction.delete("Trials/" + trialId);
+            transaction.set(rollupPath, rollup.toDocument(), false);
+            writeDay(transaction, experimentId, day);
+        }, successful -> {
+            if (!successful) {
+                Log.d(TAG, "deleteTrial failed");
+            }
+        });
     }
 
     /**
-     * Deletes all trials for the given experiment
+     * Deletes all trials for the given experiment, in batches, then its rollup
      * @param experimentId the trial ID to be deleted
      */
     public void deleteAllTrialOfExperiment(String experimentId){
-        db.collection("Trials")
-                .whereEqualTo("ExperimentID", experimentId)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-
-                        if (task.isSuccessful()) {
-                            for (QueryDocumentSnapshot snap : task.getResult()) {
-                                snap.getReference().delete();
-                            }
-                        }
-                    }
-                });
+        CascadeDeleter deleter = new CascadeDeleter(store);
+        deleter.deleteTrials(experimentId, new CascadeDeleter.OnCascadeProgressListener() {
+            @Override
+            public void onProgress(String stage, int deleted) {
+            }
+
+            @Override
+            public void onCascadeDone(boolean successful) {
+                if (successful) {
+                    deleter.deleteRollup(experimentId, null);
+                }
+            }
+        });
     }
 
     /**
-     * Adds a new trial to database
+     * Adds a new trial to database, and its value to the experiment's rollup and day in the same transaction.
+     * A trial written again with the same id replaces its old value
      * @param trial trial we want to add
      * @param callback the class to call after the operation is done
      */
     public void addTrial(Trial trial, OnTrialReadyListener callback) {
+        Map<String, Object> doc = trialToDoc(trial);
+        String trialPath = "Trials/" + trial.getTrialID();
+        String experimentId = trial.getTrialExperimentID();
+        String rollupPath = ExperimentRollup.pathOf(experimentId);
+        store.runTransaction(transaction -> {
+            DocumentData existing = transaction.get(trialPath);
+            ExperimentRollup rollup = ExperimentRollup.fromDocument(transaction.get(rollupPath));
+            DayBucket day = readDay(transaction, experimentId, doc);
+            DayBucket oldDay = null;
+            if (existing.exists()) {
+                oldDay = DayBucket.dayOf(existing.getData()) == day.getEpochDay() ? day : readDay(transaction, experimentId, existing.getData());
+                rollup.removeTrial(existing.getData());
+                if (!rollup.isBanned(existing.getString("OwnerID"))) {
+                    oldDay.removeTrial(existing.getData());
+                }
+            }
+            rollup.addTrial(doc);
+            if (!rollup.isBanned(trial.getTrialUserID())) {
+                day.addTrial(doc);
+            }
+            transaction.set(trialPath, doc, false);
+            transaction.set(rollupPath, rollup.toDocument(), false);
+            writeDay(transaction, experimentId, day);
+            if (oldDay != null && oldDay != day) {
+                writeDay(transaction, experimentId, oldDay);
+            }
+        }, successful -> {
+            if (!successful) {
+                Log.d(TAG, "New trial failed to be committed to database!");
+            } else {
+                callback.onTrialReady(trial);
+            }
+        });
+    }
+
+    /**
+     * Reads the day of a trial in a transaction
+     * @param transaction the transaction
+     * @param experimentId the experiment of the trial
+     * @param trialDoc fields of the trial document
+     * @return the day, empty if it has no document yet
+     */
+    static DayBucket readDay(DocumentStore.Transaction transaction, String experimentId, Map<String, Object> trialDoc) {
+        int epochDay = DayBucket.dayOf(trialDoc);
+        return DayBucket.fromDocument(transaction.get(DayBucket.pathOf(experimentId, epochDay)), epochDay);
+    }
+
+    /**
+     * Writes a day in a transaction, a day left without trials is deleted
+     * @param transaction the transaction
+     * @param experimentId the experiment of the day
+     * @param day the day
+     */
+    static void writeDay(DocumentStore.Transaction transaction, String experimentId, DayBucket day) {
+        String path = DayBucket.pathOf(experimentId, day.getEpochDay());
+        if (day.getCount() == 0) {
+            transaction.delete(path);
+        } else {
+            transaction.set(path, day.toDocument(), false);
+        }
+    }
+
+    /**
+     * Queries the rollup of an experiment, its trial count and summary in one document read
+     * @param experimentId the experiment
+     * @param callback called with the rollup, empty if the experiment has none yet, null if the read failed
+     */
+    public void queryRollup(String experimentId, OnRollupReadyListener callback) {
+        store.get(ExperimentRollup.pathOf(experimentId), document -> {
+            if (document == null) {
+                Log.d(TAG, "queryRollup failed");
+                callback.onRollupReady(null);
+            } else {
+                callback.onRollupReady(ExperimentRollup.fromDocument(document));
+            }
+        });
+    }
+
+    /**
+     * Queries the days of an experiment, one small document per day with trials instead of every trial
+     * @param experimentId the experiment
+     * @param callback called with the days in date order, null if the read failed, the days are stale after a ban,
+     *                 or the experiment has no rollup holding its trials
+     */
+    public void queryDaySeries(String experimentId, OnDaySeriesReadyListener callback) {
+        queryRollup(experimentId, rollup -> {
+            // trials written before rollups were have no days
+            if (rollup == null || rollup.isDaysStale() || rollup.getTotal().getCount() == 0) {
+                callback.onDaySeriesReady(null);
+                return;
+            }
+            store.query(new StoreQuery(DayBucket.collectionOf(experimentId)), documents -> {
+                if (documents == null) {
+                    Log.d(TAG, "queryDaySeries failed");
+                    callback.onDaySeriesReady(null);
+                    return;
+                }
+                List<DayBucket> days = new ArrayList<>(documents.size());
+                for (DocumentData document : documents) {
+                    days.add(DayBucket.fromDocument(document));
+                }
+                callback.onDaySeriesReady(days);
+            });
+        });
+    }
+
+    /**
+     * Rebuilds the rollup of an experiment from its trials and reports how far the stored one drifted
+     * @param experimentId the experiment
+     * @param repair true to replace a drifted rollup by the rebuilt one
+     * @param callback called with the drift
+     */
+    public void checkRollup(String experimentId, boolean repair, RollupChecker.OnRollupCheckedListener callback) {
+        new RollupChecker(store).check(experimentId, repair, callback);
+    }
+
+    /**
+     * Gets the buffer that groups trials entered in quick succession into batched writes
+     * @return the write buffer of this manager
+     */
+    public TrialWriteBuffer getWriteBuffer() {
+        if (writeBuffer == null) {
+            writeBuffer = new TrialWriteBuffer(this, store, DocumentStore.MAX_BATCH_SIZE, TrialWriteBuffer.DEFAULT_WINDOW_MILLIS);
+        }
+        return writeBuffer;
+    }
+
+    /**
+     * Makes the document of a trial
+     * @param trial trial to store
+     * @return fields of the trial document
+     */
+    Map<String, Object> trialToDoc(Trial trial) {
         // Store standard trial data
         Map<String, Object> doc = new HashMap<>();
         doc.put("TrialType", trial.getTrialType());
@@ -167,6 +402,10 @@ public class TrialManager extends ArrayList<Trial> {
         doc.put("OwnerName",trial.getTrialOwnerName());
         doc.put("ExperimentID", trial.getTrialExperimentID());
         doc.put("Location", latLngToGeoPoint(trial.getLocation()));
+        if (trial.getLocation() != null) {
+            // lets a map query only the trials in view
+            doc.put("Geohash", Geohash.encode(trial.getLocation().latitude, trial.getLocation().longitude, Geohash.MAX_PRECISION));
+        }
 
         // Store data specific to a trial type
         switch (trial.getTrialType()) {
@@ -185,20 +424,7 @@ public class TrialManager extends ArrayList<Trial> {
             case Trial.NONNEGATIVE:
                 doc.put("Count", ((NonNegativeTrial) trial).getCount());
         }
-
-        db.collection("Trials")
-                .document(trial.getTrialID())
-                .set(doc)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-                    @Override
-                    public void onComplete(@NonNull Task<Void> task) {
-                        if (!task.isSuccessful()) {
-                            Log.d(TAG, "New trial failed to be committed to database!");
-                        } else {
-                            callback.onTrialReady(trial);
-                        }
-                    }
-                });
+        return doc;
     }
 
     /**
@@ -208,27 +434,21 @@ public class TrialManager extends ArrayList<Trial> {
      */
     public void getUserTrials(String userId, OnTrialListReadyListener callback) {
 
-        db.collection("Trials")
-                .whereEqualTo("OwnerID", userId)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        if (task.isSuccessful()) {
-                            if (callback != null) {
-                                List<Trial> output = new ArrayList<>();
-                                for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                                    output.add(trialFromSnapshot(snapshot));
-                                }
-                                callback.onTrialsReady(output);
-                                Log.d(TAG, "getUserTrials successful" + output.size());
-                            }
-                        } else {
-                            Log.d(TAG, "getUserTrials failed");
-                            callback.onTrialsReady(null);
-                        }
+        store.query(new StoreQuery("Trials").whereEqualTo("OwnerID", userId), documents -> {
+            if (documents != null) {
+                if (callback != null) {
+                    List<Trial> output = new ArrayList<>();
+                    for (DocumentData document : documents) {
+                        output.add(trialFromSnapshot(document));
                     }
-                });
+                    callback.onTrialsReady(output);
+                    Log.d(TAG, "getUserTrials successful" + output.size());
+                }
+            } else {
+                Log.d(TAG, "getUserTrials failed");
+                callback.onTrialsReady(null);
+            }
+        });
     }
 
     /**
@@ -238,54 +458,272 @@ public class TrialManager extends ArrayList<Trial> {
      *         The data is passed as a parameter of this method.
      */
     public void queryExperimentTrials(String experimentId, OnTrialListReadyListener callback) {
-        db.collection("BlackList")
-                .document(experimentId)
-                .get()
-                .addOnCompleteListener(task -> {
-            if(task.isSuccessful()){
-             List<String> bannedIds = (List<String>) task.getResult().get("BannedIds");
-
-                HashSet<String> bannedIdSet = new HashSet<>();
+        queryExperimentTrialColumns(experimentId, (trials, columns) -> {
+            if (callback != null) {
+                callback.onTrialsReady(trials);
+            }
+        });
+    }
+
+    /**
+     * Queries the trials that performed for a given experiment, and builds their columns in the same pass
+     * so the stats and graphs do not have to walk the trial objects again.
+     * @param experimentId The experiment to query trials for
+     * @param callback  The class to call after the operation is done.
+     *         The data is passed as a parameter of this method.
+     */
+    public void queryExperimentTrialColumns(String experimentId, OnTrialColumnsReadyListener callback) {
+        store.get("BlackList/" + experimentId, blackList -> {
+            if(blackList != null){
+             List<String> bannedIds = (List<String>) blackList.get("BannedIds");
+
+                // bans are kept as owner codes, so each trial is checked with a bit lookup
+                OwnerDictionary owners = new OwnerDictionary();
                 if(bannedIds != null){
-                    bannedIdSet.addAll(bannedIds);
+                    for (String id : bannedIds) {
+                        owners.ban(id);
+                    }
                 }
-                db.collection("Trials").whereEqualTo("ExperimentID", experimentId).get()
-                        .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                            @Override
-                            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                                if (task.isSuccessful()) {
-                                    if (callback != null) {
-                                        List<Trial> output = new ArrayList<>();
-                                        for (QueryDocumentSnapshot snapshot : task.getResult()) {
-                                            Trial t = trialFromSnapshot(snapshot);
-                                            if(bannedIds != null && bannedIdSet.contains(t.getTrialUserID())){
-                                                t.setIgnored(true);
-                                            }
-                                            output.add(t);
-                                        }
-                                        callback.onTrialsReady(output);
-                                        Log.d(TAG, "getExperimentTrials successful");
-                                    }
-                                } else {
-                                    Log.d(TAG, "getExperimentTrials failed");
-                                    callback.onTrialsReady(null);
-                                }
+                store.query(new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId), documents -> {
+                    if (documents != null) {
+                        if (callback != null) {
+                            List<Trial> output = new ArrayList<>();
+                            TrialColumns columns = new TrialColumns(documents.size(), owners);
+                            for (DocumentData document : documents) {
+                                Trial t = trialFromSnapshot(document);
+                                int row = columns.add(t);
+                                t.setIgnored(columns.isIgnored(row));
+                                output.add(t);
                             }
-                        });
+                            callback.onTrialColumnsReady(output, columns);
+                            Log.d(TAG, "getExperimentTrials successful");
+                        }
+                    } else {
+                        Log.d(TAG, "getExperimentTrials failed");
+                        if (callback != null) {
+                            callback.onTrialColumnsReady(null, null);
+                        }
+                    }
+                });
+            }
+        });
+
+    }
+
+    /**
+     * Queries the trials of a given experiment page by page, so the first trials can be shown
+     * before the whole experiment is loaded. Banned users are read first, their trials come out ignored.
+     * @param experimentId The experiment to query trials for
+     * @param callback  Called once per page of {@link #TRIAL_PAGE_SIZE} trials
+     * @return the pager, to cancel the remaining pages
+     */
+    public TrialPager queryExperimentTrialPages(String experimentId, OnTrialPageListener callback) {
+        TrialPager pager = new TrialPager(this, experimentId, TRIAL_PAGE_SIZE);
+        store.get("BlackList/" + experimentId, blackList -> {
+            if (blackList == null) {
+                Log.d(TAG, "queryExperimentTrialPages failed");
+                callback.onTrialPage(null, pager.getColumns(), false);
+                return;
+            }
+            List<String> bannedIds = (List<String>) blackList.get("BannedIds");
+            if (bannedIds != null) {
+                for (String id : bannedIds) {
+                    pager.getColumns().banOwner(id);
+                }
             }
+            pager.start(callback);
         });
+        return pager;
+    }
 
+    /**
+     * Follows the trials of a given experiment as they change, with one listen instead of a reload per change.
+     * Banned users are read first, their trials come out ignored.
+     * @param experimentId The experiment to follow
+     * @param callback Called with every trial first, then with each change
+     * @return the feed, to stop listening
+     */
+    public ExperimentTrialFeed listenExperimentTrials(String experimentId, ExperimentTrialFeed.OnTrialDeltaListener callback) {
+        ExperimentTrialFeed feed = new ExperimentTrialFeed(this, store, experimentId);
+        feed.start(callback);
+        return feed;
+    }
+
+    /**
+     * Queries the located trials of a given experiment inside a viewport, instead of every trial of the experiment.
+     * The viewport is covered by a few geohash ranges queried in parallel, and the trials of the edge cells that
+     * fall outside of it are dropped. Banned users are read first, their trials come out ignored.
+     * Until a {@link GeohashBackfill} has indexed the trials stored before geohashes were written, every trial
+     * of the experiment is read and filtered instead, and the backfill is started.
+     * @param experimentId The experiment to query trials for
+     * @param bounds The viewport, its west may be greater than its east across the antimeridian
+     * @param callback Called with the trials in the viewport, or null if a query failed
+     */
+    public void queryTrialsInBounds(String experimentId, LatLngBounds bounds, OnTrialListReadyListener callback) {
+        double south = bounds.southwest.latitude;
+        double west = bounds.southwest.longitude;
+        double north = bounds.northeast.latitude;
+        double east = bounds.northeast.longitude;
+        store.get("BlackList/" + experimentId, blackList -> {
+            if (blackList == null) {
+                Log.d(TAG, "queryTrialsInBounds failed");
+                callback.onTrialsReady(null);
+                return;
+            }
+            Set<String> bannedIds = new HashSet<>();
+            if (blackList.get("BannedIds") != null) {
+                bannedIds.addAll((List<String>) blackList.get("BannedIds"));
+            }
+
+            isGeohashIndexed(experimentId, indexed -> {
+                if (indexed == null) {
+                    Log.d(TAG, "queryTrialsInBounds failed");
+                    callback.onTrialsReady(null);
+                    return;
+                }
+                List<StoreQuery> queries = new ArrayList<>();
+                if (indexed) {
+                    for (Geohash.Range range : Geohash.cover(south, west, north, east)) {
+                        queries.add(new StoreQuery("Trials")
+                                .whereEqualTo("ExperimentID", experimentId)
+                                .whereGreaterThanOrEqualTo("Geohash", range.getStart())
+                                .whereLessThan("Geohash", range.getEnd())
+                                .orderBy("Geohash"));
+                    }
+                } else {
+                    // some trials may have no geohash yet
+                    queries.add(new StoreQuery("Trials").whereEqualTo("ExperimentID", experimentId));
+                }
+                queryInBounds(queries, bannedIds, south, west, north, east, callback);
+            });
+        });
+    }
+
+    /**
+     * Runs the queries of {@link #queryTrialsInBounds} in parallel, and keeps the trials inside the viewport
+     */
+    private void queryInBounds(List<StoreQuery> queries, Set<String> bannedIds, double south, double west, double north, double east,
+                               OnTrialListReadyListener callback) {
+        List<List<DocumentData>> results = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(null);
+        }
+        AtomicInteger remaining = new AtomicInteger(queries.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (int i = 0; i < queries.size(); i++) {
+            int index = i;
+            store.query(queries.get(i), documents -> {
+                synchronized (results) {
+                    results.set(index, documents);
+                }
+                if (documents == null) {
+                    failed.set(true);
+                }
+                if (remaining.decrementAndGet() > 0) {
+                    return;
+                }
+                if (failed.get()) {
+                    Log.d(TAG, "queryTrialsInBounds failed");
+                    callback.onTrialsReady(null);
+                    return;
+                }
+                List<Trial> output = new ArrayList<>();
+                synchronized (results) {
+                    for (List<DocumentData> range : results) {
+                        for (DocumentData document : range) {
+                            Trial trial = trialFromSnapshot(document);
+                            if (trial.getLocation() != null && isInBounds(trial.getLocation(), south, west, north, east)) {
+                                trial.setIgnored(bannedIds.contains(trial.getTrialUserID()));
+                                output.add(trial);
+                            }
+                        }
+                    }
+                }
+                callback.onTrialsReady(output);
+            });
+        }
+    }
+
+    /**
+     * Finds out if every located trial of an experiment has a geohash, and starts a backfill if not
+     * @param experimentId The experiment
+     * @param callback Called with true if the trials are indexed, false if not yet, null if the read failed
+     */
+    private void isGeohashIndexed(String experimentId, Consumer<Boolean> callback) {
+        if (geohashIndexed.contains(experimentId)) {
+            callback.accept(true);
+            return;
+        }
+        store.get(GeohashBackfill.markerPath(experimentId), marker -> {
+            if (marker == null) {
+                callback.accept(null);
+                return;
+            }
+            if (GeohashBackfill.isIndexed(marker)) {
+                geohashIndexed.add(experimentId);
+                callback.accept(true);
+                return;
+            }
+            if (backfilling.add(experimentId)) {
+                new GeohashBackfill(store).backfill(experimentId, successful -> {
+                    if (successful) {
+                        geohashIndexed.add(experimentId);
+                    }
+                    backfilling.remove(experimentId);
+                });
+            }
+            callback.accept(false);
+        });
+    }
+
+    /**
+     * If a location is inside a viewport
+     */
+    private static boolean isInBounds(LatLng location, double south, double west, double north, double east) {
+        if (location.latitude < south || location.latitude > north) {
+            return false;
+        }
+        return west <= east ? location.longitude >= west && location.longitude <= east
+                : location.longitude >= west || location.longitude <= east;
+    }
+
+    /**
+     * Loads a page of trials of an experiment from the store, ordered by document id (the trial id)
+     * @param experimentId The experiment to load trials for
+     * @param afterTrialId The last trial id of the previous page, null for the first page
+     * @param pageSize The most trials to return
+     * @param callback Called with the page, or null if the query failed
+     */
+    @Override
+    public void loadPage(String experimentId, String afterTrialId, int pageSize, OnTrialListReadyListener callback) {
+        StoreQuery query = new StoreQuery("Trials")
+                .whereEqualTo("ExperimentID", experimentId)
+                .orderBy(StoreQuery.DOCUMENT_ID)
+                .startAfter(afterTrialId)
+                .limit(pageSize);
+        store.query(query, documents -> {
+            if (documents != null) {
+                List<Trial> page = new ArrayList<>();
+                for (DocumentData document : documents) {
+                    page.add(trialFromSnapshot(document));
+                }
+                callback.onTrialsReady(page);
+            } else {
+                Log.d(TAG, "loadPage failed");
+                callback.onTrialsReady(null);
+            }
+        });
     }
 
     /**
      * This method returns a Trial object by constructing it using the data from the document snapshot.
-     * @param snapshot the Firestore document to retrieve the trial details from
+     * @param snapshot the document to retrieve the trial details from
      * @return Trial object constructed using info from document
      */
-    private Trial trialFromSnapshot(QueryDocumentSnapshot snapshot) {
+    Trial trialFromSnapshot(DocumentData snapshot) {
 
         Trial trial = null;
-        LatLng geoPoint = geoPointToLatLng(snapshot.getGeoPoint("Location"));
+        LatLng geoPoint = geoPointToLatLng(snapshot.get("Location", GeoPoint.class));
         switch (snapshot.getString("TrialType")) {
             case Trial.BINOMIAL:
                 trial = new BinomialTrial(snapshot.getString("TrialId"),
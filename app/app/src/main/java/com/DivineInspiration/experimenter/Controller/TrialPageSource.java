@@ -0,0 +1,22 @@
+package com.DivineInspiration.experimenter.Controller;
+
+/**
+ * A source of the trials of an experiment, one page at a time.
+ * Pages are ordered by trial id, and the id of the last trial of a page is the cursor for the next one.
+ */
+public interface TrialPageSource {
+
+    /**
+     * Loads a page of trials of an experiment
+     * @param experimentId
+     * The experiment to load trials for
+     * @param afterTrialId
+     * The last trial id of the previous page, null for the first page
+     * @param pageSize
+     * The most trials to return
+     * @param callback
+     * Called with the page, ordered by trial id, or null if loading failed.
+     * A page shorter than pageSize is the last one.
+     */
+    void loadPage(String experimentId, String afterTrialId, int pageSize, TrialManager.OnTrialListReadyListener callback);
+}
@@ -0,0 +1,97 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import java.util.List;
+
+/**
+ * Walks the trials of an experiment page by page from a {@link TrialPageSource}, delivering each page as it arrives.
+ * The pages are also appended to a {@link TrialColumns}, so owners banned in its dictionary come out ignored.
+ */
+public class TrialPager {
+
+    private final TrialPageSource source;
+    private final String experimentId;
+    private final int pageSize;
+    private final TrialColumns columns = new TrialColumns(16);
+
+    private String cursor = null;
+    private boolean cancelled = false;
+
+    /**
+     * Constructor
+     * @param source
+     * where the pages come from
+     * @param experimentId
+     * the experiment to load trials for
+     * @param pageSize
+     * number of trials per page
+     */
+    public TrialPager(TrialPageSource source, String experimentId, int pageSize) {
+        this.source = source;
+        this.experimentId = experimentId;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Starts loading, pages are loaded one after another until the last one or until {@link #cancel()}
+     * @param callback
+     * called once per page
+     */
+    public void start(TrialManager.OnTrialPageListener callback) {
+        loadNext(callback);
+    }
+
+    /**
+     * Stops delivering pages, a page already requested is dropped when it arrives
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * If the pager was cancelled
+     * @return state of cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the columns of all the trials delivered so far
+     * @return trial columns
+     */
+    public TrialColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Requests the page after the cursor
+     * @param callback
+     * called with the page
+     */
+    private void loadNext(TrialManager.OnTrialPageListener callback) {
+        source.loadPage(experimentId, cursor, pageSize, page -> {
+            if (cancelled) {
+                return;
+            }
+            if (page == null) {
+                callback.onTrialPage(null, columns, false);
+                return;
+            }
+            for (Trial t : page) {
+                int row = columns.add(t);
+                t.setIgnored(columns.isIgnored(row));
+            }
+            boolean hasMore = page.size() == pageSize;
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getTrialID();
+            }
+            callback.onTrialPage(page, columns, hasMore);
+            if (hasMore && !cancelled) {
+                loadNext(callback);
+            }
+        });
+    }
+}
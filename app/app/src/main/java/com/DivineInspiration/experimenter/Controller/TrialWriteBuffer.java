@@ -0,0 +1,386 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups trials entered in quick succession into batched writes, instead of one write per trial.
+ * Pending trials are committed when the buffer reaches the batch size, when the time window of the
+ * first pending trial runs out, or when {@link #flush()} is called (the fragments flush when paused).
+ * The trials of one experiment are written in one transaction with its {@link ExperimentRollup} and the
+ * {@link DayBucket} days they touch, so the rollup never misses a written trial. A transaction holds at most
+ * {@link DocumentStore#MAX_BATCH_SIZE} writes, so a batch takes that many trials less the rollup and the days.
+ * New trials are written without reading their documents, their ids are new. A trial added with replace set is read
+ * first, and as in {@link TrialManager#addTrial} its old values are taken out of the rollup.
+ */
+public class TrialWriteBuffer {
+
+    /**
+     * Default time a trial may wait for others before it is written
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+
+    private static final String TAG = "TrialWriteBuffer";
+
+    private final TrialManager manager;
+    private final DocumentStore store;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final Metrics metrics = new Metrics();
+
+    private final List<Trial> pendingTrials = new ArrayList<>();
+    private final List<Boolean> pendingReplaces = new ArrayList<>();
+    private final List<OnTrialWrittenListener> pendingCallbacks = new ArrayList<>();
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Interface definition for a callback to be invoked when the batch holding a trial is committed
+     */
+    public interface OnTrialWrittenListener {
+        /**
+         * Called when the batch holding the trial is committed
+         * @param trial
+         * the trial that was added
+         * @param successful
+         * if the trial was written, a failed batch writes none of its trials
+         */
+        void onTrialWritten(Trial trial, boolean successful);
+    }
+
+    /**
+     * Constructor
+     * @param manager
+     * the trial manager, makes the trial documents
+     * @param store
+     * where the trials are written
+     * @param maxBatchSize
+     * number of trials that triggers a write, capped at {@link DocumentStore#MAX_BATCH_SIZE} less the rollup and one day
+     * @param windowMillis
+     * longest time a trial waits before it is written, 0 to only write on size or flush
+     */
+    public TrialWriteBuffer(TrialManager manager, DocumentStore store, int maxBatchSize, long windowMillis) {
+        this.manager = manager;
+        this.store = store;
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, DocumentStore.MAX_BATCH_SIZE - 2));
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a new trial to be written
+     * @param trial
+     * trial to add, its id must not be stored already
+     * @param callback
+     * called once the trial's batch is committed, can be null
+     */
+    public void add(Trial trial, OnTrialWrittenListener callback) {
+        add(trial, false, callback);
+    }
+
+    /**
+     * Adds a trial to be written
+     * @param trial
+     * trial to add
+     * @param replace
+     * if a trial with the same id may be stored already, it is then read and its old values replaced in the rollup
+     * @param callback
+     * called once the trial's batch is committed, can be null
+     */
+    public void add(Trial trial, boolean replace, OnTrialWrittenListener callback) {
+        boolean full;
+        synchronized (this) {
+            pendingTrials.add(trial);
+            pendingReplaces.add(replace);
+            pendingCallbacks.add(callback);
+            full = pendingTrials.size() >= maxBatchSize;
+            if (!full && pendingTrials.size() == 1 && windowMillis > 0) {
+                scheduledFlush = getTimer().schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all the pending trials now, in batches of at most the batch size
+     */
+    public void flush() {
+        List<Trial> trials;
+        List<Boolean> replaces;
+        List<OnTrialWrittenListener> callbacks;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pendingTrials.isEmpty()) {
+                return;
+            }
+            trials = new ArrayList<>(pendingTrials);
+            replaces = new ArrayList<>(pendingReplaces);
+            callbacks = new ArrayList<>(pendingCallbacks);
+            pendingTrials.clear();
+            pendingReplaces.clear();
+            pendingCallbacks.clear();
+        }
+
+        // the trials of each experiment share its rollup
+        Map<String, List<Integer>> byExperiment = new LinkedHashMap<>();
+        for (int i = 0; i < trials.size(); i++) {
+            byExperiment.computeIfAbsent(trials.get(i).getTrialExperimentID(), k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : byExperiment.entrySet()) {
+            List<Trial> batchTrials = new ArrayList<>();
+            List<Boolean> batchReplaces = new ArrayList<>();
+            List<OnTrialWrittenListener> batchCallbacks = new ArrayList<>();
+            Set<Long> batchDays = new HashSet<>();
+            for (int i : entry.getValue()) {
+                Trial trial = trials.get(i);
+                long day = trial.getTrialDate().toEpochDay();
+                int daysIfAdded = batchDays.size() + (batchDays.contains(day) ? 0 : 1);
+                // the trials, the rollup and the days
+                if (batchTrials.size() == maxBatchSize || batchTrials.size() + 1 + 1 + daysIfAdded > DocumentStore.MAX_BATCH_SIZE) {
+                    commit(entry.getKey(), batchTrials, batchReplaces, batchCallbacks);
+                    batchTrials = new ArrayList<>();
+                    batchReplaces = new ArrayList<>();
+                    batchCallbacks = new ArrayList<>();
+                    batchDays = new HashSet<>();
+                }
+                batchTrials.add(trial);
+                batchReplaces.add(replaces.get(i));
+                batchCallbacks.add(callbacks.get(i));
+                batchDays.add(day);
+            }
+            commit(entry.getKey(), batchTrials, batchReplaces, batchCallbacks);
+        }
+    }
+
+    /**
+     * Gets the number of trials waiting to be written
+     * @return number of pending trials
+     */
+    public synchronized int pendingCount() {
+        return pendingTrials.size();
+    }
+
+    /**
+     * Gets the counters of the batches written so far
+     * @return metrics of this buffer
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Commits the trials of one experiment with its rollup and days in one transaction, and reports every trial.
+     * Only the trials added with replace are read, and their old values taken out of the rollup and their old day;
+     * a batch of new trials only reads its rollup and its days.
+     * Old days can take up more writes than the batch was made for, the trials that no longer fit
+     * are committed in another transaction after this one.
+     */
+    private void commit(String experimentId, List<Trial> trials, List<Boolean> replaces, List<OnTrialWrittenListener> callbacks) {
+        List<Map<String, Object>> docs = new ArrayList<>();
+        for (Trial trial : trials) {
+            docs.add(manager.trialToDoc(trial));
+        }
+        String rollupPath = ExperimentRollup.pathOf(experimentId);
+        // how many trials made it into the transaction, set again if it is retried
+        int[] fitted = new int[1];
+        long start = System.nanoTime();
+        store.runTransaction(transaction -> {
+            // every read comes before the writes: the replaced trials, the rollup, then each day touched once
+            Map<String, Map<String, Object>> previous = new HashMap<>();
+            for (int i = 0; i < trials.size(); i++) {
+                Trial trial = trials.get(i);
+                if (!replaces.get(i)) {
+                    continue;
+                }
+                DocumentData existing = transaction.get("Trials/" + trial.getTrialID());
+                if (existing.exists()) {
+                    previous.put(trial.getTrialID(), existing.getData());
+                }
+            }
+            ExperimentRollup rollup = ExperimentRollup.fromDocument(transaction.get(rollupPath));
+            Map<Integer, DayBucket> days = new TreeMap<>();
+            for (Map<String, Object> doc : docs) {
+                readDayOnce(transaction, experimentId, doc, days);
+            }
+            for (Map<String, Object> old : previous.values()) {
+                readDayOnce(transaction, experimentId, old, days);
+            }
+
+            Set<Integer> written = new HashSet<>();
+            int writes = 1;
+            fitted[0] = 0;
+            for (int i = 0; i < trials.size(); i++) {
+                Map<String, Object> doc = docs.get(i);
+                String trialId = trials.get(i).getTrialID();
+                Map<String, Object> old = previous.get(trialId);
+                Set<Integer> touched = new HashSet<>();
+                touched.add(DayBucket.dayOf(doc));
+                if (old != null) {
+                    touched.add(DayBucket.dayOf(old));
+                }
+                touched.removeAll(written);
+                if (writes + 1 + touched.size() > DocumentStore.MAX_BATCH_SIZE) {
+                    // the rest keep their order in the next transaction
+                    break;
+                }
+                writes += 1 + touched.size();
+                written.addAll(touched);
+                fitted[0]++;
+
+                if (old != null) {
+                    rollup.removeTrial(old);
+                    if (!rollup.isBanned((String) old.get("OwnerID"))) {
+                        days.get(DayBucket.dayOf(old)).removeTrial(old);
+                    }
+                }
+                rollup.addTrial(doc);
+                if (!rollup.isBanned((String) doc.get("OwnerID"))) {
+                    days.get(DayBucket.dayOf(doc)).addTrial(doc);
+                }
+                transaction.set("Trials/" + trialId, doc, false);
+                // a trial buffered twice replaces its own first write
+                previous.put(trialId, doc);
+            }
+            transaction.set(rollupPath, rollup.toDocument(), false);
+            for (int day : written) {
+                TrialManager.writeDay(transaction, experimentId, days.get(day));
+            }
+        }, successful -> {
+            int count = successful ? fitted[0] : trials.size();
+            metrics.record(count, System.nanoTime() - start, successful);
+            if (!successful) {
+                Log.d(TAG, "batch of " + trials.size() + " trials failed to be committed to database!");
+            }
+            for (int i = 0; i < count; i++) {
+                if (callbacks.get(i) != null) {
+                    callbacks.get(i).onTrialWritten(trials.get(i), successful);
+                }
+            }
+            if (count < trials.size()) {
+                commit(experimentId, trials.subList(count, trials.size()), replaces.subList(count, trials.size()),
+                        callbacks.subList(count, trials.size()));
+            }
+        });
+    }
+
+    /**
+     * Reads the day of a trial in a transaction, unless it was read already
+     */
+    private static void readDayOnce(DocumentStore.Transaction transaction, String experimentId, Map<String, Object> trialDoc,
+                                    Map<Integer, DayBucket> days) {
+        if (!days.containsKey(DayBucket.dayOf(trialDoc))) {
+            days.put(DayBucket.dayOf(trialDoc), TrialManager.readDay(transaction, experimentId, trialDoc));
+        }
+    }
+
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Counters of the batches written by a {@link TrialWriteBuffer}
+     */
+    public static class Metrics {
+
+        private long batchCount = 0;
+        private long failedBatchCount = 0;
+        private long trialCount = 0;
+        private int largestBatch = 0;
+        private long totalCommitNanos = 0;
+        private long maxCommitNanos = 0;
+
+        synchronized void record(int batchSize, long commitNanos, boolean successful) {
+            batchCount++;
+            if (!successful) {
+                failedBatchCount++;
+            }
+            trialCount += batchSize;
+            largestBatch = Math.max(largestBatch, batchSize);
+            totalCommitNanos += commitNanos;
+            maxCommitNanos = Math.max(maxCommitNanos, commitNanos);
+        }
+
+        /**
+         * Gets the number of batches committed, failed ones included
+         * @return number of batches
+         */
+        public synchronized long getBatchCount() {
+            return batchCount;
+        }
+
+        /**
+         * Gets the number of batches that failed
+         * @return number of failed batches
+         */
+        public synchronized long getFailedBatchCount() {
+            return failedBatchCount;
+        }
+
+        /**
+         * Gets the number of trials in all batches
+         * @return number of trials
+         */
+        public synchronized long getTrialCount() {
+            return trialCount;
+        }
+
+        /**
+         * Gets the size of the largest batch
+         * @return largest batch size
+         */
+        public synchronized int getLargestBatch() {
+            return largestBatch;
+        }
+
+        /**
+         * Gets the mean number of trials per batch
+         * @return mean batch size, 0 if nothing was committed
+         */
+        public synchronized double getMeanBatchSize() {
+            return batchCount == 0 ? 0 : (double) trialCount / batchCount;
+        }
+
+        /**
+         * Gets the mean time from commit to completion of a batch
+         * @return mean commit latency in milliseconds, 0 if nothing was committed
+         */
+        public synchronized double getMeanCommitMillis() {
+            return batchCount == 0 ? 0 : totalCommitNanos / 1e6 / batchCount;
+        }
+
+        /**
+         * Gets the longest time from commit to completion of a batch
+         * @return max commit latency in milliseconds
+         */
+        public synchronized double getMaxCommitMillis() {
+            return maxCommitNanos / 1e6;
+        }
+    }
+}
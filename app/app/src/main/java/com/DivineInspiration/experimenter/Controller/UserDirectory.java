@@ -0,0 +1,327 @@
+package com.DivineInspiration.experimenter.Controller;
+
+import android.util.Log;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+import com.DivineInspiration.experimenter.Model.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Looks up user profiles by id, in front of the user documents.
+ * A list of ids is split into chunks of {@link StoreQuery#MAX_IN_VALUES}, the most a whereIn can hold, and the
+ * chunks are queried a few at a time so thousands of ids load in a bounded number of parallel round trips.
+ * Profiles are kept in an LRU cache, ids already cached are not read again until their time to live runs out,
+ * so an edit made on another device shows up after a while.
+ */
+public class UserDirectory {
+
+    private static final String TAG = "UserDirectory";
+
+    /**
+     * Default number of profiles kept
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * Default number of chunk queries in flight at once
+     */
+    public static final int DEFAULT_MAX_PARALLEL = 8;
+
+    /**
+     * Default time a profile is served from memory, same as {@link ExperimentCache#DEFAULT_TTL_MILLIS}
+     */
+    public static final long DEFAULT_TTL_MILLIS = ExperimentCache.DEFAULT_TTL_MILLIS;
+
+    private final DocumentStore store;
+    private final int cacheSize;
+    private final int maxParallel;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    // user id -> profile, in access order
+    private final LinkedHashMap<String, Entry> profiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits = 0;
+    private long misses = 0;
+    private long roundTrips = 0;
+
+    private static class Entry {
+        final User user;
+        final long storedAt;
+
+        Entry(User user, long storedAt) {
+            this.user = user;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a list of users is looked up
+     */
+    public interface OnUsersReadyListener {
+        /**
+         * Called when every chunk is read
+         * @param users
+         * the users found, in the order of the ids asked for, null if a chunk failed
+         */
+        void onUsersReady(List<User> users);
+    }
+
+    /**
+     * Constructor
+     * @param store
+     * where the user documents are
+     * @param cacheSize
+     * most profiles kept
+     * @param maxParallel
+     * most chunk queries in flight at once
+     */
+    public UserDirectory(DocumentStore store, int cacheSize, int maxParallel) {
+        this(store, cacheSize, maxParallel, DEFAULT_TTL_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor
+     * @param store
+     * where the user documents are
+     * @param cacheSize
+     * most profiles kept
+     * @param maxParallel
+     * most chunk queries in flight at once
+     * @param ttlMillis
+     * time a profile is served from memory after it was stored
+     * @param clock
+     * current time in milliseconds
+     */
+    public UserDirectory(DocumentStore store, int cacheSize, int maxParallel, long ttlMillis, LongSupplier clock) {
+        this.store = store;
+        this.cacheSize = Math.max(1, cacheSize);
+        this.maxParallel = Math.max(1, maxParallel);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Looks up one user
+     * @param userId
+     * id of the user
+     * @param callback
+     * called with the user, null if there is none or the read failed
+     */
+    public void getUser(String userId, UserManager.OnUserReadyListener callback) {
+        User cached = cached(userId);
+        if (cached != null) {
+            callback.onUserReady(cached);
+            return;
+        }
+        synchronized (this) {
+            roundTrips++;
+        }
+        store.get("Users/" + userId, document -> {
+            User user = document != null && document.exists() ? parse(document) : null;
+            if (user != null) {
+                put(user);
+            }
+            callback.onUserReady(user);
+        });
+    }
+
+    /**
+     * Looks up a list of users, the ids that are not cached are read in chunks
+     * @param userIds
+     * ids of the users, repeats are looked up once
+     * @param callback
+     * called once with the users found
+     */
+    public void getUsers(List<String> userIds, OnUsersReadyListener callback) {
+        List<String> order = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<String, User> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : order) {
+            User cached = cached(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i += StoreQuery.MAX_IN_VALUES) {
+            chunks.add(missing.subList(i, Math.min(missing.size(), i + StoreQuery.MAX_IN_VALUES)));
+        }
+        new Fetch(order, found, chunks, callback).pump();
+    }
+
+    /**
+     * Stores a profile, after the user was written
+     * @param user
+     * the user as written
+     */
+    public synchronized void put(User user) {
+        profiles.put(user.getUserId(), new Entry(user, clock.getAsLong()));
+        while (profiles.size() > cacheSize) {
+            profiles.remove(profiles.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Drops a profile, the next lookup reads it again
+     * @param userId
+     * id of the user
+     */
+    public synchronized void invalidate(String userId) {
+        profiles.remove(userId);
+    }
+
+    /**
+     * Gets the number of lookups served from memory
+     * @return number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to be read
+     * @return number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of gets and chunk queries sent to the store
+     * @return number of round trips
+     */
+    public synchronized long getRoundTripCount() {
+        return roundTrips;
+    }
+
+    private synchronized User cached(String userId) {
+        Entry entry = profiles.get(userId);
+        if (entry != null && clock.getAsLong() - entry.storedAt >= ttlMillis) {
+            profiles.remove(userId);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.user;
+    }
+
+    /**
+     * Makes a user from its document, documents without contacts are not complete profiles
+     */
+    private static User parse(DocumentData document) {
+        return document.get("Contacts") instanceof Map ? UserManager.userFromSnapshot(document) : null;
+    }
+
+    /**
+     * The chunk queries of one {@link #getUsers} call, at most maxParallel of them in flight
+     */
+    private class Fetch {
+        private final List<String> order;
+        private final Map<String, User> found;
+        private final List<List<String>> chunks;
+        private final OnUsersReadyListener callback;
+
+        private int next = 0;
+        private int inFlight = 0;
+        private boolean pumping = false;
+        private boolean failed = false;
+        private boolean finished = false;
+
+        Fetch(List<String> order, Map<String, User> found, List<List<String>> chunks, OnUsersReadyListener callback) {
+            this.order = order;
+            this.found = found;
+            this.chunks = chunks;
+            this.callback = callback;
+        }
+
+        /**
+         * Sends chunk queries until maxParallel are in flight. A loop rather than recursion,
+         * a store that answers right away would otherwise nest a call per chunk
+         */
+        void pump() {
+            synchronized (this) {
+                if (pumping) {
+                    return;
+                }
+                pumping = true;
+            }
+            while (true) {
+                List<String> chunk;
+                synchronized (this) {
+                    if (failed || next == chunks.size() || inFlight >= maxParallel) {
+                        pumping = false;
+                        break;
+                    }
+                    chunk = chunks.get(next++);
+                    inFlight++;
+                }
+                synchronized (UserDirectory.this) {
+                    roundTrips++;
+                }
+                store.query(new StoreQuery("Users").whereIn(StoreQuery.DOCUMENT_ID, chunk), this::onChunk);
+            }
+            finishIfDone();
+        }
+
+        private void onChunk(List<DocumentData> documents) {
+            if (documents != null) {
+                for (DocumentData document : documents) {
+                    User user = parse(document);
+                    if (user != null) {
+                        put(user);
+                        synchronized (this) {
+                            found.put(user.getUserId(), user);
+                        }
+                    }
+                }
+            }
+            synchronized (this) {
+                inFlight--;
+                if (documents == null) {
+                    failed = true;
+                }
+            }
+            pump();
+        }
+
+        private void finishIfDone() {
+            List<User> users;
+            synchronized (this) {
+                if (finished || inFlight > 0 || (!failed && next < chunks.size())) {
+                    return;
+                }
+                finished = true;
+                if (failed) {
+                    users = null;
+                } else {
+                    users = new ArrayList<>(found.size());
+                    for (String id : order) {
+                        User user = found.get(id);
+                        if (user != null) {
+                            users.add(user);
+                        }
+                    }
+                }
+            }
+            if (users == null) {
+                Log.d(TAG, "getUsers failed");
+            }
+            callback.onUsersReady(users);
+        }
+    }
+}
@@ -6,25 +6,19 @@ import android.content.SharedPreferences;
 import android.util.Log;
 
 
-import androidx.annotation.NonNull;
-
-import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.FirestoreDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
 import com.DivineInspiration.experimenter.Model.IdGen;
 import com.DivineInspiration.experimenter.Model.User;
 
 import com.DivineInspiration.experimenter.Model.UserContactInfo;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
-import com.google.firebase.firestore.Source;
 import com.google.gson.Gson;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,7 +39,8 @@ public class UserManager {
     private static UserManager singleton = null;    // Singleton object
 
     private User user;
-    private FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final DocumentStore store;
+    private final UserDirectory directory;
 
     private final String TAG = "USER";
 
@@ -84,6 +79,30 @@ public class UserManager {
         void onUserReady(User user);
     }
 
+    /**
+     * Constructor, uses Firestore
+     */
+    private UserManager() {
+        this(new FirestoreDocumentStore());
+    }
+
+    /**
+     * Constructor
+     * @param store the document store to keep users in
+     */
+    public UserManager(DocumentStore store) {
+        this.store = store;
+        this.directory = new UserDirectory(store, UserDirectory.DEFAULT_CACHE_SIZE, UserDirectory.DEFAULT_MAX_PARALLEL);
+    }
+
+    /**
+     * Gets the directory that looks up and caches user profiles
+     * @return the user directory
+     */
+    public UserDirectory getUserDirectory() {
+        return directory;
+    }
+
     /**
      * Gets the current local user of the device.
      * @return the current user
@@ -141,29 +160,12 @@ public class UserManager {
     }
 
     /**
-     * Queries the user from Firestore database given the user's id
+     * Queries the user from Firestore database given the user's id, users looked up recently are not read again
      * @param userId ID of the user
-     * @param callback the user data is passed as a parameter of the method in the callback
+     * @param callback the user data is passed as a parameter of the method in the callback, null if there is no such user
      */
-    @SuppressWarnings("unchecked")
     public void queryUserById(String userId, OnUserReadyListener callback){
-
-        db.collection("Users")
-                .document(userId)
-                .get(Source.DEFAULT)
-                .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                if (task.isSuccessful()){
-                    DocumentSnapshot document = task.getResult();
-                    if(document != null && document.exists() && document.get("Contacts") instanceof Map){
-                        callback.onUserReady(userFromSnapshot(document));
-                    }
-                } else{
-                    callback.onUserReady(null);
-                }
-            }
-        });
+        directory.getUser(userId, callback);
     }
 
     /**
@@ -173,71 +175,47 @@ public class UserManager {
      */
     public void queryUserByName(String name, OnUserReadyListener callback){
 
-        db.collection("Users")
-                .whereEqualTo("UserName", name)
-                .limit(1)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-
-                        if (task.isSuccessful() && callback != null) {
-                            if (task.getResult().size() == 0) {
-                                callback.onUserReady(null);
-                            } else {
-                                for (QueryDocumentSnapshot doc : task.getResult()) {
-                                    callback.onUserReady(userFromSnapshot(doc));
-                                }
-                            }
-                        } else {
-                            callback.onUserReady(null);
-                        }
+        store.query(new StoreQuery("Users").whereEqualTo("UserName", name).limit(1), documents -> {
+
+            if (documents != null && callback != null) {
+                if (documents.size() == 0) {
+                    callback.onUserReady(null);
+                } else {
+                    for (DocumentData doc : documents) {
+                        callback.onUserReady(userFromSnapshot(doc));
                     }
-                });
+                }
+            } else if (callback != null) {
+                callback.onUserReady(null);
+            }
+        });
     }
 
     /**
-     * Queries the subscribers of the given experiment.
+     * Queries the subscribers of the given experiment. The subscribers are read in parallel chunks,
+     * so any number of them can be loaded, and the ones looked up recently are not read again.
      * @param expId the user to query experiments for
      * @param callback the user data is passed as a parameter of the method in the callback
      */
     @SuppressWarnings("unchecked")
     public void queryExperimentSubs(String expId, OnUserListReadyListener callback){
-        db.collection("Experiments")
-                .document(expId)
-                .get()
-                .addOnCompleteListener(
-                new OnCompleteListener<DocumentSnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                        if (task.isSuccessful()) {
-                             ArrayList<String> userIds = (ArrayList<String>) task.getResult().get("SubscriberIDs");
-
-                             if (userIds == null || userIds.size() == 0) {
-                                 callback.onUserListReady(new ArrayList<User>());
-                             } else {
-                                 db.collection("Users")
-                                         .whereIn("__name__", userIds)
-                                         .get()
-                                         .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                                     @Override
-                                     public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                                         ArrayList<User> output = new ArrayList<>();
-                                         if(task.isSuccessful()){
-                                             for(DocumentSnapshot snap: task.getResult()){
-                                                 output.add(userFromSnapshot(snap));
-                                             }
-                                             callback.onUserListReady(output);
-                                         }
-                                     }
-                                 });
-                             }
-                        } else {
-                            Log.d(TAG, "oh no! WTF");
+        store.get("Experiments/" + expId, document -> {
+            if (document != null) {
+                List<String> userIds = (List<String>) document.get("SubscriberIDs");
+
+                if (userIds == null || userIds.size() == 0) {
+                    callback.onUserListReady(new ArrayList<User>());
+                } else {
+                    directory.getUsers(userIds, users -> {
+                        if (users != null) {
+                            callback.onUserListReady(new ArrayList<>(users));
                         }
-                    }
+                    });
                 }
-        );
+            } else {
+                Log.d(TAG, "oh no! WTF");
+            }
+        });
     }
 
     /**
@@ -268,16 +246,11 @@ public class UserManager {
                         contact.put("Email", user.getContactInfo().getEmail());
 
         doc.put("Contacts", contact);
-        db.collection("Users")
-                .document(user.getUserId())
-                .set(doc)
-                .addOnCompleteListener(new OnCompleteListener<Void>() {
-            @Override
-            public void onComplete(@NonNull Task<Void> task) {
-                if(task.isSuccessful()) {
-                    if(callback != null) {
-                        callback.onUserReady(user);
-                    }
+        store.set("Users/" + user.getUserId(), doc, false, successful -> {
+            if(successful) {
+                directory.put(user);
+                if(callback != null) {
+                    callback.onUserReady(user);
                 }
             }
         });
@@ -285,10 +258,10 @@ public class UserManager {
 
     /**
      * This method returns a User object by constructing it using the data from the document snapshot.
-     * @param document the Firestore document to retrieve the user details from
+     * @param document the document to retrieve the user details from
      * @return constructed using info from document
      */
-    private User userFromSnapshot(DocumentSnapshot document){
+    static User userFromSnapshot(DocumentData document){
         Map<String, Object> contact = (Map<String, Object> )document.get("Contacts");
         // update firebase and other stuff
         String description = document.getString("UserDescription");
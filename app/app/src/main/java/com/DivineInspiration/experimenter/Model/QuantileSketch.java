@@ -0,0 +1,326 @@
+package com.DivineInspiration.experimenter.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mergeable sketch of a set of values that answers quantile queries approximately, a merging t-digest.
+ * Values are buffered and then merged into centroids (a mean and a weight each), sorted by mean. A centroid may
+ * only grow while it spans less than one unit of the scale function k(q) = compression / (2 pi) * asin(2q - 1),
+ * so centroids near the tails hold few values and quantiles there stay accurate. The number of centroids is
+ * bounded by about the compression, whatever the number of values; two sketches merge by merging their centroids.
+ * Min and max are kept exactly.
+ */
+public class QuantileSketch {
+
+    /**
+     * Default compression, about 1% worst case error on the middle quantiles and much less near the tails
+     */
+    public static final int DEFAULT_COMPRESSION = 100;
+
+    private final int compression;
+
+    // centroids, sorted by mean
+    private double[] means;
+    private long[] weights;
+    private int size = 0;
+
+    // values not merged into the centroids yet, made on the first add so read sketches that are only merged stay small
+    private double[] buffer;
+    private int buffered = 0;
+
+    private long count = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * Constructor, with the default compression
+     */
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor
+     * @param compression
+     * accuracy: more keeps more centroids, at least 10
+     */
+    public QuantileSketch(int compression) {
+        this.compression = Math.max(10, compression);
+        this.means = new double[this.compression];
+        this.weights = new long[this.compression];
+    }
+
+    /**
+     * Adds a value
+     * @param value
+     * value to add, NaN is skipped
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = new double[8 * compression];
+        } else if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        count++;
+        min = count == 1 ? value : Math.min(min, value);
+        max = count == 1 ? value : Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another sketch to this one, the other sketch is left as it was
+     * @param other
+     * the sketch to add
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        other.compress();
+        compress();
+        double[] mergedMeans = new double[size + other.size];
+        long[] mergedWeights = new long[size + other.size];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && means[i] <= other.means[j])) {
+                mergedMeans[k] = means[i];
+                mergedWeights[k++] = weights[i++];
+            } else {
+                mergedMeans[k] = other.means[j];
+                mergedWeights[k++] = other.weights[j++];
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        cluster(mergedMeans, mergedWeights, k);
+    }
+
+    /**
+     * Gets an approximate quantile
+     * @param q
+     * the quantile, between 0 and 1
+     * @return the value below which a fraction q of the values lie, NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        compress();
+        if (q <= 0 || count == 1) {
+            return q <= 0 ? min : means[0];
+        }
+        if (q >= 1) {
+            return max;
+        }
+        double target = q * count;
+        // each centroid's values are taken to be spread evenly around its mean
+        double firstCenter = weights[0] / 2.0;
+        if (target < firstCenter) {
+            return interpolate(min, means[0], target / firstCenter);
+        }
+        double cumulative = 0;
+        for (int i = 0; i < size - 1; i++) {
+            double center = cumulative + weights[i] / 2.0;
+            double nextCenter = cumulative + weights[i] + weights[i + 1] / 2.0;
+            if (target <= nextCenter) {
+                return interpolate(means[i], means[i + 1], (target - center) / (nextCenter - center));
+            }
+            cumulative += weights[i];
+        }
+        double lastCenter = count - weights[size - 1] / 2.0;
+        return interpolate(means[size - 1], max, (target - lastCenter) / (count - lastCenter));
+    }
+
+    /**
+     * Gets the number of values added
+     * @return number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest value added
+     * @return min, NaN if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the largest value added
+     * @return max, NaN if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the compression the sketch was made with
+     * @return compression
+     */
+    public int getCompression() {
+        return compression;
+    }
+
+    /**
+     * Gets the number of centroids the values are kept in
+     * @return number of centroids
+     */
+    public int centroidCount() {
+        compress();
+        return size;
+    }
+
+    /**
+     * Makes the fields of a document holding the sketch
+     * @return compression, count, min, max and the centroid means and weights
+     */
+    public Map<String, Object> toMap() {
+        compress();
+        Map<String, Object> map = new HashMap<>();
+        map.put("Compression", (long) compression);
+        map.put("Count", count);
+        if (count > 0) {
+            map.put("Min", min);
+            map.put("Max", max);
+        }
+        List<Double> meanList = new ArrayList<>(size);
+        List<Long> weightList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            meanList.add(means[i]);
+            weightList.add(weights[i]);
+        }
+        map.put("Means", meanList);
+        map.put("Weights", weightList);
+        return map;
+    }
+
+    /**
+     * Reads a sketch from the fields made by {@link #toMap()}
+     * @param map
+     * the fields
+     * @return the sketch, empty if the fields are missing
+     */
+    @SuppressWarnings("unchecked")
+    public static QuantileSketch fromMap(Map<String, Object> map) {
+        if (map == null) {
+            return new QuantileSketch();
+        }
+        int compression = map.get("Compression") instanceof Number ? ((Number) map.get("Compression")).intValue() : DEFAULT_COMPRESSION;
+        QuantileSketch sketch = new QuantileSketch(compression);
+        List<Number> meanList = map.get("Means") instanceof List ? (List<Number>) map.get("Means") : new ArrayList<>();
+        List<Number> weightList = map.get("Weights") instanceof List ? (List<Number>) map.get("Weights") : new ArrayList<>();
+        int size = Math.min(meanList.size(), weightList.size());
+        sketch.means = new double[Math.max(size, sketch.compression)];
+        sketch.weights = new long[sketch.means.length];
+        for (int i = 0; i < size; i++) {
+            sketch.means[i] = meanList.get(i).doubleValue();
+            sketch.weights[i] = weightList.get(i).longValue();
+            sketch.count += sketch.weights[i];
+        }
+        sketch.size = size;
+        if (sketch.count > 0) {
+            sketch.min = map.get("Min") instanceof Number ? ((Number) map.get("Min")).doubleValue() : sketch.means[0];
+            sketch.max = map.get("Max") instanceof Number ? ((Number) map.get("Max")).doubleValue() : sketch.means[size - 1];
+        }
+        return sketch;
+    }
+
+    /**
+     * Merges the buffered values into the centroids
+     */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] mergedMeans = new double[size + buffered];
+        long[] mergedWeights = new long[size + buffered];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size || j < buffered) {
+            if (j == buffered || (i < size && means[i] <= buffer[j])) {
+                mergedMeans[k] = means[i];
+                mergedWeights[k++] = weights[i++];
+            } else {
+                mergedMeans[k] = buffer[j++];
+                mergedWeights[k++] = 1;
+            }
+        }
+        buffered = 0;
+        cluster(mergedMeans, mergedWeights, k);
+    }
+
+    /**
+     * Groups sorted weighted points into centroids, each spanning at most one unit of the scale function
+     */
+    private void cluster(double[] pointMeans, long[] pointWeights, int points) {
+        long total = 0;
+        for (int i = 0; i < points; i++) {
+            total += pointWeights[i];
+        }
+        double[] outMeans = new double[Math.max(compression, 8)];
+        long[] outWeights = new long[outMeans.length];
+        int out = 0;
+
+        double currentMean = pointMeans[0];
+        long currentWeight = pointWeights[0];
+        long before = 0;
+        // the centroid may grow up to the weight where the scale function is one above its start
+        double limit = weightLimit(0, total);
+        for (int i = 1; i < points; i++) {
+            if (before + currentWeight + pointWeights[i] <= limit) {
+                currentWeight += pointWeights[i];
+                currentMean += (pointMeans[i] - currentMean) * pointWeights[i] / currentWeight;
+            } else {
+                if (out == outMeans.length) {
+                    outMeans = Arrays.copyOf(outMeans, out * 2);
+                    outWeights = Arrays.copyOf(outWeights, out * 2);
+                }
+                outMeans[out] = currentMean;
+                outWeights[out++] = currentWeight;
+                before += currentWeight;
+                limit = weightLimit(before, total);
+                currentMean = pointMeans[i];
+                currentWeight = pointWeights[i];
+            }
+        }
+        if (out == outMeans.length) {
+            outMeans = Arrays.copyOf(outMeans, out + 1);
+            outWeights = Arrays.copyOf(outWeights, out + 1);
+        }
+        outMeans[out] = currentMean;
+        outWeights[out++] = currentWeight;
+        means = outMeans;
+        weights = outWeights;
+        size = out;
+    }
+
+    /**
+     * Total weight at which the scale function k(q) = compression / (2 pi) * asin(2q - 1) is one above its value
+     * at the given weight, computed once per centroid rather than once per point
+     */
+    private double weightLimit(long before, long total) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, (double) before / total) - 1);
+        if (k + 1 >= compression / 4.0) {
+            return total;
+        }
+        return (Math.sin((k + 1) * 2 * Math.PI / compression) + 1) / 2 * total;
+    }
+
+    private static double interpolate(double from, double to, double fraction) {
+        return from + (to - from) * Math.max(0, Math.min(1, fraction));
+    }
+}
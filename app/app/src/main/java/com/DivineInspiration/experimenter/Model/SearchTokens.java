@@ -0,0 +1,87 @@
+package com.DivineInspiration.experimenter.Model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns free text into normalized search tokens: lower case, accents removed, split on anything
+ * that is not a letter or a digit. Used by the experiment search on both the device and the database.
+ */
+public class SearchTokens {
+
+    /**
+     * Longest keyword stored on a document, longer search words are cut to this length before matching
+     */
+    public static final int MAX_KEYWORD_LENGTH = 15;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Normalizes text without splitting it
+     * @param text
+     * text to normalize, can be null
+     * @return lower case text without accents, empty for null
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits text into normalized tokens
+     * @param text
+     * text to split, can be null
+     * @return distinct tokens, in the order they first appear
+     */
+    public static List<String> tokenize(CharSequence text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Gets the keywords of texts for a database document: every token and every prefix of it,
+     * up to {@link #MAX_KEYWORD_LENGTH} characters, so a query can match the start of a word
+     * @param texts
+     * texts to index, null ones are skipped
+     * @return distinct keywords
+     */
+    public static List<String> keywords(CharSequence... texts) {
+        Set<String> keywords = new LinkedHashSet<>();
+        for (CharSequence text : texts) {
+            for (String token : tokenize(text)) {
+                for (int length = 1; length <= Math.min(token.length(), MAX_KEYWORD_LENGTH); length++) {
+                    keywords.add(token.substring(0, length));
+                }
+            }
+        }
+        return new ArrayList<>(keywords);
+    }
+
+    /**
+     * Turns a search text into the keywords to look up, matching the ones made by {@link #keywords}
+     * @param text
+     * search text, can be null
+     * @return distinct keywords, cut to {@link #MAX_KEYWORD_LENGTH} characters
+     */
+    public static List<String> queryKeywords(CharSequence text) {
+        Set<String> keywords = new LinkedHashSet<>();
+        for (String token : tokenize(text)) {
+            keywords.add(token.length() > MAX_KEYWORD_LENGTH ? token.substring(0, MAX_KEYWORD_LENGTH) : token);
+        }
+        return new ArrayList<>(keywords);
+    }
+}
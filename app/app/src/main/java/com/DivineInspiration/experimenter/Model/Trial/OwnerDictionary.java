@@ -0,0 +1,136 @@
+package com.DivineInspiration.experimenter.Model.Trial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the owner ids of the trials of one experiment into dense ints, starting at 0.
+ * Keeps, for each owner, the list of trial rows they own (a postings list) and a bitset of the banned owners,
+ * so a ban is an int lookup and flipping the owner's trials costs O(trials of that owner).
+ */
+public class OwnerDictionary {
+
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<int[]> postings = new ArrayList<>();
+    private int[] postingSizes = new int[8];
+    private final BitSet banned = new BitSet();
+
+    /**
+     * Gets the code of an owner, adding the owner if it is new
+     * @param ownerId
+     * user id of the owner
+     * @return owner code
+     */
+    public int intern(String ownerId) {
+        Integer code = codes.get(ownerId);
+        if (code == null) {
+            code = ids.size();
+            ids.add(ownerId);
+            codes.put(ownerId, code);
+            postings.add(new int[4]);
+            if (code == postingSizes.length) {
+                postingSizes = Arrays.copyOf(postingSizes, code * 2);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Gets the code of an owner without adding it
+     * @param ownerId
+     * user id of the owner
+     * @return owner code, -1 if the owner is unknown
+     */
+    public int codeOf(String ownerId) {
+        Integer code = codes.get(ownerId);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Gets the user id behind an owner code
+     * @param code owner code
+     * @return user id
+     */
+    public String getOwnerId(int code) {
+        return ids.get(code);
+    }
+
+    /**
+     * Gets the number of distinct owners
+     * @return number of owners
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Records that a trial row belongs to an owner
+     * @param code owner code
+     * @param row row index of the trial
+     */
+    public void addRow(int code, int row) {
+        int[] rows = postings.get(code);
+        int count = postingSizes[code];
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count * 2);
+            postings.set(code, rows);
+        }
+        rows[count] = row;
+        postingSizes[code] = count + 1;
+    }
+
+    /**
+     * Gets the trial rows of an owner
+     * @param code owner code
+     * @return rows in the order they were added
+     */
+    public int[] rowsOf(int code) {
+        return Arrays.copyOf(postings.get(code), postingSizes[code]);
+    }
+
+    /**
+     * Bans an owner, the owner is added if it is new so trials added later are banned too
+     * @param ownerId user id of the owner
+     * @return owner code
+     */
+    public int ban(String ownerId) {
+        int code = intern(ownerId);
+        banned.set(code);
+        return code;
+    }
+
+    /**
+     * Lifts the ban of an owner
+     * @param ownerId user id of the owner
+     * @return owner code, -1 if the owner is unknown
+     */
+    public int unban(String ownerId) {
+        int code = codeOf(ownerId);
+        if (code >= 0) {
+            banned.clear(code);
+        }
+        return code;
+    }
+
+    /**
+     * If an owner is banned
+     * @param code owner code
+     * @return true if banned
+     */
+    public boolean isBanned(int code) {
+        return banned.get(code);
+    }
+
+    /**
+     * Gets the number of banned owners
+     * @return number of banned owners
+     */
+    public int bannedCount() {
+        return banned.cardinality();
+    }
+}
@@ -0,0 +1,351 @@
+package com.DivineInspiration.experimenter.Model.Trial;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column oriented copy of the trials of one experiment, made for the analytics code (stats, graphs).
+ * Each trial is a row index into parallel primitive arrays, so reading a value is an array access
+ * instead of a type switch and a downcast, and the rows do not keep any String, LocalDate or LatLng alive.
+ * Owner ids are dictionary encoded into dense ints by an {@link OwnerDictionary}, which also keeps the bans.
+ */
+public class TrialColumns {
+
+    private String trialType;
+    private int size = 0;
+
+    private double[] values;
+    private int[] epochDays;
+    private float[] latitudes;      // NaN when the trial has no location
+    private float[] longitudes;
+    private int[] owners;
+    private final BitSet ignored = new BitSet();
+    private final BitSet pass = new BitSet();
+
+    private final OwnerDictionary ownerDictionary;
+
+    /**
+     * Constructor
+     * @param capacity
+     * expected number of trials, the columns grow if more are added
+     */
+    public TrialColumns(int capacity) {
+        this(capacity, new OwnerDictionary());
+    }
+
+    /**
+     * Constructor
+     * @param capacity
+     * expected number of trials, the columns grow if more are added
+     * @param ownerDictionary
+     * dictionary of the owners, trials of owners already banned in it are added as ignored
+     */
+    public TrialColumns(int capacity, OwnerDictionary ownerDictionary) {
+        this.ownerDictionary = ownerDictionary;
+        capacity = Math.max(capacity, 1);
+        values = new double[capacity];
+        epochDays = new int[capacity];
+        latitudes = new float[capacity];
+        longitudes = new float[capacity];
+        owners = new int[capacity];
+    }
+
+    /**
+     * Builds the columns of a list of trials, row i is trials.get(i)
+     * @param trials
+     * list of trials, all of the same type
+     * @return the columns
+     */
+    public static TrialColumns of(List<Trial> trials) {
+        TrialColumns columns = new TrialColumns(trials.size());
+        for (Trial t : trials) {
+            columns.add(t);
+        }
+        return columns;
+    }
+
+    /**
+     * Appends a trial as a new row
+     * @param trial
+     * trial to add, must have the same type as the trials already added
+     * @return the row index of the trial
+     */
+    public int add(Trial trial) {
+        if (trialType == null) {
+            trialType = trial.getTrialType();
+        } else if (!trialType.equals(trial.getTrialType())) {
+            throw new IllegalArgumentException("Expected " + trialType + " but got " + trial.getTrialType());
+        }
+        if (size == values.length) {
+            int capacity = size * 2;
+            values = Arrays.copyOf(values, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+
+        int row = size++;
+        switch (trialType) {
+            case Trial.BINOMIAL:
+                boolean passed = ((BinomialTrial) trial).getPass();
+                values[row] = passed ? 1 : 0;
+                pass.set(row, passed);
+                break;
+            case Trial.COUNT:
+                values[row] = ((CountTrial) trial).getCount();
+                break;
+            case Trial.NONNEGATIVE:
+                values[row] = ((NonNegativeTrial) trial).getCount();
+                break;
+            case Trial.MEASURE:
+                values[row] = ((MeasurementTrial) trial).getValue();
+                break;
+        }
+        epochDays[row] = (int) trial.getTrialDate().toEpochDay();
+
+        LatLng location = trial.getLocation();
+        latitudes[row] = location == null ? Float.NaN : (float) location.latitude;
+        longitudes[row] = location == null ? Float.NaN : (float) location.longitude;
+
+        int owner = ownerDictionary.intern(trial.getTrialUserID());
+        ownerDictionary.addRow(owner, row);
+        owners[row] = owner;
+        ignored.set(row, trial.isIgnored() || ownerDictionary.isBanned(owner));
+        return row;
+    }
+
+    /**
+     * Gets the type of the trials, null if no trial was added yet
+     * @return trial type
+     */
+    public String getTrialType() {
+        return trialType;
+    }
+
+    /**
+     * Gets the number of rows
+     * @return number of trials
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of trials that are not ignored
+     * @return number of active trials
+     */
+    public int activeCount() {
+        return size - ignored.cardinality();
+    }
+
+    /**
+     * Gets the value of a row, same value as StatsEngine.valueOf on the trial
+     * @param row row index
+     * @return value
+     */
+    public double getValue(int row) {
+        return values[row];
+    }
+
+    /**
+     * Gets the date of a row
+     * @param row row index
+     * @return days since 1970-01-01
+     */
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    /**
+     * If the row has a location
+     * @param row row index
+     * @return true if the trial was geo-located
+     */
+    public boolean hasLocation(int row) {
+        return !Float.isNaN(latitudes[row]);
+    }
+
+    /**
+     * Gets the latitude of a row
+     * @param row row index
+     * @return latitude, NaN if no location
+     */
+    public float getLatitude(int row) {
+        return latitudes[row];
+    }
+
+    /**
+     * Gets the longitude of a row
+     * @param row row index
+     * @return longitude, NaN if no location
+     */
+    public float getLongitude(int row) {
+        return longitudes[row];
+    }
+
+    /**
+     * If the binomial trial of a row passed
+     * @param row row index
+     * @return pass or fail, always false for other trial types
+     */
+    public boolean isPass(int row) {
+        return pass.get(row);
+    }
+
+    /**
+     * If the row is ignored
+     * @param row row index
+     * @return state of ignored
+     */
+    public boolean isIgnored(int row) {
+        return ignored.get(row);
+    }
+
+    /**
+     * Sets if the row is ignored
+     * @param row row index
+     * @param isIgnored new state of ignored
+     */
+    public void setIgnored(int row, boolean isIgnored) {
+        ignored.set(row, isIgnored);
+    }
+
+    /**
+     * Gets the dictionary code of the owner of a row
+     * @param row row index
+     * @return owner code, in [0, ownerCount())
+     */
+    public int getOwner(int row) {
+        return owners[row];
+    }
+
+    /**
+     * Gets the user id behind an owner code
+     * @param code owner code
+     * @return user id
+     */
+    public String getOwnerId(int code) {
+        return ownerDictionary.getOwnerId(code);
+    }
+
+    /**
+     * Gets the number of distinct owners
+     * @return number of owners
+     */
+    public int ownerCount() {
+        return ownerDictionary.size();
+    }
+
+    /**
+     * Gets the dictionary of the owners
+     * @return owner dictionary
+     */
+    public OwnerDictionary getOwnerDictionary() {
+        return ownerDictionary;
+    }
+
+    /**
+     * Bans an owner and ignores all of their rows, only the rows of that owner are visited
+     * @param ownerId user id of the owner
+     * @return the rows of the owner
+     */
+    public int[] banOwner(String ownerId) {
+        int[] rows = ownerDictionary.rowsOf(ownerDictionary.ban(ownerId));
+        for (int row : rows) {
+            ignored.set(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Lifts the ban of an owner and stops ignoring their rows
+     * @param ownerId user id of the owner
+     * @return the rows of the owner, empty if the owner has no rows
+     */
+    public int[] unbanOwner(String ownerId) {
+        int code = ownerDictionary.unban(ownerId);
+        if (code < 0) {
+            return new int[0];
+        }
+        int[] rows = ownerDictionary.rowsOf(code);
+        for (int row : rows) {
+            ignored.clear(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Copies the rows as they are now, for reading on another thread while these columns keep changing.
+     * The owner dictionary is shared, not copied, so the snapshot is only for reading: the bans at the time of the
+     * copy are in its ignored rows.
+     * @return a copy of the columns, trimmed to the rows
+     */
+    public TrialColumns snapshot() {
+        TrialColumns copy = new TrialColumns(size, ownerDictionary);
+        copy.trialType = trialType;
+        copy.size = size;
+        System.arraycopy(values, 0, copy.values, 0, size);
+        System.arraycopy(epochDays, 0, copy.epochDays, 0, size);
+        System.arraycopy(latitudes, 0, copy.latitudes, 0, size);
+        System.arraycopy(longitudes, 0, copy.longitudes, 0, size);
+        System.arraycopy(owners, 0, copy.owners, 0, size);
+        copy.ignored.or(ignored);
+        copy.pass.or(pass);
+        return copy;
+    }
+
+    /**
+     * Copies the values of the rows that are not ignored
+     * @return values of the active trials, in row order
+     */
+    public double[] activeValues() {
+        double[] out = new double[activeCount()];
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            if (!ignored.get(i)) {
+                out[j++] = values[i];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Puts the rows that are not ignored in date order, with a counting sort over the days
+     * @return row indices sorted by date, rows of the same day keep their order
+     */
+    public int[] rowsByDate() {
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (!ignored.get(i)) {
+                firstDay = Math.min(firstDay, epochDays[i]);
+                lastDay = Math.max(lastDay, epochDays[i]);
+            }
+        }
+        if (firstDay > lastDay) {
+            return new int[0];
+        }
+
+        // offsets[d] ends up as the next free slot for day firstDay + d
+        int[] offsets = new int[lastDay - firstDay + 2];
+        for (int i = 0; i < size; i++) {
+            if (!ignored.get(i)) {
+                offsets[epochDays[i] - firstDay + 1]++;
+            }
+        }
+        for (int d = 1; d < offsets.length; d++) {
+            offsets[d] += offsets[d - 1];
+        }
+        int[] rows = new int[offsets[offsets.length - 1]];
+        for (int i = 0; i < size; i++) {
+            if (!ignored.get(i)) {
+                rows[offsets[epochDays[i] - firstDay]++] = i;
+            }
+        }
+        return rows;
+    }
+}
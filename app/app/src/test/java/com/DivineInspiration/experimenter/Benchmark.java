@@ -0,0 +1,8 @@
+package com.DivineInspiration.experimenter;
+
+/**
+ * JUnit category of the benchmark tests. They time large inputs, so the default unit test task leaves them out;
+ * run them with ./gradlew testDebugUnitTest -Pbenchmark
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,57 @@
+package com.DivineInspiration.experimenter;
+
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Minimal timing helper for the benchmark tests. JMH cannot run inside the Android unit test task,
+ * so the benchmarks are plain JUnit tests in the {@link Benchmark} category that warm up, time a number of iterations
+ * and assert on the times, instead of printing them.
+ */
+public class BenchmarkTimer {
+
+    // results are written here so the JIT cannot drop the benchmarked work
+    public static volatile Object sink;
+
+    /**
+     * Times a piece of work
+     * @param name
+     * name of the work, for the failure messages
+     * @param warmup
+     * number of untimed runs
+     * @param iterations
+     * number of timed runs
+     * @param body
+     * the work to time
+     * @return average milliseconds per run
+     */
+    public static double time(String name, int warmup, int iterations, Supplier<?> body) {
+        for (int i = 0; i < warmup; i++) {
+            sink = body.get();
+        }
+        assertNotNull(name + " gave no result", sink);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = body.get();
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    /**
+     * Asserts that one piece of work took less time than another
+     * @param fastName
+     * name of the work expected to be faster
+     * @param fastMillis
+     * its time
+     * @param slowName
+     * name of the work expected to be slower
+     * @param slowMillis
+     * its time
+     */
+    public static void assertFaster(String fastName, double fastMillis, String slowName, double slowMillis) {
+        assertTrue(String.format("%s took %.3f ms, not less than %s at %.3f ms", fastName, fastMillis, slowName, slowMillis),
+                fastMillis < slowMillis);
+    }
+}
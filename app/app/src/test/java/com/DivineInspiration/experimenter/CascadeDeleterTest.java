@@ -0,0 +1,185 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.CascadeDeleter;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CascadeDeleterTest {
+
+    private InMemoryDocumentStore store;
+
+    /**
+     * Records the progress and the end of a deletion
+     */
+    private static class Progress implements CascadeDeleter.OnCascadeProgressListener {
+        final List<String> stages = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile int lastDeleted = 0;
+        volatile Boolean successful;
+        volatile int doneCalls = 0;
+
+        @Override
+        public void onProgress(String stage, int deleted) {
+            stages.add(stage);
+            lastDeleted = Math.max(lastDeleted, deleted);
+        }
+
+        @Override
+        public void onCascadeDone(boolean successful) {
+            this.successful = successful;
+            doneCalls++;
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+    }
+
+    private void put(String path, Object... keyValues) {
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            fields.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        store.set(path, fields, false, null);
+    }
+
+    /**
+     * An experiment with trials, comments and replies, plus trials of another experiment that must survive
+     */
+    private void fill(int trials, int comments, int repliesPerComment) {
+        put("Experiments/E1", "ExperimentName", "one");
+        put("Experiments/E2", "ExperimentName", "two");
+        put("BlackList/E1", "BannedIds", Collections.singletonList("U1"));
+        put("TrialIndex/E1", "Geohash", true);
+        DocumentStore.Batch batch = store.batch();
+        for (int i = 0; i < trials; i++) {
+            batch.set("Trials/T" + i, Collections.singletonMap("ExperimentID", i % 10 == 9 ? "E2" : "E1"), false);
+            if (batch.size() == DocumentStore.MAX_BATCH_SIZE) {
+                batch.commit(null);
+                batch = store.batch();
+            }
+        }
+        batch.commit(null);
+        put("Comments/E1", "ExperimentID", "E1");
+        for (int c = 0; c < comments; c++) {
+            put("Comments/E1/Comments/C" + c, "Comment", "hi");
+            for (int r = 0; r < repliesPerComment; r++) {
+                put("Comments/E1/Comments/C" + c + "/Replies/R" + r, "Comment", "hello");
+            }
+        }
+        store.resetCounts();
+    }
+
+    @Test
+    public void testDeleteExperiment() {
+        fill(10000, 30, 5);
+        Progress progress = new Progress();
+        CascadeDeleter deleter = new CascadeDeleter(store);
+        deleter.deleteExperiment("E1", progress);
+
+        assertTrue(progress.successful);
+        assertEquals(1, progress.doneCalls);
+        assertEquals(1000, store.count("Trials"));
+        assertEquals(0, store.count("Comments/E1/Comments"));
+        for (int c = 0; c < 30; c++) {
+            assertEquals(0, store.count("Comments/E1/Comments/C" + c + "/Replies"));
+        }
+        assertEquals(0, store.count("Comments"));
+        assertEquals(0, store.count("BlackList"));
+        assertEquals(0, store.count("TrialIndex"));
+        assertEquals(1, store.count("Experiments"));
+
+        // the comments parent, black list, trial index marker, rollup and experiment documents
+        int expected = 9000 + 30 + 30 * 5 + 5;
+        assertEquals(expected, deleter.getDeletedCount());
+        assertEquals(expected, progress.lastDeleted);
+        // trials come out in full batches, not one write each
+        assertTrue(store.getCommitCount() < 9000 / DocumentStore.MAX_BATCH_SIZE + 30 + 5);
+        assertEquals(CascadeDeleter.STAGE_TRIALS, progress.stages.get(0));
+        assertEquals(CascadeDeleter.STAGE_EXPERIMENT, progress.stages.get(progress.stages.size() - 1));
+        assertTrue(progress.stages.indexOf(CascadeDeleter.STAGE_REPLIES) < progress.stages.indexOf(CascadeDeleter.STAGE_COMMENTS));
+        assertTrue(progress.stages.indexOf(CascadeDeleter.STAGE_COMMENTS) < progress.stages.indexOf(CascadeDeleter.STAGE_ROLLUP));
+    }
+
+    @Test
+    public void testBatchSize() {
+        fill(1000, 0, 0);
+        new CascadeDeleter(store, 100, 2).deleteTrials("E1", null);
+        assertEquals(100, store.count("Trials"));
+        assertEquals(900 / 100, store.getCommitCount());
+    }
+
+    @Test
+    public void testDeleteComment() {
+        fill(0, 3, 4);
+        Progress progress = new Progress();
+        new CascadeDeleter(store).deleteComment("E1", "C1", progress);
+        assertTrue(progress.successful);
+        assertEquals(2, store.count("Comments/E1/Comments"));
+        assertEquals(0, store.count("Comments/E1/Comments/C1/Replies"));
+        assertEquals(4, store.count("Comments/E1/Comments/C2/Replies"));
+    }
+
+    @Test
+    public void testResumeAfterFailure() {
+        fill(3000, 10, 3);
+        store.setFailureRate(0.3);
+        Progress failed = new Progress();
+        new CascadeDeleter(store, 50, 3).deleteExperiment("E1", failed);
+        assertFalse(failed.successful);
+        assertEquals(1, failed.doneCalls);
+
+        // the experiment is only deleted once everything under it is
+        assertEquals(2, store.count("Experiments"));
+
+        store.setFailureRate(0);
+        Progress resumed = new Progress();
+        new CascadeDeleter(store, 50, 3).deleteExperiment("E1", resumed);
+        assertTrue(resumed.successful);
+        assertEquals(300, store.count("Trials"));
+        assertEquals(0, store.count("Comments/E1/Comments"));
+        assertEquals(1, store.count("Experiments"));
+    }
+
+    @Test
+    public void testConcurrentBatches() throws InterruptedException {
+        fill(5000, 5, 2);
+        store.setLatency(5);
+        Progress progress = new Progress();
+        new CascadeDeleter(store, 200, 4).deleteExperiment("E1", progress);
+        assertTrue(progress.done.await(30, TimeUnit.SECONDS));
+        assertTrue(progress.successful);
+        assertEquals(1, progress.doneCalls);
+        assertEquals(500, store.count("Trials"));
+        assertEquals(0, store.count("Comments"));
+    }
+
+    @Test
+    public void testCancel() {
+        fill(2000, 0, 0);
+        Progress progress = new Progress();
+        CascadeDeleter deleter = new CascadeDeleter(store, 100, 1);
+        deleter.cancel();
+        deleter.deleteExperiment("E1", progress);
+        assertFalse(progress.successful);
+        assertEquals(2000, store.count("Trials"));
+        assertEquals(2, store.count("Experiments"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.CumulativeStats;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsSummary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CumulativeStatsTest {
+
+    @Test
+    public void testMatchesStatsEngineAfterEveryBatch() {
+        Random random = new Random(3);
+        CumulativeStats cumulative = new CumulativeStats();
+        StatsEngine engine = new StatsEngine();
+
+        for (int day = 0; day < 50; day++) {
+            int batch = random.nextInt(20) + 1;
+            for (int i = 0; i < batch; i++) {
+                // lots of duplicates, like count trials
+                double value = random.nextInt(30);
+                cumulative.add(value);
+                engine.add(value);
+            }
+            StatsSummary expected = engine.summarize();
+            StatsSummary actual = cumulative.summarize();
+
+            assertEquals(expected.getCount(), actual.getCount());
+            assertEquals(expected.getMean(), actual.getMean(), 1e-9);
+            assertEquals(expected.getVariance(), actual.getVariance(), 1e-9);
+            assertEquals(expected.getMin(), actual.getMin(), 0);
+            assertEquals(expected.getQ1(), actual.getQ1(), 0);
+            assertEquals(expected.getMedian(), actual.getMedian(), 0);
+            assertEquals(expected.getQ3(), actual.getQ3(), 0);
+            assertEquals(expected.getMax(), actual.getMax(), 0);
+        }
+    }
+
+    @Test
+    public void testRanks() {
+        CumulativeStats cumulative = new CumulativeStats();
+        for (int i = 999; i >= 0; i--) {
+            cumulative.add(i * 0.5);
+        }
+        for (int k = 0; k < 1000; k += 37) {
+            assertEquals(k * 0.5, cumulative.get(k), 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoOrder() {
+        CumulativeStats cumulative = new CumulativeStats(false);
+        cumulative.add(1);
+        cumulative.add(3);
+        assertEquals(4, cumulative.getSum(), 0);
+        assertEquals(2, cumulative.getMean(), 0);
+        cumulative.get(0);
+    }
+}
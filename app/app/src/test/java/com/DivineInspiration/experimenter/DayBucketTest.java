@@ -0,0 +1,151 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.DayBucket;
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.TrialWriteBuffer;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DayBucketTest {
+
+    private InMemoryDocumentStore store;
+    private TrialManager trials;
+    private List<DayBucket> days;
+    private boolean repaired;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        trials = new TrialManager(store);
+    }
+
+    private static MeasurementTrial measurement(String id, String owner, int day, double value) {
+        return new MeasurementTrial(id, owner, "name", "E1", LocalDate.of(2021, 3, 1).plusDays(day), value, null);
+    }
+
+    private List<DayBucket> days() {
+        days = null;
+        trials.queryDaySeries("E1", d -> days = d);
+        return days;
+    }
+
+    @Test
+    public void testSeriesFromDays() {
+        for (int i = 0; i < 30; i++) {
+            trials.addTrial(measurement("T" + i, "U1", i % 3 * 2, i), t -> {});
+        }
+        store.resetCounts();
+        List<DayBucket> series = days();
+        // the rollup, then one document per day with trials
+        assertEquals(4, store.getReadCount());
+        assertEquals(3, series.size());
+        assertEquals(LocalDate.of(2021, 3, 1).toEpochDay(), series.get(0).getEpochDay());
+        assertEquals(LocalDate.of(2021, 3, 5).toEpochDay(), series.get(2).getEpochDay());
+        assertEquals(10, series.get(1).getCount());
+        assertEquals(1 + 4 + 7 + 10 + 13 + 16 + 19 + 22 + 25 + 28, series.get(1).getSum(), 0);
+        assertEquals(1, series.get(1).getSketch().getMin(), 0);
+        assertEquals(28, series.get(1).getSketch().getMax(), 0);
+    }
+
+    @Test
+    public void testMovedTrialLeavesItsDay() {
+        trials.addTrial(measurement("T1", "U1", 0, 5), t -> {});
+        trials.addTrial(measurement("T2", "U1", 0, 7), t -> {});
+        trials.addTrial(measurement("T1", "U1", 1, 5), t -> {});
+        List<DayBucket> series = days();
+        assertEquals(2, series.size());
+        assertEquals(1, series.get(0).getCount());
+        assertEquals(7, series.get(0).getSum(), 0);
+        assertEquals(1, series.get(1).getCount());
+
+        // an emptied day is deleted, not left at zero
+        trials.deleteTrial("T2");
+        assertEquals(1, days().size());
+        assertEquals(1, store.count(DayBucket.collectionOf("E1")));
+    }
+
+    @Test
+    public void testBanLeavesDaysStaleUntilRepaired() {
+        for (int i = 0; i < 12; i++) {
+            trials.addTrial(measurement("T" + i, "U" + i % 2, i % 4, i), t -> {});
+        }
+        new ExperimentManager(store, "Owner").banUserFromExperiment("U1", "E1", null);
+        assertNull(days());
+
+        trials.checkRollup("E1", true, (d, r) -> repaired = r);
+        assertTrue(repaired);
+        List<DayBucket> series = days();
+        // the days of the banned owner's trials are gone
+        assertEquals(2, series.size());
+        long count = 0;
+        double sum = 0;
+        for (DayBucket day : series) {
+            count += day.getCount();
+            sum += day.getSum();
+            assertTrue(day.isExact());
+        }
+        assertEquals(6, count);
+        assertEquals(0 + 2 + 4 + 6 + 8 + 10, sum, 0);
+    }
+
+    @Test
+    public void testNoDaysWithoutRollup() {
+        for (int i = 0; i < 12; i++) {
+            trials.addTrial(measurement("T" + i, "U1", i % 4, i), t -> {});
+        }
+        // trials written before rollups were: the days would read as an empty series
+        store.delete("Rollups/E1", null);
+        for (int day = 0; day < 4; day++) {
+            store.delete(DayBucket.pathOf("E1", (int) LocalDate.of(2021, 3, 1).plusDays(day).toEpochDay()), null);
+        }
+        assertNull(days());
+
+        trials.checkRollup("E1", true, (d, r) -> repaired = r);
+        assertTrue(repaired);
+        assertEquals(4, days().size());
+    }
+
+    @Test
+    public void testMergedDaysGiveQuartiles() {
+        Random random = new Random(7);
+        double[] values = new double[3000];
+        TrialWriteBuffer buffer = new TrialWriteBuffer(trials, store, 500, 0);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+            buffer.add(measurement("T" + i, "U" + i % 13, i % 30, values[i]), null);
+        }
+        buffer.flush();
+
+        List<DayBucket> series = days();
+        assertEquals(30, series.size());
+        QuantileSketch merged = new QuantileSketch(DayBucket.SKETCH_COMPRESSION);
+        for (DayBucket day : series) {
+            merged.merge(day.getSketch());
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, merged.getCount());
+        // the estimates rank within two percent of the exact quartiles
+        for (double q : new double[]{0.25, 0.5, 0.75}) {
+            double estimate = merged.quantile(q);
+            int rank = 0;
+            while (rank < values.length && values[rank] < estimate) {
+                rank++;
+            }
+            assertEquals(q, (double) rank / values.length, 0.02);
+        }
+    }
+}
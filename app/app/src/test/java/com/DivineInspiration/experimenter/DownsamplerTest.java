@@ -0,0 +1,109 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.Downsampler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownsamplerTest {
+
+    private static float[] days(int n) {
+        float[] xs = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+        }
+        return xs;
+    }
+
+    private static float[] noise(int n, long seed) {
+        Random random = new Random(seed);
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            ys[i] = random.nextFloat();
+        }
+        return ys;
+    }
+
+    @Test
+    public void testShortSeriesIsKept() {
+        float[] xs = days(5);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, Downsampler.lttb(xs, noise(5, 1), 0, 5, 10));
+        assertArrayEquals(new int[]{1, 2, 3}, Downsampler.lttb(xs, noise(5, 1), 1, 4, 3));
+    }
+
+    @Test
+    public void testThresholdAndEnds() {
+        int n = 5000;
+        float[] xs = days(n);
+        float[] ys = noise(n, 2);
+        int[] kept = Downsampler.lttb(xs, ys, 0, n, 300);
+        assertEquals(300, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(n - 1, kept[kept.length - 1]);
+        for (int i = 1; i < kept.length; i++) {
+            assertTrue(kept[i] > kept[i - 1]);
+        }
+
+        // a range of the series keeps its own ends
+        kept = Downsampler.lttb(xs, ys, 1000, 2000, 100);
+        assertEquals(100, kept.length);
+        assertEquals(1000, kept[0]);
+        assertEquals(1999, kept[99]);
+    }
+
+    @Test
+    public void testSpikesAreKept() {
+        int n = 3650;
+        float[] xs = days(n);
+        float[] ys = new float[n];
+        ys[1234] = 100;
+        ys[3000] = -50;
+        int[] kept = Downsampler.lttb(xs, ys, 0, n, 50);
+        boolean peak = false;
+        boolean dip = false;
+        for (int i : kept) {
+            peak |= i == 1234;
+            dip |= i == 3000;
+        }
+        assertTrue(peak);
+        assertTrue(dip);
+    }
+
+    @Test
+    public void testAggregateRanges() {
+        float[] xs = days(10);
+        float[] opens = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        float[] highs = {5, 9, 5, 5, 5, 5, 5, 5, 5, 7};
+        float[] lows = {1, 1, 0, 1, 1, 1, 1, -2, 1, 1};
+        float[] closes = {2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+        float[][] merged = Downsampler.aggregateRanges(xs, opens, highs, lows, closes, 0, 10, 3);
+        // ranges of 3, 3 and 4 candles
+        assertArrayEquals(new float[]{0, 3, 6}, merged[0], 0);
+        assertArrayEquals(new float[]{1, 4, 7}, merged[1], 0);
+        assertArrayEquals(new float[]{9, 5, 7}, merged[2], 0);
+        assertArrayEquals(new float[]{0, 1, -2}, merged[3], 0);
+        assertArrayEquals(new float[]{4, 7, 11}, merged[4], 0);
+
+        // fewer candles than buckets are left as they are
+        merged = Downsampler.aggregateRanges(xs, opens, highs, lows, closes, 8, 10, 5);
+        assertArrayEquals(new float[]{8, 9}, merged[0], 0);
+        assertArrayEquals(new float[]{5, 7}, merged[2], 0);
+    }
+
+    @Test
+    public void testPointsAndLowerBound() {
+        assertEquals(540, Downsampler.pointsFor(1080));
+        assertEquals(3, Downsampler.pointsFor(0));
+
+        float[] xs = {0, 2, 2, 5};
+        assertEquals(0, Downsampler.lowerBound(xs, -1));
+        assertEquals(1, Downsampler.lowerBound(xs, 2));
+        assertEquals(3, Downsampler.lowerBound(xs, 3));
+        assertEquals(4, Downsampler.lowerBound(xs, 6));
+    }
+}
@@ -0,0 +1,178 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.ExperimentCache;
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Model.Experiment;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentCacheTest {
+
+    private InMemoryDocumentStore store;
+    private long now;
+    private ExperimentCache cache;
+    private ExperimentManager manager;
+    private Experiment found;
+
+    private static Experiment experiment(String id, String name) {
+        return new Experiment(id, name, "U1", "Bob", "About " + name, "Count trial", "Edmonton", 1, false, Experiment.ONGOING);
+    }
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        now = 0;
+        cache = new ExperimentCache(3, 1000, () -> now);
+        manager = new ExperimentManager(store, "me", cache);
+        for (int i = 0; i < 10; i++) {
+            manager.addExperiment(experiment("E" + i, "Experiment " + i), null);
+        }
+        cache.clear();
+        store.resetCounts();
+    }
+
+    private Experiment query(String id) {
+        found = null;
+        manager.queryExperimentFromId(id, experiment -> found = experiment);
+        return found;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ExperimentCache lru = new ExperimentCache(3, 1000, () -> now);
+        lru.put(experiment("A", "a"));
+        lru.put(experiment("B", "b"));
+        lru.put(experiment("C", "c"));
+        // A is used, so B is the eldest
+        assertNotNull(lru.get("A"));
+        lru.put(experiment("D", "d"));
+        assertEquals(3, lru.size());
+        assertEquals(1, lru.getEvictionCount());
+        assertNull(lru.get("B"));
+        assertNotNull(lru.get("A"));
+        assertEquals(2, lru.getHitCount());
+        assertEquals(1, lru.getMissCount());
+    }
+
+    @Test
+    public void testTimeToLive() {
+        cache.put(experiment("A", "a"));
+        now = 999;
+        assertNotNull(cache.get("A"));
+        now = 1000;
+        assertNull(cache.get("A"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationDropsReadsInFlight() {
+        long version = cache.version();
+        cache.invalidate("A");
+        assertFalse(cache.putIfCurrent(experiment("A", "old"), version));
+        assertNull(cache.get("A"));
+        assertTrue(cache.putIfCurrent(experiment("A", "new"), cache.version()));
+        assertEquals("new", cache.get("A").getExperimentName());
+    }
+
+    @Test
+    public void testCopies() {
+        Experiment experiment = experiment("A", "a");
+        cache.put(experiment);
+        experiment.setExperimentName("changed");
+        cache.get("A").setExperimentName("changed too");
+        assertEquals("a", cache.get("A").getExperimentName());
+    }
+
+    @Test
+    public void testRepeatedQueriesReadOnce() {
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Experiment 4", query("E4").getExperimentName());
+        }
+        assertEquals(1, store.getReadCount());
+        assertEquals(19, cache.getHitCount());
+
+        // expired, read again
+        now = 1000;
+        query("E4");
+        assertEquals(2, store.getReadCount());
+    }
+
+    @Test
+    public void testMissingExperiment() {
+        assertNull(query("Nothing"));
+        assertNull(query("Nothing"));
+        assertEquals(0, cache.size());
+        assertEquals(2, store.getReadCount());
+    }
+
+    @Test
+    public void testWritesGoThroughTheCache() {
+        query("E1");
+        Experiment changed = experiment("E1", "Renamed");
+        manager.updateExperiment(changed, null);
+        assertEquals("Renamed", query("E1").getExperimentName());
+        assertEquals(1, store.getReadCount());
+
+        manager.updateExperiment(changed, Collections.singletonMap("Status", Experiment.ENDED), null);
+        assertEquals(Experiment.ENDED, query("E1").getStatus());
+        assertEquals(2, store.getReadCount());
+
+        manager.deleteExperiment("E1", successful -> {});
+        assertNull(query("E1"));
+    }
+
+    @Test
+    public void testCascadeDeleteDropsTheCachedExperiment() {
+        query("E2");
+        manager.loadPage(null, 3, (page, next) -> {});
+        manager.cascadeDeleteExperiment("E2", null);
+        assertNull(query("E2"));
+
+        List<Experiment> page = new ArrayList<>();
+        manager.loadPage(null, 3, (experiments, next) -> page.addAll(experiments));
+        for (Experiment experiment : page) {
+            assertFalse(experiment.getExperimentID().equals("E2"));
+        }
+    }
+
+    @Test
+    public void testExplorePagesWarmTheCache() {
+        manager.loadPage(null, 3, (page, next) -> {});
+        long reads = store.getReadCount();
+        query("E0");
+        query("E2");
+        assertEquals(reads, store.getReadCount());
+    }
+
+    @Test
+    public void testConcurrentQueriesShareOneRead() throws InterruptedException {
+        store.setLatency(50);
+        CountDownLatch done = new CountDownLatch(5);
+        List<Experiment> results = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            manager.queryExperimentFromId("E7", experiment -> {
+                results.add(experiment);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, store.getReadCount());
+        assertEquals(5, results.size());
+        // each caller has its own copy
+        assertEquals(5, results.stream().distinct().count());
+    }
+}
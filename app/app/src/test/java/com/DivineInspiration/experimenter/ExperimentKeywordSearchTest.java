@@ -0,0 +1,141 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.RenamePropagator;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Model.SearchTokens;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentKeywordSearchTest {
+
+    private InMemoryDocumentStore store;
+    private ExperimentManager manager;
+
+    private List<Experiment> page;
+    private String nextCursor;
+
+    private static final String[] TOPICS = {"Coin", "Dice", "Rainfall", "Traffic", "Bird"};
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        manager = new ExperimentManager(store, "me");
+        // 1000 experiments, 200 per topic
+        for (int i = 0; i < 1000; i++) {
+            String topic = TOPICS[i % TOPICS.length];
+            manager.addExperiment(new Experiment(String.format("E%04d", i), topic + " counts " + i, "U" + (i % 7), "Owner" + (i % 7),
+                    "Counting " + topic.toLowerCase() + " events", "Count trial", "Edmonton", 1, false, Experiment.ONGOING), null);
+        }
+        store.resetCounts();
+    }
+
+    private void search(String text, int pageSize, String cursor) {
+        manager.queryByKeywords(SearchTokens.queryKeywords(text), pageSize, cursor, (experiments, next) -> {
+            page = experiments;
+            nextCursor = next;
+        });
+    }
+
+    @Test
+    public void testKeywords() {
+        List<String> keywords = SearchTokens.keywords("Rain-fall", null);
+        assertEquals(Arrays.asList("r", "ra", "rai", "rain", "f", "fa", "fal", "fall"), keywords);
+        // long words are cut, the same way on both sides
+        String word = "supercalifragilisticexpialidocious";
+        assertEquals(SearchTokens.MAX_KEYWORD_LENGTH, SearchTokens.keywords(word).size());
+        assertTrue(SearchTokens.keywords(word).containsAll(SearchTokens.queryKeywords(word)));
+    }
+
+    @Test
+    public void testOnlyMatchesAreRead() {
+        search("rainf", 500, null);
+        assertEquals(200, page.size());
+        assertNull(nextCursor);
+        for (Experiment experiment : page) {
+            assertTrue(experiment.getExperimentName().startsWith("Rainfall"));
+        }
+        // one read per matching experiment, instead of 1000 for the whole collection
+        assertEquals(200, store.getReadCount());
+    }
+
+    @Test
+    public void testAnyKeywordMatches() {
+        search("dice BIRD", 500, null);
+        assertEquals(400, page.size());
+        assertEquals(400, store.getReadCount());
+    }
+
+    @Test
+    public void testPaging() {
+        List<Experiment> all = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            search("traffic", 60, cursor);
+            all.addAll(page);
+            cursor = nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(4, pages);
+        assertEquals(200, all.size());
+        assertEquals(200, store.getReadCount());
+        // pages neither overlap nor skip
+        List<String> ids = new ArrayList<>();
+        for (Experiment experiment : all) {
+            assertFalse(ids.contains(experiment.getExperimentID()));
+            ids.add(experiment.getExperimentID());
+        }
+    }
+
+    @Test
+    public void testEmptySearchReadsNothing() {
+        search(" !", 50, null);
+        assertTrue(page.isEmpty());
+        assertEquals(0, store.getReadCount());
+    }
+
+    @Test
+    public void testUpdateKeepsKeywords() {
+        Experiment experiment = new Experiment("E0000", "Hail size", "U0", "Owner0", "Measuring hail", "Measurement trial",
+                "Edmonton", 1, false, Experiment.ONGOING);
+        manager.updateExperiment(experiment, null);
+        search("hail", 50, null);
+        assertEquals(1, page.size());
+        search("coin", 500, null);
+        assertEquals(199, page.size());
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("ExperimentDescription", "Measuring sleet");
+        manager.updateExperiment(experiment, fields, null);
+        search("sleet", 50, null);
+        assertEquals(1, page.size());
+        search("measuring", 50, null);
+        assertEquals(1, page.size());
+    }
+
+    @Test
+    public void testRenameKeepsKeywords() {
+        new RenamePropagator(store).rename("U3", "Zelda", null);
+        search("zel", 500, null);
+        assertEquals(1000 / 7 + 1, page.size());
+        search("owner3", 500, null);
+        assertTrue(page.isEmpty());
+        search("zelda", 1, null);
+        assertEquals("E0003", page.get(0).getExperimentID());
+    }
+}
@@ -0,0 +1,159 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentPager;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Model.Experiment;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentPagerTest {
+
+    private InMemoryDocumentStore store;
+    private ExperimentManager manager;
+
+    private List<Experiment> shown;
+    private boolean more;
+    private int deliveries;
+
+    private void fill(int count) {
+        for (int i = 0; i < count; i++) {
+            // every 4th experiment is ended by someone else, and never shown
+            String status = i % 4 == 3 ? Experiment.ENDED : Experiment.ONGOING;
+            manager.addExperiment(new Experiment(String.format("E%05d", i), "Experiment " + i, "U1", "Bob",
+                    "About " + i, "Count trial", "Edmonton", 1, false, status), null);
+        }
+        store.resetCounts();
+    }
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        manager = new ExperimentManager(store, "me");
+        shown = null;
+        more = false;
+        deliveries = 0;
+    }
+
+    private ExperimentPager.OnExperimentPagesListener listener() {
+        return (experiments, hasMore) -> {
+            shown = experiments;
+            more = hasMore;
+            deliveries++;
+        };
+    }
+
+    @Test
+    public void testFirstPageDoesNotDependOnTotal() {
+        fill(5000);
+        ExperimentPager pager = new ExperimentPager(manager, 20, 5);
+        pager.start(listener());
+
+        assertEquals(1, deliveries);
+        assertEquals(15, shown.size());
+        assertTrue(more);
+        assertEquals(20, store.getReadCount());
+    }
+
+    @Test
+    public void testPrefetchDistance() {
+        fill(200);
+        ExperimentPager pager = new ExperimentPager(manager, 20, 5);
+        pager.start(listener());
+        assertEquals(15, shown.size());
+
+        // far from the end, nothing is loaded
+        pager.onItemVisible(8);
+        assertEquals(1, pager.getPageCount());
+        // within 5 items of the end, the next page is loaded once
+        pager.onItemVisible(9);
+        assertEquals(2, pager.getPageCount());
+        assertEquals(30, shown.size());
+        pager.onItemVisible(9);
+        assertEquals(2, pager.getPageCount());
+        assertEquals(40, store.getReadCount());
+    }
+
+    @Test
+    public void testScrollToEnd() {
+        fill(203);
+        ExperimentPager pager = new ExperimentPager(manager, 20, 5);
+        pager.start(listener());
+        while (pager.hasMore()) {
+            pager.onItemVisible(shown.size() - 1);
+        }
+
+        assertFalse(more);
+        assertEquals(203 - 203 / 4, shown.size());
+        assertEquals(203, store.getReadCount());
+        // pages are in id order, with no gaps or repeats
+        List<String> ids = new ArrayList<>();
+        for (Experiment experiment : shown) {
+            ids.add(experiment.getExperimentID());
+        }
+        List<String> sorted = new ArrayList<>(ids);
+        sorted.sort(String::compareTo);
+        assertEquals(sorted, ids);
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    @Test
+    public void testEndedPagesDoNotStall() {
+        for (int i = 0; i < 50; i++) {
+            manager.addExperiment(new Experiment(String.format("E%05d", i), "Old " + i, "U1", "Bob",
+                    "Done", "Count trial", "Edmonton", 1, false, i < 40 ? Experiment.ENDED : Experiment.ONGOING), null);
+        }
+        ExperimentPager pager = new ExperimentPager(manager, 10, 3);
+        pager.start(listener());
+        // four pages without a shown experiment are skipped through without any scrolling
+        assertEquals(10, shown.size());
+        assertEquals(5, pager.getPageCount());
+    }
+
+    @Test
+    public void testCacheSurvivesRestart() {
+        fill(100);
+        ExperimentPager pager = new ExperimentPager(manager, 20, 5);
+        pager.start(listener());
+        pager.onItemVisible(14);
+        long reads = store.getReadCount();
+        pager.stop();
+
+        // coming back to the list shows the cached pages without reading
+        deliveries = 0;
+        shown = null;
+        pager.start(listener());
+        assertEquals(1, deliveries);
+        assertEquals(30, shown.size());
+        assertEquals(reads, store.getReadCount());
+
+        pager.refresh();
+        assertEquals(15, shown.size());
+        assertEquals(1, pager.getPageCount());
+    }
+
+    @Test
+    public void testFailureRetriesOnScroll() {
+        fill(100);
+        store.setFailureRate(1);
+        ExperimentPager pager = new ExperimentPager(manager, 20, 5);
+        pager.start(listener());
+        assertNull(shown);
+        assertEquals(1, deliveries);
+        assertTrue(more);
+
+        store.setFailureRate(0);
+        pager.onItemVisible(0);
+        assertEquals(15, shown.size());
+    }
+}
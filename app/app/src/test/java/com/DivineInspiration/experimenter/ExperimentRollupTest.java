@@ -0,0 +1,267 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsSummary;
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.ExperimentRollup;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.TrialWriteBuffer;
+import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentRollupTest {
+
+    private InMemoryDocumentStore store;
+    private TrialManager trials;
+    private ExperimentRollup rollup;
+    private List<String> drift;
+    private boolean repaired;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        trials = new TrialManager(store);
+    }
+
+    private static MeasurementTrial measurement(String id, String owner, double value) {
+        return new MeasurementTrial(id, owner, "name", "E1", LocalDate.of(2021, 3, 1), value, null);
+    }
+
+    private ExperimentRollup.Aggregate total() {
+        trials.queryRollup("E1", r -> rollup = r);
+        return rollup.getTotal();
+    }
+
+    private void check(boolean repair) {
+        trials.checkRollup("E1", repair, (d, r) -> {
+            drift = d;
+            repaired = r;
+        });
+    }
+
+    @Test
+    public void testAddAndDelete() {
+        List<Trial> added = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Trial trial = measurement("T" + i, "U" + i % 3, i * 1.5);
+            trials.addTrial(trial, t -> {});
+            added.add(trial);
+        }
+        StatsSummary expected = StatsEngine.summarize(added);
+        ExperimentRollup.Aggregate total = total();
+        assertEquals(20, total.getCount());
+        assertEquals(expected.getMean(), total.getMean(), 1e-9);
+        assertEquals(expected.getVariance(), total.getVariance(), 1e-9);
+        assertEquals(0, total.getMin(), 0);
+        assertEquals(28.5, total.getMax(), 0);
+        assertEquals(Trial.MEASURE, rollup.getTrialType());
+        assertEquals(7, rollup.getOwner("U0").getCount());
+
+        // a delete inside the bounds keeps them exact
+        trials.deleteTrial("T5");
+        total = total();
+        assertEquals(19, total.getCount());
+        assertEquals(expected.getSum() - 7.5, total.getSum(), 1e-9);
+        assertTrue(total.isMinMaxExact());
+
+        // deleting the max leaves it stale, the checker does not count that as drift, only the sketches
+        trials.deleteTrial("T19");
+        assertFalse(total().isMinMaxExact());
+        check(false);
+        assertEquals(Arrays.asList("Sketch: not exact after a delete or ban", "Days.2021-03-01: sketch not exact after a delete"), drift);
+
+        trials.deleteTrial("Nobody");
+        assertEquals(18, total().getCount());
+    }
+
+    @Test
+    public void testSummaryIsOneRead() {
+        for (int i = 0; i < 50; i++) {
+            trials.addTrial(measurement("T" + i, "U" + i, i), t -> {});
+        }
+        store.resetCounts();
+        assertEquals(50, total().getCount());
+        assertEquals(1, store.getReadCount());
+    }
+
+    @Test
+    public void testRewriteReplacesValue() {
+        trials.addTrial(measurement("T1", "U1", 10), t -> {});
+        trials.addTrial(measurement("T1", "U1", 4), t -> {});
+        ExperimentRollup.Aggregate total = total();
+        assertEquals(1, total.getCount());
+        assertEquals(4, total.getSum(), 0);
+        assertEquals(4, total.getMean(), 0);
+        assertEquals(0, total.getVariance(), 0);
+    }
+
+    @Test
+    public void testVarianceOfLargeValues() {
+        // sum of squares minus squared mean loses every digit of these
+        for (int i = 0; i < 10; i++) {
+            trials.addTrial(measurement("T" + i, "U" + i % 3, 1e9 + i), t -> {});
+        }
+        assertEquals(1e9 + 4.5, total().getMean(), 1e-6);
+        assertEquals(8.25, total().getVariance(), 1e-6);
+
+        // 1 to 8 are left
+        trials.deleteTrial("T0");
+        trials.deleteTrial("T9");
+        assertEquals(5.25, total().getVariance(), 1e-6);
+        check(false);
+        for (String line : drift) {
+            assertTrue(line.startsWith("Days") || line.startsWith("Sketch"));
+        }
+    }
+
+    @Test
+    public void testRollupWithSumOfSquares() {
+        // an owner written before M2 was kept, with the values 1 and 3
+        Map<String, Object> owner = new HashMap<>();
+        owner.put("Count", 2L);
+        owner.put("Sum", 4.0);
+        owner.put("SumSquares", 10.0);
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("Owners", Collections.singletonMap("U1", owner));
+        ExperimentRollup.Aggregate total = ExperimentRollup.fromDocument(new DocumentData("Rollups/E1", doc)).getTotal();
+        assertEquals(2, total.getMean(), 0);
+        assertEquals(1, total.getVariance(), 1e-12);
+    }
+
+    @Test
+    public void testPassAndFail() {
+        for (int i = 0; i < 10; i++) {
+            trials.addTrial(new BinomialTrial("T" + i, "U1", "name", "E1", LocalDate.of(2021, 3, 1), i < 7, null), t -> {});
+        }
+        trials.deleteTrial("T0");
+        trials.deleteTrial("T9");
+        ExperimentRollup.Aggregate total = total();
+        assertEquals(6, total.getPassCount());
+        assertEquals(2, total.getFailCount());
+        assertEquals(6, total.getSum(), 0);
+    }
+
+    @Test
+    public void testBanMovesOwnerOut() {
+        for (int i = 0; i < 9; i++) {
+            trials.addTrial(measurement("T" + i, "U" + i % 3, i), t -> {});
+        }
+        ExperimentManager experiments = new ExperimentManager(store, "Owner");
+        experiments.banUserFromExperiment("U1", "E1", null);
+        ExperimentRollup.Aggregate total = total();
+        assertEquals(6, total.getCount());
+        assertEquals(0 + 2 + 3 + 5 + 6 + 8, total.getSum(), 0);
+        assertEquals(3, rollup.getOwner("U1").getCount());
+        DocumentData[] blackList = new DocumentData[1];
+        store.get("BlackList/E1", d -> blackList[0] = d);
+        assertEquals(Collections.singletonList("U1"), blackList[0].get("BannedIds"));
+        // the totals agree, only the days still hold the banned owner's trials
+        check(false);
+        assertTrue(drift.contains("Days: stale after a ban"));
+        assertTrue(drift.contains("Sketch: not exact after a delete or ban"));
+        for (String line : drift) {
+            assertTrue(line.startsWith("Days") || line.startsWith("Sketch"));
+        }
+
+        experiments.unbanUserFromExperiment("U1", "E1", null);
+        assertEquals(9, total().getCount());
+        assertEquals(36, total().getSum(), 0);
+    }
+
+    @Test
+    public void testSketchGivesQuartiles() {
+        List<Trial> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Trial trial = measurement("T" + i, "U" + i % 5, (i * 37) % 1000);
+            trials.addTrial(trial, t -> {});
+            added.add(trial);
+        }
+        StatsSummary expected = StatsEngine.summarize(added);
+        total();
+        assertTrue(rollup.isSketchExact());
+        StatsSummary approximate = StatsEngine.summarize(rollup.getSketch(), rollup.getTotal().getSum(), rollup.getTotal().getVariance());
+        assertEquals(1000, approximate.getCount());
+        assertEquals(expected.getQ1(), approximate.getQ1(), 10);
+        assertEquals(expected.getMedian(), approximate.getMedian(), 10);
+        assertEquals(expected.getQ3(), approximate.getQ3(), 10);
+
+        // a ban leaves the sketch with the owner's values until the checker rebuilds it
+        new ExperimentManager(store, "Owner").banUserFromExperiment("U0", "E1", null);
+        total();
+        assertFalse(rollup.isSketchExact());
+        check(true);
+        assertTrue(repaired);
+        total();
+        assertTrue(rollup.isSketchExact());
+        assertEquals(800, rollup.getSketch().getCount());
+    }
+
+    @Test
+    public void testCheckerFindsAndRepairsDrift() {
+        for (int i = 0; i < 5; i++) {
+            trials.addTrial(measurement("T" + i, "U1", i), t -> {});
+        }
+        // written around the rollup
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("TrialType", Trial.MEASURE);
+        doc.put("ExperimentID", "E1");
+        doc.put("OwnerID", "U2");
+        doc.put("Value", 100.0);
+        store.set("Trials/X", doc, false, null);
+        check(false);
+        assertFalse(repaired);
+        assertTrue(drift.contains("Total.Count: stored 5, rebuilt 6"));
+        assertTrue(drift.contains("Owners.U2.Count: stored 0, rebuilt 1"));
+        assertEquals(5, total().getCount());
+
+        check(true);
+        assertTrue(repaired);
+        assertEquals(6, total().getCount());
+        assertEquals(110, total().getSum(), 0);
+        check(false);
+        assertTrue(drift.isEmpty());
+    }
+
+    @Test
+    public void testFailedTransactionWritesNothing() {
+        store.setFailureRate(1);
+        Trial[] written = new Trial[1];
+        trials.addTrial(measurement("T1", "U1", 1), t -> written[0] = t);
+        assertNull(written[0]);
+        store.setFailureRate(0);
+        assertEquals(0, store.count("Trials"));
+        assertEquals(0, store.count(ExperimentRollup.COLLECTION));
+    }
+
+    @Test
+    public void testWriteBufferUpdatesRollup() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(trials, store, 100, 0);
+        for (int i = 0; i < 250; i++) {
+            buffer.add(measurement("T" + i, "U" + i % 7, 1), null);
+        }
+        buffer.flush();
+        assertEquals(250, total().getCount());
+        assertEquals(250, total().getSum(), 0);
+        check(false);
+        assertTrue(drift.isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Explore.ExperimentSearchIndex;
+import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Model.SearchTokens;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentSearchIndexTest {
+
+    private List<Experiment> experiments;
+    private ExperimentSearchIndex index;
+
+    private static Experiment experiment(String id, String name, String ownerName, String description) {
+        return new Experiment(id, name, "owner" + id, ownerName, description, "Count trial", "Edmonton", 1, false, "Ongoing");
+    }
+
+    @Before
+    public void setUp() {
+        experiments = Arrays.asList(
+                experiment("0", "Coin flips", "Alice", "Heads or tails"),
+                experiment("1", "Bird watching", "Bob", "Count the birds you see"),
+                experiment("2", "Cr\u00e8me br\u00fbl\u00e9e", "Zo\u00eb", "Torch the sugar"),
+                experiment("3", "Rainfall", "Birdie", "Measure daily rain in mm"),
+                experiment("4", "Coffee cups", "Carl", "Cups of coffee per day")
+        );
+        index = new ExperimentSearchIndex(experiments);
+    }
+
+    private List<String> ids(List<Experiment> result) {
+        List<String> ids = new ArrayList<>();
+        for (Experiment experiment : result) {
+            ids.add(experiment.getExperimentID());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testTokens() {
+        assertEquals("creme brulee", SearchTokens.normalize("Cr\u00e8me BR\u00dbL\u00c9E"));
+        assertEquals(Arrays.asList("coin", "flips", "2"), SearchTokens.tokenize("Coin-flips, coin 2!"));
+        assertTrue(SearchTokens.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void testEmptySearch() {
+        assertEquals(experiments, index.search(""));
+        assertEquals(experiments, index.search("  ,"));
+    }
+
+    @Test
+    public void testPrefixAndInfix() {
+        // name matches first, then the description match "count"
+        assertEquals(Arrays.asList("0", "4", "1"), ids(index.search("co")));
+        // "rain" is a whole word in the description and the start of the name
+        assertEquals(Arrays.asList("3"), ids(index.search("rain")));
+        // "fall" only appears in the middle of a word
+        assertEquals(Arrays.asList("3"), ids(index.search("fall")));
+        assertTrue(index.search("xyz").isEmpty());
+    }
+
+    @Test
+    public void testAllWordsMustMatch() {
+        assertEquals(Arrays.asList("4"), ids(index.search("coffee day")));
+        assertTrue(index.search("coffee birds").isEmpty());
+    }
+
+    @Test
+    public void testAccentsAndCase() {
+        assertEquals(Arrays.asList("2"), ids(index.search("CREME")));
+        assertEquals(Arrays.asList("2"), ids(index.search("zoe")));
+    }
+
+    @Test
+    public void testRanking() {
+        // a name match beats an owner match, which beats a description match
+        assertEquals(Arrays.asList("1", "3"), ids(index.search("bird")));
+        // whole words beat word starts, which beat word middles; equal scores keep the list order
+        ExperimentSearchIndex pies = new ExperimentSearchIndex(Arrays.asList(
+                experiment("5", "Pineapple", "Dan", "Fruit"),
+                experiment("6", "Apples", "Dan", "Fruit"),
+                experiment("7", "Apple pie", "Dan", "Baking"),
+                experiment("8", "Apple tart", "Dan", "Baking")));
+        assertEquals(Arrays.asList("7", "8", "6", "5"), ids(pies.search("apple")));
+    }
+
+    @Test
+    public void testNarrowing() {
+        // typing more letters keeps working from the previous hits and gives the same result as a fresh search
+        String[] typed = {"b", "bi", "bir", "bird", "birds", "bird", "bi", "r", "ra", "rai", "rain", "rain m", "rain mm"};
+        for (String text : typed) {
+            assertEquals(text, ids(new ExperimentSearchIndex(experiments).search(text)), ids(index.search(text)));
+        }
+    }
+
+    @Test
+    public void testNarrowingKeepsWordMiddles() {
+        // "ir" is too short to match word middles, so it finds nothing, but "ird" must still find the birds
+        assertTrue(index.search("ir").isEmpty());
+        assertEquals(Arrays.asList("1", "3"), ids(index.search("ird")));
+        assertEquals(Arrays.asList("1"), ids(index.search("irds")));
+    }
+
+    @Test
+    public void testBuildAsync() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch ready = new CountDownLatch(1);
+        ExperimentSearchIndex[] built = new ExperimentSearchIndex[1];
+        List<Experiment> list = new ArrayList<>(experiments);
+        ExperimentSearchIndex.buildAsync(list, executor, newIndex -> {
+            built[0] = newIndex;
+            ready.countDown();
+        });
+        // changing the list after the call does not change the index
+        list.clear();
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertNotNull(built[0]);
+        assertEquals(experiments.size(), built[0].getExperiments().size());
+        assertEquals(Arrays.asList("0"), ids(built[0].search("heads")));
+    }
+}
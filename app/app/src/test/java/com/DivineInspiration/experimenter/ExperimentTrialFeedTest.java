@@ -0,0 +1,225 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Controller.ExperimentTrialFeed;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExperimentTrialFeedTest {
+
+    private InMemoryDocumentStore store;
+    private TrialManager manager;
+    private List<ExperimentTrialFeed.Delta> deltas;
+
+    private static CountTrial trial(String id, String owner, String experimentId, int count) {
+        return new CountTrial(id, owner, "name", experimentId, LocalDate.of(2021, 3, 1), count, null);
+    }
+
+    private void add(Trial trial) {
+        manager.addTrial(trial, t -> {});
+    }
+
+    private static Map<String, Object> fields(String key, Object value) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        manager = new TrialManager(store);
+        deltas = new ArrayList<>();
+        store.set("BlackList/E1", fields("BannedIds", Collections.singletonList("Banned")), false, null);
+        for (int i = 0; i < 2000; i++) {
+            add(trial(String.format("T%05d", i), i % 100 == 0 ? "Banned" : "U" + (i % 9), "E1", i % 50));
+            add(trial(String.format("X%05d", i), "U1", "E2", 1));
+        }
+        store.resetCounts();
+    }
+
+    private ExperimentTrialFeed listen() {
+        return manager.listenExperimentTrials("E1", deltas::add);
+    }
+
+    private ExperimentTrialFeed.Delta last() {
+        return deltas.get(deltas.size() - 1);
+    }
+
+    @Test
+    public void testInitialDelivery() {
+        ExperimentTrialFeed feed = listen();
+        assertEquals(1, deltas.size());
+        assertTrue(last().isInitial());
+        assertEquals(2000, last().getAdded().size());
+        assertEquals(2000, feed.getColumns().size());
+        assertEquals(1980, feed.getColumns().activeCount());
+        assertTrue(feed.getTrials().get(0).isIgnored());
+        // the black list and the trials of the experiment, nothing else
+        assertEquals(2001, store.getReadCount());
+    }
+
+    @Test
+    public void testAddedTrialIsOneRead() {
+        ExperimentTrialFeed feed = listen();
+        store.resetCounts();
+        add(trial("T99999", "U1", "E1", 7));
+
+        assertEquals(2, deltas.size());
+        assertFalse(last().isInitial());
+        assertFalse(last().isRowsRenumbered());
+        assertEquals(1, last().getAdded().size());
+        assertEquals(2001, feed.getColumns().size());
+        assertEquals(7, feed.getColumns().getValue(2000), 0);
+        // the listen reads the new trial once, the add's transaction reads the trial id, the rollup and the day
+        assertEquals(4, store.getReadCount());
+
+        // trials of other experiments are not delivered
+        add(trial("X99999", "U1", "E2", 1));
+        assertEquals(2, deltas.size());
+    }
+
+    @Test
+    public void testModifiedAndRemoved() {
+        ExperimentTrialFeed feed = listen();
+        store.update("Trials/T00005", fields("Count", 1000), null);
+        assertEquals(1, last().getModified().size());
+        assertEquals(5, ((CountTrial) last().getReplaced().get(0)).getCount());
+        assertEquals(1000, ((CountTrial) last().getModified().get(0)).getCount());
+        assertEquals(1000, feed.getColumns().getValue(5), 0);
+        assertEquals(2000, feed.getTrials().size());
+
+        manager.deleteTrial("T00003");
+        assertTrue(last().isRowsRenumbered());
+        assertEquals("T00003", last().getRemoved().get(0).getTrialID());
+        assertEquals(1999, feed.getColumns().size());
+        assertEquals("T00004", feed.getTrials().get(3).getTrialID());
+        // bans survive the rebuild
+        assertEquals(1979, feed.getColumns().activeCount());
+    }
+
+    @Test
+    public void testRunningStatsMatchReload() {
+        ExperimentTrialFeed feed = listen();
+        StatsEngine running = new StatsEngine();
+        for (Trial trial : last().getAdded()) {
+            if (!trial.isIgnored()) {
+                running.addTrial(trial);
+            }
+        }
+        running.summarize();
+        int seen = deltas.size();
+        add(trial("T99999", "U1", "E1", 49));
+        store.update("Trials/T00007", fields("Count", 3), null);
+        manager.deleteTrial("T00011");
+        for (ExperimentTrialFeed.Delta delta : deltas.subList(seen, deltas.size())) {
+            for (Trial trial : delta.getRemoved()) {
+                running.removeTrial(trial);
+            }
+            for (Trial trial : delta.getReplaced()) {
+                running.removeTrial(trial);
+            }
+            for (Trial trial : delta.getModified()) {
+                running.addTrial(trial);
+            }
+            for (Trial trial : delta.getAdded()) {
+                running.addTrial(trial);
+            }
+        }
+        assertEquals(StatsEngine.summarize(feed.getColumns()).getMean(), running.summarize().getMean(), 1e-9);
+        assertEquals(StatsEngine.summarize(feed.getColumns()).getMedian(), running.summarize().getMedian(), 0);
+    }
+
+    @Test
+    public void testBans() {
+        ExperimentTrialFeed feed = listen();
+        add(trial("T99999", "Banned", "E1", 1));
+        assertTrue(last().getAdded().get(0).isIgnored());
+
+        List<Trial> changed = feed.unbanOwner("Banned");
+        assertEquals(21, changed.size());
+        assertEquals(2001, feed.getColumns().activeCount());
+        assertEquals(21, feed.banOwner("Banned").size());
+        assertTrue(feed.getTrials().get(100).isIgnored());
+    }
+
+    @Test
+    public void testBanIsDelivered() {
+        ExperimentTrialFeed feed = listen();
+        int version = feed.getVersion();
+        feed.unbanOwner("Banned");
+        assertFalse(last().isInitial());
+        assertTrue(last().getAdded().isEmpty());
+        assertEquals(20, last().getIgnoredChanged().size());
+        assertFalse(last().getIgnoredChanged().get(0).isIgnored());
+        assertEquals(version + 1, last().getVersion());
+
+        // nothing to flip, nothing delivered
+        int count = deltas.size();
+        feed.unbanOwner("U1-never-banned");
+        assertEquals(count, deltas.size());
+    }
+
+    @Test
+    public void testReplay() {
+        ExperimentTrialFeed feed = listen();
+        add(trial("T99999", "U1", "E1", 3));
+        ExperimentTrialFeed.Delta replay = feed.replay();
+        assertTrue(replay.isInitial());
+        assertEquals(2001, replay.getAdded().size());
+        assertEquals(feed.getVersion(), replay.getVersion());
+        assertEquals(last().getVersion(), replay.getVersion());
+    }
+
+    @Test
+    public void testLocalTrialIsNotDeliveredTwice() {
+        ExperimentTrialFeed feed = listen();
+        Trial trial = trial("T99999", "U1", "E1", 3);
+        feed.addLocal(trial);
+        assertEquals(2, deltas.size());
+        assertEquals(2001, feed.getTrials().size());
+
+        add(trial);
+        assertEquals(2, deltas.size());
+        assertEquals(2001, feed.getTrials().size());
+    }
+
+    @Test
+    public void testStop() {
+        ExperimentTrialFeed feed = listen();
+        feed.stop();
+        add(trial("T99999", "U1", "E1", 3));
+        assertEquals(1, deltas.size());
+        assertEquals(2000, feed.getTrials().size());
+
+        // starting again loads every trial
+        feed.start(deltas::add);
+        assertTrue(last().isInitial());
+        assertEquals(2001, last().getAdded().size());
+    }
+
+    @Test
+    public void testFailure() {
+        store.setFailureRate(1);
+        ExperimentTrialFeed feed = listen();
+        assertNull(last());
+        assertFalse(feed.isLoaded());
+    }
+}
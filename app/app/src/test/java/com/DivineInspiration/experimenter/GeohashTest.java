@@ -0,0 +1,253 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.Geohash;
+import com.DivineInspiration.experimenter.Controller.GeohashBackfill;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.firebase.firestore.GeoPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeohashTest {
+
+    // east edge of a viewport spanning every longitude, LatLng wraps 180 to -180
+    private static final double FULL_WIDTH_EAST = 179.999999;
+
+    private InMemoryDocumentStore store;
+    private TrialManager manager;
+    private List<Trial> trials;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        manager = new TrialManager(store);
+        trials = new ArrayList<>();
+        Map<String, Object> blackList = new HashMap<>();
+        blackList.put("BannedIds", Collections.singletonList("Banned"));
+        store.set("BlackList/E1", blackList, false, null);
+
+        Random random = new Random(21);
+        for (int i = 0; i < 5000; i++) {
+            LatLng location;
+            if (i % 2 == 0) {
+                location = new LatLng(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+            } else {
+                // half of them around Edmonton
+                location = new LatLng(53.5 + random.nextGaussian(), -113.5 + random.nextGaussian() * 2);
+            }
+            Trial trial = new CountTrial(String.format("T%05d", i), i % 97 == 0 ? "Banned" : "U" + (i % 7), "Bob", "E1",
+                    LocalDate.of(2021, 3, 1), i, i % 50 == 0 ? null : location);
+            manager.addTrial(trial, t -> {});
+            trials.add(trial);
+        }
+        for (int i = 0; i < 500; i++) {
+            manager.addTrial(new CountTrial(String.format("X%05d", i), "U1", "Bob", "E2", LocalDate.of(2021, 3, 1), i,
+                    new LatLng(53.5, -113.5)), t -> {});
+        }
+        store.resetCounts();
+    }
+
+    private List<Trial> query(double south, double west, double north, double east) {
+        List<List<Trial>> found = new ArrayList<>();
+        manager.queryTrialsInBounds("E1", new LatLngBounds(new LatLng(south, west), new LatLng(north, east)), found::add);
+        assertEquals(1, found.size());
+        return found.get(0);
+    }
+
+    /**
+     * Queries every longitude and latitude, which has to find trials
+     */
+    private List<Trial> queryWorld() {
+        List<Trial> found = query(-90, -180, 90, FULL_WIDTH_EAST);
+        assertFalse(found.isEmpty());
+        return found;
+    }
+
+    private Set<String> bruteForce(double south, double west, double north, double east) {
+        Set<String> ids = new TreeSet<>();
+        for (Trial trial : trials) {
+            LatLng location = trial.getLocation();
+            if (location == null || location.latitude < south || location.latitude > north) {
+                continue;
+            }
+            boolean inside = west <= east ? location.longitude >= west && location.longitude <= east
+                    : location.longitude >= west || location.longitude <= east;
+            if (inside) {
+                ids.add(trial.getTrialID());
+            }
+        }
+        return ids;
+    }
+
+    private static Set<String> ids(List<Trial> trials) {
+        Set<String> ids = new TreeSet<>();
+        for (Trial trial : trials) {
+            ids.add(trial.getTrialID());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testEncode() {
+        assertEquals("u4pruydqq", Geohash.encode(57.64911, 10.40744, 9));
+        assertEquals("c3x2", Geohash.encode(53.5461, -113.4938, 4));
+        assertEquals("s0000", Geohash.encode(0, 0, 5));
+    }
+
+    @Test
+    public void testCoverContainsViewport() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            double south = random.nextDouble() * 160 - 80;
+            double west = random.nextDouble() * 340 - 180;
+            double north = Math.min(90, south + random.nextDouble() * 5);
+            double east = Math.min(180, west + random.nextDouble() * 10);
+            List<Geohash.Range> ranges = Geohash.cover(south, west, north, east);
+            assertTrue(ranges.size() <= Geohash.MAX_RANGES);
+            for (int j = 0; j < 20; j++) {
+                double lat = south + random.nextDouble() * (north - south);
+                double lon = west + random.nextDouble() * (east - west);
+                String geohash = Geohash.encode(lat, lon, Geohash.MAX_PRECISION);
+                boolean covered = false;
+                for (Geohash.Range range : ranges) {
+                    covered |= range.contains(geohash);
+                }
+                assertTrue(covered);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomViewportsMatchBruteForce() {
+        Random random = new Random(8);
+        for (int i = 0; i < 100; i++) {
+            double span = i % 2 == 0 ? random.nextDouble() * 3 : random.nextDouble() * 40;
+            double south = i % 3 == 0 ? 52 + random.nextDouble() * 2 : random.nextDouble() * 150 - 80;
+            double west = i % 3 == 0 ? -116 + random.nextDouble() * 4 : random.nextDouble() * 340 - 180;
+            double north = Math.min(85, south + span / 2);
+            double east = Math.min(FULL_WIDTH_EAST, west + span);
+            assertEquals(bruteForce(south, west, north, east), ids(query(south, west, north, east)));
+        }
+    }
+
+    @Test
+    public void testAntimeridian() {
+        assertEquals(bruteForce(-30, 170, 30, -170), ids(query(-30, 170, 30, -170)));
+    }
+
+    @Test
+    public void testOnlyTheViewportIsRead() {
+        // the first query finds the trials were never backfilled, and indexes them
+        query(53, -114, 54, -113);
+        store.resetCounts();
+
+        List<Trial> found = query(53, -114, 54, -113);
+        assertFalse(found.isEmpty());
+        // the black list, and a few more trials than are in view
+        long reads = store.getReadCount() - 1;
+        assertTrue(reads >= found.size());
+        assertTrue(reads < 4 * found.size());
+        assertTrue(reads < trials.size() / 5);
+    }
+
+    @Test
+    public void testTrialsWithoutGeohashAreFound() {
+        // trials stored before geohashes were written
+        Set<String> legacy = new TreeSet<>();
+        for (int i = 0; i < 30; i++) {
+            String id = String.format("L%05d", i);
+            Map<String, Object>[] doc = new Map[1];
+            store.get("Trials/" + trials.get(i * 2 + 1).getTrialID(), document -> doc[0] = new HashMap<>(document.getData()));
+            doc[0].remove("Geohash");
+            doc[0].put("TrialId", id);
+            store.set("Trials/" + id, doc[0], false, null);
+            legacy.add(id);
+        }
+
+        Set<String> found = ids(queryWorld());
+        assertTrue(found.containsAll(legacy));
+        store.get(GeohashBackfill.markerPath("E1"), marker -> assertTrue(GeohashBackfill.isIndexed(marker)));
+
+        // indexed now, the geohash ranges find them
+        store.resetCounts();
+        Set<String> expected = legacyIn(53, -114, 54, -113);
+        assertFalse(expected.isEmpty());
+        assertTrue(ids(query(53, -114, 54, -113)).containsAll(expected));
+        assertTrue(store.getReadCount() < trials.size() / 5);
+        assertEquals(found, ids(queryWorld()));
+    }
+
+    @Test
+    public void testBackfill() {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("ExperimentID", "E3");
+        doc.put("Location", new GeoPoint(53.5, -113.5));
+        store.set("Trials/A", doc, false, null);
+        store.set("Trials/B", Collections.singletonMap("ExperimentID", "E3"), false, null);
+
+        GeohashBackfill backfill = new GeohashBackfill(store, 1);
+        List<Boolean> done = new ArrayList<>();
+        backfill.backfill("E3", done::add);
+        assertEquals(Collections.singletonList(true), done);
+        assertEquals(1, backfill.getUpdatedCount());
+        store.get("Trials/A", document -> assertEquals(Geohash.encode(53.5, -113.5, Geohash.MAX_PRECISION), document.getString("Geohash")));
+        store.get("Trials/B", document -> assertFalse(document.contains("Geohash")));
+
+        // running it again finds nothing to do
+        backfill.backfill("E3", done::add);
+        assertEquals(1, backfill.getUpdatedCount());
+    }
+
+    /**
+     * Ids of the copies without geohash whose source trial is inside a viewport
+     */
+    private Set<String> legacyIn(double south, double west, double north, double east) {
+        Set<String> inside = new TreeSet<>();
+        Set<String> ids = bruteForce(south, west, north, east);
+        for (int i = 0; i < 30; i++) {
+            if (ids.contains(trials.get(i * 2 + 1).getTrialID())) {
+                inside.add(String.format("L%05d", i));
+            }
+        }
+        return inside;
+    }
+
+    @Test
+    public void testBannedTrialsAreIgnored() {
+        int ignored = 0;
+        for (Trial trial : queryWorld()) {
+            assertEquals("Banned".equals(trial.getTrialUserID()), trial.isIgnored());
+            assertEquals("E1", trial.getTrialExperimentID());
+            ignored += trial.isIgnored() ? 1 : 0;
+        }
+        assertTrue(ignored > 0);
+    }
+
+    @Test
+    public void testFailure() {
+        store.setFailureRate(1);
+        List<List<Trial>> found = new ArrayList<>();
+        manager.queryTrialsInBounds("E1", new LatLngBounds(new LatLng(53, -114), new LatLng(54, -113)), found::add);
+        assertNull(found.get(0));
+    }
+}
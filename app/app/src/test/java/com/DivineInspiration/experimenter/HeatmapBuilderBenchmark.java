@@ -0,0 +1,71 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Map.HeatmapBuilder;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times binning trial locations for the heatmap at 50k, 100k and 200k locations, which should grow linearly,
+ * and making a tile once binned.
+ */
+@Category(Benchmark.class)
+public class HeatmapBuilderBenchmark {
+
+    private static HeatmapBuilder builder(int size, long version, int cacheSize) {
+        Random random = new Random(5);
+        float[] latitudes = new float[size];
+        float[] longitudes = new float[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = (float) (53.5 + random.nextGaussian() * 2);
+            longitudes[i] = (float) (-113.5 + random.nextGaussian() * 4);
+        }
+        return new HeatmapBuilder("E1", version, latitudes, longitudes, size, new HeatmapBuilder.TileCache(cacheSize));
+    }
+
+    @Test
+    public void benchmarkBinning() {
+        int[] sizes = {50_000, 100_000, 200_000};
+        double[] millis = new double[sizes.length];
+        for (int s = 0; s < sizes.length; s++) {
+            int size = sizes[s];
+            HeatmapBuilder[] builders = new HeatmapBuilder[30];
+            for (int i = 0; i < builders.length; i++) {
+                builders[i] = builder(size, i, 16);
+            }
+            int[] next = {0};
+            millis[s] = BenchmarkTimer.time("HeatmapBuilder binning at zoom 8, " + size + " locations", 5, 25, () -> {
+                HeatmapBuilder heatmap = builders[next[0]++];
+                heatmap.prepare(8);
+                return heatmap;
+            });
+        }
+        // linear would be 4 times, twice that leaves room for the noise of the timer
+        assertTrue("binning grew faster than linearly: " + millis[0] + " ms to " + millis[2] + " ms",
+                millis[2] < millis[0] * 8);
+    }
+
+    @Test
+    public void benchmarkTile() {
+        // a cache of one tile and two tiles around Edmonton in turn, so every tile is made
+        HeatmapBuilder heatmap = builder(100_000, 1, 1);
+        heatmap.prepare(6);
+        assertNotNull(heatmap.tile(6, 11, 20));
+        int[] next = {0};
+        double tile = BenchmarkTimer.time("HeatmapBuilder.tile at zoom 6, 100000 locations", 50, 500,
+                () -> heatmap.tile(6, 11 + next[0]++ % 2, 20));
+        int[] version = {2};
+        double binning = BenchmarkTimer.time("HeatmapBuilder binning at zoom 6, 100000 locations", 2, 5, () -> {
+            HeatmapBuilder fresh = builder(100_000, version[0]++, 1);
+            fresh.prepare(6);
+            return fresh;
+        });
+        // a tile is made from the bins, it does not visit the locations again
+        BenchmarkTimer.assertFaster("a tile", tile, "binning", binning);
+    }
+}
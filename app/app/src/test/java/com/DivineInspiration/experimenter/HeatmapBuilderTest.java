@@ -0,0 +1,178 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Map.HeatmapBuilder;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeatmapBuilderTest {
+
+    private static final int BINS = HeatmapBuilder.TILE_BINS;
+
+    private static HeatmapBuilder builder(long version, HeatmapBuilder.TileCache cache, double[]... locations) {
+        float[] latitudes = new float[locations.length];
+        float[] longitudes = new float[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            latitudes[i] = (float) locations[i][0];
+            longitudes[i] = (float) locations[i][1];
+        }
+        return new HeatmapBuilder("E1", version, latitudes, longitudes, locations.length, cache);
+    }
+
+    private static int peak(float[] tile) {
+        int peak = 0;
+        for (int i = 1; i < tile.length; i++) {
+            if (tile[i] > tile[peak]) {
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    @Test
+    public void testLonePointPeaksAtOne() {
+        // near the middle of tile (0, 0) at zoom 1
+        HeatmapBuilder heatmap = builder(1, new HeatmapBuilder.TileCache(16), new double[]{60, -90});
+        float[] tile = heatmap.tile(1, 0, 0);
+        assertNotNull(tile);
+        int peak = peak(tile);
+        assertEquals(1, tile[peak], 1e-6);
+        // the kernel falls off the same way in every direction
+        assertEquals(tile[peak - 1], tile[peak + 1], 1e-6);
+        assertEquals(tile[peak - BINS], tile[peak + BINS], 1e-6);
+        assertTrue(tile[peak - 1] < 1);
+        assertEquals(0, tile[peak + HeatmapBuilder.RADIUS + 1], 0);
+
+        assertNull(heatmap.tile(1, 1, 1));
+        assertNull(heatmap.tile(1, 0, 5));
+    }
+
+    @Test
+    public void testKernelCrossesTileEdges() {
+        // on the line between the western and eastern tiles at zoom 1, and on the antimeridian
+        HeatmapBuilder heatmap = builder(1, new HeatmapBuilder.TileCache(16), new double[]{40, 0.01}, new double[]{-40, 179.99});
+        assertNotNull(heatmap.tile(1, 0, 0));
+        assertNotNull(heatmap.tile(1, 1, 0));
+        assertNotNull(heatmap.tile(1, 0, 1));
+        assertNotNull(heatmap.tile(1, 1, 1));
+        // the western edge of the eastern tile matches the eastern edge of the western tile
+        float[] west = heatmap.tile(1, 0, 0);
+        float[] east = heatmap.tile(1, 1, 0);
+        int row = peak(east) / BINS;
+        assertEquals(west[row * BINS + BINS - 1], east[row * BINS + 1], 1e-6);
+    }
+
+    @Test
+    public void testDenserIsHotter() {
+        Random random = new Random(3);
+        List<double[]> locations = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            locations.add(new double[]{53.5 + random.nextGaussian() * 0.5, -113.5 + random.nextGaussian() * 0.5});
+        }
+        for (int i = 0; i < 20; i++) {
+            locations.add(new double[]{45 + random.nextGaussian() * 0.5, -75 + random.nextGaussian() * 0.5});
+        }
+        HeatmapBuilder heatmap = builder(1, new HeatmapBuilder.TileCache(16), locations.toArray(new double[0][]));
+        float[] tile = heatmap.tile(2, 0, 1);
+        float max = 0;
+        for (float intensity : tile) {
+            assertTrue(intensity >= 0 && intensity <= 1);
+            max = Math.max(max, intensity);
+        }
+        assertEquals(1, max, 1e-6);
+        // Ottawa is on another tile at zoom 2, and cooler
+        float[] ottawa = heatmap.tile(2, 1, 1);
+        assertTrue(ottawa[peak(ottawa)] < 0.8);
+    }
+
+    @Test
+    public void testTilesAreCachedByVersion() {
+        HeatmapBuilder.TileCache cache = new HeatmapBuilder.TileCache(16);
+        HeatmapBuilder first = builder(1, cache, new double[]{60, -90});
+        float[] tile = first.tile(3, 2, 2);
+        assertNotNull(tile);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // another builder of the same version, after the tab was made again
+        assertArrayEquals(tile, builder(1, cache, new double[]{60, -90}).tile(3, 2, 2), 0);
+        assertEquals(1, cache.getHitCount());
+
+        // empty tiles are remembered
+        first.tile(3, 7, 7);
+        first.tile(3, 7, 7);
+        assertEquals(2, cache.getHitCount());
+
+        builder(2, cache, new double[]{60, -90}).tile(3, 2, 2);
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testVersionOfTrials() {
+        HeatmapBuilder.TileCache cache = new HeatmapBuilder.TileCache(16);
+        List<Trial> trials = new ArrayList<>();
+        trials.add(new CountTrial("T1", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, new LatLng(53.5, -113.5)));
+        HeatmapBuilder.of("E1", trials, cache).tile(4, 2, 5);
+        HeatmapBuilder.of("E1", new ArrayList<>(trials), cache).tile(4, 2, 5);
+        assertEquals(1, cache.getHitCount());
+
+        trials.add(new CountTrial("T2", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, new LatLng(53.6, -113.5)));
+        HeatmapBuilder.of("E1", trials, cache).tile(4, 2, 5);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testConcurrentTiles() throws Exception {
+        Random random = new Random(9);
+        double[][] locations = new double[5000][];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = new double[]{random.nextDouble() * 120 - 60, random.nextDouble() * 360 - 180};
+        }
+        HeatmapBuilder sequential = builder(1, new HeatmapBuilder.TileCache(256), locations);
+        HeatmapBuilder parallel = builder(1, new HeatmapBuilder.TileCache(256), locations);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<float[]>> tiles = new ArrayList<>();
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                int tx = x;
+                int ty = y;
+                tiles.add(executor.submit(() -> parallel.tile(3, tx, ty)));
+            }
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            float[] expected = sequential.tile(3, i / 8, i % 8);
+            float[] actual = tiles.get(i).get();
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertArrayEquals(expected, actual, 0);
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testColor() {
+        assertEquals(0, HeatmapBuilder.color(0));
+        assertEquals(0xC8FF0000, HeatmapBuilder.color(1));
+        // faint green for low intensities
+        assertEquals(255, HeatmapBuilder.color(0.01f) >> 8 & 0xFF);
+        assertTrue((HeatmapBuilder.color(0.01f) >>> 24) < 10);
+    }
+}
@@ -0,0 +1,82 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.GraphMaker;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.HistogramEngine;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link HistogramEngine} against grouping the trials into a list per bucket with
+ * {@link GraphMaker#groupTrialByRange} and {@link GraphMaker#groupTrialsByValue}.
+ */
+@Category(Benchmark.class)
+public class HistogramEngineBenchmark {
+
+    private static final int TRIALS = 200_000;
+
+    private List<Trial> mockMeasurementTrials() {
+        Random random = new Random(17);
+        LocalDate date = LocalDate.of(2021, 1, 1);
+        List<Trial> trials = new ArrayList<>(TRIALS);
+        for (int i = 0; i < TRIALS; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U", "Bob", "EXP", date, random.nextGaussian() * 10 + 50, null));
+        }
+        return trials;
+    }
+
+    private List<Trial> mockNonNegativeTrials() {
+        Random random = new Random(19);
+        LocalDate date = LocalDate.of(2021, 1, 1);
+        List<Trial> trials = new ArrayList<>(TRIALS);
+        for (int i = 0; i < TRIALS; i++) {
+            trials.add(new NonNegativeTrial("T" + i, "U", "Bob", "EXP", date, random.nextInt(40), null));
+        }
+        return trials;
+    }
+
+    @Test
+    public void benchmarkMeasurementHistogram() {
+        List<Trial> trials = mockMeasurementTrials();
+        TrialColumns columns = TrialColumns.of(trials);
+
+        double grouped = BenchmarkTimer.time("groupTrialByRange + findMin/MaxMeasurement per bucket, " + TRIALS + " trials", 3, 10, () -> {
+            List<List<Trial>> buckets = GraphMaker.groupTrialByRange(trials, 10);
+            double[] labels = new double[buckets.size() * 2];
+            for (int i = 0; i < buckets.size(); i++) {
+                labels[2 * i] = GraphMaker.findMinMeasurement(buckets.get(i));
+                labels[2 * i + 1] = GraphMaker.findMaxMeasurement(buckets.get(i));
+            }
+            return labels;
+        });
+        for (HistogramEngine.BinRule rule : HistogramEngine.BinRule.values()) {
+            assertEquals(TRIALS, HistogramEngine.bin(columns.activeValues(), rule, 10).getTotal());
+            double binned = BenchmarkTimer.time("HistogramEngine.bin " + rule + ", " + TRIALS + " trials", 3, 10,
+                    () -> HistogramEngine.bin(columns.activeValues(), rule, 10));
+            BenchmarkTimer.assertFaster("HistogramEngine.bin " + rule, binned, "groupTrialByRange", grouped);
+        }
+    }
+
+    @Test
+    public void benchmarkNonNegativeHistogram() {
+        List<Trial> trials = mockNonNegativeTrials();
+        TrialColumns columns = TrialColumns.of(trials);
+
+        assertEquals(TRIALS, HistogramEngine.binIntegers(columns.activeValues(), HistogramEngine.MAX_BINS).getTotal());
+        double grouped = BenchmarkTimer.time("groupTrialsByValue, " + TRIALS + " trials", 3, 10, () -> GraphMaker.groupTrialsByValue(trials));
+        double binned = BenchmarkTimer.time("HistogramEngine.binIntegers, " + TRIALS + " trials", 3, 10,
+                () -> HistogramEngine.binIntegers(columns.activeValues(), HistogramEngine.MAX_BINS));
+        BenchmarkTimer.assertFaster("HistogramEngine.binIntegers", binned, "groupTrialsByValue", grouped);
+    }
+}
@@ -0,0 +1,110 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.Histogram;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.HistogramEngine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramEngineTest {
+
+    private static double[] normal(int n, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+        }
+        return values;
+    }
+
+    private static int[] counts(Histogram histogram) {
+        int[] counts = new int[histogram.getBinCount()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.getCount(i);
+        }
+        return counts;
+    }
+
+    @Test
+    public void testFixedCount() {
+        Histogram histogram = HistogramEngine.bin(new double[]{0, 1, 2, 2.5, 3, 9, 10}, HistogramEngine.BinRule.FIXED_COUNT, 5);
+        assertEquals(5, histogram.getBinCount());
+        assertEquals(0, histogram.getLower(0), 0);
+        assertEquals(2, histogram.getUpper(0), 0);
+        assertEquals(10, histogram.getUpper(4), 0);
+        // an edge goes to the bin above it, the max to the last bin
+        assertArrayEquals(new int[]{2, 3, 0, 0, 2}, counts(histogram));
+        assertEquals(7, histogram.getTotal());
+    }
+
+    @Test
+    public void testEveryValueIsCountedOnce() {
+        double[] values = normal(10_000, 1);
+        for (HistogramEngine.BinRule rule : HistogramEngine.BinRule.values()) {
+            Histogram histogram = HistogramEngine.bin(values, rule, 12);
+            assertEquals(values.length, histogram.getTotal());
+            // the same as checking every value against every bin
+            for (int i = 0; i < histogram.getBinCount(); i++) {
+                int expected = 0;
+                for (double value : values) {
+                    boolean last = i == histogram.getBinCount() - 1;
+                    if (value >= histogram.getLower(i) && (value < histogram.getUpper(i) || last && value <= histogram.getUpper(i))) {
+                        expected++;
+                    }
+                }
+                assertEquals(expected, histogram.getCount(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRules() {
+        double[] values = normal(1000, 2);
+        // log2(1000) + 1, rounded up
+        assertEquals(11, HistogramEngine.bin(values, HistogramEngine.BinRule.STURGES, 0).getBinCount());
+        // a range of about 6.5 standard deviations over bins of 2 * 1.35 / 10 of one
+        int fd = HistogramEngine.bin(values, HistogramEngine.BinRule.FREEDMAN_DIACONIS, 0).getBinCount();
+        assertTrue(fd > 18 && fd < 30);
+
+        // one far outlier would stretch the bins past the cap
+        double[] outlier = normal(1000, 3);
+        outlier[0] = 1e9;
+        assertEquals(HistogramEngine.MAX_BINS, HistogramEngine.bin(outlier, HistogramEngine.BinRule.FREEDMAN_DIACONIS, 0).getBinCount());
+    }
+
+    @Test
+    public void testNoSpread() {
+        Histogram same = HistogramEngine.bin(new double[]{4, 4, 4}, HistogramEngine.BinRule.STURGES, 0);
+        assertEquals(1, same.getBinCount());
+        assertEquals(3, same.getCount(0));
+
+        // no quartile range, falls back to Sturges
+        double[] values = {1, 5, 5, 5, 5, 5, 5, 9};
+        assertEquals(4, HistogramEngine.bin(values, HistogramEngine.BinRule.FREEDMAN_DIACONIS, 0).getBinCount());
+
+        Histogram empty = HistogramEngine.bin(new double[]{Double.NaN}, HistogramEngine.BinRule.STURGES, 0);
+        assertEquals(0, empty.getBinCount());
+        assertEquals(0, empty.getTotal());
+    }
+
+    @Test
+    public void testIntegers() {
+        Histogram histogram = HistogramEngine.binIntegers(new double[]{3, 3, 5, 7, 7, 7}, 50);
+        // one bin per count from the min to the max, with the gaps left in
+        assertEquals(5, histogram.getBinCount());
+        assertArrayEquals(new int[]{2, 0, 1, 0, 3}, counts(histogram));
+        assertEquals(3, histogram.getLower(0), 0);
+        assertEquals(4, histogram.getUpper(0), 0);
+
+        Histogram wide = HistogramEngine.binIntegers(new double[]{0, 1, 99, 100, 250}, 50);
+        assertEquals(6, (int) (wide.getUpper(0) - wide.getLower(0)));
+        assertTrue(wide.getBinCount() <= 50);
+        assertEquals(2, wide.getCount(0));
+        assertEquals(5, wide.getTotal());
+    }
+}
@@ -0,0 +1,331 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.ExperimentManager;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreChange;
+import com.DivineInspiration.experimenter.Controller.Store.StoreFieldValue;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Model.Experiment;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryDocumentStoreTest {
+
+    private InMemoryDocumentStore store;
+
+    // the store is synchronous without latency, so callbacks have run by the time a call returns
+    private DocumentData document;
+    private List<DocumentData> documents;
+    private Boolean written;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+    }
+
+    private static Map<String, Object> fields(Object... keyValues) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private void set(String path, Map<String, Object> data) {
+        store.set(path, data, false, successful -> written = successful);
+        assertTrue(written);
+    }
+
+    @Test
+    public void testSetGetDelete() {
+        set("Users/U1", fields("UserName", "Ann", "Age", 3));
+
+        store.get("Users/U1", d -> document = d);
+        assertTrue(document.exists());
+        assertEquals("U1", document.getId());
+        assertEquals("Ann", document.getString("UserName"));
+        // numbers come back the way Firestore gives them
+        assertEquals(Long.valueOf(3), document.getLong("Age"));
+
+        store.delete("Users/U1", successful -> written = successful);
+        assertTrue(written);
+        store.get("Users/U1", d -> document = d);
+        assertNotNull(document);
+        assertFalse(document.exists());
+    }
+
+    @Test
+    public void testMergeAndUpdate() {
+        set("Users/U1", fields("UserName", "Ann", "Age", 3));
+        store.set("Users/U1", fields("Age", 4), true, successful -> written = successful);
+        store.get("Users/U1", d -> document = d);
+        assertEquals("Ann", document.getString("UserName"));
+        assertEquals(Long.valueOf(4), document.getLong("Age"));
+
+        store.set("Users/U1", fields("Age", 5), false, successful -> written = successful);
+        store.get("Users/U1", d -> document = d);
+        assertFalse(document.contains("UserName"));
+
+        // update needs the document to exist
+        store.update("Users/U2", fields("Age", 1), successful -> written = successful);
+        assertFalse(written);
+        assertEquals(1, store.count("Users"));
+    }
+
+    @Test
+    public void testFieldValues() {
+        set("BlackList/E1", fields("BannedIds", new ArrayList<>(Arrays.asList("A", "B")), "Count", 1));
+        store.update("BlackList/E1", fields(
+                "BannedIds", StoreFieldValue.arrayUnion("B", "C"),
+                "Count", StoreFieldValue.increment(2)), null);
+        store.get("BlackList/E1", d -> document = d);
+        assertEquals(Arrays.asList("A", "B", "C"), document.get("BannedIds"));
+        assertEquals(Long.valueOf(3), document.getLong("Count"));
+
+        store.update("BlackList/E1", fields(
+                "BannedIds", StoreFieldValue.arrayRemove("A"),
+                "Count", StoreFieldValue.delete()), null);
+        store.get("BlackList/E1", d -> document = d);
+        assertEquals(Arrays.asList("B", "C"), document.get("BannedIds"));
+        assertFalse(document.contains("Count"));
+    }
+
+    @Test
+    public void testQuery() {
+        for (int i = 0; i < 10; i++) {
+            set("Trials/T" + i, fields("ExperimentID", i % 2 == 0 ? "E1" : "E2", "Value", 10 - i,
+                    "Tags", Arrays.asList("t" + i, "all")));
+        }
+
+        store.query(new StoreQuery("Trials").whereEqualTo("ExperimentID", "E1"), d -> documents = d);
+        assertEquals(5, documents.size());
+        assertEquals("T0", documents.get(0).getId());
+
+        store.query(new StoreQuery("Trials").whereArrayContains("Tags", "t3"), d -> documents = d);
+        assertEquals(1, documents.size());
+
+        store.query(new StoreQuery("Trials").whereArrayContainsAny("Tags", Arrays.asList("t3", "t4")), d -> documents = d);
+        assertEquals(2, documents.size());
+
+        store.query(new StoreQuery("Trials").whereIn(StoreQuery.DOCUMENT_ID, Arrays.asList("T1", "T7", "T99")), d -> documents = d);
+        assertEquals(2, documents.size());
+
+        // ordered by value, the lowest value is the last trial
+        store.query(new StoreQuery("Trials").orderBy("Value").limit(3), d -> documents = d);
+        assertEquals(Arrays.asList("T9", "T8", "T7"), ids(documents));
+
+        store.query(new StoreQuery("Trials").orderBy("Value", true).startAfter(8).limit(2), d -> documents = d);
+        assertEquals(Arrays.asList("T3", "T4"), ids(documents));
+
+        // paging by id
+        store.query(new StoreQuery("Trials").startAfter("T4").limit(3), d -> documents = d);
+        assertEquals(Arrays.asList("T5", "T6", "T7"), ids(documents));
+
+        store.query(new StoreQuery("Nothing"), d -> documents = d);
+        assertEquals(0, documents.size());
+    }
+
+    @Test
+    public void testSubCollections() {
+        set("Comments/E1/Comments/C1", fields("Comment", "hi"));
+        set("Comments/E1/Comments/C1/Replies/R1", fields("Comment", "hello"));
+        set("Comments/E2/Comments/C2", fields("Comment", "other"));
+
+        store.query(new StoreQuery("Comments/E1/Comments"), d -> documents = d);
+        assertEquals(1, documents.size());
+        assertEquals("Comments/E1/Comments/C1", documents.get(0).getPath());
+        assertEquals(1, store.count("Comments/E1/Comments/C1/Replies"));
+    }
+
+    @Test
+    public void testBatch() {
+        set("Trials/T1", fields("Value", 1));
+
+        DocumentStore.Batch batch = store.batch()
+                .set("Trials/T2", fields("Value", 2), false)
+                .delete("Trials/T1")
+                .update("Trials/Missing", fields("Value", 3));
+        batch.commit(successful -> written = successful);
+        // all or nothing
+        assertFalse(written);
+        assertEquals(1, store.count("Trials"));
+
+        DocumentStore.Batch tooBig = store.batch();
+        for (int i = 0; i <= DocumentStore.MAX_BATCH_SIZE; i++) {
+            tooBig.set("Trials/B" + i, fields("Value", i), false);
+        }
+        tooBig.commit(successful -> written = successful);
+        assertFalse(written);
+
+        store.resetCounts();
+        store.batch().set("Trials/T2", fields("Value", 2), false).delete("Trials/T1").commit(successful -> written = successful);
+        assertTrue(written);
+        assertEquals(2, store.getWriteCount());
+        store.get("Trials/T1", d -> document = d);
+        assertFalse(document.exists());
+    }
+
+    @Test
+    public void testReadCount() {
+        for (int i = 0; i < 20; i++) {
+            set("Trials/T" + i, fields("Value", i));
+        }
+        store.resetCounts();
+        store.query(new StoreQuery("Trials").limit(5), d -> documents = d);
+        store.get("Trials/T1", d -> document = d);
+        assertEquals(6, store.getReadCount());
+    }
+
+    @Test
+    public void testLatencyAndFailures() throws InterruptedException {
+        set("Users/U1", fields("UserName", "Ann"));
+        store.setLatency(20);
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        store.get("Users/U1", d -> {
+            document = d;
+            latch.countDown();
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals("Ann", document.getString("UserName"));
+
+        store.setLatency(0);
+        store.setFailureRate(1);
+        store.get("Users/U1", d -> document = d);
+        assertNull(document);
+        store.set("Users/U2", fields("UserName", "Bob"), false, successful -> written = successful);
+        assertFalse(written);
+        assertEquals(1, store.count("Users"));
+    }
+
+    @Test
+    public void testListen() {
+        set("Trials/T1", fields("ExperimentID", "E1", "Value", 1));
+        set("Trials/T2", fields("ExperimentID", "E2", "Value", 2));
+        List<List<StoreChange>> calls = new ArrayList<>();
+        DocumentStore.Registration registration = store.listen(new StoreQuery("Trials").whereEqualTo("ExperimentID", "E1"), calls::add);
+        assertEquals(1, calls.size());
+        assertEquals(1, calls.get(0).size());
+        assertEquals(StoreChange.Type.ADDED, calls.get(0).get(0).getType());
+
+        // a batch is one call, with only the documents of the query
+        store.batch()
+                .set("Trials/T3", fields("ExperimentID", "E1", "Value", 3), false)
+                .set("Trials/T4", fields("ExperimentID", "E2", "Value", 4), false)
+                .update("Trials/T1", fields("Value", 10))
+                .commit(null);
+        assertEquals(2, calls.size());
+        assertEquals(Arrays.asList(StoreChange.Type.ADDED, StoreChange.Type.MODIFIED), types(calls.get(1)));
+        assertEquals(10L, calls.get(1).get(1).getDocument().get("Value"));
+
+        // leaving the query is a removal, with the last matching version
+        store.update("Trials/T3", fields("ExperimentID", "E2"), null);
+        assertEquals(StoreChange.Type.REMOVED, calls.get(2).get(0).getType());
+        assertEquals("E1", calls.get(2).get(0).getDocument().getString("ExperimentID"));
+        store.delete("Trials/T1", null);
+        assertEquals(Arrays.asList(StoreChange.Type.REMOVED), types(calls.get(3)));
+
+        // writes to other collections and other experiments are not delivered
+        set("Users/U1", fields("ExperimentID", "E1"));
+        set("Trials/T5", fields("ExperimentID", "E2"));
+        assertEquals(4, calls.size());
+
+        registration.remove();
+        set("Trials/T6", fields("ExperimentID", "E1"));
+        assertEquals(4, calls.size());
+
+        store.setFailureRate(1);
+        store.listen(new StoreQuery("Trials"), calls::add);
+        assertNull(calls.get(4));
+    }
+
+    private static List<StoreChange.Type> types(List<StoreChange> changes) {
+        List<StoreChange.Type> types = new ArrayList<>();
+        for (StoreChange change : changes) {
+            types.add(change.getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void testTrialManager() {
+        TrialManager trials = new TrialManager(store);
+        LocalDate day = LocalDate.of(2021, 3, 1);
+        for (int i = 0; i < 6; i++) {
+            trials.addTrial(new MeasurementTrial("T" + i, i < 2 ? "Banned" : "U" + i, "name", "E1", day.plusDays(i), i, new LatLng(53.5, -113.5)), t -> {});
+        }
+        set("BlackList/E1", fields("BannedIds", Collections.singletonList("Banned")));
+
+        List<Trial> output = new ArrayList<>();
+        TrialColumns[] columns = new TrialColumns[1];
+        trials.queryExperimentTrialColumns("E1", (t, c) -> {
+            output.addAll(t);
+            columns[0] = c;
+        });
+        assertEquals(6, output.size());
+        assertEquals(4, columns[0].activeCount());
+        assertTrue(output.get(0).isIgnored());
+        assertEquals(53.5, output.get(3).getLocation().latitude, 1e-9);
+        assertEquals(day.plusDays(3), output.get(3).getTrialDate());
+
+        trials.deleteTrial("T0");
+        assertEquals(5, store.count("Trials"));
+    }
+
+    @Test
+    public void testExperimentManager() {
+        ExperimentManager experiments = new ExperimentManager(store, "Owner");
+        Experiment experiment = new Experiment("E1", "Name", "Owner", "Owner Name", "desc", Trial.COUNT, "Edmonton", 1, false, Experiment.ONGOING);
+        experiments.addExperiment(experiment, successful -> written = successful);
+        assertTrue(written);
+
+        experiments.subToExperiment("Sub", "E1", null);
+        List<Experiment> output = new ArrayList<>();
+        experiments.queryUserSubs("Sub", output::addAll);
+        assertEquals(1, output.size());
+        assertEquals("Name", output.get(0).getExperimentName());
+
+        // the first ban makes the black list, the second one adds to it
+        experiments.banUserFromExperiment("A", "E1", successful -> written = successful);
+        experiments.banUserFromExperiment("B", "E1", successful -> written = successful);
+        store.get("BlackList/E1", d -> document = d);
+        assertEquals(Arrays.asList("A", "B"), document.get("BannedIds"));
+
+        experiments.updateOwnerName("Owner", "New Name", null);
+        store.get("Experiments/E1", d -> document = d);
+        assertEquals("New Name", document.getString("OwnerName"));
+    }
+
+    private static List<String> ids(List<DocumentData> documents) {
+        List<String> ids = new ArrayList<>();
+        for (DocumentData d : documents) {
+            ids.add(d.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,76 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.OwnerDictionary;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OwnerDictionaryTest {
+
+    private final LocalDate day = LocalDate.of(2021, 3, 1);
+
+    @Test
+    public void testIntern() {
+        OwnerDictionary owners = new OwnerDictionary();
+        assertEquals(0, owners.intern("A"));
+        assertEquals(1, owners.intern("B"));
+        assertEquals(0, owners.intern("A"));
+        assertEquals(2, owners.size());
+        assertEquals("B", owners.getOwnerId(1));
+        assertEquals(-1, owners.codeOf("C"));
+    }
+
+    @Test
+    public void testPostings() {
+        OwnerDictionary owners = new OwnerDictionary();
+        int a = owners.intern("A");
+        for (int row = 0; row < 10; row++) {
+            owners.addRow(a, row * 2);
+        }
+        assertEquals(10, owners.rowsOf(a).length);
+        assertEquals(18, owners.rowsOf(a)[9]);
+        assertEquals(0, owners.rowsOf(owners.intern("B")).length);
+    }
+
+    @Test
+    public void testBanBeforeTrials() {
+        OwnerDictionary owners = new OwnerDictionary();
+        owners.ban("A");
+        TrialColumns columns = new TrialColumns(4, owners);
+        columns.add(new CountTrial("T0", "A", "Bob", "EXP", day, 1, null));
+        columns.add(new CountTrial("T1", "B", "Amy", "EXP", day, 1, null));
+
+        assertTrue(columns.isIgnored(0));
+        assertFalse(columns.isIgnored(1));
+        assertEquals(1, owners.bannedCount());
+    }
+
+    @Test
+    public void testBanAndUnban() {
+        TrialColumns columns = new TrialColumns(4);
+        for (int i = 0; i < 6; i++) {
+            columns.add(new CountTrial("T" + i, i % 3 == 0 ? "A" : "B", "Bob", "EXP", day, 1, null));
+        }
+
+        assertArrayEquals(new int[]{0, 3}, columns.banOwner("A"));
+        assertTrue(columns.isIgnored(0));
+        assertTrue(columns.isIgnored(3));
+        assertEquals(4, columns.activeCount());
+
+        // trials added after the ban are ignored too
+        int row = columns.add(new CountTrial("T6", "A", "Bob", "EXP", day, 1, null));
+        assertTrue(columns.isIgnored(row));
+
+        assertArrayEquals(new int[]{0, 3, 6}, columns.unbanOwner("A"));
+        assertEquals(7, columns.activeCount());
+        assertEquals(0, columns.unbanOwner("nobody").length);
+    }
+}
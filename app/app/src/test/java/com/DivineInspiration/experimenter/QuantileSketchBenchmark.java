@@ -0,0 +1,89 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsMaker;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the median and quartiles from a {@link QuantileSketch} against sorting every value,
+ * in time and in the memory held to answer them.
+ */
+@Category(Benchmark.class)
+public class QuantileSketchBenchmark {
+
+    private static final int TRIALS = 500_000;
+
+    private List<Trial> mockTrials() {
+        Random random = new Random(13);
+        LocalDate date = LocalDate.of(2021, 1, 1);
+        List<Trial> trials = new ArrayList<>(TRIALS);
+        for (int i = 0; i < TRIALS; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U", "Bob", "EXP", date, random.nextGaussian() * 10 + 50, null));
+        }
+        return trials;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void benchmarkSummary() {
+        List<Trial> trials = mockTrials();
+        TrialColumns columns = TrialColumns.of(trials);
+
+        // the estimate is within a small part of the spread, a standard deviation of 10
+        assertEquals(StatsEngine.summarize(columns).getMedian(),
+                StatsEngine.summarizeApproximate(columns, QuantileSketch.DEFAULT_COMPRESSION).getMedian(), 0.1);
+
+        double boxed = BenchmarkTimer.time("StatsMaker.calcMedian + calcQuartiles, " + TRIALS + " trials", 2, 5, () -> new double[]{
+                StatsMaker.calcMedian(trials),
+                StatsMaker.calcQuartiles(trials)[0]
+        });
+        double sorted = BenchmarkTimer.time("StatsEngine.summarize(TrialColumns), " + TRIALS + " trials", 3, 10, () -> StatsEngine.summarize(columns));
+        double sketched = BenchmarkTimer.time("StatsEngine.summarizeApproximate(TrialColumns), " + TRIALS + " trials", 3, 10,
+                () -> StatsEngine.summarizeApproximate(columns, QuantileSketch.DEFAULT_COMPRESSION));
+        BenchmarkTimer.assertFaster("StatsEngine.summarize", sorted, "StatsMaker calc methods", boxed);
+        BenchmarkTimer.assertFaster("StatsEngine.summarizeApproximate", sketched, "StatsMaker calc methods", boxed);
+    }
+
+    @Test
+    public void benchmarkMemory() {
+        List<Trial> trials = mockTrials();
+
+        long before = usedMemory();
+        List<Double> boxed = StatsMaker.sortDouble(StatsMaker.getDoubles(trials));
+        long boxedBytes = usedMemory() - before;
+
+        before = usedMemory();
+        QuantileSketch sketch = new QuantileSketch();
+        for (Trial trial : trials) {
+            sketch.add(StatsEngine.valueOf(trial));
+        }
+        sketch.centroidCount();
+        long sketchBytes = usedMemory() - before;
+
+        assertTrue("sketch held " + sketchBytes + " bytes, the sorted list " + boxedBytes, sketchBytes * 100 < boxedBytes);
+        // small enough for a field of a document, far under the 1 MiB limit
+        assertTrue(sketch.toMap().toString().length() < 64 * 1024);
+        BenchmarkTimer.sink = new Object[]{boxed, sketch};
+    }
+}
@@ -0,0 +1,190 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+    private static double[] normal(int n, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+        }
+        return values;
+    }
+
+    private static double[] exponential(int n, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = -Math.log(1 - random.nextDouble()) * 20;
+        }
+        return values;
+    }
+
+    private static QuantileSketch sketchOf(double[] values, int compression) {
+        QuantileSketch sketch = new QuantileSketch(compression);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    /**
+     * Largest distance, as a fraction of all values, between the rank of an estimate and the asked quantile
+     */
+    private static double worstRankError(QuantileSketch sketch, double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double worst = 0;
+        for (double q : QUANTILES) {
+            double estimate = sketch.quantile(q);
+            int below = lowerBound(sorted, estimate);
+            int atOrBelow = upperBound(sorted, estimate);
+            // any rank among equal values is right
+            double target = q * sorted.length;
+            double error = target < below ? below - target : target > atOrBelow ? target - atOrBelow : 0;
+            worst = Math.max(worst, error / sorted.length);
+        }
+        return worst;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && sorted[index - 1] == value) {
+            index--;
+        }
+        return index;
+    }
+
+    private static int upperBound(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index < sorted.length && sorted[index] == value) {
+            index++;
+        }
+        return index;
+    }
+
+    @Test
+    public void testAccuracyAgainstExact() {
+        for (double[] values : new double[][]{normal(100_000, 1), exponential(100_000, 2)}) {
+            QuantileSketch sketch = sketchOf(values, QuantileSketch.DEFAULT_COMPRESSION);
+            assertEquals(values.length, sketch.getCount());
+            assertTrue(worstRankError(sketch, values) < 0.01);
+
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            assertEquals(sorted[0], sketch.getMin(), 0);
+            assertEquals(sorted[sorted.length - 1], sketch.getMax(), 0);
+        }
+    }
+
+    @Test
+    public void testTailsAreTighter() {
+        double[] values = exponential(200_000, 3);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        QuantileSketch sketch = sketchOf(values, QuantileSketch.DEFAULT_COMPRESSION);
+        int rank = lowerBound(sorted, sketch.quantile(0.999));
+        assertEquals(0.999, (double) rank / sorted.length, 0.0005);
+    }
+
+    @Test
+    public void testMoreCompressionIsMoreAccurate() {
+        double[] values = normal(50_000, 4);
+        QuantileSketch small = sketchOf(values, 20);
+        QuantileSketch large = sketchOf(values, 400);
+        assertTrue(small.centroidCount() < large.centroidCount());
+        assertTrue(worstRankError(large, values) <= worstRankError(small, values));
+        assertTrue(worstRankError(large, values) < 0.002);
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        QuantileSketch sketch = sketchOf(normal(1_000_000, 5), QuantileSketch.DEFAULT_COMPRESSION);
+        assertTrue(sketch.centroidCount() <= QuantileSketch.DEFAULT_COMPRESSION);
+    }
+
+    @Test
+    public void testMergeMatchesOneSketch() {
+        double[] values = exponential(60_000, 6);
+        QuantileSketch merged = new QuantileSketch();
+        // pages of uneven size, as they come from the store
+        int from = 0;
+        for (int page = 1; from < values.length; page++) {
+            int to = Math.min(values.length, from + page * 500);
+            merged.merge(sketchOf(Arrays.copyOfRange(values, from, to), QuantileSketch.DEFAULT_COMPRESSION));
+            from = to;
+        }
+        assertEquals(values.length, merged.getCount());
+        assertTrue(merged.centroidCount() <= QuantileSketch.DEFAULT_COMPRESSION);
+        assertTrue(worstRankError(merged, values) < 0.01);
+    }
+
+    @Test
+    public void testMergeLeavesOtherAlone() {
+        QuantileSketch a = sketchOf(new double[]{1, 2, 3}, 50);
+        QuantileSketch b = sketchOf(new double[]{10, 20}, 50);
+        a.merge(b);
+        assertEquals(5, a.getCount());
+        assertEquals(2, b.getCount());
+        assertEquals(20, a.getMax(), 0);
+        assertEquals(10, b.getMin(), 0);
+        a.merge(new QuantileSketch());
+        assertEquals(5, a.getCount());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        double[] values = normal(10_000, 7);
+        QuantileSketch sketch = sketchOf(values, 80);
+        Map<String, Object> map = sketch.toMap();
+        QuantileSketch read = QuantileSketch.fromMap(map);
+        assertEquals(80, read.getCompression());
+        assertEquals(sketch.getCount(), read.getCount());
+        assertEquals(sketch.getMin(), read.getMin(), 0);
+        assertEquals(sketch.getMax(), read.getMax(), 0);
+        for (double q : QUANTILES) {
+            assertEquals(sketch.quantile(q), read.quantile(q), 0);
+        }
+        // a read sketch keeps taking values
+        read.add(1000);
+        assertEquals(1000, read.getMax(), 0);
+        assertEquals(values.length + 1, read.getCount());
+    }
+
+    @Test
+    public void testSmallAndEmpty() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        assertTrue(Double.isNaN(sketch.getMin()));
+        sketch.add(Double.NaN);
+        assertEquals(0, sketch.getCount());
+
+        sketch.add(4);
+        assertEquals(4, sketch.quantile(0.5), 0);
+        // few values stay single centroids, so the estimates are their exact order statistics
+        sketch.add(1);
+        sketch.add(7);
+        assertEquals(1, sketch.quantile(0), 0);
+        assertEquals(4, sketch.quantile(0.5), 0);
+        assertEquals(7, sketch.quantile(1), 0);
+    }
+}
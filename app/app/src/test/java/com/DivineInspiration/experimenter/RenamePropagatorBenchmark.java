@@ -0,0 +1,55 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.RenamePropagator;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link RenamePropagator} over many copies of a name in the in-memory store, with and without a simulated
+ * network round trip per call, and checks that every copy is written in few batches.
+ */
+@Category(Benchmark.class)
+public class RenamePropagatorBenchmark {
+
+    private static final int TRIALS = 20_000;
+
+    @Test
+    public void benchmarkThroughput() {
+        InMemoryDocumentStore store = new InMemoryDocumentStore();
+        RenamePropagatorTest.fill(store, 50, TRIALS, 20);
+        int copies = 25 + TRIALS / 2 + 500 + 500;
+        int[] round = {0};
+        BenchmarkTimer.time("RenamePropagator.rename, " + (TRIALS / 2) + " trials", 2, 5, () -> {
+            RenamePropagator propagator = new RenamePropagator(store);
+            // a new name each run so every copy is written
+            propagator.rename("A", "name " + round[0]++, null);
+            assertEquals(copies, propagator.getUpdatedCount());
+            return propagator.getUpdatedCount();
+        });
+        // the copies are written in full batches, not one commit each
+        assertTrue(store.getCommitCount() / 7 < copies / 100);
+    }
+
+    @Test
+    public void benchmarkWithLatency() throws InterruptedException {
+        InMemoryDocumentStore store = new InMemoryDocumentStore();
+        RenamePropagatorTest.fill(store, 50, TRIALS, 20);
+        store.setLatency(20);
+        CountDownLatch latch = new CountDownLatch(1);
+        RenamePropagator propagator = new RenamePropagator(store);
+        propagator.rename("A", "Ann", successful -> latch.countDown());
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        int copies = 25 + TRIALS / 2 + 500 + 500;
+        assertEquals(copies, propagator.getUpdatedCount());
+        // a round trip per full batch, not per copy
+        assertTrue(store.getCommitCount() + " commits for " + copies + " copies", store.getCommitCount() < copies / 100);
+    }
+}
@@ -0,0 +1,150 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.RenamePropagator;
+import com.DivineInspiration.experimenter.Controller.Store.DocumentData;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenamePropagatorTest {
+
+    private InMemoryDocumentStore store;
+    private Boolean done;
+    private int doneCalls;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        done = null;
+        doneCalls = 0;
+    }
+
+    private static void put(InMemoryDocumentStore store, String path, String idField, String id, String nameField, String name) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(idField, id);
+        fields.put(nameField, name);
+        store.set(path, fields, false, null);
+    }
+
+    /**
+     * Copies of the names of users A and B everywhere a name is denormalized
+     */
+    static void fill(InMemoryDocumentStore store, int experiments, int trials, int comments) {
+        for (int e = 0; e < experiments; e++) {
+            String owner = e % 2 == 0 ? "A" : "B";
+            put(store, "Experiments/E" + e, "OwnerID", owner, "OwnerName", "old " + owner);
+            for (int c = 0; c < comments; c++) {
+                String commenter = c % 2 == 0 ? "A" : "B";
+                put(store, "Comments/E" + e + "/Comments/C" + c, "CommenterID", commenter, "CommenterName", "old " + commenter);
+                put(store, "Comments/E" + e + "/Comments/C" + c + "/Replies/R" + c, "CommenterID", commenter, "CommenterName", "old " + commenter);
+            }
+        }
+        for (int t = 0; t < trials; t++) {
+            String owner = t % 2 == 0 ? "A" : "B";
+            put(store, "Trials/T" + t, "OwnerID", owner, "OwnerName", "old " + owner);
+        }
+        store.resetCounts();
+    }
+
+    private int countNamed(StoreQuery query, String field, String name) {
+        int[] count = new int[1];
+        store.query(query, documents -> {
+            for (DocumentData document : documents) {
+                if (name.equals(document.getString(field))) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    @Test
+    public void testRenameEveryCopy() {
+        fill(store, 10, 2000, 6);
+        RenamePropagator propagator = new RenamePropagator(store, 100);
+        propagator.rename("A", "Ann", successful -> {
+            done = successful;
+            doneCalls++;
+        });
+
+        assertTrue(done);
+        assertEquals(1, doneCalls);
+        assertEquals(5, countNamed(new StoreQuery("Experiments"), "OwnerName", "Ann"));
+        assertEquals(1000, countNamed(new StoreQuery("Trials"), "OwnerName", "Ann"));
+        assertEquals(30, countNamed(StoreQuery.collectionGroup("Comments"), "CommenterName", "Ann"));
+        assertEquals(30, countNamed(StoreQuery.collectionGroup("Replies"), "CommenterName", "Ann"));
+        assertEquals(5 + 1000 + 30 + 30, propagator.getUpdatedCount());
+
+        // the other user is untouched
+        assertEquals(1000, countNamed(new StoreQuery("Trials"), "OwnerName", "old B"));
+        assertEquals(30, countNamed(StoreQuery.collectionGroup("Replies"), "CommenterName", "old B"));
+        // batched, not one write per document
+        assertTrue(store.getCommitCount() <= 1000 / 100 + 4);
+    }
+
+    @Test
+    public void testRenameAgainSkipsUpToDateCopies() {
+        fill(store, 4, 300, 2);
+        new RenamePropagator(store).rename("B", "Bob", successful -> done = successful);
+        assertTrue(done);
+
+        store.resetCounts();
+        RenamePropagator again = new RenamePropagator(store);
+        again.rename("B", "Bob", successful -> done = successful);
+        assertTrue(done);
+        assertEquals(0, again.getUpdatedCount());
+        assertEquals(0, store.getWriteCount());
+    }
+
+    @Test
+    public void testUnknownUser() {
+        fill(store, 2, 10, 1);
+        new RenamePropagator(store).rename("Nobody", "X", successful -> {
+            done = successful;
+            doneCalls++;
+        });
+        assertTrue(done);
+        assertEquals(1, doneCalls);
+        assertEquals(0, store.getWriteCount());
+    }
+
+    @Test
+    public void testFailure() {
+        fill(store, 4, 1000, 2);
+        store.setFailureRate(0.5);
+        new RenamePropagator(store, 50).rename("A", "Ann", successful -> {
+            done = successful;
+            doneCalls++;
+        });
+        assertFalse(done);
+        assertEquals(1, doneCalls);
+    }
+
+    @Test
+    public void testDoneOnlyAfterAllBatches() throws InterruptedException {
+        fill(store, 6, 3000, 4);
+        store.setLatency(5);
+        CountDownLatch latch = new CountDownLatch(1);
+        new RenamePropagator(store, 200).rename("A", "Ann", successful -> {
+            done = successful;
+            latch.countDown();
+        });
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(done);
+        store.setLatency(0);
+        assertEquals(1500, countNamed(new StoreQuery("Trials"), "OwnerName", "Ann"));
+        assertEquals(0, countNamed(new StoreQuery("Trials"), "OwnerName", "old A"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.StableIds;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class StableIdsTest {
+
+    @Test
+    public void testSameKeySameId() {
+        StableIds ids = new StableIds();
+        long first = ids.idOf("EXP1");
+        ids.idOf("EXP2");
+        assertEquals(first, ids.idOf("EXP1"));
+        assertNotEquals(first, ids.idOf("EXP2"));
+    }
+
+    @Test
+    public void testNoCollisions() {
+        // "Aa" and "BB" share a String hash code, item ids must still differ
+        StableIds ids = new StableIds();
+        assertNotEquals(ids.idOf("Aa"), ids.idOf("BB"));
+
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            seen.add(ids.idOf("T" + i));
+        }
+        assertEquals(100000, seen.size());
+    }
+}
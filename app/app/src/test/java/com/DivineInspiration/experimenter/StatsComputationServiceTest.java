@@ -0,0 +1,166 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsComputationService;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatsComputationServiceTest {
+
+    // stands in for the main thread: results wait here until the test runs them
+    private final BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+    private final List<String> results = new ArrayList<>();
+
+    // longest wait for a job, so a job that never finishes fails the test instead of hanging it
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Before
+    public void setUp() {
+        mainThread.clear();
+        results.clear();
+    }
+
+    /**
+     * Runs the next result posted to the main thread
+     */
+    private void runPosted() throws InterruptedException {
+        Runnable posted = mainThread.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(posted);
+        posted.run();
+    }
+
+    @Test
+    public void testResultIsPosted() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 2, 8);
+        StatsComputationService.Job<String> job = service.submit("stats", () -> {
+            Thread.sleep(20);
+            return "done";
+        }, results::add);
+
+        assertTrue(service.isPending("stats"));
+        runPosted();
+        assertEquals(1, results.size());
+        assertEquals("done", results.get(0));
+        assertFalse(service.isPending("stats"));
+
+        assertTrue(job.isDone());
+        assertTrue(job.getComputeNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, service.getMetrics().getSubmittedCount());
+        assertEquals(1, service.getMetrics().getCompletedCount());
+        assertTrue(service.getMetrics().getMeanComputeMillis() >= 20);
+        assertTrue(service.getMetrics().getMaxComputeMillis() >= 20);
+    }
+
+    @Test
+    public void testNewJobCancelsStale() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 1, 8);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StatsComputationService.Job<String> stale = service.submit("graph", () -> {
+            started.countDown();
+            assertTrue(release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return "stale";
+        }, results::add);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // trials arrived: the graph is computed again
+        StatsComputationService.Job<String> fresh = service.submit("graph", () -> "fresh", results::add);
+        assertTrue(stale.isCancelled());
+        release.countDown();
+
+        runPosted();
+        assertEquals(1, results.size());
+        assertEquals("fresh", results.get(0));
+        assertTrue(fresh.isDone());
+        assertTrue(mainThread.isEmpty());
+        assertEquals(1, service.getMetrics().getCancelledCount());
+        assertEquals(1, service.getMetrics().getCompletedCount());
+    }
+
+    @Test
+    public void testKeysAreIndependent() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 2, 8);
+        service.submit("stats", () -> "stats", results::add);
+        service.submit("graph", () -> "graph", results::add);
+        runPosted();
+        runPosted();
+        assertEquals(2, results.size());
+        assertTrue(results.contains("stats"));
+        assertTrue(results.contains("graph"));
+    }
+
+    @Test
+    public void testCancelDropsPostedResult() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 1, 8);
+        StatsComputationService.Job<String> job = service.submit("stats", () -> "old", results::add);
+        Runnable posted = mainThread.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(posted);
+
+        // the tab was left after the job was done, before its result reached the main thread
+        service.cancel("stats");
+        posted.run();
+        assertTrue(results.isEmpty());
+        assertFalse(job.isCancelled());
+        assertEquals(1, service.getMetrics().getCancelledCount());
+        assertEquals(0, service.getMetrics().getCompletedCount());
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.submit("a", () -> {
+            started.countDown();
+            assertTrue(release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return "a";
+        }, results::add);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        StatsComputationService.Job<String> queued = service.submit("b", () -> "b", results::add);
+        StatsComputationService.Job<String> rejected = service.submit("c", () -> "c", results::add);
+        assertTrue(rejected.isCancelled());
+        assertFalse(service.isPending("c"));
+        assertEquals(1, service.getMetrics().getRejectedCount());
+
+        // a cancelled job leaves the queue, making room for another
+        queued.cancel(true);
+        assertFalse(service.submit("d", () -> "d", results::add).isCancelled());
+
+        release.countDown();
+        runPosted();
+        runPosted();
+        assertEquals(2, results.size());
+        assertTrue(results.contains("a"));
+        assertTrue(results.contains("d"));
+        assertEquals(1, service.getMetrics().getRejectedCount());
+        assertEquals(1, service.getMetrics().getCancelledCount());
+    }
+
+    @Test
+    public void testFailureIsCounted() throws Exception {
+        StatsComputationService service = new StatsComputationService(mainThread::add, 1, 8);
+        StatsComputationService.Job<String> job = service.submit("stats", () -> {
+            throw new IllegalStateException("no trials");
+        }, results::add);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!job.isDone() || service.isPending("stats")) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        assertTrue(mainThread.isEmpty());
+        assertEquals(1, service.getMetrics().getFailedCount());
+    }
+}
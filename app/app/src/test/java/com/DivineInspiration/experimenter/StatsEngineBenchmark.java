@@ -0,0 +1,52 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsMaker;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the single pass {@link StatsEngine} against the separate StatsMaker calc methods
+ * that the stats view used to call one after another.
+ */
+@Category(Benchmark.class)
+public class StatsEngineBenchmark {
+
+    private static final int TRIALS = 50_000;
+
+    private List<Trial> mockTrials() {
+        Random random = new Random(7);
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < TRIALS; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U", "Bob", "EXP", LocalDate.now(), random.nextDouble() * 100, null));
+        }
+        return trials;
+    }
+
+    @Test
+    public void benchmarkSummary() {
+        List<Trial> trials = mockTrials();
+
+        assertEquals(StatsMaker.calcMedian(trials), StatsEngine.summarize(trials).getMedian(), 1e-9);
+
+        double calc = BenchmarkTimer.time("StatsMaker calc methods, " + TRIALS + " trials", 5, 20, () -> new double[]{
+                StatsMaker.calcSum(trials),
+                StatsMaker.calcMean(trials),
+                StatsMaker.calcStd(trials),
+                StatsMaker.calcMedian(trials),
+                StatsMaker.calcQuartiles(trials)[0]
+        });
+        double engine = BenchmarkTimer.time("StatsEngine.summarize, " + TRIALS + " trials", 5, 20, () -> StatsEngine.summarize(trials));
+        BenchmarkTimer.assertFaster("StatsEngine.summarize", engine, "StatsMaker calc methods", calc);
+    }
+}
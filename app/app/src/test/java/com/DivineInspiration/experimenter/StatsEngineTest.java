@@ -0,0 +1,165 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsMaker;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsSummary;
+import com.DivineInspiration.experimenter.Model.QuantileSketch;
+import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.NonNegativeTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StatsEngineTest {
+
+    private List<Trial> mockMeasurementTrials(int n, long seed) {
+        Random random = new Random(seed);
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U" + (i % 7), "Bob", "EXP", LocalDate.now(), random.nextGaussian() * 10 + 50, null));
+        }
+        return trials;
+    }
+
+    @Test
+    public void testKnownValues() {
+        List<Trial> trials = new ArrayList<>();
+        int[] counts = {7, 1, 3, 9, 5};
+        for (int c : counts) {
+            trials.add(new NonNegativeTrial("T" + c, "U", "Bob", "EXP", LocalDate.now(), c, null));
+        }
+        StatsSummary summary = StatsEngine.summarize(trials);
+
+        assertEquals(5, summary.getCount());
+        assertEquals(25, summary.getSum(), 1e-9);
+        assertEquals(5, summary.getMean(), 1e-9);
+        assertEquals(8, summary.getVariance(), 1e-9);
+        assertEquals(1, summary.getMin(), 1e-9);
+        assertEquals(2, summary.getQ1(), 1e-9);
+        assertEquals(5, summary.getMedian(), 1e-9);
+        assertEquals(8, summary.getQ3(), 1e-9);
+        assertEquals(9, summary.getMax(), 1e-9);
+    }
+
+    @Test
+    public void testMatchesStatsMaker() {
+        for (int n : new int[]{3, 4, 101, 1000}) {
+            List<Trial> trials = mockMeasurementTrials(n, n);
+            StatsSummary summary = StatsEngine.summarize(trials);
+            double[] quartiles = StatsMaker.calcQuartiles(trials);
+
+            assertEquals(StatsMaker.calcSum(trials), summary.getSum(), 1e-6);
+            assertEquals(StatsMaker.calcMean(trials), summary.getMean(), 1e-9);
+            assertEquals(StatsMaker.calcStd(trials), summary.getStd(), 1e-9);
+            assertEquals(StatsMaker.calcMedian(trials), summary.getMedian(), 1e-12);
+            assertEquals(quartiles[0], summary.getQ1(), 1e-12);
+            assertEquals(quartiles[1], summary.getQ3(), 1e-12);
+            assertEquals(quartiles[2], summary.getMin(), 1e-12);
+            assertEquals(quartiles[3], summary.getMax(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testBinomial() {
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            trials.add(new BinomialTrial("T" + i, "U", "Bob", "EXP", LocalDate.now(), i % 4 == 0, null));
+        }
+        StatsSummary summary = StatsEngine.summarize(trials);
+        double[] binomial = StatsMaker.calcBinomialStats(trials);
+
+        assertEquals((int) binomial[0], summary.getPassCount());
+        assertEquals((int) binomial[1], summary.getFailCount());
+        assertEquals(binomial[2], summary.getPassRatio(), 1e-9);
+    }
+
+    @Test
+    public void testIncrementalAdds() {
+        List<Trial> trials = mockMeasurementTrials(500, 42);
+        StatsEngine engine = new StatsEngine();
+        engine.addTrials(trials.subList(0, 200));
+        StatsSummary partial = engine.summarize();
+        assertEquals(200, partial.getCount());
+
+        engine.addTrials(trials.subList(200, 500));
+        StatsSummary whole = engine.summarize();
+        StatsSummary direct = StatsEngine.summarize(trials);
+        assertEquals(direct.getMedian(), whole.getMedian(), 1e-12);
+        assertEquals(direct.getVariance(), whole.getVariance(), 1e-9);
+        assertTrue(whole.getMin() <= whole.getQ1() && whole.getQ3() <= whole.getMax());
+    }
+
+    @Test
+    public void testRemove() {
+        List<Trial> trials = mockMeasurementTrials(300, 7);
+        StatsEngine engine = new StatsEngine();
+        engine.addTrials(trials);
+        // removing before and after a summarize, the buffer is unsorted then sorted
+        for (int i = 0; i < 50; i++) {
+            assertTrue(engine.removeTrial(trials.get(i)));
+        }
+        engine.summarize();
+        for (int i = 50; i < 100; i++) {
+            assertTrue(engine.removeTrial(trials.get(i)));
+        }
+        assertFalse(engine.remove(-1000));
+        // values added after a summarize are inserted in order
+        engine.addTrials(trials.subList(0, 20));
+
+        List<Trial> kept = new ArrayList<>(trials.subList(100, 300));
+        kept.addAll(trials.subList(0, 20));
+        StatsSummary incremental = engine.summarize();
+        StatsSummary direct = StatsEngine.summarize(kept);
+        assertEquals(direct.getCount(), incremental.getCount());
+        assertEquals(direct.getMean(), incremental.getMean(), 1e-9);
+        assertEquals(direct.getVariance(), incremental.getVariance(), 1e-6);
+        assertEquals(direct.getMedian(), incremental.getMedian(), 1e-12);
+        assertEquals(direct.getMin(), incremental.getMin(), 1e-12);
+        assertEquals(direct.getMax(), incremental.getMax(), 1e-12);
+
+        for (Trial trial : kept) {
+            engine.removeTrial(trial);
+        }
+        assertEquals(0, engine.size());
+        assertTrue(Double.isNaN(engine.summarize().getMean()));
+    }
+
+    @Test
+    public void testApproximateSummary() {
+        List<Trial> trials = mockMeasurementTrials(20_000, 3);
+        TrialColumns columns = TrialColumns.of(trials);
+        StatsSummary exact = StatsEngine.summarize(columns);
+        StatsSummary approximate = StatsEngine.summarizeApproximate(columns, QuantileSketch.DEFAULT_COMPRESSION);
+
+        assertFalse(exact.isApproximate());
+        assertTrue(approximate.isApproximate());
+        // the moments and bounds are still exact
+        assertEquals(exact.getCount(), approximate.getCount());
+        assertEquals(exact.getMean(), approximate.getMean(), 1e-9);
+        assertEquals(exact.getVariance(), approximate.getVariance(), 1e-6);
+        assertEquals(exact.getMin(), approximate.getMin(), 0);
+        assertEquals(exact.getMax(), approximate.getMax(), 0);
+        // a rank error of 1% is about 0.25 of the standard deviation of 10 around the middle
+        assertEquals(exact.getQ1(), approximate.getQ1(), 0.25);
+        assertEquals(exact.getMedian(), approximate.getMedian(), 0.25);
+        assertEquals(exact.getQ3(), approximate.getQ3(), 0.25);
+    }
+
+    @Test
+    public void testEmpty() {
+        StatsSummary summary = new StatsEngine().summarize();
+        assertEquals(0, summary.getCount());
+        assertTrue(Double.isNaN(summary.getMean()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Map.TrialClusterIndex;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times building the cluster index over 100k locations, and clustering viewports as the camera pans and zooms.
+ */
+@Category(Benchmark.class)
+public class TrialClusterIndexBenchmark {
+
+    private static final int POINTS = 100_000;
+
+    @Test
+    public void benchmarkClusters() {
+        Random random = new Random(17);
+        int[] items = new int[POINTS];
+        float[] latitudes = new float[POINTS];
+        float[] longitudes = new float[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            items[i] = i;
+            // most trials around a few cities, the rest anywhere
+            if (i % 4 == 0) {
+                latitudes[i] = (float) (random.nextDouble() * 140 - 70);
+                longitudes[i] = (float) (random.nextDouble() * 360 - 180);
+            } else {
+                int city = random.nextInt(8);
+                latitudes[i] = (float) (40 + city * 2 + random.nextGaussian() * 0.2);
+                longitudes[i] = (float) (-120 + city * 5 + random.nextGaussian() * 0.2);
+            }
+        }
+        TrialClusterIndex index = new TrialClusterIndex(items, latitudes, longitudes, POINTS);
+
+        int total = 0;
+        for (TrialClusterIndex.Cluster cluster : index.clusters(-85, -180, 85, 180, 2)) {
+            total += cluster.getCount();
+        }
+        assertEquals(POINTS, total);
+
+        double build = BenchmarkTimer.time("TrialClusterIndex build, " + POINTS + " points", 3, 10,
+                () -> new TrialClusterIndex(items, latitudes, longitudes, POINTS));
+        double world = BenchmarkTimer.time("TrialClusterIndex.clusters whole world, zoom 2, " + POINTS + " points", 10, 200,
+                () -> index.clusters(-85, -180, 85, 180, 2));
+        int[] step = {0};
+        double pan = BenchmarkTimer.time("TrialClusterIndex.clusters pan at zoom 8, " + POINTS + " points", 10, 500, () -> {
+            double west = -121 + (step[0]++ % 100) * 0.3;
+            return index.clusters(40, west, 42, west + 2.5, 8);
+        });
+        double zoom = BenchmarkTimer.time("TrialClusterIndex.clusters zoom 3 to 15, " + POINTS + " points", 10, 500, () -> {
+            float level = 3 + (step[0]++ % 13);
+            double span = 360 / Math.pow(2, level);
+            return index.clusters(40 - span / 4, -120 - span / 2, 40 + span / 4, -120 + span / 2, level);
+        });
+        // a camera move reads the built index, far less work than building it again
+        BenchmarkTimer.assertFaster("clustering the whole world", world * 10, "building the index", build);
+        BenchmarkTimer.assertFaster("a pan", pan * 10, "building the index", build);
+        BenchmarkTimer.assertFaster("a zoom", zoom * 10, "building the index", build);
+    }
+}
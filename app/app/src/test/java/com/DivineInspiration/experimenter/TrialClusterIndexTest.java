@@ -0,0 +1,174 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Map.TrialClusterIndex;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrialClusterIndexTest {
+
+    private static TrialClusterIndex index(double[][] locations) {
+        int[] items = new int[locations.length];
+        float[] latitudes = new float[locations.length];
+        float[] longitudes = new float[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            items[i] = i;
+            latitudes[i] = (float) locations[i][0];
+            longitudes[i] = (float) locations[i][1];
+        }
+        return new TrialClusterIndex(items, latitudes, longitudes, locations.length);
+    }
+
+    private static double[][] randomLocations(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] locations = new double[count][];
+        for (int i = 0; i < count; i++) {
+            locations[i] = new double[]{random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180};
+        }
+        return locations;
+    }
+
+    private static int total(List<TrialClusterIndex.Cluster> clusters) {
+        int total = 0;
+        for (TrialClusterIndex.Cluster cluster : clusters) {
+            total += cluster.getCount();
+        }
+        return total;
+    }
+
+    @Test
+    public void testWholeWorldHoldsEveryLocation() {
+        TrialClusterIndex index = index(randomLocations(5000, 1));
+        for (int zoom = 0; zoom <= 3; zoom++) {
+            List<TrialClusterIndex.Cluster> clusters = index.clusters(-85, -180, 85, 180, zoom);
+            assertEquals(5000, total(clusters));
+        }
+        // a 4x4 grid at zoom 0
+        assertTrue(index.clusters(-85, -180, 85, 180, 0).size() <= 16);
+    }
+
+    @Test
+    public void testNearbyLocationsGroupUntilZoomedIn() {
+        // two spots in Edmonton, about 4 km apart, and one in Calgary
+        TrialClusterIndex index = index(new double[][]{
+                {53.5461, -113.4938}, {53.5462, -113.4937}, {53.5232, -113.5263}, {51.0447, -114.0719}});
+
+        List<TrialClusterIndex.Cluster> far = index.clusters(40, -130, 60, -100, 3);
+        assertEquals(1, far.size());
+        assertEquals(4, far.get(0).getCount());
+        assertFalse(far.get(0).isLeaf());
+        assertEquals(-1, far.get(0).getItem());
+        // the centroid sits between the locations
+        assertTrue(far.get(0).getLatitude() > 51 && far.get(0).getLatitude() < 53.6);
+
+        List<TrialClusterIndex.Cluster> city = index.clusters(53.4, -113.7, 53.7, -113.3, 10);
+        assertEquals(3, total(city));
+        assertEquals(2, city.size());
+
+        List<TrialClusterIndex.Cluster> street = index.clusters(53.5459, -113.4941, 53.5464, -113.4934, 21);
+        assertEquals(2, street.size());
+        for (TrialClusterIndex.Cluster cluster : street) {
+            assertTrue(cluster.isLeaf());
+            assertTrue(cluster.getItem() == 0 || cluster.getItem() == 1);
+        }
+    }
+
+    @Test
+    public void testViewportMatchesBruteForce() {
+        double[][] locations = randomLocations(20000, 2);
+        TrialClusterIndex index = index(locations);
+        Random random = new Random(3);
+        for (int i = 0; i < 50; i++) {
+            double south = random.nextDouble() * 100 - 60;
+            double west = random.nextDouble() * 300 - 180;
+            double north = south + random.nextDouble() * 20;
+            double east = west + random.nextDouble() * 50;
+            int zoom = 3 + random.nextInt(4);
+            List<TrialClusterIndex.Cluster> clusters = index.clusters(south, west, north, east, zoom);
+            int inside = 0;
+            for (double[] location : locations) {
+                if (location[0] >= south && location[0] <= north && location[1] >= west && location[1] <= east) {
+                    inside++;
+                }
+            }
+            // whole cells are returned, so the clusters hold at least what is in view
+            assertTrue(total(clusters) >= inside);
+        }
+    }
+
+    @Test
+    public void testAntimeridian() {
+        TrialClusterIndex index = index(new double[][]{{10, 179.5}, {10, -179.5}, {10, 0}});
+        List<TrialClusterIndex.Cluster> clusters = index.clusters(0, 170, 20, -170, 6);
+        assertEquals(2, total(clusters));
+    }
+
+    @Test
+    public void testHugeViewportIsCoarsened() {
+        TrialClusterIndex index = index(randomLocations(1000, 4));
+        List<TrialClusterIndex.Cluster> clusters = index.clusters(-85, -180, 85, 180, 18);
+        assertTrue(clusters.size() <= TrialClusterIndex.MAX_CELLS);
+        assertEquals(1000, total(clusters));
+    }
+
+    @Test
+    public void testPanOnlyChangesNewCells() {
+        TrialClusterIndex index = index(randomLocations(20000, 5));
+        Map<Long, TrialClusterIndex.Cluster> shown = new HashMap<>();
+        for (TrialClusterIndex.Cluster cluster : index.clusters(0, 0, 20, 40, 5)) {
+            shown.put(cluster.getKey(), cluster);
+        }
+        // half a screen to the east
+        List<TrialClusterIndex.Cluster> next = index.clusters(0, 20, 20, 60, 5);
+        TrialClusterIndex.Diff diff = TrialClusterIndex.diff(shown, next);
+        assertTrue(diff.getAdded().size() < next.size());
+        assertTrue(diff.getRemoved().size() < shown.size());
+        for (Long key : diff.getRemoved()) {
+            shown.remove(key);
+        }
+        for (TrialClusterIndex.Cluster cluster : diff.getAdded()) {
+            shown.put(cluster.getKey(), cluster);
+        }
+        assertEquals(next.size(), shown.size());
+
+        // same camera, nothing to do
+        diff = TrialClusterIndex.diff(shown, index.clusters(0, 20, 20, 60, 5));
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testOfTrialsSkipsIgnoredAndUnlocated() {
+        List<Trial> trials = new ArrayList<>();
+        trials.add(new CountTrial("T0", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, new LatLng(53.5, -113.5)));
+        trials.add(new CountTrial("T1", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, null));
+        Trial ignored = new CountTrial("T2", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, new LatLng(10, 10));
+        ignored.setIgnored(true);
+        trials.add(ignored);
+        trials.add(new CountTrial("T3", "U1", "Bob", "E1", LocalDate.of(2021, 3, 1), 1, new LatLng(-30, 150)));
+
+        TrialClusterIndex index = TrialClusterIndex.of(trials);
+        assertEquals(2, index.size());
+        List<TrialClusterIndex.Cluster> clusters = index.clusters(-85, -180, 85, 180, 2);
+        assertEquals(2, clusters.size());
+        List<Integer> items = new ArrayList<>();
+        for (TrialClusterIndex.Cluster cluster : clusters) {
+            items.add(cluster.getItem());
+        }
+        assertTrue(items.contains(0));
+        assertTrue(items.contains(3));
+    }
+}
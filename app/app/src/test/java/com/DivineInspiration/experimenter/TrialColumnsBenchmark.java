@@ -0,0 +1,76 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the memory and summary throughput of {@link TrialColumns} against a List of {@link Trial}.
+ */
+@Category(Benchmark.class)
+public class TrialColumnsBenchmark {
+
+    private static final int TRIALS = 100_000;
+
+    private List<Trial> mockTrials() {
+        Random random = new Random(11);
+        LocalDate start = LocalDate.of(2021, 1, 1);
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < TRIALS; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U" + random.nextInt(200), "Bob", "EXP",
+                    start.plusDays(random.nextInt(90)), random.nextDouble() * 100,
+                    new LatLng(random.nextDouble() * 10, random.nextDouble() * 10)));
+        }
+        return trials;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void benchmarkMemory() {
+        long before = usedMemory();
+        List<Trial> trials = mockTrials();
+        long listBytes = usedMemory() - before;
+
+        before = usedMemory();
+        TrialColumns columns = TrialColumns.of(trials);
+        long columnBytes = usedMemory() - before;
+
+        assertTrue("columns held " + columnBytes + " bytes, the list " + listBytes, columnBytes * 4 < listBytes);
+        BenchmarkTimer.sink = new Object[]{trials, columns};
+    }
+
+    @Test
+    public void benchmarkSummary() {
+        List<Trial> trials = mockTrials();
+        TrialColumns columns = TrialColumns.of(trials);
+
+        assertEquals(StatsEngine.summarize(trials).getMean(), StatsEngine.summarize(columns).getMean(), 1e-9);
+
+        double list = BenchmarkTimer.time("StatsEngine.summarize(List<Trial>), " + TRIALS + " trials", 5, 20, () -> StatsEngine.summarize(trials));
+        double column = BenchmarkTimer.time("StatsEngine.summarize(TrialColumns), " + TRIALS + " trials", 5, 20, () -> StatsEngine.summarize(columns));
+        double build = BenchmarkTimer.time("TrialColumns.of, " + TRIALS + " trials", 2, 10, () -> TrialColumns.of(trials));
+        // both sort the same doubles, reading the columns must not cost more than the type switch per trial
+        BenchmarkTimer.assertFaster("StatsEngine.summarize(TrialColumns)", column, "StatsEngine.summarize(List<Trial>) and a margin", list * 1.5);
+        BenchmarkTimer.assertFaster("TrialColumns.of", build, "StatsEngine.summarize(List<Trial>) and a margin", list * 1.5);
+    }
+}
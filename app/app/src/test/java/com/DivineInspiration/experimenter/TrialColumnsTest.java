@@ -0,0 +1,136 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsSummary;
+import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
+import com.DivineInspiration.experimenter.Model.Trial.CountTrial;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+import com.DivineInspiration.experimenter.Model.Trial.TrialColumns;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrialColumnsTest {
+
+    private final LocalDate day = LocalDate.of(2021, 3, 1);
+
+    @Test
+    public void testColumns() {
+        List<Trial> trials = new ArrayList<>();
+        trials.add(new MeasurementTrial("T0", "U1", "Bob", "EXP", day, 2.5, new LatLng(53.5, -113.5)));
+        trials.add(new MeasurementTrial("T1", "U2", "Amy", "EXP", day.plusDays(2), 4, null));
+        trials.add(new MeasurementTrial("T2", "U1", "Bob", "EXP", day.plusDays(1), 6, null));
+
+        TrialColumns columns = TrialColumns.of(trials);
+        assertEquals(Trial.MEASURE, columns.getTrialType());
+        assertEquals(3, columns.size());
+        assertEquals(2.5, columns.getValue(0), 0);
+        assertEquals(day.toEpochDay(), columns.getEpochDay(0));
+        assertTrue(columns.hasLocation(0));
+        assertEquals(53.5f, columns.getLatitude(0), 0);
+        assertFalse(columns.hasLocation(1));
+
+        // owners are dictionary encoded
+        assertEquals(2, columns.ownerCount());
+        assertEquals(columns.getOwner(0), columns.getOwner(2));
+        assertEquals("U2", columns.getOwnerId(columns.getOwner(1)));
+    }
+
+    @Test
+    public void testIgnoredAndPass() {
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            trials.add(new BinomialTrial("T" + i, "U" + i, "Bob", "EXP", day, i % 2 == 0, null));
+        }
+        trials.get(3).setIgnored(true);
+
+        TrialColumns columns = TrialColumns.of(trials);
+        assertTrue(columns.isPass(0));
+        assertFalse(columns.isPass(1));
+        assertTrue(columns.isIgnored(3));
+        assertEquals(3, columns.activeCount());
+        assertArrayEquals(new double[]{1, 0, 1}, columns.activeValues(), 0);
+
+        columns.setIgnored(0, true);
+        assertEquals(2, columns.activeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedTypes() {
+        TrialColumns columns = new TrialColumns(1);
+        columns.add(new CountTrial("T0", "U", "Bob", "EXP", day, 1, null));
+        columns.add(new MeasurementTrial("T1", "U", "Bob", "EXP", day, 1, null));
+    }
+
+    @Test
+    public void testGrowth() {
+        TrialColumns columns = new TrialColumns(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, columns.add(new CountTrial("T" + i, "U", "Bob", "EXP", day, i, null)));
+        }
+        assertEquals(100, columns.size());
+        assertEquals(99, columns.getValue(99), 0);
+    }
+
+    @Test
+    public void testSummaryMatchesList() {
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            trials.add(new MeasurementTrial("T" + i, "U", "Bob", "EXP", day, (i * 7) % 13, null));
+        }
+        trials.get(5).setIgnored(true);
+        TrialColumns columns = TrialColumns.of(trials);
+        trials.remove(5);
+
+        StatsSummary fromList = StatsEngine.summarize(trials);
+        StatsSummary fromColumns = StatsEngine.summarize(columns);
+        assertEquals(fromList.getCount(), fromColumns.getCount());
+        assertEquals(fromList.getMean(), fromColumns.getMean(), 1e-9);
+        assertEquals(fromList.getQ1(), fromColumns.getQ1(), 0);
+        assertEquals(fromList.getMedian(), fromColumns.getMedian(), 0);
+        assertEquals(fromList.getQ3(), fromColumns.getQ3(), 0);
+    }
+
+    @Test
+    public void testRowsByDate() {
+        List<Trial> trials = new ArrayList<>();
+        trials.add(new CountTrial("T0", "U", "Bob", "EXP", day.plusDays(3), 1, null));
+        trials.add(new CountTrial("T1", "U", "Bob", "EXP", day, 1, null));
+        trials.add(new CountTrial("T2", "U", "Bob", "EXP", day.plusDays(1), 1, null));
+        trials.add(new CountTrial("T3", "U", "Bob", "EXP", day, 1, null));
+        trials.get(2).setIgnored(true);
+
+        assertArrayEquals(new int[]{1, 3, 0}, TrialColumns.of(trials).rowsByDate());
+        assertEquals(0, new TrialColumns(4).rowsByDate().length);
+    }
+
+    @Test
+    public void testSnapshot() {
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            trials.add(new BinomialTrial("T" + i, "U" + i, "Bob", "EXP", day.plusDays(i), i % 2 == 0, null));
+        }
+        TrialColumns columns = TrialColumns.of(trials);
+        TrialColumns snapshot = columns.snapshot();
+
+        // later changes to the columns do not reach the snapshot
+        columns.add(new BinomialTrial("T4", "U4", "Bob", "EXP", day, true, null));
+        columns.setIgnored(0, true);
+        assertEquals(4, snapshot.size());
+        assertFalse(snapshot.isIgnored(0));
+        assertTrue(snapshot.isPass(2));
+        assertEquals(Trial.BINOMIAL, snapshot.getTrialType());
+        assertArrayEquals(new double[]{1, 0, 1, 0}, snapshot.activeValues(), 0);
+        assertArrayEquals(new int[]{0, 1, 2, 3}, snapshot.rowsByDate());
+    }
+}
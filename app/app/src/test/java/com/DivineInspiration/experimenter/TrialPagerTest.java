@@ -0,0 +1,131 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Activity.UI.Stats.StatsEngine;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.TrialPageSource;
+import com.DivineInspiration.experimenter.Controller.TrialPager;
+import com.DivineInspiration.experimenter.Model.Trial.MeasurementTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrialPagerTest {
+
+    /**
+     * Serves pages from a list sorted by trial id, the same order as the Firestore source
+     */
+    private static class InMemoryPageSource implements TrialPageSource {
+        final List<Trial> trials;
+        int requests = 0;
+        boolean fail = false;
+
+        InMemoryPageSource(List<Trial> trials) {
+            this.trials = trials;
+            trials.sort((t1, t2) -> t1.getTrialID().compareTo(t2.getTrialID()));
+        }
+
+        @Override
+        public void loadPage(String experimentId, String afterTrialId, int pageSize, TrialManager.OnTrialListReadyListener callback) {
+            requests++;
+            if (fail) {
+                callback.onTrialsReady(null);
+                return;
+            }
+            List<Trial> page = new ArrayList<>();
+            for (Trial t : trials) {
+                if (page.size() == pageSize) {
+                    break;
+                }
+                if (t.getTrialExperimentID().equals(experimentId) && (afterTrialId == null || t.getTrialID().compareTo(afterTrialId) > 0)) {
+                    page.add(t);
+                }
+            }
+            callback.onTrialsReady(page);
+        }
+    }
+
+    private InMemoryPageSource source;
+
+    @Before
+    public void setUp() {
+        List<Trial> trials = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            trials.add(new MeasurementTrial(String.format("T%05d", i), "U" + (i % 10), "Bob", "EXP", LocalDate.of(2021, 3, 1), i, null));
+        }
+        trials.add(new MeasurementTrial("T00007b", "U1", "Bob", "OTHER", LocalDate.of(2021, 3, 1), 1, null));
+        source = new InMemoryPageSource(trials);
+    }
+
+    @Test
+    public void testAllPagesInOrder() {
+        List<Integer> sizes = new ArrayList<>();
+        List<Boolean> more = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        StatsEngine folded = new StatsEngine();
+
+        TrialPager pager = new TrialPager(source, "EXP", 500);
+        pager.start((page, columns, hasMore) -> {
+            sizes.add(page.size());
+            more.add(hasMore);
+            for (Trial t : page) {
+                assertTrue(seen.add(t.getTrialID()));
+                folded.addTrial(t);
+            }
+        });
+
+        assertEquals("[500, 500, 234]", sizes.toString());
+        assertEquals("[true, true, false]", more.toString());
+        assertEquals(1234, pager.getColumns().size());
+        assertEquals(616.5, folded.summarize().getMedian(), 1e-9);
+    }
+
+    @Test
+    public void testBannedOwnersIgnored() {
+        TrialPager pager = new TrialPager(source, "EXP", 100);
+        pager.getColumns().banOwner("U3");
+        List<Trial> delivered = new ArrayList<>();
+        pager.start((page, columns, hasMore) -> delivered.addAll(page));
+
+        for (Trial t : delivered) {
+            assertEquals(t.getTrialUserID().equals("U3"), t.isIgnored());
+        }
+        assertEquals(1234 - 124, pager.getColumns().activeCount());
+    }
+
+    @Test
+    public void testCancel() {
+        TrialPager pager = new TrialPager(source, "EXP", 100);
+        List<Integer> sizes = new ArrayList<>();
+        pager.start((page, columns, hasMore) -> {
+            sizes.add(page.size());
+            pager.cancel();
+        });
+        assertEquals(1, sizes.size());
+        assertEquals(1, source.requests);
+        assertTrue(pager.isCancelled());
+    }
+
+    @Test
+    public void testFailure() {
+        source.fail = true;
+        boolean[] called = {false};
+        new TrialPager(source, "EXP", 100).start((page, columns, hasMore) -> {
+            called[0] = true;
+            assertNull(page);
+            assertFalse(hasMore);
+        });
+        assertTrue(called[0]);
+    }
+}
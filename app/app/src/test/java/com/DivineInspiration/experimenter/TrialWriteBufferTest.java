@@ -0,0 +1,178 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.TrialManager;
+import com.DivineInspiration.experimenter.Controller.TrialWriteBuffer;
+import com.DivineInspiration.experimenter.Model.Trial.BinomialTrial;
+import com.DivineInspiration.experimenter.Model.Trial.Trial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrialWriteBufferTest {
+
+    private InMemoryDocumentStore store;
+    private TrialManager manager;
+    private final List<Trial> written = new ArrayList<>();
+    private final List<Trial> failed = new ArrayList<>();
+    private final TrialWriteBuffer.OnTrialWrittenListener callback = (trial, successful) -> {
+        synchronized (this) {
+            (successful ? written : failed).add(trial);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        manager = new TrialManager(store);
+    }
+
+    private static Trial trial(int i) {
+        return new BinomialTrial("T" + i, "U" + (i % 7), "name", "E1", LocalDate.of(2021, 3, 1), i % 3 == 0, null);
+    }
+
+    @Test
+    public void testFlushOnSize() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 100, 0);
+        for (int i = 0; i < 250; i++) {
+            buffer.add(trial(i), callback);
+        }
+        // two full batches went out, the rest waits
+        assertEquals(200, store.count("Trials"));
+        assertEquals(50, buffer.pendingCount());
+        assertEquals(2, buffer.getMetrics().getBatchCount());
+
+        buffer.flush();
+        assertEquals(250, store.count("Trials"));
+        assertEquals(250, written.size());
+        assertEquals(0, buffer.pendingCount());
+        assertEquals(3, buffer.getMetrics().getBatchCount());
+        assertEquals(100, buffer.getMetrics().getLargestBatch());
+        assertEquals(250.0 / 3, buffer.getMetrics().getMeanBatchSize(), 1e-9);
+    }
+
+    @Test
+    public void testBatchedTrialsReadBack() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 500, 0);
+        for (int i = 0; i < 300; i++) {
+            buffer.add(trial(i), callback);
+        }
+        buffer.flush();
+        // the trials, then the rollup of their experiment and its one day
+        assertEquals(302, store.getWriteCount());
+        // new trials are not read, only the rollup and the day are
+        assertEquals(2, store.getReadCount());
+        assertEquals(1, buffer.getMetrics().getBatchCount());
+
+        // the trials read back the same as ones added one by one
+        List<Trial> read = new ArrayList<>();
+        manager.queryExperimentTrials("E1", read::addAll);
+        assertEquals(300, read.size());
+        assertEquals(100, read.stream().filter(t -> ((BinomialTrial) t).getPass()).count());
+    }
+
+    @Test
+    public void testBatchSizeIsCapped() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 10000, 0);
+        for (int i = 0; i < 1200; i++) {
+            buffer.add(trial(i), callback);
+        }
+        buffer.flush();
+        assertEquals(1200, store.count("Trials"));
+        assertEquals(3, buffer.getMetrics().getBatchCount());
+        // the rollup and the one day share the transaction
+        assertEquals(498, buffer.getMetrics().getLargestBatch());
+        assertEquals(0, buffer.getMetrics().getFailedBatchCount());
+        assertEquals(1200, rollupCount("E1"));
+    }
+
+    @Test
+    public void testRewrittenTrialIsCountedOnce() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 500, 0);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(trial(i), callback);
+        }
+        buffer.flush();
+        // T1 again in a later batch, T2 again twice in the same one
+        buffer.add(trial(1), true, callback);
+        buffer.flush();
+        buffer.add(trial(2), true, callback);
+        buffer.add(trial(2), true, callback);
+        buffer.flush();
+        assertEquals(13, written.size());
+        assertEquals(10, rollupCount("E1"));
+    }
+
+    @Test
+    public void testOldDaysMoveTrialsToAnotherTransaction() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 500, 0);
+        for (int i = 0; i < 300; i++) {
+            buffer.add(new BinomialTrial("T" + i, "U1", "name", "E1", LocalDate.of(2021, 1, 1).plusDays(i), true, null), callback);
+        }
+        buffer.flush();
+        // every trial moves to the one day: the old days need a write each
+        for (int i = 0; i < 300; i++) {
+            buffer.add(trial(i), true, callback);
+        }
+        buffer.flush();
+        assertEquals(600, written.size());
+        assertEquals(0, buffer.getMetrics().getFailedBatchCount());
+        assertTrue(buffer.getMetrics().getBatchCount() > 2);
+        assertEquals(300, rollupCount("E1"));
+        assertEquals(100, rollupPassCount("E1"));
+    }
+
+    private long rollupCount(String experimentId) {
+        long[] count = {-1};
+        manager.queryRollup(experimentId, rollup -> count[0] = rollup.getTotal().getCount());
+        return count[0];
+    }
+
+    private long rollupPassCount(String experimentId) {
+        long[] count = {-1};
+        manager.queryRollup(experimentId, rollup -> count[0] = rollup.getTotal().getPassCount());
+        return count[0];
+    }
+
+    @Test
+    public void testFlushOnWindow() throws InterruptedException {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 500, 50);
+        CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            buffer.add(trial(i), (trial, successful) -> latch.countDown());
+        }
+        assertEquals(0, store.count("Trials"));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(3, store.count("Trials"));
+        assertEquals(1, buffer.getMetrics().getBatchCount());
+    }
+
+    @Test
+    public void testFailedBatch() {
+        TrialWriteBuffer buffer = new TrialWriteBuffer(manager, store, 500, 0);
+        store.setFailureRate(1);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(trial(i), callback);
+        }
+        buffer.flush();
+        assertEquals(5, failed.size());
+        assertTrue(written.isEmpty());
+        assertEquals(1, buffer.getMetrics().getFailedBatchCount());
+        assertEquals(0, store.count("Trials"));
+
+        // an empty flush does nothing
+        buffer.flush();
+        assertEquals(1, buffer.getMetrics().getBatchCount());
+        assertFalse(buffer.getMetrics().getMaxCommitMillis() < 0);
+    }
+}
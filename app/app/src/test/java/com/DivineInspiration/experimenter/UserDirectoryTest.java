@@ -0,0 +1,227 @@
+package com.DivineInspiration.experimenter;
+
+import com.DivineInspiration.experimenter.Controller.Store.DocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.InMemoryDocumentStore;
+import com.DivineInspiration.experimenter.Controller.Store.StoreQuery;
+import com.DivineInspiration.experimenter.Controller.UserDirectory;
+import com.DivineInspiration.experimenter.Controller.UserManager;
+import com.DivineInspiration.experimenter.Model.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserDirectoryTest {
+
+    private InMemoryDocumentStore store;
+    private List<User> found;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryDocumentStore();
+        for (int i = 0; i < 3000; i++) {
+            Map<String, Object> contacts = new HashMap<>();
+            contacts.put("CityName", "Edmonton");
+            contacts.put("Email", "u" + i + "@mail.com");
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("UserName", "User " + i);
+            doc.put("UserDescription", "");
+            doc.put("Contacts", contacts);
+            store.set("Users/" + String.format("U%04d", i), doc, false, null);
+        }
+        store.resetCounts();
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(String.format("U%04d", i));
+        }
+        return ids;
+    }
+
+    private static List<String> idsOf(List<User> users) {
+        List<String> ids = new ArrayList<>();
+        for (User user : users) {
+            ids.add(user.getUserId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testOneQueryCanNotHoldEveryId() {
+        List<?>[] result = new List<?>[]{Collections.emptyList()};
+        store.query(new StoreQuery("Users").whereIn(StoreQuery.DOCUMENT_ID, ids(0, 11)), documents -> result[0] = documents);
+        assertNull(result[0]);
+    }
+
+    @Test
+    public void testChunksKeepOrder() {
+        UserDirectory directory = new UserDirectory(store, 5000, 4);
+        List<String> asked = ids(0, 2000);
+        Collections.reverse(asked);
+        // repeats and unknown ids are fine
+        asked.add("U0001");
+        asked.add("Nobody");
+        directory.getUsers(asked, users -> found = users);
+
+        assertEquals(asked.subList(0, 2000), idsOf(found));
+        // 2001 distinct ids, 10 per query
+        assertEquals(201, directory.getRoundTripCount());
+        assertEquals(2000, store.getReadCount());
+    }
+
+    @Test
+    public void testCachedIdsAreNotRead() {
+        UserDirectory directory = new UserDirectory(store, 100, 4);
+        directory.getUsers(ids(0, 50), users -> found = users);
+        store.resetCounts();
+
+        directory.getUsers(ids(25, 75), users -> found = users);
+        assertEquals(ids(25, 75), idsOf(found));
+        assertEquals(25, store.getReadCount());
+        assertEquals(25, directory.getHitCount());
+
+        // only 100 profiles are kept, the least recently used go first
+        directory.getUsers(ids(100, 150), users -> found = users);
+        store.resetCounts();
+        directory.getUsers(ids(0, 25), users -> found = users);
+        assertEquals(25, store.getReadCount());
+    }
+
+    @Test
+    public void testProfilesExpire() {
+        long[] now = {0};
+        UserDirectory directory = new UserDirectory(store, 100, 4, 1000, () -> now[0]);
+        directory.getUsers(ids(0, 10), users -> found = users);
+        store.resetCounts();
+
+        now[0] = 999;
+        directory.getUsers(ids(0, 10), users -> found = users);
+        assertEquals(0, store.getReadCount());
+
+        now[0] = 1000;
+        directory.getUsers(ids(0, 10), users -> found = users);
+        assertEquals(ids(0, 10), idsOf(found));
+        assertEquals(10, store.getReadCount());
+    }
+
+    @Test
+    public void testParallelChunksAreBounded() throws InterruptedException {
+        store.setLatency(5);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        DocumentStore counting = new CountingStore(store, inFlight, peak);
+
+        UserDirectory directory = new UserDirectory(counting, 5000, 6);
+        CountDownLatch done = new CountDownLatch(1);
+        directory.getUsers(ids(0, 3000), users -> {
+            found = users;
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(3000, found.size());
+        assertEquals(ids(0, 3000), idsOf(found));
+        assertEquals(6, peak.get());
+    }
+
+    @Test
+    public void testFailedChunk() {
+        UserDirectory directory = new UserDirectory(store, 100, 4);
+        store.setFailureRate(1);
+        found = Collections.emptyList();
+        directory.getUsers(ids(0, 30), users -> found = users);
+        assertNull(found);
+    }
+
+    @Test
+    public void testUserManagerSubscribers() {
+        Map<String, Object> experiment = new HashMap<>();
+        experiment.put("SubscriberIDs", ids(0, 1234));
+        store.set("Experiments/E1", experiment, false, null);
+        UserManager manager = new UserManager(store);
+        List<User> subscribers = new ArrayList<>();
+        manager.queryExperimentSubs("E1", subscribers::addAll);
+        assertEquals(1234, subscribers.size());
+
+        // a profile seen recently in the list is not read again
+        store.resetCounts();
+        User[] user = new User[1];
+        manager.queryUserById("U1233", u -> user[0] = u);
+        assertEquals("User 1233", user[0].getUserName());
+        assertEquals(0, store.getReadCount());
+        manager.queryUserById("Nobody", u -> user[0] = u);
+        assertNull(user[0]);
+    }
+
+    /**
+     * Passes queries on to another store, and records the most queries in flight at once
+     */
+    private static class CountingStore implements DocumentStore {
+        private final DocumentStore store;
+        private final AtomicInteger inFlight;
+        private final AtomicInteger peak;
+
+        CountingStore(DocumentStore store, AtomicInteger inFlight, AtomicInteger peak) {
+            this.store = store;
+            this.inFlight = inFlight;
+            this.peak = peak;
+        }
+
+        @Override
+        public void query(StoreQuery query, OnDocumentsReadyListener callback) {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            store.query(query, documents -> {
+                inFlight.decrementAndGet();
+                callback.onDocumentsReady(documents);
+            });
+        }
+
+        @Override
+        public void get(String path, OnDocumentReadyListener callback) {
+            store.get(path, callback);
+        }
+
+        @Override
+        public Registration listen(StoreQuery query, OnDocumentChangesListener callback) {
+            return store.listen(query, callback);
+        }
+
+        @Override
+        public void set(String path, Map<String, Object> data, boolean merge, OnWriteDoneListener callback) {
+            store.set(path, data, merge, callback);
+        }
+
+        @Override
+        public void update(String path, Map<String, Object> fields, OnWriteDoneListener callback) {
+            store.update(path, fields, callback);
+        }
+
+        @Override
+        public void delete(String path, OnWriteDoneListener callback) {
+            store.delete(path, callback);
+        }
+
+        @Override
+        public Batch batch() {
+            return store.batch();
+        }
+
+        @Override
+        public void runTransaction(TransactionFunction function, OnWriteDoneListener callback) {
+            store.runTransaction(function, callback);
+        }
+    }
+}